@@ -18,6 +18,8 @@ public class BaseServletModule extends ServletModule {
 
     @Override
     protected void configureServlets() {
+        // must precede the catch-all
+        serve(ReadinessServlet.PATH).with(ReadinessServlet.class);
         serve("/*").with(BaseServlet.class);
         // removed when switching to non-web setup to enable push support
         // ShiroWebModule.bindGuiceFilter(binder());
@@ -12,12 +12,15 @@
  */
 package uk.q3c.krail.core.guice;
 
+import com.google.inject.Binding;
 import com.google.inject.Injector;
+import com.google.inject.Key;
 import com.google.inject.servlet.GuiceServletContextListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.q3c.krail.core.env.InjectorFactory;
 import uk.q3c.krail.core.env.RuntimeEnvironment;
+import uk.q3c.krail.core.navigate.AsyncViewBuilder;
 import uk.q3c.krail.service.ServiceMonitor;
 import uk.q3c.krail.startup.ApplicationStartup;
 import uk.q3c.krail.startup.ServletApplicationStartup;
@@ -52,6 +55,13 @@ public class DefaultServletContextListener extends GuiceServletContextListener {
             if (InjectorHolder.hasInjector()) {
                 InjectorHolder.getInjector().getInstance(ServiceMonitor.class)
                         .stopAllServices();
+                Binding<AsyncViewBuilder> asyncViewBuilder = InjectorHolder.getInjector()
+                        .getExistingBinding(Key.get(AsyncViewBuilder.class));
+                if (asyncViewBuilder != null) {
+                    asyncViewBuilder.getProvider()
+                            .get()
+                            .stop();
+                }
             } else {
                 log.debug("Injector has not been constructed, no call made to stop service");
             }
@@ -0,0 +1,55 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.guice;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import uk.q3c.krail.startup.ApplicationReadiness;
+import uk.q3c.krail.startup.StageTiming;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Readiness probe, served at {@link #PATH} by {@link BaseServletModule}.  Responds 200 once every startup stage has finished successfully, and
+ * 503 otherwise.  The body is READY, STARTING, or FAILED if every stage has finished but at least one failed, followed by the timing of each
+ * stage finished so far.  Stages which are disabled are listed as DISABLED - their work is not covered by the response, see {@link ApplicationReadiness}
+ */
+@Singleton
+public class ReadinessServlet extends HttpServlet {
+
+    public static final String PATH = "/ready";
+
+    private final ApplicationReadiness readiness;
+
+    @Inject
+    public ReadinessServlet(ApplicationReadiness readiness) {
+        this.readiness = readiness;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        boolean ready = readiness.isReady();
+        resp.setStatus(ready ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        resp.setContentType("text/plain");
+        resp.setCharacterEncoding("UTF-8");
+        PrintWriter writer = resp.getWriter();
+        writer.println(ready ? "READY" : readiness.isFinished() ? "FAILED" : "STARTING");
+        for (StageTiming timing : readiness.timings()) {
+            writer.println(timing.getName() + " " + timing.getElapsedMillis() + " ms" + (timing.getFailed() ? " FAILED" : timing.getDisabled() ? " DISABLED" : ""));
+        }
+    }
+}
@@ -12,6 +12,8 @@
  */
 package uk.q3c.krail.core.i18n;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.vaadin.data.HasValue;
@@ -55,6 +57,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public class DefaultI18NProcessor implements I18NProcessor {
     private static Logger log = LoggerFactory.getLogger(DefaultI18NProcessor.class);
+    public static final int MAX_CACHED_COLUMN_IDS = 2000;
+    private static final Cache<String, Optional<I18NKey>> columnKeys = CacheBuilder.newBuilder()
+                                                                                 .maximumSize(MAX_CACHED_COLUMN_IDS)
+                                                                                 .build();
     private final Translate translate;
     private CurrentLocale currentLocale;
     private transient Provider<I18NFieldScanner> i18NFieldScannerProvider;
@@ -257,7 +263,8 @@ public class DefaultI18NProcessor implements I18NProcessor {
 
 
     /**
-     * Sets the I18N values for the Grid itself, and also iterates the columns for column ids which are I18NKeys, and translates those as well
+     * Sets the I18N values for the Grid itself, and also iterates the columns for column ids which are I18NKeys, and translates those as well.  Column ids
+     * are converted to keys only once, see {@link #columnKeyFor(String)}
      *
      * @param grid             the Grid to process
      * @param annotationValues the annotation values to apply
@@ -272,19 +279,44 @@ public class DefaultI18NProcessor implements I18NProcessor {
         // now do the column headers
         Locale locale = annotationValues.locale.isPresent() ? annotationValues.locale.get() : currentLocale.getLocale();
         final List<Grid.Column> columns = grid.getColumns();
-        I18NKeyConverter converter = new I18NKeyConverter();
 
         for (Grid.Column column : columns) {
-            try {
-                I18NKey columnKey = converter.convertToModel(column.getId());
-                String header = translate.from(columnKey, locale);
-                column.setCaption(header);
-            } catch (Exception e) {
-                log.debug("Column id {} is not an I18NKey", column.getId());
+            Optional<I18NKey> columnKey = columnKeyFor(column.getId());
+            if (columnKey.isPresent()) {
+                column.setCaption(translate.from(columnKey.get(), locale));
             }
         }
     }
 
+    /**
+     * Returns the I18NKey represented by {@code columnId}, or Optional.empty() if it does not represent a key.  Column ids are usually fixed at design time, so
+     * the outcome of each conversion - including a failure - is cached, and the (exception based) conversion is not usually repeated for the same id.
+     * The cache is limited to {@link #MAX_CACHED_COLUMN_IDS} entries, so that ids generated at run time cannot grow it without limit
+     *
+     * @param columnId the column id to convert, may be null
+     * @return the I18NKey represented by {@code columnId}, or Optional.empty() if it does not represent a key
+     */
+    protected Optional<I18NKey> columnKeyFor(String columnId) {
+        if (columnId == null || columnId.indexOf('.') < 0) {
+            return Optional.empty();
+        }
+        Optional<I18NKey> columnKey = columnKeys.getIfPresent(columnId);
+        if (columnKey == null) {
+            columnKey = convertColumnId(columnId);
+            columnKeys.put(columnId, columnKey);
+        }
+        return columnKey;
+    }
+
+    private static Optional<I18NKey> convertColumnId(String columnId) {
+        try {
+            return Optional.of(new I18NKeyConverter().convertToModel(columnId));
+        } catch (Exception e) {
+            log.debug("Column id {} is not an I18NKey", columnId);
+            return Optional.empty();
+        }
+    }
+
 
     private static class AnnotationValues {
         Optional<I18NKey> captionKey = Optional.empty();
@@ -53,6 +53,14 @@ public class KrailI18NModule extends I18NModule {
         bindPatternUtility();
         bindLocaleContainer();
         bindLocaleIconGenerator();
+        bindCollatorPool();
+    }
+
+    /**
+     * Shares Collators and CollationKeys across all sessions.  Override this method to provide your own implementation
+     */
+    protected void bindCollatorPool() {
+        bind(CollatorPool.class).to(DefaultCollatorPool.class).in(Singleton.class);
     }
 
     /**
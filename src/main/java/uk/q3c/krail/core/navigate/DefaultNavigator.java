@@ -14,7 +14,9 @@ package uk.q3c.krail.core.navigate;
 
 import com.google.inject.Inject;
 import com.vaadin.server.Page;
+import com.vaadin.ui.Component;
 import com.vaadin.ui.HasComponents;
+import com.vaadin.ui.ProgressBar;
 import com.vaadin.ui.UI;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import net.engio.mbassy.listener.Handler;
@@ -30,6 +32,8 @@ import uk.q3c.krail.core.guice.uiscope.UIScoped;
 import uk.q3c.krail.core.monitor.PageLoadingMessage;
 import uk.q3c.krail.core.monitor.PageReadyMessage;
 import uk.q3c.krail.core.navigate.sitemap.MasterSitemap;
+import uk.q3c.krail.core.navigate.sitemap.MasterSitemapHolder;
+import uk.q3c.krail.core.navigate.sitemap.SitemapVersion;
 import uk.q3c.krail.core.navigate.sitemap.Sitemap;
 import uk.q3c.krail.core.navigate.sitemap.SitemapException;
 import uk.q3c.krail.core.navigate.sitemap.SitemapService;
@@ -46,9 +50,11 @@ import uk.q3c.krail.core.user.UserSitemapRebuilt;
 import uk.q3c.krail.core.view.BeforeViewChangeBusMessage;
 import uk.q3c.krail.core.view.KrailView;
 import uk.q3c.krail.core.view.NavigationStateExt;
+import uk.q3c.krail.core.view.ViewBuildException;
 import uk.q3c.krail.core.view.ViewFactory;
 import uk.q3c.krail.core.view.component.AfterViewChangeBusMessage;
 import uk.q3c.krail.core.view.component.ComponentIdGenerator;
+import uk.q3c.krail.core.view.component.ComponentIdState;
 import uk.q3c.krail.eventbus.MessageBus;
 import uk.q3c.krail.eventbus.SubscribeTo;
 import uk.q3c.krail.service.State;
@@ -58,8 +64,13 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -75,6 +86,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * <p>
  * The {@link #uiBusProvider} is used to manage view changes - note that the eventBus must be synchronous for the view change cancellation to work (see {@link
  * #publishBeforeViewChange(BeforeViewChangeBusMessage)}
+ * <p>
+ * If the {@link AsyncViewBuilder} says so, the view is built asynchronously - see {@link #changeViewAsync}
  *
  * @author David Sowerby
  * @date 18 Apr 2014
@@ -95,22 +108,34 @@ public class DefaultNavigator implements Navigator {
     private final LoginNavigationRule loginNavigationRule;
     private final LogoutNavigationRule logoutNavigationRule;
     private final InvalidURIHandler invalidURIHandler;
-    private final MasterSitemap masterSitemap;
+    private final MasterSitemapHolder sitemapHolder;
     private final UIBusProvider uiBusProvider;
     private final ViewChangeRule viewChangeRule;
     private final ComponentIdGenerator idGenerator;
     private final transient MessageBus messageBus;
+    private final transient AsyncViewBuilder asyncViewBuilder;
+    private final transient ViewPrefetcher viewPrefetcher;
     private NavigationState currentNavigationState;
     private NavigationState previousNavigationState;
     private UserSitemap userSitemap;
+    private MasterSitemap masterSitemap;
+    private int sitemapVersion;
     private SerializationSupport serializationSupport;
+    private ComponentIdState uiComponentIdState;
+    // incremented for every view change which is not blocked, so that an asynchronous build can tell whether it is still wanted
+    private volatile long navigationSequence;
+    // the asynchronous build for the current navigation, if it has not yet completed
+    private transient BackgroundBuild pendingBuild;
+    // views with an asynchronous build which has been queued but not yet handed back to the UI.  Only used while holding the session lock
+    private transient Set<KrailView> viewsBuilding;
 
 
     @Inject
     public DefaultNavigator(URIFragmentHandler uriHandler, SitemapService sitemapService, SubjectProvider subjectProvider, PageAccessController
             pageAccessController, ScopedUIProvider uiProvider, ViewFactory viewFactory, UserSitemapBuilder userSitemapBuilder, LoginNavigationRule
                                     loginNavigationRule, LogoutNavigationRule logoutNavigationRule, UIBusProvider uiBusProvider, ViewChangeRule
-                                    viewChangeRule, InvalidURIHandler invalidURIHandler, ComponentIdGenerator idGenerator, MasterSitemap masterSitemap, MessageBus messageBus, SerializationSupport serializationSupport) {
+                                    viewChangeRule, InvalidURIHandler invalidURIHandler, ComponentIdGenerator idGenerator, MasterSitemapHolder sitemapHolder, MessageBus messageBus, AsyncViewBuilder asyncViewBuilder, ViewPrefetcher
+                                    viewPrefetcher, SerializationSupport serializationSupport) {
         super();
         this.uriHandler = uriHandler;
         this.uiProvider = uiProvider;
@@ -123,7 +148,7 @@ public class DefaultNavigator implements Navigator {
         this.loginNavigationRule = loginNavigationRule;
         this.logoutNavigationRule = logoutNavigationRule;
         this.invalidURIHandler = invalidURIHandler;
-        this.masterSitemap = masterSitemap;
+        this.sitemapHolder = sitemapHolder;
 
         this.uiBusProvider = uiBusProvider;
         this.viewChangeRule = viewChangeRule;
@@ -131,6 +156,8 @@ public class DefaultNavigator implements Navigator {
 
         this.idGenerator = idGenerator;
         this.messageBus = messageBus;
+        this.asyncViewBuilder = asyncViewBuilder;
+        this.viewPrefetcher = viewPrefetcher;
         this.serializationSupport = serializationSupport;
     }
 
@@ -150,6 +177,9 @@ public class DefaultNavigator implements Navigator {
             }
             sitemapService.start();
             //take a reference and keep it in case current model changes
+            SitemapVersion version = sitemapHolder.getCurrent();
+            masterSitemap = version.getSitemap();
+            sitemapVersion = version.getNumber();
             userSitemapBuilder.setMasterSitemap(masterSitemap);
             userSitemapBuilder.build();
             userSitemap = userSitemapBuilder.getUserSitemap();
@@ -232,6 +262,7 @@ public class DefaultNavigator implements Navigator {
         if (!viewChangeRule.changeIsAllowed(this, getCurrentView())) {
             return;
         }
+        updateSitemapVersion();
         //makes sure the navigation state is up to date, removes the need to do this externally
         uriHandler.updateFragment(navigationState);
         log.debug("Navigating to navigation state: {}", navigationState.getFragment());
@@ -289,9 +320,22 @@ public class DefaultNavigator implements Navigator {
                 page.setUriFragment(fragment, false);
             }
             // now change the view
-            KrailView view = viewFactory.get(node.getViewClass());
+            KrailView view = viewFactory.get(node.getViewClass(), navigationState);
+            NavigationStateExt navigationStateExt = new NavigationStateExt(previousNavigationState, navigationState, node);
+            navigationSequence++;
+            cancelPendingBuild();
+            if (viewsBuilding().contains(view)) {
+                // an earlier asynchronous build of this (re-used) instance is still running - use a new instance rather than wait for it
+                log.debug("{} is still being built, using a new instance", view.getClass()
+                        .getName());
+                view = viewFactory.get(node.getViewClass());
+            }
+            if (asyncViewBuilder.isAsync(ui)) {
+                changeViewAsync(view, navigationStateExt, beforeMessage, navigationSequence);
+                return;
+            }
 
-            changeView(view, new NavigationStateExt(previousNavigationState, navigationState, node));
+            changeView(view, navigationStateExt);
 
             // and tell listeners its changed
             AfterViewChangeBusMessage afterMessage = new AfterViewChangeBusMessage(beforeMessage);
@@ -320,11 +364,30 @@ public class DefaultNavigator implements Navigator {
         }
     }
 
+    /**
+     * If the {@link MasterSitemap} has been reloaded since this navigator last looked, updates the {@link UserSitemap} for the changed subtrees
+     * and uses the new version from now on
+     */
+    private void updateSitemapVersion() {
+        SitemapVersion version = sitemapHolder.getCurrent();
+        if (version.getNumber() == sitemapVersion) {
+            return;
+        }
+        log.debug("master sitemap has changed from version {} to {}", sitemapVersion, version.getNumber());
+        userSitemapBuilder.update(version.getSitemap(), version.changedSince(sitemapVersion));
+        masterSitemap = version.getSitemap();
+        sitemapVersion = version.getNumber();
+    }
+
     protected void changeView(KrailView view, NavigationStateExt navigationStateExt) {
-        ScopedUI ui = uiProvider.get();
         log.debug("calling view.beforeBuild(event) for {}", view.getClass()
                 .getName());
         view.beforeBuild(navigationStateExt);
+        buildAndDisplay(view, navigationStateExt);
+    }
+
+    private void buildAndDisplay(KrailView view, NavigationStateExt navigationStateExt) {
+        ScopedUI ui = uiProvider.get();
         log.debug("calling view.buildView(event) {}", view.getClass()
                 .getName());
         view.buildView();
@@ -333,14 +396,172 @@ public class DefaultNavigator implements Navigator {
                 .getName());
 
         generateAndApplyComponentIds(view);
-        generateAndApplyComponentIds(ui);
+        applyUIComponentIds(ui);
         view.afterBuild();
+        viewFactory.built(navigationStateExt.getNode()
+                                            .getViewClass(), navigationStateExt.getTo(), view);
         HasComponents g;
     }
 
+    /**
+     * Calls {@link KrailView#beforeBuild} on the request thread, then queues the rest of the build (buildView, component ids and afterBuild, and
+     * therefore any data loading) with the {@link AsyncViewBuilder}, and displays a placeholder in the meantime.  When the build completes, the view
+     * is displayed through {@link UI#access}, and an {@link AfterViewChangeBusMessage} published - unless another view change has happened
+     * since, in which case the built view is discarded.
+     * <p>
+     * The build runs outside the Vaadin session lock, so views built this way must not rely on {@link UI#getCurrent()} or the session while
+     * building or loading data.  If the build cannot be queued, the view is built synchronously.  A build which has not started by the time of
+     * the next view change is cancelled, and one which has started is discarded when it completes.
+     * <p>
+     * The built view is handed back to the UI through {@link UI#access}, and nothing waits for the build while holding the session lock.  Builds
+     * of the same view instance (which may be re-used through the {@link ViewFactory}) never overlap, because an instance is not re-used until its
+     * build has been handed back
+     *
+     * @param view               the view to change to
+     * @param navigationStateExt the navigation state for the change
+     * @param beforeMessage      the message published before the change, used to construct the {@link AfterViewChangeBusMessage}
+     * @param sequence           the value of {@link #navigationSequence} for this change
+     */
+    protected void changeViewAsync(KrailView view, NavigationStateExt navigationStateExt, BeforeViewChangeBusMessage beforeMessage, long sequence) {
+        ScopedUI ui = uiProvider.get();
+        log.debug("calling view.beforeBuild(event) for {}", view.getClass()
+                .getName());
+        view.beforeBuild(navigationStateExt);
+        BackgroundBuild build = new BackgroundBuild(view);
+        Future<?> future = asyncViewBuilder.submit(() -> {
+            if (build.start()) {
+                buildInBackground(ui, view, navigationStateExt, beforeMessage, sequence);
+            }
+        });
+        if (future != null) {
+            build.future = future;
+            pendingBuild = build;
+            viewsBuilding().add(view);
+            ui.getViewDisplayPanel()
+              .setContent(createPlaceholder());
+        } else {
+            buildAndDisplay(view, navigationStateExt);
+            publishAfterViewChange(new AfterViewChangeBusMessage(beforeMessage));
+        }
+    }
+
+    private void buildInBackground(ScopedUI ui, KrailView view, NavigationStateExt navigationStateExt, BeforeViewChangeBusMessage beforeMessage,
+                                   long sequence) {
+        String viewName = view.getClass()
+                              .getName();
+        try {
+            if (sequence != navigationSequence) {
+                log.debug("navigation has moved on, {} not built", viewName);
+                ui.access(() -> viewsBuilding().remove(view));
+                return;
+            }
+            log.debug("building {} asynchronously", viewName);
+            view.buildView();
+            generateAndApplyComponentIds(view);
+            view.afterBuild();
+        } catch (Exception e) {
+            log.error("Asynchronous build of {} failed", viewName, e);
+            ui.access(() -> {
+                viewsBuilding().remove(view);
+                if (sequence == navigationSequence) {
+                    throw new ViewBuildException("Unable to build " + viewName, e);
+                }
+            });
+            return;
+        }
+        ui.access(() -> {
+            viewsBuilding().remove(view);
+            if (sequence != navigationSequence) {
+                log.debug("navigation has moved on, discarding {}", viewName);
+                return;
+            }
+            pendingBuild = null;
+            ui.changeView(view);
+            applyUIComponentIds(ui);
+            viewFactory.built(navigationStateExt.getNode()
+                                                .getViewClass(), navigationStateExt.getTo(), view);
+            publishAfterViewChange(new AfterViewChangeBusMessage(beforeMessage));
+        });
+    }
+
+    /**
+     * Cancels the asynchronous build for the previous navigation, if it has not yet started.  A build which has already started is left to
+     * complete, and is then discarded by {@link #buildInBackground}
+     */
+    private void cancelPendingBuild() {
+        BackgroundBuild build = pendingBuild;
+        if (build != null) {
+            if (build.cancel()) {
+                viewsBuilding().remove(build.view);
+            }
+            pendingBuild = null;
+        }
+    }
+
+    private Set<KrailView> viewsBuilding() {
+        if (viewsBuilding == null) {
+            viewsBuilding = Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+        return viewsBuilding;
+    }
+
+    /**
+     * An asynchronous build, which is either started by the {@link AsyncViewBuilder} or cancelled by the next navigation, but not both
+     */
+    private static final class BackgroundBuild {
+        private final KrailView view;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private Future<?> future;
+
+        private BackgroundBuild(KrailView view) {
+            this.view = view;
+        }
+
+        /**
+         * @return true if the build should run, false if it has been cancelled
+         */
+        private boolean start() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        /**
+         * @return true if the build had not started, and now never will
+         */
+        private boolean cancel() {
+            if (claimed.compareAndSet(false, true)) {
+                future.cancel(false);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The component displayed while a view is built asynchronously.  Override to provide your own
+     *
+     * @return the component displayed while a view is built asynchronously
+     */
+    protected Component createPlaceholder() {
+        ProgressBar placeholder = new ProgressBar();
+        placeholder.setIndeterminate(true);
+        return placeholder;
+    }
+
     private void generateAndApplyComponentIds(Object containingObject) {
         // TODO configuration should allow Ids to be switched off see https://github.com/davidsowerby/krail/issues/662
-        idGenerator.generateAndApply(containingObject);
+        idGenerator.apply(containingObject);
+    }
+
+    /**
+     * The view is excluded from the {@link ScopedUI} component tree by the {@link ComponentIdGenerator}, so the rest of the UI (header, menu,
+     * navigation tree etc) usually keeps the same components from one view to the next.  Ids are therefore re-applied only to the components
+     * of the UI which have been replaced since they were last applied, using {@link ComponentIdGenerator#applyChanged}, which reads only the
+     * UI's own component fields rather than walking the whole UI tree.
+     *
+     * @param ui the UI to apply ids to, if necessary
+     */
+    private void applyUIComponentIds(ScopedUI ui) {
+        uiComponentIdState = idGenerator.applyChanged(ui, uiComponentIdState);
     }
 
     /**
@@ -364,7 +585,7 @@ public class DefaultNavigator implements Navigator {
     }
 
     /**
-     * Publishes a message to the {@link #uiBusProvider} immediately after a view change.
+     * Publishes a message to the {@link #uiBusProvider} immediately after a view change, then passes it to the {@link ViewPrefetcher}
      * <p>
      * Message Handlers are called in an undefined order unless {@link Handler#priority()} is used to specify an order.
      *
@@ -374,6 +595,7 @@ public class DefaultNavigator implements Navigator {
         uiBusProvider.get().publish(busMessage);
         ScopedUI ui = uiProvider.get();
         messageBus.publishASync(new PageReadyMessage(ui.getInstanceKey(), ui.getUIId()));
+        viewPrefetcher.afterViewChange(busMessage, userSitemap);
     }
 
     protected void publishPageLoadingMessage() {
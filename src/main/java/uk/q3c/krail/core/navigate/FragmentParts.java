@@ -0,0 +1,69 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.navigate;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The immutable result of parsing a URI fragment - the fragment itself, and its virtual page, path segments and parameters.  Instances are interned
+ * by {@link StrictURIFragmentHandler}, so the same fragment is parsed only once, and the parts are then shared by every {@link NavigationState}
+ * created from it, without copying.
+ */
+@Immutable
+public final class FragmentParts implements Serializable {
+
+    private final String fragment;
+    private final String virtualPage;
+    private final ImmutableList<String> pathSegments;
+    private final ImmutableMap<String, String> parameters;
+    private final ImmutableList<String> parameterList;
+
+    public FragmentParts(String fragment, String virtualPage, ImmutableList<String> pathSegments, ImmutableMap<String, String> parameters) {
+        this.fragment = checkNotNull(fragment);
+        this.virtualPage = checkNotNull(virtualPage);
+        this.pathSegments = checkNotNull(pathSegments);
+        this.parameters = checkNotNull(parameters);
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        parameters.forEach((key, value) -> builder.add(key + '=' + value));
+        this.parameterList = builder.build();
+    }
+
+    public String getFragment() {
+        return fragment;
+    }
+
+    public String getVirtualPage() {
+        return virtualPage;
+    }
+
+    public ImmutableList<String> getPathSegments() {
+        return pathSegments;
+    }
+
+    public ImmutableMap<String, String> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return the parameters in the form key=value, in the order they appear in the fragment
+     */
+    public ImmutableList<String> getParameterList() {
+        return parameterList;
+    }
+}
@@ -29,6 +29,38 @@ public class NavigationModule extends AbstractModule {
         bindNavigationRules();
         bindViewChangeRule();
         bindInvalidURIHandler();
+        bindAsyncViewBuilder();
+        bindViewPrefetcher();
+        bindNavigationTransitions();
+        bindViewDataWarmer();
+    }
+
+    /**
+     * Override to provide your own {@link ViewPrefetcher}
+     */
+    protected void bindViewPrefetcher() {
+        bind(ViewPrefetcher.class).to(DefaultViewPrefetcher.class);
+    }
+
+    /**
+     * Override to provide your own model of navigation transitions, used to rank pages for prefetch
+     */
+    protected void bindNavigationTransitions() {
+        bind(NavigationTransitions.class).to(DefaultNavigationTransitions.class);
+    }
+
+    /**
+     * Override to warm data for pages which are prefetched.  The default implementation warms the first page of standard form tables
+     */
+    protected void bindViewDataWarmer() {
+        bind(ViewDataWarmer.class).to(DefaultViewDataWarmer.class);
+    }
+
+    /**
+     * Override to provide your own {@link AsyncViewBuilder}
+     */
+    protected void bindAsyncViewBuilder() {
+        bind(AsyncViewBuilder.class).to(DefaultAsyncViewBuilder.class);
     }
 
     protected void bindViewChangeRule() {
@@ -22,7 +22,6 @@ import java.io.Serializable;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -56,12 +55,16 @@ import static org.slf4j.LoggerFactory.getLogger;
  * </code>
  * <p>
  * A NavigationState 'a' is equal to NavigationState 'b' if a.getFragment.equals(b.getFragment())
+ * <p>
+ * When the parts are set from a {@link FragmentParts}, its immutable collections are shared rather than copied, and the accessors return them
+ * directly.  The parameters are copied only if they are subsequently modified.
  *
  * @author David Sowerby
  */
 public class NavigationState implements Serializable {
     private static Logger log = getLogger(NavigationState.class);
-    private final Map<String, String> parameters = new LinkedHashMap<String, String>();
+    private Map<String, String> parameters = ImmutableMap.of();
+    private List<String> parameterList;
     // fragment is out of date
     private boolean fragmentChanged;
     private boolean partsChanged;
@@ -126,15 +129,40 @@ public class NavigationState implements Serializable {
 
     public Map<String, String> getParameters() {
         validStateCheck();
+        // does not copy if parameters are already immutable
         return ImmutableMap.copyOf(parameters);
     }
 
     public List<String> getParameterList() {
         validStateCheck();
-        return parameters.entrySet()
-                         .stream()
-                         .map(entry -> entry.getKey() + '=' + entry.getValue())
-                         .collect(Collectors.toList());
+        if (parameterList == null) {
+            parameterList = parameters.entrySet()
+                                      .stream()
+                                      .map(entry -> entry.getKey() + '=' + entry.getValue())
+                                      .collect(ImmutableList.toImmutableList());
+        }
+        return parameterList;
+    }
+
+    /**
+     * Sets all the parts of this state from {@code parts}, sharing its immutable collections.  Used by {@link URIFragmentHandler} implementations
+     * during an update
+     *
+     * @param parts the parsed fragment
+     */
+    void parts(FragmentParts parts) {
+        this.pathSegments = parts.getPathSegments();
+        this.virtualPage = parts.getVirtualPage();
+        this.parameters = parts.getParameters();
+        this.parameterList = parts.getParameterList();
+    }
+
+    private Map<String, String> mutableParameters() {
+        if (parameters instanceof ImmutableMap) {
+            parameters = new LinkedHashMap<>(parameters);
+        }
+        parameterList = null;
+        return parameters;
     }
 
     private void validStateCheck() {
@@ -152,6 +180,7 @@ public class NavigationState implements Serializable {
 
     public List<String> getPathSegments() {
         validStateCheck();
+        // does not copy if pathSegments are already immutable
         return pathSegments == null ? ImmutableList.of() : ImmutableList.copyOf(pathSegments);
     }
 
@@ -192,7 +221,10 @@ public class NavigationState implements Serializable {
 
     public NavigationState removeParameter(String key) {
         checkNotNull(key);
-        String result = parameters.remove(key);
+        if (!parameters.containsKey(key)) {
+            return this;
+        }
+        String result = mutableParameters().remove(key);
         if (result != null) {
             partsChanged = true;
         }
@@ -246,7 +278,7 @@ public class NavigationState implements Serializable {
     public NavigationState parameter(String key, String value) {
         checkNotNull(key);
         checkNotNull(value);
-        parameters.put(key, value);
+        mutableParameters().put(key, value);
         partsChanged = true;
         return this;
     }
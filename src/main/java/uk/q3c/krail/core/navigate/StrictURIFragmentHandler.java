@@ -15,15 +15,16 @@ package uk.q3c.krail.core.navigate;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
-import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.Serializable;
 import java.net.URI;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -51,9 +52,16 @@ import java.util.Map;
  * <br>
  * Optionally uses hash(#) or hashBang(#!). Some people get excited about hashbangs. Try Googling it<br>
  * <br>
+ * Parsed fragments are interned as {@link FragmentParts}, in a cache shared by all instances and limited to {@link #MAX_CACHED_FRAGMENTS}
+ * entries, so that frequently used fragments are only parsed once.
  */
 public class StrictURIFragmentHandler implements URIFragmentHandler, Serializable {
 
+    public static final int MAX_CACHED_FRAGMENTS = 5000;
+    private static final Cache<String, FragmentParts> parsedFragments = CacheBuilder.newBuilder()
+                                                                                    .maximumSize(MAX_CACHED_FRAGMENTS)
+                                                                                    .build();
+
     private boolean useBang = false;
 
     @Inject
@@ -98,38 +106,65 @@ public class StrictURIFragmentHandler implements URIFragmentHandler, Serializabl
     @Override
     public void updateParts(NavigationState navigationState) {
         navigationState.setUpdateInProgress(true);
-        String fragment = navigationState.getFragment();
-
-        List<String> pathSegments = new ArrayList<>();
-        // no parameters, everything is the virtual page path
-        // if (!fragment.contains("=")) {
-        // navigationState.setVirtualPage(fragment);
-        // return navigationState;
-        // }
+        navigationState.parts(parse(navigationState.getFragment()));
+        navigationState.updated();
+    }
 
-        Iterable<String> segments = Splitter.on('/')
-                                            .split(fragment);
+    /**
+     * Returns the interned {@link FragmentParts} for {@code fragment}, parsing it only if it is not already held
+     *
+     * @param fragment the fragment to parse, with any bang and trailing slash already removed
+     * @return the parts of {@code fragment}
+     */
+    public FragmentParts parse(String fragment) {
+        FragmentParts parts = parsedFragments.getIfPresent(fragment);
+        if (parts == null) {
+            parts = doParse(fragment);
+            parsedFragments.put(fragment, parts);
+        }
+        return parts;
+    }
 
+    /**
+     * Parses {@code fragment} in a single pass.  Segments are separated by '/'.  The virtual page ends at the first segment containing '=',
+     * and every segment after that is a key=value parameter.  A parameter without a key or value is ignored, as is anything after a second '='
+     */
+    private static FragmentParts doParse(String fragment) {
+        ImmutableList.Builder<String> pathSegments = ImmutableList.builder();
+        Map<String, String> parameters = new LinkedHashMap<>();
+        int length = fragment.length();
+        int virtualPageEnd = 0;
+        int segmentStart = 0;
+        int firstEquals = -1;
+        int secondEquals = -1;
         boolean paramsStarted = false;
-        Iterator<String> iter = segments.iterator();
-        while (iter.hasNext()) {
-            String s = iter.next();
-            if (paramsStarted) {
-                addParameter(navigationState, s);
-            } else {
-                if (s.contains("=")) {
-                    paramsStarted = true;
-                    addParameter(navigationState, s);
+
+        for (int i = 0; i <= length; i++) {
+            // the end of the fragment also ends a segment
+            char c = (i == length) ? '/' : fragment.charAt(i);
+            if (c == '=') {
+                if (firstEquals < 0) {
+                    firstEquals = i;
+                } else if (secondEquals < 0) {
+                    secondEquals = i;
+                }
+            } else if (c == '/') {
+                if (!paramsStarted && firstEquals < 0) {
+                    pathSegments.add(fragment.substring(segmentStart, i));
+                    virtualPageEnd = i;
                 } else {
-                    pathSegments.add(s);
+                    paramsStarted = true;
+                    int valueEnd = (secondEquals < 0) ? i : secondEquals;
+                    if (firstEquals > segmentStart && valueEnd > firstEquals + 1) {
+                        parameters.put(fragment.substring(segmentStart, firstEquals), fragment.substring(firstEquals + 1, valueEnd));
+                    }
                 }
+                segmentStart = i + 1;
+                firstEquals = -1;
+                secondEquals = -1;
             }
         }
-        navigationState.setUpdateInProgress(true);
-        // join the virtual page path up again
-        navigationState.pathSegments(pathSegments);
-        validateSegments(navigationState);
-        navigationState.updated();
+        return new FragmentParts(fragment, fragment.substring(0, virtualPageEnd), pathSegments.build(), ImmutableMap.copyOf(parameters));
     }
 
     private String virtualPageFromSegments(List<String> pathSegments) {
@@ -138,23 +173,6 @@ public class StrictURIFragmentHandler implements URIFragmentHandler, Serializabl
                       .join(pathSegments.toArray());
     }
 
-    private void addParameter(NavigationState navigationState, String s) {
-        if (s.contains("=")) {
-            Iterable<String> segments = Splitter.on('=')
-                                                .split(s);
-            Iterator<String> iter = segments.iterator();
-            String key = iter.next();
-            String value = iter.next();
-            if (Strings.isNullOrEmpty(key)) {
-                return;
-            }
-            if (Strings.isNullOrEmpty(value)) {
-                return;
-            }
-            navigationState.parameter(key, value);
-        }
-    }
-
     private String stripBangAndTrailingSlash(String path) {
         int copyStart = 0;
         int copyEnd = path.length();
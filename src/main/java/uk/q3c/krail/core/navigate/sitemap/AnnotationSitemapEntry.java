@@ -19,6 +19,7 @@ import java.io.Serializable;
 public class AnnotationSitemapEntry implements Serializable {
 
     private I18NKey labelSample;
+    private boolean indexed;
 
     public I18NKey getLabelSample() {
         return labelSample;
@@ -28,4 +29,15 @@ public class AnnotationSitemapEntry implements Serializable {
         this.labelSample = labelSample;
     }
 
+    /**
+     * @return true if the classes for this entry are listed in a {@link SitemapIndex}, and need not be scanned for
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
 }
@@ -26,6 +26,8 @@ public interface AnnotationSitemapLoader extends SitemapLoader {
     String LABEL_NOT_VALID = "Annotation for View {0}.  {1} is not a valid key value for enum {2}";
     String REDIRECT_FROM_IGNORED = "The @RedirectFrom annotation for {0} has been ignored.  A @RedirectFrom "
             + "must be accompanied by a @View";
+    String INDEXED_CLASS_NOT_FOUND = "Class {0} is listed in the sitemap index, but could not be loaded";
+    String INDEX_NOT_FOUND = "No sitemap index was found, {0} has been scanned instead";
 
     Map<String, AnnotationSitemapEntry> getSources();
 }
@@ -80,8 +80,22 @@ public abstract class AnnotationSitemapModule extends AbstractModule {
     protected abstract void define();
 
     protected void addEntry(String reflectionRoot, I18NKey labelSample) {
+        addEntry(reflectionRoot, labelSample, false);
+    }
+
+    /**
+     * As {@link #addEntry(String, I18NKey)}, except that the classes are taken from the {@link SitemapIndex} generated at build time by
+     * {@link SitemapIndexProcessor}, instead of scanning the classpath.  Only use this if all the classes under {@code reflectionRoot} were
+     * compiled with the processor - if no index is found at all, the classpath is scanned anyway
+     */
+    protected void addIndexedEntry(String reflectionRoot, I18NKey labelSample) {
+        addEntry(reflectionRoot, labelSample, true);
+    }
+
+    private void addEntry(String reflectionRoot, I18NKey labelSample, boolean indexed) {
         AnnotationSitemapEntry entry = new AnnotationSitemapEntry();
         entry.setLabelSample(labelSample);
+        entry.setIndexed(indexed);
         mapBinder.addBinding(reflectionRoot)
                  .toInstance(entry);
     }
@@ -16,11 +16,17 @@ import com.google.common.base.Splitter;
 import com.google.inject.Inject;
 import org.apache.commons.lang3.StringUtils;
 import org.reflections.Reflections;
+import org.reflections.util.ConfigurationBuilder;
+import org.reflections.util.FilterBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.q3c.krail.core.view.KrailView;
 import uk.q3c.krail.i18n.I18NKey;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -51,82 +57,27 @@ public class DefaultAnnotationSitemapLoader extends SitemapLoaderBase implements
      * <br>
      * Also scans for the {@link RedirectFrom} annotation, and populates the {@link MasterSitemap} redirects with the appropriate entries. If a class is
      * annotated with {@link RedirectFrom}, but does not implement {@link KrailView}, then the annotation is ignored.
-     *
+     * <p/>
+     * Entries which are indexed (see {@link AnnotationSitemapModule#addIndexedEntry}) take their classes from the {@link SitemapIndex} and are not
+     * scanned.  All other entries are scanned together, in a single classpath scan which runs in parallel.  The results are then loaded into the
+     * sitemap on the calling thread, in the same order as the entries
      */
-    @SuppressWarnings("unchecked")
     @Override
     public boolean load(MasterSitemap sitemap) {
         checkNotNull(sitemap);
         clearCounts();
         if (sources != null) {
+            Map<String, Set<Class<?>>> typesWithView = new HashMap<>();
+            Map<String, Set<Class<?>>> typesWithRedirectFrom = new HashMap<>();
+            findAnnotatedTypes(typesWithView, typesWithRedirectFrom);
 
             for (Entry<String, AnnotationSitemapEntry> entry : sources.entrySet()) {
                 String source = entry.getKey();
-                log.debug("scanning {} for View annotations", entry.getKey());
-                Reflections reflections = new Reflections(entry.getKey());
-
-                // find the View annotations
-                Set<Class<?>> typesWithView = reflections.getTypesAnnotatedWith(View.class);
-                log.debug("{} KrailViews with View annotation found", typesWithView.size());
-
-                // find the RedirectFrom annotations
-                Set<Class<?>> typesWithRedirectFrom = reflections.getTypesAnnotatedWith(RedirectFrom.class);
-                log.debug("{} KrailViews with RedirectFrom annotation found", typesWithRedirectFrom.size());
-
-                // process the View annotations
-                for (Class<?> clazz : typesWithView) {
-                    Class<? extends KrailView> viewClass = null;
-                    if (KrailView.class.isAssignableFrom(clazz)) {
-                        viewClass = (Class<? extends KrailView>) clazz;
-                        View annotation = viewClass.getAnnotation(View.class);
-                        NodeRecord nodeRecord = new NodeRecord(annotation.uri());
-                        nodeRecord.setViewClass(viewClass);
-                        nodeRecord.setPageAccessControl(annotation.pageAccessControl());
-                        nodeRecord.setPositionIndex(annotation.positionIndex());
-                        nodeRecord.setConfiguration(annotation.viewConfiguration());
-                        if (StringUtils.isNotEmpty(annotation.roles())) {
-                            Splitter splitter = Splitter.on(",")
-                                                        .trimResults();
-                            Iterable<String> roles = splitter.split(annotation.roles());
-                            for (String role : roles) {
-                                nodeRecord.addRole(role);
-                            }
-                        }
-                        I18NKey keySample = entry.getValue()
-                                                    .getLabelSample();
-                        String keyName = annotation.labelKeyName();
-                        try {
-                            I18NKey key = keyFromName(keyName, keySample);
-                            nodeRecord.setLabelKey(key);
-                        } catch (IllegalArgumentException iae) {
-                            addError(source, AnnotationSitemapLoader.LABEL_NOT_VALID, clazz, keyName,
-                                    keySample.getClass());
-
-                        }
-                        sitemap.append(nodeRecord);
-                    }
-                }
-                // process the RedirectFrom annotations
-                for (Class<?> clazz : typesWithRedirectFrom) {
-                    Class<? extends KrailView> viewClass = null;
-                    if (KrailView.class.isAssignableFrom(clazz)) {
-                        viewClass = (Class<? extends KrailView>) clazz;
-                        RedirectFrom redirectAnnotation = viewClass.getAnnotation(RedirectFrom.class);
-                        View viewAnnotation = viewClass.getAnnotation(View.class);
-                        if (viewAnnotation == null) {
-                            // report this
-                            addWarning(source, REDIRECT_FROM_IGNORED, clazz);
-
-                        } else {
-                            String[] sourcePages = redirectAnnotation.sourcePages();
-                            String targetPage = viewAnnotation.uri();
-                            for (String sourcePage : sourcePages) {
-                                sitemap.addRedirect(sourcePage, targetPage);
-                            }
-                        }
-                    }
-                }
-
+                Set<Class<?>> views = typesWithView.get(source);
+                Set<Class<?>> redirects = typesWithRedirectFrom.get(source);
+                log.debug("{} classes with View annotation, {} with RedirectFrom annotation found for {}", views.size(), redirects.size(), source);
+                loadViews(sitemap, source, entry.getValue(), views);
+                loadRedirects(sitemap, source, redirects);
             }
             for (String source : sources.keySet()) {
                 addInfo("Scanned for annotations", "Package name: " + source);
@@ -138,6 +89,141 @@ public class DefaultAnnotationSitemapLoader extends SitemapLoaderBase implements
         }
     }
 
+    /**
+     * Populates {@code typesWithView} and {@code typesWithRedirectFrom} with the annotated classes for each source, from the index if the source is
+     * indexed, and from a shared classpath scan otherwise
+     */
+    private void findAnnotatedTypes(Map<String, Set<Class<?>>> typesWithView, Map<String, Set<Class<?>>> typesWithRedirectFrom) {
+        List<String> scanned = new ArrayList<>();
+        SitemapIndex index = null;
+        for (Entry<String, AnnotationSitemapEntry> entry : sources.entrySet()) {
+            String source = entry.getKey();
+            if (entry.getValue()
+                     .isIndexed()) {
+                if (index == null) {
+                    index = SitemapIndex.load(classLoader());
+                }
+                if (index.isPresent()) {
+                    log.debug("reading sitemap index for {}", source);
+                    typesWithView.put(source, new LinkedHashSet<>());
+                    typesWithRedirectFrom.put(source, new LinkedHashSet<>());
+                    for (String className : index.classNamesFor(source)) {
+                        addIndexedClass(source, className, typesWithView.get(source), typesWithRedirectFrom.get(source));
+                    }
+                    continue;
+                }
+                addWarning(source, INDEX_NOT_FOUND, source);
+            }
+            scanned.add(source);
+        }
+        if (scanned.isEmpty()) {
+            return;
+        }
+
+        log.debug("scanning {} for View annotations", scanned);
+        String[] prefixes = scanned.toArray(new String[0]);
+        Reflections reflections = new Reflections(new ConfigurationBuilder().forPackages(prefixes)
+                                                                            .filterInputsBy(new FilterBuilder().includePackage(prefixes))
+                                                                            .useParallelExecutor());
+        Set<Class<?>> views = reflections.getTypesAnnotatedWith(View.class);
+        Set<Class<?>> redirects = reflections.getTypesAnnotatedWith(RedirectFrom.class);
+        for (String source : scanned) {
+            typesWithView.put(source, withPrefix(views, source));
+            typesWithRedirectFrom.put(source, withPrefix(redirects, source));
+        }
+    }
+
+    private void addIndexedClass(String source, String className, Set<Class<?>> views, Set<Class<?>> redirects) {
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(className, false, classLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            addWarning(source, INDEXED_CLASS_NOT_FOUND, className);
+            return;
+        }
+        if (clazz.isAnnotationPresent(View.class)) {
+            views.add(clazz);
+        }
+        if (clazz.isAnnotationPresent(RedirectFrom.class)) {
+            redirects.add(clazz);
+        }
+    }
+
+    private Set<Class<?>> withPrefix(Set<Class<?>> types, String prefix) {
+        Set<Class<?>> selected = new LinkedHashSet<>();
+        for (Class<?> clazz : types) {
+            if (clazz.getName()
+                     .startsWith(prefix)) {
+                selected.add(clazz);
+            }
+        }
+        return selected;
+    }
+
+    private ClassLoader classLoader() {
+        ClassLoader classLoader = Thread.currentThread()
+                                        .getContextClassLoader();
+        return classLoader == null ? DefaultAnnotationSitemapLoader.class.getClassLoader() : classLoader;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadViews(MasterSitemap sitemap, String source, AnnotationSitemapEntry sitemapEntry, Set<Class<?>> typesWithView) {
+        for (Class<?> clazz : typesWithView) {
+            Class<? extends KrailView> viewClass = null;
+            if (KrailView.class.isAssignableFrom(clazz)) {
+                viewClass = (Class<? extends KrailView>) clazz;
+                View annotation = viewClass.getAnnotation(View.class);
+                NodeRecord nodeRecord = new NodeRecord(annotation.uri());
+                nodeRecord.setViewClass(viewClass);
+                nodeRecord.setPageAccessControl(annotation.pageAccessControl());
+                nodeRecord.setPositionIndex(annotation.positionIndex());
+                nodeRecord.setConfiguration(annotation.viewConfiguration());
+                if (StringUtils.isNotEmpty(annotation.roles())) {
+                    Splitter splitter = Splitter.on(",")
+                                                .trimResults();
+                    Iterable<String> roles = splitter.split(annotation.roles());
+                    for (String role : roles) {
+                        nodeRecord.addRole(role);
+                    }
+                }
+                I18NKey keySample = sitemapEntry.getLabelSample();
+                String keyName = annotation.labelKeyName();
+                try {
+                    I18NKey key = keyFromName(keyName, keySample);
+                    nodeRecord.setLabelKey(key);
+                } catch (IllegalArgumentException iae) {
+                    addError(source, AnnotationSitemapLoader.LABEL_NOT_VALID, clazz, keyName,
+                            keySample.getClass());
+
+                }
+                sitemap.append(nodeRecord);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadRedirects(MasterSitemap sitemap, String source, Set<Class<?>> typesWithRedirectFrom) {
+        for (Class<?> clazz : typesWithRedirectFrom) {
+            Class<? extends KrailView> viewClass = null;
+            if (KrailView.class.isAssignableFrom(clazz)) {
+                viewClass = (Class<? extends KrailView>) clazz;
+                RedirectFrom redirectAnnotation = viewClass.getAnnotation(RedirectFrom.class);
+                View viewAnnotation = viewClass.getAnnotation(View.class);
+                if (viewAnnotation == null) {
+                    // report this
+                    addWarning(source, REDIRECT_FROM_IGNORED, clazz);
+
+                } else {
+                    String[] sourcePages = redirectAnnotation.sourcePages();
+                    String targetPage = viewAnnotation.uri();
+                    for (String sourcePage : sourcePages) {
+                        sitemap.addRedirect(sourcePage, targetPage);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Returns an {@link I18NKey} enum constant from {@code labelKeyName} using the class from {@code sampleKey}.
      *
@@ -37,6 +37,8 @@ public abstract class DefaultSitemapBase<T extends SitemapNode> implements Sitem
     protected BasicForest<T> forest;
     private boolean loaded;
     private boolean locked;
+    // null when the redirects have changed since it was compiled
+    private volatile RedirectTable redirectTable;
 
     protected DefaultSitemapBase(URIFragmentHandler uriHandler) {
         super();
@@ -50,12 +52,35 @@ public abstract class DefaultSitemapBase<T extends SitemapNode> implements Sitem
         return locked;
     }
 
+    /**
+     * Locks the sitemap, and compiles the redirects into a {@link RedirectTable} if they have not already been compiled
+     */
     @Override
-    public void lock() {
+    public synchronized void lock() {
         checkLock();
+        getRedirectTable();
         this.locked = true;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RedirectTable getRedirectTable() {
+        RedirectTable table = redirectTable;
+        if (table == null) {
+            table = compileRedirectTable();
+        }
+        return table;
+    }
+
+    private synchronized RedirectTable compileRedirectTable() {
+        if (redirectTable == null) {
+            redirectTable = RedirectTable.compile(redirects);
+        }
+        return redirectTable;
+    }
+
     /**
      * Delegates to {@link BasicForest#getRootFor(Object)}
      *
@@ -344,6 +369,7 @@ public abstract class DefaultSitemapBase<T extends SitemapNode> implements Sitem
     public synchronized Sitemap<T> addRedirect(String fromPage, String toPage) {
         checkLock();
         redirects.put(fromPage, toPage);
+        redirectTable = null;
         return this;
     }
 
@@ -485,31 +511,21 @@ public abstract class DefaultSitemapBase<T extends SitemapNode> implements Sitem
      * @return
      */
     @Override
-    public synchronized String getRedirectPageFor(NavigationState navigationState) {
+    public String getRedirectPageFor(NavigationState navigationState) {
         String virtualPage = navigationState.getVirtualPage();
         return getRedirectPageFor(virtualPage);
     }
 
     /**
      * If the {@code page} has been redirected, return the page it has been redirected to, otherwise, just return
-     * {@code page}. Allows for multiple levels of redirect
+     * {@code page}. Allows for multiple levels of redirect, resolved with a single lookup in the {@link RedirectTable}
      *
      * @param page
      * @return
      */
     @Override
-    public synchronized String getRedirectPageFor(String page) {
-        String p = redirects.get(page);
-        if (p == null) {
-            return page;
-        }
-        String p1 = null;
-        while (p != null) {
-            p1 = p;
-            p = redirects.get(p1);
-        }
-
-        return p1;
+    public String getRedirectPageFor(String page) {
+        return getRedirectTable().targetFor(page);
     }
 
     /**
@@ -574,10 +590,19 @@ public abstract class DefaultSitemapBase<T extends SitemapNode> implements Sitem
         uriStandardPages.clear();
 
         redirects.clear();
+        redirectTable = null;
         loaded = false;
         log.debug("sitemap cleared");
     }
 
+    public synchronized void clearStandardPagesAndRedirects() {
+        checkLock();
+        standardPages.clear();
+        uriStandardPages.clear();
+        redirects.clear();
+        redirectTable = null;
+    }
+
     @Override
     public boolean isLoaded() {
         return loaded;
@@ -20,6 +20,7 @@ import org.slf4j.LoggerFactory;
 import uk.q3c.krail.core.eventbus.SessionBus;
 import uk.q3c.krail.core.eventbus.SessionBusProvider;
 import uk.q3c.krail.core.guice.vsscope.VaadinSessionScoped;
+import uk.q3c.krail.core.i18n.CollatorPool;
 import uk.q3c.krail.core.navigate.URIFragmentHandler;
 import uk.q3c.krail.eventbus.SubscribeTo;
 import uk.q3c.krail.i18n.CurrentLocale;
@@ -29,8 +30,8 @@ import uk.q3c.util.guice.SerializationSupport;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.text.Collator;
 import java.util.List;
+import java.util.Locale;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -55,34 +56,44 @@ public class DefaultUserSitemap extends DefaultSitemapBase<UserSitemapNode> impl
 
     private final Translate translate;
     private final transient SessionBusProvider sessionBusProvider;
+    private final CurrentLocale currentLocale;
+    private transient CollatorPool collatorPool;
     private SerializationSupport serializationSupport;
 
 
     @Inject
-    public DefaultUserSitemap(Translate translate, URIFragmentHandler uriHandler, SessionBusProvider sessionBusProvider, SerializationSupport serializationSupport) {
+    public DefaultUserSitemap(Translate translate, URIFragmentHandler uriHandler, SessionBusProvider sessionBusProvider, SerializationSupport serializationSupport,
+                              CurrentLocale currentLocale, CollatorPool collatorPool) {
         super(uriHandler);
         this.translate = translate;
         this.sessionBusProvider = sessionBusProvider;
         this.serializationSupport = serializationSupport;
+        this.currentLocale = currentLocale;
+        this.collatorPool = collatorPool;
     }
 
 
     /**
      * Iterates through contained nodes and resets the label and collation key properties to reflect a change in
      * {@link CurrentLocale}. There is no need to reload all the nodes, no change of page authorisation is dealt with
-     * here}
+     * here}.  If the sitemap has not yet been loaded there is nothing to relabel - nodes are labelled in the current locale
+     * when they are loaded
      */
     @Handler
     public synchronized void localeChanged(LocaleChangeBusMessage busMessage) {
         checkNotNull(busMessage);
+        if (!isLoaded()) {
+            log.debug("locale changed to {}, but sitemap not loaded yet, no relabelling needed", busMessage.getNewLocale());
+            return;
+        }
         log.debug("responding to locale change to {}", busMessage.getNewLocale());
         List<UserSitemapNode> nodeList = getAllNodes();
-        Collator collator = translate.collator();
+        Locale locale = busMessage.getNewLocale();
         for (UserSitemapNode userNode : nodeList) {
             String label = translate.from(userNode.getMasterNode()
                     .getLabelKey());
             userNode.setLabel(label);
-            userNode.setCollationKey(collator.getCollationKey(userNode.getLabel()));
+            userNode.setCollationKey(collatorPool.collationKey(userNode.getLabel(), locale));
         }
         sessionBusProvider.get().publish(new UserSitemapLabelChangeMessage());
     }
@@ -158,11 +169,11 @@ public class DefaultUserSitemap extends DefaultSitemapBase<UserSitemapNode> impl
         inputStream.defaultReadObject();
         serializationSupport.deserialize(this);
 
-        // Collation key is not serializable
+        // Collation key is not serializable, but will usually still be held by the collatorPool
         List<UserSitemapNode> nodeList = getAllNodes();
-        Collator collator = translate.collator();
+        Locale locale = currentLocale.getLocale();
         for (UserSitemapNode userNode : nodeList) {
-            userNode.setCollationKey(collator.getCollationKey(userNode.getLabel()));
+            userNode.setCollationKey(collatorPool.collationKey(userNode.getLabel(), locale));
         }
     }
 }
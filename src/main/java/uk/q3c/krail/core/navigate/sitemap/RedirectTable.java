@@ -0,0 +1,106 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.navigate.sitemap;
+
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The redirects of a {@link Sitemap} compiled into a flat map of each redirected page to its final target, so that resolving a redirect is a single
+ * lookup, however many levels of redirect are involved.
+ * <p>
+ * Redirects are compiled in the order they were added.  A redirect which would complete a loop is not included in the targets, but is reported
+ * in {@link #getLoops()}
+ */
+@Immutable
+public final class RedirectTable implements Serializable {
+
+    private final ImmutableMap<String, String> targets;
+    private final ImmutableMap<String, String> loops;
+
+    private RedirectTable(ImmutableMap<String, String> targets, ImmutableMap<String, String> loops) {
+        this.targets = targets;
+        this.loops = loops;
+    }
+
+    /**
+     * Compiles {@code redirects} in a single pass, detecting loops as it goes
+     *
+     * @param redirects map of page to the page it redirects to, in the order they were added
+     * @return the compiled table
+     */
+    public static RedirectTable compile(Map<String, String> redirects) {
+        Map<String, String> accepted = new LinkedHashMap<>();
+        ImmutableMap.Builder<String, String> loops = ImmutableMap.builder();
+        for (Map.Entry<String, String> entry : redirects.entrySet()) {
+            if (leadsTo(accepted, entry.getValue(), entry.getKey())) {
+                loops.put(entry.getKey(), entry.getValue());
+            } else {
+                accepted.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        ImmutableMap.Builder<String, String> targets = ImmutableMap.builder();
+        for (String page : accepted.keySet()) {
+            String target = accepted.get(page);
+            String next = accepted.get(target);
+            while (next != null) {
+                target = next;
+                next = accepted.get(target);
+            }
+            targets.put(page, target);
+        }
+        return new RedirectTable(targets.build(), loops.build());
+    }
+
+    /**
+     * @return true if following {@code redirects} from {@code start} arrives at {@code page}.  {@code redirects} must not contain a loop
+     */
+    private static boolean leadsTo(Map<String, String> redirects, String start, String page) {
+        String p = start;
+        while (p != null) {
+            if (p.equals(page)) {
+                return true;
+            }
+            p = redirects.get(p);
+        }
+        return false;
+    }
+
+    /**
+     * @param page the page to look up
+     * @return the final target of {@code page} if it is redirected, otherwise {@code page}
+     */
+    public String targetFor(String page) {
+        String target = targets.get(page);
+        return target == null ? page : target;
+    }
+
+    /**
+     * @return each redirected page mapped to its final target
+     */
+    public ImmutableMap<String, String> getTargets() {
+        return targets;
+    }
+
+    /**
+     * @return redirects (from page to page) which were excluded because they would have caused a loop
+     */
+    public ImmutableMap<String, String> getLoops() {
+        return loops;
+    }
+}
@@ -51,6 +51,14 @@ public interface Sitemap<T extends SitemapNode> extends Serializable {
 
     ImmutableMap<String, String> getRedirects();
 
+    /**
+     * Returns the redirects compiled into a {@link RedirectTable}.  The table is compiled when the sitemap is locked, or on demand after the
+     * redirects have changed
+     *
+     * @return the redirects compiled into a {@link RedirectTable}
+     */
+    RedirectTable getRedirectTable();
+
     String getRedirectPageFor(String page);
 
     T getRedirectNodeFor(T sourceNode);
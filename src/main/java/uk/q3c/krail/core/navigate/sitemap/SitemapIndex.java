@@ -0,0 +1,104 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.navigate.sitemap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The build-time index of classes annotated with {@link View} or {@link RedirectFrom}, generated by {@link SitemapIndexProcessor}.  Each jar (or
+ * class output directory) processed has its own index resource, and all of them on the classpath are merged when loaded.
+ * <p>
+ * The index resource contains one binary class name per line.  Blank lines and lines starting with '#' are ignored
+ */
+@Immutable
+public final class SitemapIndex {
+
+    public static final String INDEX_RESOURCE = "META-INF/krail/sitemap.index";
+
+    private final ImmutableSet<String> classNames;
+    private final boolean present;
+
+    private SitemapIndex(ImmutableSet<String> classNames, boolean present) {
+        this.classNames = classNames;
+        this.present = present;
+    }
+
+    /**
+     * Loads and merges every {@link #INDEX_RESOURCE} visible to {@code classLoader}
+     */
+    public static SitemapIndex load(ClassLoader classLoader) {
+        return load(classLoader, INDEX_RESOURCE);
+    }
+
+    public static SitemapIndex load(ClassLoader classLoader, String resourceName) {
+        checkNotNull(classLoader);
+        checkNotNull(resourceName);
+        ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+        boolean present = false;
+        try {
+            Enumeration<URL> resources = classLoader.getResources(resourceName);
+            while (resources.hasMoreElements()) {
+                present = true;
+                read(resources.nextElement(), builder);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read sitemap index " + resourceName, e);
+        }
+        return new SitemapIndex(builder.build(), present);
+    }
+
+    private static void read(URL url, ImmutableSet.Builder<String> builder) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String className = line.trim();
+                if (!className.isEmpty() && !className.startsWith("#")) {
+                    builder.add(className);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if at least one index resource was found, even if it was empty
+     */
+    public boolean isPresent() {
+        return present;
+    }
+
+    public ImmutableSet<String> getClassNames() {
+        return classNames;
+    }
+
+    /**
+     * @param prefix a literal class name prefix, used in the same way as an {@link AnnotationSitemapModule} entry
+     * @return the indexed class names which start with {@code prefix}
+     */
+    public ImmutableList<String> classNamesFor(String prefix) {
+        return classNames.stream()
+                         .filter(className -> className.startsWith(prefix))
+                         .collect(ImmutableList.toImmutableList());
+    }
+}
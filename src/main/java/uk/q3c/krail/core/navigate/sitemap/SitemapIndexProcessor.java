@@ -0,0 +1,87 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.navigate.sitemap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Generates the {@link SitemapIndex} for the classes being compiled, listing every class annotated with {@link View} or {@link RedirectFrom}.  The
+ * index is written once all rounds are complete.
+ * <p>
+ * This processor is registered in META-INF/services, so it is picked up by javac from the compile (or annotationProcessor) classpath.  Views written
+ * in Kotlin need the processor to be run by kapt.  An index is only used for the {@link AnnotationSitemapModule} entries added with
+ * {@link AnnotationSitemapModule#addIndexedEntry}, so an incomplete index cannot silently lose views from other entries
+ */
+@SupportedAnnotationTypes({"uk.q3c.krail.core.navigate.sitemap.View", "uk.q3c.krail.core.navigate.sitemap.RedirectFrom"})
+public class SitemapIndexProcessor extends AbstractProcessor {
+
+    private final Set<String> classNames = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!classNames.isEmpty()) {
+                writeIndex();
+            }
+            return false;
+        }
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS) {
+                    classNames.add(processingEnv.getElementUtils()
+                                                .getBinaryName((TypeElement) element)
+                                                .toString());
+                }
+            }
+        }
+        // other processors may also want to see these annotations
+        return false;
+    }
+
+    private void writeIndex() {
+        try {
+            FileObject resource = processingEnv.getFiler()
+                                               .createResource(StandardLocation.CLASS_OUTPUT, "", SitemapIndex.INDEX_RESOURCE);
+            try (Writer writer = new OutputStreamWriter(resource.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write("# Generated by " + getClass().getName() + "\n");
+                for (String className : classNames) {
+                    writer.write(className);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager()
+                         .printMessage(Diagnostic.Kind.ERROR, "Unable to write sitemap index: " + e.getMessage());
+        }
+    }
+}
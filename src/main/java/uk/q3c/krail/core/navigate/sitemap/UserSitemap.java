@@ -25,6 +25,16 @@ public interface UserSitemap extends Sitemap<UserSitemapNode> {
 
     void buildUriMap();
 
+    /**
+     * Replaces {@code oldInstance} with {@code newInstance}, which takes over its parent and children
+     */
+    void replaceNode(UserSitemapNode oldInstance, UserSitemapNode newInstance);
+
+    /**
+     * Removes all standard pages and redirects, leaving the nodes in place
+     */
+    void clearStandardPagesAndRedirects();
+
 
     boolean hasNoVisibleChildren(UserSitemapNode sourceNode);
 }
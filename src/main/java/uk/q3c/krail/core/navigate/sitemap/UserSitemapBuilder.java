@@ -32,6 +32,11 @@ import uk.q3c.util.forest.TreeCopy;
 
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @VaadinSessionScoped
 @Listener
@@ -116,6 +121,117 @@ public class UserSitemapBuilder implements Serializable {
     }
 
 
+    /**
+     * Updates the {@link UserSitemap} to reflect a new version of the {@link MasterSitemap}.  If {@code changedSubtrees} is null, the
+     * {@link UserSitemap} is rebuilt completely.  Otherwise only the subtrees rooted at {@code changedSubtrees} are removed and copied again from
+     * the new {@link MasterSitemap}, with their labels and access checked as usual.  Every other node stays where it is, with its label, collation
+     * key and access decision, and is just moved on to the new {@link MasterSitemapNode} at the same URI
+     *
+     * @param masterSitemap   the new version of the {@link MasterSitemap}
+     * @param changedSubtrees the URIs of the roots of the changed subtrees, or null if not known
+     */
+    public synchronized void update(MasterSitemap masterSitemap, Set<String> changedSubtrees) {
+        log.debug("updating the userSitemap for a new master sitemap, changed subtrees: {}", changedSubtrees);
+        setMasterSitemap(masterSitemap);
+        if (changedSubtrees == null || !userSitemap.isLoaded()) {
+            userSitemap.clear();
+            doBuild();
+            return;
+        }
+        List<String> roots = outermost(changedSubtrees);
+        Map<String, UserSitemapNode> previousNodes = userSitemap.getUriMap();
+        Map<String, MasterSitemapNode> masterNodes = masterSitemap.getUriMap();
+
+        // deepest first, so that each node is removed while its URI can still be resolved
+        List<String> uris = new ArrayList<>(previousNodes.keySet());
+        uris.sort(Comparator.comparingInt(String::length)
+                            .reversed());
+        for (String uri : uris) {
+            UserSitemapNode previous = previousNodes.get(uri);
+            MasterSitemapNode masterNode = masterNodes.get(uri);
+            if (within(uri, roots) || masterNode == null) {
+                userSitemap.removeNode(previous);
+            } else if (masterNode != previous.getMasterNode()) {
+                userSitemap.replaceNode(previous, reuse(previous, masterNode));
+            }
+        }
+
+        for (String root : roots) {
+            copySubtree(masterNodes.get(root));
+        }
+        userSitemap.clearStandardPagesAndRedirects();
+        copyExtension.setMasterSitemap(masterSitemap);
+        copyExtension.copyStandardPagesAndRedirects();
+        userSitemap.setLoaded(true);
+    }
+
+    /**
+     * Creates a node for {@code masterNode} with the label and collation key of {@code previous}, which is known to represent an unchanged page
+     */
+    private UserSitemapNode reuse(UserSitemapNode previous, MasterSitemapNode masterNode) {
+        UserSitemapNode userNode = new UserSitemapNode(masterNode);
+        userNode.setLabel(previous.getLabel());
+        userNode.setCollationKey(previous.getCollationKey());
+        return userNode;
+    }
+
+    /**
+     * Copies {@code masterNode} and its descendants into the {@link UserSitemap}, provided the user can see its parent.  Does nothing if {@code
+     * masterNode} is null, as it is when a changed subtree has been removed from the {@link MasterSitemap}
+     */
+    private void copySubtree(MasterSitemapNode masterNode) {
+        if (masterNode == null) {
+            return;
+        }
+        MasterSitemapNode masterParent = masterSitemap.getParent(masterNode);
+        UserSitemapNode userParent = null;
+        if (masterParent != null) {
+            userParent = userSitemap.nodeFor(masterSitemap.uri(masterParent));
+            if (userParent == null) {
+                return;
+            }
+        }
+        copyNode(userParent, masterNode);
+    }
+
+    /**
+     * As {@link TreeCopy}, the children of a node are only copied if the user can see the node itself
+     */
+    private void copyNode(UserSitemapNode userParent, MasterSitemapNode masterNode) {
+        UserSitemapNode userNode = nodeModifier.create(userParent, masterNode);
+        if (userNode == null) {
+            return;
+        }
+        userSitemap.addChild(userParent, userNode);
+        for (MasterSitemapNode child : masterSitemap.getChildren(masterNode)) {
+            copyNode(userNode, child);
+        }
+    }
+
+    /**
+     * Changes accumulated over several versions may include a subtree within another, only the outermost of each is needed
+     */
+    private List<String> outermost(Set<String> changedSubtrees) {
+        List<String> sorted = new ArrayList<>(changedSubtrees);
+        sorted.sort(Comparator.comparingInt(String::length));
+        List<String> roots = new ArrayList<>();
+        for (String uri : sorted) {
+            if (!within(uri, roots)) {
+                roots.add(uri);
+            }
+        }
+        return roots;
+    }
+
+    private boolean within(String uri, List<String> roots) {
+        for (String root : roots) {
+            if (uri.equals(root) || uri.startsWith(root + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public synchronized void setMasterSitemap(MasterSitemap masterSitemap) {
         this.masterSitemap = masterSitemap;
         nodeModifier.setMasterSitemap(masterSitemap);
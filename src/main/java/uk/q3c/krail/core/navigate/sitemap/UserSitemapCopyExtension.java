@@ -16,6 +16,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uk.q3c.krail.core.i18n.CollatorPool;
 import uk.q3c.krail.core.navigate.LoginNavigationRule;
 import uk.q3c.krail.i18n.CurrentLocale;
 import uk.q3c.krail.i18n.Translate;
@@ -24,7 +25,7 @@ import uk.q3c.util.forest.TargetTreeWrapper;
 import uk.q3c.util.forest.TreeCopy;
 import uk.q3c.util.forest.TreeCopyExtension;
 
-import java.text.Collator;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -41,11 +42,13 @@ public class UserSitemapCopyExtension implements TreeCopyExtension<MasterSitemap
     private MasterSitemap masterSitemap;
     private CurrentLocale currentLocale;
     private Translate translate;
+    private CollatorPool collatorPool;
     @Inject
-    protected UserSitemapCopyExtension(UserSitemap userSitemap, Translate translate, CurrentLocale currentLocale) {
+    protected UserSitemapCopyExtension(UserSitemap userSitemap, Translate translate, CurrentLocale currentLocale, CollatorPool collatorPool) {
         this.userSitemap = userSitemap;
         this.translate = translate;
         this.currentLocale = currentLocale;
+        this.collatorPool = collatorPool;
     }
 
     public void setMasterSitemap(MasterSitemap masterSitemap) {
@@ -57,9 +60,17 @@ public class UserSitemapCopyExtension implements TreeCopyExtension<MasterSitemap
             UserSitemapNode> nodeMap) {
         log.debug("invoked");
         userSitemap.buildUriMap();
+        copyStandardPagesAndRedirects();
+
+    }
+
+    /**
+     * Copies the standard pages and redirects from the {@link MasterSitemap}.  Used directly by {@link UserSitemapBuilder#update}, which changes
+     * the {@link UserSitemap} without a full {@link TreeCopy}
+     */
+    public void copyStandardPagesAndRedirects() {
         copyStandardPages();
         loadRedirects();
-
     }
 
     /**
@@ -70,13 +81,13 @@ public class UserSitemapCopyExtension implements TreeCopyExtension<MasterSitemap
     private void copyStandardPages() {
         log.debug("copying standard pages");
         ImmutableMap<StandardPageKey, MasterSitemapNode> sourcePages = masterSitemap.getStandardPages();
-        Collator collator = Collator.getInstance(currentLocale.getLocale());
+        Locale locale = currentLocale.getLocale();
 
         for (StandardPageKey spk : sourcePages.keySet()) {
             MasterSitemapNode masterNode = sourcePages.get(spk);
             UserSitemapNode userNode = new UserSitemapNode(masterNode);
             userNode.setLabel(translate.from(masterNode.getLabelKey()));
-            userNode.setCollationKey(collator.getCollationKey(userNode.getLabel()));
+            userNode.setCollationKey(collatorPool.collationKey(userNode.getLabel(), locale));
             userSitemap.addStandardPage(userNode, masterSitemap.uri(masterNode));
         }
 
@@ -16,13 +16,13 @@ import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.q3c.krail.core.guice.vsscope.VaadinSessionScoped;
+import uk.q3c.krail.core.i18n.CollatorPool;
 import uk.q3c.krail.core.shiro.PageAccessController;
 import uk.q3c.krail.core.shiro.SubjectProvider;
 import uk.q3c.krail.i18n.CurrentLocale;
 import uk.q3c.krail.i18n.Translate;
 import uk.q3c.util.forest.NodeModifier;
 
-import java.text.Collator;
 import java.util.Comparator;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -34,17 +34,19 @@ public class UserSitemapNodeModifier implements NodeModifier<MasterSitemapNode,
     private CurrentLocale currentLocale;
     private final PageAccessController pageAccessController;
     private final Translate translate;
+    private final CollatorPool collatorPool;
     private MasterSitemap masterSitemap;
 
     @Inject
     public UserSitemapNodeModifier(SubjectProvider subjectProvider, CurrentLocale currentLocale,
                                    PageAccessController pageAccessController,
-                                   Translate translate) {
+                                   Translate translate, CollatorPool collatorPool) {
         super();
         this.subjectProvider = subjectProvider;
         this.currentLocale = currentLocale;
         this.pageAccessController = pageAccessController;
         this.translate = translate;
+        this.collatorPool = collatorPool;
     }
 
     /**
@@ -56,7 +58,8 @@ public class UserSitemapNodeModifier implements NodeModifier<MasterSitemapNode,
      * login page is only shown if the user is not authenticated.<br>
      * <br>
      * The label and collation key for the node are created using {@link CurrentLocale}, which may be different for
-     * different users; so both this class and CurrentLocale are {@link VaadinSessionScoped}
+     * different users; so both this class and CurrentLocale are {@link VaadinSessionScoped}.  Collation keys are obtained from the shared {@link
+     * CollatorPool}
      *
      * {@link #setMasterSitemap} must be called first
      *
@@ -67,7 +70,6 @@ public class UserSitemapNodeModifier implements NodeModifier<MasterSitemapNode,
     @Override
     public UserSitemapNode create(UserSitemapNode parentUserNode, MasterSitemapNode masterNode) {
         checkNotNull(masterNode);
-        Collator collator = Collator.getInstance(currentLocale.getLocale());
         log.debug("creating a user node for master node {}", masterNode);
         // if there is no labelKey (usually when page is redirected), cannot be shown
         if (masterNode.getLabelKey() == null) {
@@ -86,7 +88,7 @@ public class UserSitemapNodeModifier implements NodeModifier<MasterSitemapNode,
             log.debug("User is authorised for page {}, creating a node for it", masterSitemap.uri(masterNode));
             UserSitemapNode userNode = new UserSitemapNode(masterNode);
             userNode.setLabel(translate.from(masterNode.getLabelKey()));
-            userNode.setCollationKey(collator.getCollationKey(userNode.getLabel()));
+            userNode.setCollationKey(collatorPool.collationKey(userNode.getLabel(), currentLocale.getLocale()));
             return userNode;
         } else {
             log.debug("User is NOT authorised for page {}, returning null", masterSitemap.uri(masterNode));
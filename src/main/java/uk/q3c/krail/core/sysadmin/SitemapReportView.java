@@ -18,27 +18,29 @@ import com.vaadin.ui.TextArea;
 import uk.q3c.krail.core.i18n.Caption;
 import uk.q3c.krail.core.i18n.DescriptionKey;
 import uk.q3c.krail.core.i18n.LabelKey;
-import uk.q3c.krail.core.navigate.sitemap.MasterSitemap;
+import uk.q3c.krail.core.navigate.sitemap.MasterSitemapHolder;
 import uk.q3c.krail.core.view.Grid3x3ViewBase;
 import uk.q3c.krail.i18n.Translate;
 import uk.q3c.krail.util.Experimental;
 import uk.q3c.util.guice.SerializationSupport;
 
 /**
+ * Displays the build report of the current version of the master sitemap, taken from {@link MasterSitemapHolder} so that it follows any reload
+ * <p>
  * Created by David Sowerby on 24/05/15.
  */
 @Experimental
 public class SitemapReportView extends Grid3x3ViewBase {
 
 
-    private MasterSitemap masterSitemap;
+    private MasterSitemapHolder sitemapHolder;
     @Caption(caption = LabelKey.Sitemap_Build_Report, description = DescriptionKey.Report_generated_by_the_Sitemap_build_process)
     private TextArea reportArea;
 
     @Inject
-    protected SitemapReportView(MasterSitemap masterSitemap, Translate translate, SerializationSupport serializationSupport) {
+    protected SitemapReportView(MasterSitemapHolder sitemapHolder, Translate translate, SerializationSupport serializationSupport) {
         super(translate, serializationSupport);
-        this.masterSitemap = masterSitemap;
+        this.sitemapHolder = sitemapHolder;
     }
 
     @Override
@@ -47,7 +49,9 @@ public class SitemapReportView extends Grid3x3ViewBase {
         reportArea = new TextArea();
         //        reportArea.setEnabled(false);
         reportArea.setSizeFull();
-        reportArea.setValue(masterSitemap.getReport());
+        reportArea.setValue(sitemapHolder.getCurrent()
+                                         .getSitemap()
+                                         .getReport());
         setCentreCell(reportArea);
         setColumnWidths(1f, 4f, 1f);
         setRowHeights(1f, 10f, 1f);
@@ -38,6 +38,7 @@ import uk.q3c.krail.core.guice.uiscope.UIScope;
 import uk.q3c.krail.core.guice.uiscope.UIScoped;
 import uk.q3c.krail.core.i18n.I18NProcessor;
 import uk.q3c.krail.core.navigate.Navigator;
+import uk.q3c.krail.core.navigate.sitemap.UserSitemap;
 import uk.q3c.krail.core.push.Broadcaster;
 import uk.q3c.krail.core.push.Broadcaster.BroadcastListener;
 import uk.q3c.krail.core.push.KrailPushConfiguration;
@@ -207,12 +208,21 @@ public abstract class ScopedUI extends UI implements KrailViewHolder, BroadcastL
      * this class, but is available when this method is invoked. As a result, this method sets the navigator a listener
      * for URI changes and obtains the browser locale setting for initialising {@link CurrentLocale}. Both of these are
      * provided by the Vaadin Page.
+     * <p>
+     * Initialisation is carried out in a fixed order, so that each step is done only once, and in the correct locale:
+     * <ol>
+     * <li>{@link CurrentLocale} is resolved from the environment, before anything is labelled or translated</li>
+     * <li>the {@link UserSitemap} is loaded (if not already loaded for this session), and is therefore labelled in the resolved locale</li>
+     * <li>this UI is laid out and translated</li>
+     * <li>the navigator moves to the start point, which translates only the view</li>
+     * </ol>
      *
      * @see com.vaadin.ui.UI#init(com.vaadin.server.VaadinRequest)
      */
     @Override
     protected void init(VaadinRequest request) {
         log.debug("initialising ScopedUI");
+        long startTime = System.nanoTime();
         setConnectionUid();
 
         VaadinSession session = getSession();
@@ -225,20 +235,23 @@ public abstract class ScopedUI extends UI implements KrailViewHolder, BroadcastL
 
         setErrorHandler(errorHandler);
         session.setErrorHandler(errorHandler);
+
+        // now that browser is active, set up currentLocale before anything is labelled or translated.  Any change is
+        // published, but the user sitemap is not relabelled if it is not yet loaded, and this UI has not yet been laid out
+        currentLocale.readFromEnvironment();
         page.setTitle(pageTitle());
 
-        //  also loads the UserSitemap if not already loaded
+        //  also loads the UserSitemap if not already loaded, labelled in the current locale
         getKrailNavigator().init();
 
-        //layout this UI, which may also create UYI components
+        //layout this UI, which may also create UI components, then translate it once
         doLayout();
-
-        // now that browser is active, and user sitemap loaded, and UI constructed, set up currentLocale
-        currentLocale.readFromEnvironment();
         i18NProcessor.translate(this);
+
         // Navigate to the correct start point
         String fragment = getPage().getUriFragment();
         getKrailNavigator().navigateTo(fragment);
+        log.debug("UI initialised in {} ms", (System.nanoTime() - startTime) / 1000000);
     }
 
     /**
@@ -0,0 +1,50 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package uk.q3c.krail.core.validation;
+
+import javax.validation.MessageInterpolator;
+import java.util.Locale;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link MessageInterpolator} which passes a fixed {@link Locale} to its delegate, when none is supplied by the caller.  Used where validation
+ * takes place outside a Vaadin session (on a pool thread for example), where the {@link uk.q3c.krail.i18n.CurrentLocale} used by {@link
+ * KrailInterpolator} is not available.  The locale should be captured on the thread which started the work
+ */
+public class FixedLocaleInterpolator implements MessageInterpolator {
+    private final MessageInterpolator delegate;
+    private final Locale locale;
+
+    public FixedLocaleInterpolator(MessageInterpolator delegate, Locale locale) {
+        checkNotNull(delegate);
+        checkNotNull(locale);
+        this.delegate = delegate;
+        this.locale = locale;
+    }
+
+    @Override
+    public String interpolate(String messageTemplate, Context context) {
+        return delegate.interpolate(messageTemplate, context, locale);
+    }
+
+    @Override
+    public String interpolate(String messageTemplate, Context context, Locale locale) {
+        return delegate.interpolate(messageTemplate, context, locale);
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+}
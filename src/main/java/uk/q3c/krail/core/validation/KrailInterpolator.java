@@ -33,6 +33,7 @@ import java.lang.annotation.Annotation;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Krail specific implementation of {@link MessageInterpolator}.  This implementation supports the following uses of the JSR303 annotation message
@@ -48,6 +49,9 @@ import java.util.Optional;
  * </ol>
  * see also: https://krail.readthedocs.io/en/latest/devguide/devguide-validation.html
  * <p>
+ * An instance may be used by several threads at once (by bulk import for example), so it holds only immutable and concurrent state.  Only {@link
+ * #interpolate(String, Context)} uses the {@link CurrentLocale}, so code running outside a Vaadin session should supply the locale explicitly
+ * - see {@link FixedLocaleInterpolator}
  * <p>
  * <p>
  * Created by David Sowerby on 04/02/15.
@@ -61,8 +65,10 @@ public class KrailInterpolator implements MessageInterpolator {
         return ImmutableMap.copyOf(javaxValidationSubstitutes);
     }
 
-    private Map<Class<? extends Annotation>, I18NKey> javaxValidationSubstitutes;
-    private MessageFormat2 messageFormat;
+    private final Map<Class<? extends Annotation>, I18NKey> javaxValidationSubstitutes;
+    private final MessageFormat2 messageFormat;
+    // keys looked up from their full names, including failures
+    private final Map<String, Optional<I18NKey>> i18NKeys = new ConcurrentHashMap<>();
 
     @Inject
     protected KrailInterpolator(CurrentLocale currentLocale, Translate translate, @JavaxValidationSubstitutes Map<Class<? extends Annotation>, I18NKey>
@@ -70,7 +76,7 @@ public class KrailInterpolator implements MessageInterpolator {
         this.currentLocale = currentLocale;
         this.translate = translate;
 
-        this.javaxValidationSubstitutes = javaxValidationSubstitutes;
+        this.javaxValidationSubstitutes = ImmutableMap.copyOf(javaxValidationSubstitutes);
         this.messageFormat = messageFormat;
     }
 
@@ -214,6 +220,11 @@ public class KrailInterpolator implements MessageInterpolator {
         String k = keyName.replace("{", "")
                           .replace("}", "")
                           .trim();
+        return i18NKeys.computeIfAbsent(k, name -> Optional.ofNullable(lookupI18NKey(name)))
+                       .orElse(null);
+    }
+
+    private I18NKey lookupI18NKey(String k) {
         //This is cheating, using ClassUtils to split by '.', these are not package and class names
         String enumClassName = ClassUtils.getPackageCanonicalName(k);
         String constantName = ClassUtils.getShortClassName(k);
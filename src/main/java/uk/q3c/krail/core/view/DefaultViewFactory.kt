@@ -16,14 +16,20 @@ import com.google.inject.Inject
 import com.google.inject.Key
 import com.google.inject.TypeLiteral
 import org.slf4j.LoggerFactory
+import uk.q3c.krail.core.navigate.NavigationState
 import uk.q3c.util.guice.InjectorLocator
 import uk.q3c.util.guice.SerializationSupport
 import java.io.IOException
 import java.io.ObjectInputStream
 
+/**
+ * Obtains a new view instance from the injector and calls [KrailView.init].  When the view is for a [NavigationState], returns the view held by
+ * the [ViewCache] for that state if there is one, and offers the view to the [ViewCache] once it has been built
+ */
 class DefaultViewFactory @Inject constructor(
         private val serializationSupport: SerializationSupport,
-        private val injectorLocator: InjectorLocator)
+        private val injectorLocator: InjectorLocator,
+        private val viewCache: ViewCache)
 
     : ViewFactory {
     private var log = LoggerFactory.getLogger(DefaultViewFactory::class.java)
@@ -38,6 +44,19 @@ class DefaultViewFactory @Inject constructor(
         return view
     }
 
+    override fun <T : KrailView> get(viewClass: Class<T>, navigationState: NavigationState): T {
+        val cachedView = viewCache.get(viewClass, navigationState)
+        if (cachedView != null) {
+            log.debug("re-using cached instance of {} for {}", viewClass, navigationState.virtualPage)
+            return cachedView
+        }
+        return get(viewClass)
+    }
+
+    override fun built(viewClass: Class<out KrailView>, navigationState: NavigationState, view: KrailView) {
+        viewCache.put(viewClass, navigationState, view)
+    }
+
     @Throws(ClassNotFoundException::class, IOException::class)
     private fun readObject(inputStream: ObjectInputStream) {
         inputStream.defaultReadObject()
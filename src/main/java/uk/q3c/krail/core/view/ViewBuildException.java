@@ -22,4 +22,8 @@ public class ViewBuildException extends RuntimeException {
         super(message);
     }
 
+    public ViewBuildException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
 }
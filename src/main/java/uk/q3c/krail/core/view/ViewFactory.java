@@ -13,6 +13,8 @@
 package uk.q3c.krail.core.view;
 
 import uk.q3c.krail.core.guice.uiscope.UIScoped;
+import uk.q3c.krail.core.navigate.NavigationState;
+import uk.q3c.krail.core.navigate.Navigator;
 
 import java.io.Serializable;
 
@@ -28,4 +30,27 @@ public interface ViewFactory extends Serializable {
 
      <T extends KrailView> T get(Class<T> viewClass);
 
+    /**
+     * Returns a view for {@code navigationState}, which may be an instance re-used from an earlier visit to the same page.  By default always
+     * returns a new instance
+     *
+     * @param viewClass       the class of view required
+     * @param navigationState the page and parameters the view is for
+     * @param <T>             the type of view
+     * @return a view for {@code navigationState}
+     */
+    default <T extends KrailView> T get(Class<T> viewClass, NavigationState navigationState) {
+        return get(viewClass);
+    }
+
+    /**
+     * Called by the {@link Navigator} once {@code view} has been built for {@code navigationState}, so that it can be re-used.  By default does nothing
+     *
+     * @param viewClass       the class of view requested from {@link #get(Class, NavigationState)}
+     * @param navigationState the page and parameters the view was built for
+     * @param view            the view which has been built
+     */
+    default void built(Class<? extends KrailView> viewClass, NavigationState navigationState, KrailView view) {
+    }
+
 }
\ No newline at end of file
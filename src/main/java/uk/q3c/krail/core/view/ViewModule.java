@@ -44,6 +44,7 @@ public class ViewModule extends AbstractModule {
         bindRequestSystemAccountRefreshView();
         bindSystemAccountView();
         bindViewFactory();
+        bindViewCache();
         bindNavigationView();
 
     }
@@ -59,6 +60,14 @@ public class ViewModule extends AbstractModule {
         bind(ViewFactory.class).to(DefaultViewFactory.class);
     }
 
+    /**
+     * Override this to provide your own {@link ViewCache}.  Each UI has its own cache by default
+     */
+    protected void bindViewCache() {
+        bind(ViewCache.class).to(DefaultViewCache.class)
+                             .in(UIScoped.class);
+    }
+
     /**
      * Override this to provide your own {@link KrailView} for the parent page of system account related pages.
      */
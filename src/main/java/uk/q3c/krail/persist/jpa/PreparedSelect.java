@@ -0,0 +1,75 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package uk.q3c.krail.persist.jpa;
+
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.function.BiConsumer;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * A {@link Select} ready for execution: the shared {@link SelectStatement} for its shape, and the parameter values, first result and maximum
+ * results for this query.  To execute it, create a query from the statement (or the named query registered for it), then call
+ * {@link #bind(BiConsumer)} with the query's {@code setParameter}, and apply {@link #getFirstResult()} and {@link #getMaxResults()}
+ */
+@Immutable
+public final class PreparedSelect {
+
+    private final SelectStatement statement;
+    private final ImmutableMap<String, Object> parameters;
+    private final int firstResult;
+    private final int maxResults;
+
+    PreparedSelect(SelectStatement statement, ImmutableMap<String, Object> parameters, int firstResult, int maxResults) {
+        this.statement = checkNotNull(statement);
+        this.parameters = checkNotNull(parameters);
+        this.firstResult = firstResult;
+        this.maxResults = maxResults;
+    }
+
+    public SelectStatement getStatement() {
+        return statement;
+    }
+
+    /**
+     * @return the value of each named parameter in the statement
+     */
+    public ImmutableMap<String, Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Passes each named parameter and its value to {@code setter}
+     */
+    public void bind(BiConsumer<String, Object> setter) {
+        parameters.forEach(setter);
+    }
+
+    public int getFirstResult() {
+        return firstResult;
+    }
+
+    /**
+     * @return the maximum number of results, or -1 if there is no limit
+     */
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    public boolean hasLimit() {
+        return maxResults >= 0;
+    }
+}
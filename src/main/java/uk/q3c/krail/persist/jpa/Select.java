@@ -13,7 +13,13 @@
 
 package uk.q3c.krail.persist.jpa;
 
+import com.google.common.collect.ImmutableMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.google.common.base.Preconditions.*;
@@ -22,12 +28,19 @@ import static com.google.common.base.Preconditions.*;
  * an incredibly simple query builder - not to be confused with a real one, but it does do basic SELECT statements very simply compared to the JPA
  * CriteriaBuilder
  * <p>
+ * {@link #prepare(SelectStatements)} separates the query into a {@link SelectStatement} - the JPQL with named parameter placeholders, shared by
+ * every query of the same shape - and the values for this query.  Register the statement as a named query once, and subsequent queries of
+ * the same shape then skip JPQL parsing.  {@link #limit(int)} and {@link #offset(int)} are not part of the JPQL, so that paging does not
+ * change the shape.
+ * <p>
+ * {@link #statement()} retains its original form, which does not prefix parameters with ':'
+ * <p>
  * Created by David Sowerby on 29/03/15.
  */
 public class Select {
 
     public enum Compare {
-        EQ("="), GREATER_THAN(">"), LESS_THAN("<"), LESS_THAN_OR_EQ("<="), GREATER_THAN_OR_EQ(">=");
+        EQ("="), GREATER_THAN(">"), LESS_THAN("<"), LESS_THAN_OR_EQ("<="), GREATER_THAN_OR_EQ(">="), IN(" IN ");
 
         private final String code;
 
@@ -40,8 +53,14 @@ public class Select {
         }
     }
 
-    private Map<String, Object> params;
-    private StringBuilder buf;
+    private final String selection;
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<String> orderBy = new ArrayList<>();
+    private final Map<String, Object> params = new HashMap<>();
+    private final Map<String, Object> placeholderValues = new LinkedHashMap<>();
+    private String table;
+    private int firstResult = 0;
+    private int maxResults = -1;
 
     public Select() {
         this("");
@@ -49,13 +68,7 @@ public class Select {
 
     public Select(String selection) {
         checkNotNull(selection);
-        params = new HashMap<>();
-        buf = new StringBuilder("SELECT t ");
-        buf.append(selection);
-        if (!selection.isEmpty()) {
-            buf.append(' ');
-        }
-        buf.append("FROM ");
+        this.selection = selection;
     }
 
     /**
@@ -67,49 +80,70 @@ public class Select {
      */
     public Select from(Class<?> entityClass) {
         checkNotNull(entityClass);
-        buf.append(entityClass.getSimpleName());
-        buf.append(" t");
+        table = entityClass.getSimpleName();
         return this;
     }
 
     public Select from(String tableName) {
         checkNotNull(tableName);
-        buf.append(tableName);
-        buf.append(" t");
+        table = tableName;
         return this;
     }
 
     public Select where(String field, Object value) {
         checkNotNull(field);
         checkNotNull(value);
-        buf.append(" WHERE ");
         return fieldCompareValue(field, Compare.EQ, value);
     }
 
     private Select fieldCompareValue(String field, Compare compare, Object value) {
+        if (compare == Compare.IN) {
+            checkArgument(value instanceof Collection && !((Collection<?>) value).isEmpty(), "IN requires a non-empty Collection");
+        }
         params.put(field + "Param", value);
-        buf.append("t.");
-        buf.append(field);
-        buf.append(compare.code);
-        buf.append(field);
-        buf.append("Param");
+        String placeholder = placeholderFor(field);
+        placeholderValues.put(placeholder, value);
+        conditions.add(new Condition(field, compare, placeholder));
         return this;
     }
 
+    /**
+     * A placeholder must be a Java identifier, and unique within the statement
+     */
+    private String placeholderFor(String field) {
+        StringBuilder buf = new StringBuilder();
+        for (char c : field.toCharArray()) {
+            buf.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        String base = buf.append("Param").toString();
+        String placeholder = base;
+        int suffix = 2;
+        while (placeholderValues.containsKey(placeholder)) {
+            placeholder = base + suffix++;
+        }
+        return placeholder;
+    }
+
     public Select where(String field, Compare compare, Object value) {
         checkNotNull(field);
         checkNotNull(value);
-        buf.append(" WHERE ");
         return fieldCompareValue(field, compare, value);
     }
 
+    /**
+     * "field IN values" - [values] must not be empty
+     */
+    public Select whereIn(String field, Collection<?> values) {
+        return where(field, Compare.IN, values);
+    }
+
     @Override
     public String toString() {
         return statement();
     }
 
     public String statement() {
-        return buf.toString();
+        return render(false);
     }
 
     /**
@@ -122,7 +156,6 @@ public class Select {
     public Select and(String field, Object value) {
         checkNotNull(field);
         checkNotNull(value);
-        buf.append(" AND ");
         return fieldCompareValue(field, Compare.EQ, value);
     }
 
@@ -134,12 +167,113 @@ public class Select {
     public Select and(String field, Compare compare, Object value) {
         checkNotNull(field);
         checkNotNull(value);
-        buf.append(" AND ");
         return fieldCompareValue(field, compare, value);
     }
 
+    /**
+     * "AND field IN values" - [values] must not be empty
+     */
+    public Select andIn(String field, Collection<?> values) {
+        return and(field, Compare.IN, values);
+    }
+
+    /**
+     * Sorts ascending by {@code field}, after any sort already specified
+     */
+    public Select orderBy(String field) {
+        return orderBy(field, true);
+    }
+
+    public Select orderBy(String field, boolean ascending) {
+        checkNotNull(field);
+        orderBy.add("t." + field + (ascending ? " ASC" : " DESC"));
+        return this;
+    }
+
+    /**
+     * The maximum number of results to return.  This is applied to the query, not the statement, so does not change its shape
+     */
+    public Select limit(int maxResults) {
+        checkArgument(maxResults >= 0, "maxResults cannot be negative");
+        this.maxResults = maxResults;
+        return this;
+    }
+
+    /**
+     * The position of the first result to return.  This is applied to the query, not the statement, so does not change its shape
+     */
+    public Select offset(int firstResult) {
+        checkArgument(firstResult >= 0, "firstResult cannot be negative");
+        this.firstResult = firstResult;
+        return this;
+    }
+
 
     public Object getParam(String paramKey) {
         return params.get(paramKey);
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the JPQL for this query, with a named parameter in place of each value
+     */
+    public String template() {
+        return render(true);
+    }
+
+    /**
+     * Returns the {@link SelectStatement} for the shape of this query from {@code statements}, together with the values for this query
+     *
+     * @param statements the cache of statements to use
+     * @return this query, prepared for execution
+     */
+    public PreparedSelect prepare(SelectStatements statements) {
+        checkNotNull(statements);
+        checkState(table != null, "from() must be called before the query is prepared");
+        SelectStatement statement = statements.statementFor(template());
+        return new PreparedSelect(statement, ImmutableMap.copyOf(placeholderValues), firstResult, maxResults);
+    }
+
+    private String render(boolean placeholders) {
+        StringBuilder buf = new StringBuilder("SELECT t ");
+        buf.append(selection);
+        if (!selection.isEmpty()) {
+            buf.append(' ');
+        }
+        buf.append("FROM ");
+        if (table != null) {
+            buf.append(table)
+               .append(" t");
+        }
+        for (int i = 0; i < conditions.size(); i++) {
+            Condition condition = conditions.get(i);
+            buf.append(i == 0 ? " WHERE " : " AND ")
+               .append("t.")
+               .append(condition.field)
+               .append(condition.compare.code);
+            if (placeholders) {
+                buf.append(':')
+                   .append(condition.placeholder);
+            } else {
+                buf.append(condition.field)
+                   .append("Param");
+            }
+        }
+        if (!orderBy.isEmpty()) {
+            buf.append(" ORDER BY ")
+               .append(String.join(", ", orderBy));
+        }
+        return buf.toString();
+    }
+
+    private static class Condition {
+        private final String field;
+        private final Compare compare;
+        private final String placeholder;
+
+        private Condition(String field, Compare compare, String placeholder) {
+            this.field = field;
+            this.compare = compare;
+            this.placeholder = placeholder;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package uk.q3c.krail.persist.jpa;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * The JPQL for one shape of {@link Select}, with named parameters in place of values.  There is one instance for each shape in a
+ * {@link SelectStatements}, so it can be used to register the JPQL with the JPA provider once - for example as a named query, with
+ * {@code EntityManagerFactory.addNamedQuery} - and the registered query reused for every query of the same shape.
+ */
+@ThreadSafe
+public final class SelectStatement {
+
+    private final String name;
+    private final String jpql;
+    // completed when the registrar has returned, null if registration has not started, or has failed
+    private final AtomicReference<CompletableFuture<Void>> registration = new AtomicReference<>();
+    // the names of the statements already registered by the owning SelectStatements
+    private final Set<String> registered;
+
+    /**
+     * @param registered the names of statements already registered, shared by all statements of a {@link SelectStatements}.  If it contains
+     *                   {@code name}, this statement is already registered.  {@code name} is added when a registrar succeeds
+     */
+    SelectStatement(String name, String jpql, Set<String> registered) {
+        this.name = checkNotNull(name);
+        this.jpql = checkNotNull(jpql);
+        this.registered = checkNotNull(registered);
+        if (registered.contains(name)) {
+            registration.set(CompletableFuture.completedFuture(null));
+        }
+    }
+
+    /**
+     * @return a name for this statement, derived from its JPQL, unique within its {@link SelectStatements}, and suitable for use as a named query
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getJpql() {
+        return jpql;
+    }
+
+    /**
+     * Calls {@code registrar} with this statement, unless it has already been called successfully for this statement.  If another thread is
+     * registering the statement, waits until it has finished, so that on return the statement is always registered.  If that registration
+     * fails, one of the waiting threads tries again with its own registrar.  {@code registrar} must not itself call this method for the same
+     * statement
+     *
+     * @param registrar registers the statement with the JPA provider
+     * @return true if {@code registrar} was called
+     */
+    public boolean registerOnce(Consumer<SelectStatement> registrar) {
+        checkNotNull(registrar);
+        while (true) {
+            CompletableFuture<Void> current = registration.get();
+            if (current != null) {
+                try {
+                    current.join();
+                    return false;
+                } catch (CompletionException e) {
+                    // the other registrar failed, and has already cleared the registration
+                    continue;
+                }
+            }
+            CompletableFuture<Void> mine = new CompletableFuture<>();
+            if (!registration.compareAndSet(null, mine)) {
+                continue;
+            }
+            try {
+                registrar.accept(this);
+            } catch (RuntimeException e) {
+                registration.set(null);
+                mine.completeExceptionally(e);
+                throw e;
+            }
+            registered.add(name);
+            mine.complete(null);
+            return true;
+        }
+    }
+
+    /**
+     * @return true if a registrar has been called successfully for this statement.  False while registration is in progress
+     */
+    public boolean isRegistered() {
+        CompletableFuture<Void> current = registration.get();
+        return current != null && current.isDone() && !current.isCompletedExceptionally();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + jpql;
+    }
+}
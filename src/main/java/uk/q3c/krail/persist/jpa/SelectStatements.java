@@ -0,0 +1,104 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package uk.q3c.krail.persist.jpa;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * A cache of {@link SelectStatement}, keyed by the shape of the query - its JPQL with named parameters in place of values.  Typically held for
+ * the life of an EntityManagerFactory, since that is where statements are registered.
+ * <p>
+ * The number of statements held is limited, so that queries built with many different shapes cannot grow the cache without limit.  The least
+ * recently used statements are discarded first.  Statement names are derived from a hash of the JPQL, so a statement which is discarded and later
+ * needed again is created with the same name.  The names of registered statements are kept (the JPA provider keeps the named queries in any
+ * case), so the re-created statement is already registered, and the provider is neither given the query again nor asked to parse it again
+ */
+@ThreadSafe
+public class SelectStatements {
+
+    public static final int DEFAULT_MAX_STATEMENTS = 1000;
+    private final String namePrefix;
+    private final Cache<String, SelectStatement> statements;
+    private final Set<String> registered = ConcurrentHashMap.newKeySet();
+
+    public SelectStatements() {
+        this("krail.select.");
+    }
+
+    /**
+     * @param namePrefix the prefix for statement names, which should not clash with any other named query
+     */
+    public SelectStatements(String namePrefix) {
+        this(namePrefix, DEFAULT_MAX_STATEMENTS);
+    }
+
+    /**
+     * @param namePrefix    the prefix for statement names, which should not clash with any other named query
+     * @param maxStatements the maximum number of statements held
+     */
+    public SelectStatements(String namePrefix, int maxStatements) {
+        checkArgument(maxStatements > 0, "maxStatements must be greater than 0");
+        this.namePrefix = checkNotNull(namePrefix);
+        this.statements = CacheBuilder.newBuilder()
+                                      .maximumSize(maxStatements)
+                                      .build();
+    }
+
+    /**
+     * @param jpql the statement, with named parameters in place of values
+     * @return the statement for {@code jpql}, created on first use
+     */
+    public SelectStatement statementFor(String jpql) {
+        checkNotNull(jpql);
+        SelectStatement statement = statements.getIfPresent(jpql);
+        if (statement != null) {
+            return statement;
+        }
+        try {
+            return statements.get(jpql, () -> new SelectStatement(nameFor(jpql), jpql, registered));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            // creating a statement does not throw checked exceptions
+            throw new IllegalStateException("Unable to create a statement for " + jpql, e.getCause());
+        }
+    }
+
+    private String nameFor(String jpql) {
+        return namePrefix + Hashing.sha256()
+                                   .hashString(jpql, StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        return (int) statements.size();
+    }
+
+    /**
+     * Discards the statements held, and the record of which have been registered.  Call when the statements are no longer registered with the
+     * JPA provider - for example when the EntityManagerFactory has been closed
+     */
+    public void clear() {
+        statements.invalidateAll();
+        registered.clear();
+    }
+}
@@ -14,6 +14,7 @@
 package uk.q3c.krail.util;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Singleton;
 import uk.q3c.krail.core.view.component.ComponentIdGenerator;
 import uk.q3c.krail.core.view.component.DefaultComponentIdGenerator;
 
@@ -30,8 +31,12 @@ public class UtilsModule extends AbstractModule {
         bindIdGenerator();
     }
 
+    /**
+     * The generator holds what it has compiled for each class, so it is bound as a singleton.  Override this method to provide your own
+     * {@link ComponentIdGenerator} binding
+     */
     protected void bindIdGenerator() {
-        bind(ComponentIdGenerator.class).to(DefaultComponentIdGenerator.class);
+        bind(ComponentIdGenerator.class).to(DefaultComponentIdGenerator.class).in(Singleton.class);
     }
 
 
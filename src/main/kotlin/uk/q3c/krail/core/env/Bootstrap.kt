@@ -5,6 +5,7 @@ import com.github.mcollovati.vertx.vaadin.VertxVaadinService
 import com.google.inject.AbstractModule
 import com.google.inject.Guice
 import com.google.inject.Injector
+import com.google.inject.Key
 import com.google.inject.Module
 import com.vaadin.server.SessionInitEvent
 import com.vaadin.server.SessionInitListener
@@ -18,6 +19,8 @@ import uk.q3c.krail.core.env.RuntimeEnvironment.SERVLET
 import uk.q3c.krail.core.env.RuntimeEnvironment.VERTX
 import uk.q3c.krail.core.guice.InjectorHolder
 import uk.q3c.krail.core.ui.ScopedUIProvider
+import uk.q3c.krail.startup.ApplicationReadiness
+import uk.q3c.krail.startup.StartupOrchestrator
 import uk.q3c.krail.startup.VertxApplicationStartup
 import uk.q3c.util.guice.InjectorLocator
 import java.io.InputStream
@@ -87,7 +90,8 @@ class InjectorFactory {
      * Creates a bootstrap injector first, so that the location for the Injector can be established.
      *
      * Then creates the real injector and puts it in the correct place for the environment (determined by the
-     * environment specific implementation of [InjectorLocator])
+     * environment specific implementation of [InjectorLocator]), and starts the [StartupOrchestrator].  This returns once the required
+     * stages, which include setting the SecurityManager, are complete - the other stages carry on in the background, see [ApplicationReadiness]
      */
 
     fun createInjector(runtimeEnvironment: RuntimeEnvironment, bootstrapModule: Module): Injector {
@@ -123,10 +127,16 @@ class InjectorFactory {
         log.debug("injectorLocator is a ${injectorLocator.javaClass}")
         val realInjector = Guice.createInjector(allModules)
         log.debug("application injector created")
-        val securityManager: SecurityManager = realInjector.getInstance(SecurityManager::class.java)
-        SecurityUtils.setSecurityManager(securityManager)
-        log.debug("Security manager set")
         injectorLocator.put(realInjector)
+        val orchestratorBinding = realInjector.getExistingBinding(Key.get(StartupOrchestrator::class.java))
+        if (orchestratorBinding != null) {
+            orchestratorBinding.provider.get().start()
+            log.debug("required startup stages complete, including Security manager set")
+        } else {
+            // a startup module which pre-dates the StartupOrchestrator
+            SecurityUtils.setSecurityManager(realInjector.getInstance(SecurityManager::class.java))
+            log.debug("Security manager set")
+        }
         return realInjector
     }
 }
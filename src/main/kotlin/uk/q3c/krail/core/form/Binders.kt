@@ -3,6 +3,7 @@ package uk.q3c.krail.core.form
 import com.google.inject.Inject
 import com.google.inject.Key
 import com.google.inject.Provider
+import com.google.inject.Singleton
 import com.google.inject.TypeLiteral
 import com.vaadin.data.BeanPropertySet
 import com.vaadin.data.BeanValidationBinder
@@ -16,6 +17,7 @@ import uk.q3c.util.guice.SerializationSupport
 import java.io.IOException
 import java.io.ObjectInputStream
 import java.io.Serializable
+import java.util.concurrent.ConcurrentHashMap
 import javax.validation.Validator
 import kotlin.reflect.KClass
 
@@ -50,16 +52,50 @@ class KrailBeanValidator constructor(
 
 interface KrailBeanValidatorFactory : Serializable {
     fun create(type: Class<*>, propertyName: String): KrailBeanValidator
+
+    /**
+     * Returns the annotations of the bean validation constraints declared for [propertyName] of [type], or an empty list if there are none
+     */
+    fun constraintsFor(type: Class<*>, propertyName: String): List<Annotation>
 }
 
+/**
+ * A [KrailBeanValidator] holds no state specific to a binding, so one instance is created for each bean type and property, and shared by every
+ * binder for that bean type.  The constraint annotations for each property are also read from the bean validation metadata once, and cached.
+ */
+@Singleton
 class DefaultKrailBeanValidatorFactory @Inject constructor(
         val serializationSupport: SerializationSupport,
         @field:Transient private val javaxValidatorProvider: Provider<Validator>)
 
     : KrailBeanValidatorFactory {
 
+    @Transient
+    private var validators: MutableMap<BeanProperty, KrailBeanValidator>? = null
+    @Transient
+    private var constraints: MutableMap<BeanProperty, List<Annotation>>? = null
+
     override fun create(type: Class<*>, propertyName: String): KrailBeanValidator {
-        return KrailBeanValidator(serializationSupport = serializationSupport, javaxValidatorProvider = javaxValidatorProvider, type = type, propertyName = propertyName)
+        return validatorCache().computeIfAbsent(BeanProperty(type, propertyName)) { _ ->
+            KrailBeanValidator(serializationSupport = serializationSupport, javaxValidatorProvider = javaxValidatorProvider, type = type, propertyName = propertyName)
+        }
+    }
+
+    override fun constraintsFor(type: Class<*>, propertyName: String): List<Annotation> {
+        return constraintCache().computeIfAbsent(BeanProperty(type, propertyName)) { _ ->
+            val propertyDescriptor = javaxValidatorProvider.get().getConstraintsForClass(type).getConstraintsForProperty(propertyName)
+            propertyDescriptor?.constraintDescriptors?.map { it.annotation } ?: listOf()
+        }
+    }
+
+    @Synchronized
+    private fun validatorCache(): MutableMap<BeanProperty, KrailBeanValidator> {
+        return validators ?: ConcurrentHashMap<BeanProperty, KrailBeanValidator>().also { validators = it }
+    }
+
+    @Synchronized
+    private fun constraintCache(): MutableMap<BeanProperty, List<Annotation>> {
+        return constraints ?: ConcurrentHashMap<BeanProperty, List<Annotation>>().also { constraints = it }
     }
 
     @Throws(ClassNotFoundException::class, IOException::class)
@@ -69,6 +105,8 @@ class DefaultKrailBeanValidatorFactory @Inject constructor(
     }
 }
 
+private data class BeanProperty(val type: Class<*>, val propertyName: String)
+
 class KrailBeanValidationBinderFactory @Inject constructor(@field:Transient private val krailBeanValidatorFactory: KrailBeanValidatorFactory, val serializationSupport: SerializationSupport) : Serializable {
 
     @JvmOverloads
@@ -115,7 +153,7 @@ class KrailBeanValidationBinder<BEAN>(
     override fun configureBinding(binding: Binder.BindingBuilder<BEAN, *>, definition: PropertyDefinition<BEAN, *>): Binder.BindingBuilder<BEAN, *> {
         val actualBeanType = findBeanType(beanType, definition)
         val validator = krailBeanValidatorFactory.create(actualBeanType, definition.topLevelName)
-        configureRequired(binding, definition, validator)
+        configureRequired(binding, definition)
         return binding.withValidator(validator)
     }
 
@@ -139,11 +177,9 @@ class KrailBeanValidationBinder<BEAN>(
         }
     }
 
-    private fun configureRequired(binding: Binder.BindingBuilder<BEAN, *>, definition: PropertyDefinition<BEAN, *>, validator: KrailBeanValidator) {
-        val propertyHolderType = definition.propertyHolderType
-        val descriptor = validator.javaxBeanValidator.getConstraintsForClass(propertyHolderType)
-        val propertyDescriptor = descriptor.getConstraintsForProperty(definition.topLevelName) ?: return
-        if (propertyDescriptor.constraintDescriptors.stream().map { it.annotation }.anyMatch(requiredConfigurator)) {
+    private fun configureRequired(binding: Binder.BindingBuilder<BEAN, *>, definition: PropertyDefinition<BEAN, *>) {
+        val constraints = krailBeanValidatorFactory.constraintsFor(definition.propertyHolderType, definition.topLevelName)
+        if (constraints.any { requiredConfigurator.test(it) }) {
             binding.field.isRequiredIndicatorVisible = true
         }
     }
@@ -13,6 +13,7 @@ import uk.q3c.util.guice.SerializationSupport
 import java.io.IOException
 import java.io.ObjectInputStream
 import java.io.Serializable
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.reflect.KClass
 
 /**
@@ -24,6 +25,13 @@ import kotlin.reflect.KClass
 
 interface ConverterSet : ConverterProvider {
     val errorMessageProviderProvider: Provider<KrailConverterErrorMessageProvider>
+
+    /**
+     * Converters which are stateless, and can therefore be shared, mapped by the [ConverterPair] they convert.  [DefaultConverterFactory] compiles
+     * these into a lookup table, and calls each provider only once.  Pairs not listed here are resolved through [supports] and [get]
+     */
+    val sharedConverters: Map<ConverterPair, Provider<Converter<Any, Any>>>
+        get() = mapOf()
 }
 
 interface ConverterProvider : Serializable {
@@ -58,17 +66,22 @@ class BaseConverterSet @Inject constructor(@field:Transient override val errorMe
         return true
     }
 
+    override val sharedConverters: Map<ConverterPair, Provider<Converter<Any, Any>>>
+        get() {
+            val stringToInteger = Provider { converter(StringToIntegerConverter(0, errorMessageProviderProvider.get().setMessage(ConverterKey.Must_be_a_number))) }
+            return mapOf(
+                    Pair(ConverterPair(String::class.java, Int::class.java), stringToInteger),
+                    Pair(ConverterPair(String::class.java, Integer::class.java), stringToInteger))
+        }
+
     override fun get(converterPair: ConverterPair): Converter<Any, Any> {
+        val provider = sharedConverters[converterPair]
+                ?: throw UnsupportedOperationException("Conversion between $converterPair is not supported")
+        return provider.get()
+    }
 
-        val emp = errorMessageProviderProvider.get()
-        val converter: Any = when (converterPair) {
-            ConverterPair(String::class.java, Int::class.java) -> StringToIntegerConverter(0, emp.setMessage(ConverterKey.Must_be_a_number))
-            ConverterPair(String::class.java, Integer::class.java) -> StringToIntegerConverter(0, emp.setMessage(ConverterKey.Must_be_a_number))
-            else -> {
-                throw UnsupportedOperationException("Conversion between $converterPair is not supported")
-            }
-        }
-        @Suppress("UNCHECKED_CAST")
+    @Suppress("UNCHECKED_CAST")
+    private fun converter(converter: Converter<*, *>): Converter<Any, Any> {
         return converter as Converter<Any, Any>
     }
 
@@ -119,19 +132,30 @@ data class ConverterPair(val presentation: Class<out Any>, val model: Class<out
  * Uses all configured instances of [ConverterSet] to find a suitable [Converter].  Additional [ConverterSet]s can be defined
  * by your own Guice module - see [ConverterModule] for an example of the SetBinder to use.  Once bound via Guice, this factory will use
  * all available [ConverterSet]s
+ *
+ * The [ConverterSet.sharedConverters] of all sets are compiled into a lookup table when the factory is constructed (it is bound as an eager
+ * singleton), so most converters are found with a single lookup, and created only once.  Where more than one set lists the same pair, the
+ * first set wins.  Pairs not in the table are offered to each set in turn, as before
  */
 class DefaultConverterFactory @Inject constructor(private val converters: MutableSet<ConverterSet>) : ConverterFactory {
 
+    @Transient
+    private var lookup: ConverterLookup? = null
+
+    init {
+        lookup()
+    }
+
     override fun <P : Any, M : Any> get(presentationClass: KClass<out P>, modelClass: KClass<out M>): Converter<P, M> {
         @Suppress("UNCHECKED_CAST")
         return get(ConverterPair(presentationClass, modelClass)) as Converter<P, M>
     }
 
     override fun supports(converterPair: ConverterPair): Boolean {
+        if (lookup().contains(converterPair)) {
+            return true
+        }
         for (converterSetProvider in converters) {
-//            if (converterSetProvider.get().supports(converterPair)) {
-//                return true
-//            }
             if (converterSetProvider.supports(converterPair)) {
                 return true
             }
@@ -141,11 +165,13 @@ class DefaultConverterFactory @Inject constructor(private val converters: Mutabl
 
     override fun get(converterPair: ConverterPair): Converter<Any, Any> {
         if (converterPair.model == converterPair.presentation) {
-            return NoConversionConverter()
+            return noConversionConverter
         }
-        for (converterSetProvider in converters) {
-            val converterSet = converterSetProvider
-//            val converterSet = converterSetProvider.get()
+        val shared = lookup().converterFor(converterPair)
+        if (shared != null) {
+            return shared
+        }
+        for (converterSet in converters) {
             if (converterSet.supports(converterPair)) {
                 return converterSet.get(converterPair)
             }
@@ -153,7 +179,33 @@ class DefaultConverterFactory @Inject constructor(private val converters: Mutabl
         throw IllegalArgumentException("Converter Pair not supported $converterPair")
     }
 
+    @Synchronized
+    private fun lookup(): ConverterLookup {
+        return lookup ?: ConverterLookup(converters).also { lookup = it }
+    }
+
+    companion object {
+        private val noConversionConverter = NoConversionConverter()
+    }
+}
 
+private class ConverterLookup(converterSets: Collection<ConverterSet>) {
+    private val providers: Map<ConverterPair, Provider<Converter<Any, Any>>>
+    private val converters: MutableMap<ConverterPair, Converter<Any, Any>> = ConcurrentHashMap()
+
+    init {
+        val table = LinkedHashMap<ConverterPair, Provider<Converter<Any, Any>>>()
+        converterSets.forEach { set -> set.sharedConverters.forEach { (pair, provider) -> table.putIfAbsent(pair, provider) } }
+        providers = table
+    }
+
+    fun contains(converterPair: ConverterPair): Boolean {
+        return providers.containsKey(converterPair)
+    }
+
+    fun converterFor(converterPair: ConverterPair): Converter<Any, Any>? {
+        return converters[converterPair] ?: providers[converterPair]?.let { p -> converters.computeIfAbsent(converterPair) { p.get() } }
+    }
 }
 
 enum class ConverterKey : I18NKey {
@@ -6,6 +6,8 @@ import com.google.inject.Provider
 import com.google.inject.TypeLiteral
 import com.google.inject.multibindings.MapBinder
 import com.vaadin.data.HasValue
+import com.vaadin.data.provider.QuerySortOrder
+import com.vaadin.shared.data.sort.SortDirection
 import com.vaadin.shared.ui.colorpicker.Color
 import com.vaadin.ui.CheckBox
 import com.vaadin.ui.ColorPicker
@@ -13,7 +15,6 @@ import com.vaadin.ui.Component
 import com.vaadin.ui.DateField
 import com.vaadin.ui.DateTimeField
 import com.vaadin.ui.TextField
-import org.slf4j.LoggerFactory
 import uk.q3c.krail.core.navigate.NavigationState
 import uk.q3c.krail.core.navigate.Navigator
 import uk.q3c.krail.core.navigate.StrictURIFragmentHandler
@@ -49,7 +50,8 @@ class DefaultForm @Inject constructor(
         val navigator: Navigator,
         val uriFragmentHandler: StrictURIFragmentHandler,
         val currentLocale: CurrentLocale,
-        @field:Transient val formBuilderSelectorProvider: Provider<FormBuilderSelector>)
+        @field:Transient val formBuilderSelectorProvider: Provider<FormBuilderSelector>,
+        @field:Transient val formBlueprints: FormBlueprints)
 
     : ViewBase(translate, serializationSupport), Form {
 
@@ -64,28 +66,12 @@ class DefaultForm @Inject constructor(
     }
 
 
-    private val log = LoggerFactory.getLogger(this.javaClass.name)
     private lateinit var section: FormSection
 
 
     override fun doBuild() {
         val viewConfigurationClass = navigationStateExt.node.masterNode.viewConfiguration
-        val formConfiguration =
-                if (FormConfiguration::class.java.isAssignableFrom(viewConfigurationClass)) {
-                    try {
-                        viewConfigurationClass.newInstance() as FormConfiguration
-                    } catch (e: Exception) {
-                        log.error("Failed to set form configuration", e)
-                        EmptyFormConfiguration()
-                    }
-
-                } else {
-                    throw FormConfigurationException("Configuration for a Form must be of type FormConfiguration")
-                }
-        if (formConfiguration is EmptyFormConfiguration) {
-            throw FormConfigurationException("An EmptyFormConfiguration is not valid to construct a Form")
-        }
-        formConfiguration.config()
+        val formConfiguration = formBlueprints.blueprintFor(viewConfigurationClass).configuration
         val formBuilder = formBuilderSelectorProvider.get().selectFormBuilder(formConfiguration)
         section = formBuilder.build(this, navigationStateExt)
         section.mode = EditMode.READ_ONLY
@@ -128,6 +114,17 @@ interface BaseDao<BEAN : Any> : Serializable {
      */
     fun insert(vararg beans: BEAN)
 
+    /**
+     * Inserts new [beans] as a single unit of work, so that implementations can commit them together rather than one at a time
+     */
+    fun insertAll(beans: Collection<BEAN>)
+
+    /**
+     * Executes [work], deferring the commit of anything written by it through this DAO (or any other from the same [FormDaoFactory])
+     * until [work] completes
+     */
+    fun <R> unitOfWork(work: () -> R): R
+
     /**
      * Returns all the entities of type BEAN
      */
@@ -140,6 +137,30 @@ interface BaseDao<BEAN : Any> : Serializable {
      */
     fun get(key: String): BEAN
 
+    /**
+     * Returns one page of the entities of type BEAN, as defined by [query].  Only the entities in the page should be materialised, so
+     * implementations should push sorting and filtering down to the store where possible
+     */
+    fun get(query: DaoQuery): List<BEAN>
+
+    /**
+     * Passes each entity of type BEAN to [action] in turn, without holding them all in memory.  By default this pages through [get]
+     * with a [DaoQuery]; implementations which can iterate their store directly should do so
+     */
+    fun forEach(action: (BEAN) -> Unit) {
+        var offset = 0
+        do {
+            val page = get(DaoQuery(offset = offset, limit = forEachPageSize))
+            page.forEach(action)
+            offset += page.size
+        } while (page.size == forEachPageSize)
+    }
+
+    /**
+     * Returns the number of entities of type BEAN which match all [filters]
+     */
+    fun count(filters: List<PropertyFilter> = listOf()): Int
+
 
     /**
      * Updates an existing element or inserts a new one if one does not exist
@@ -161,14 +182,83 @@ interface BaseDao<BEAN : Any> : Serializable {
 }
 
 
+/**
+ * The page size used by the default implementation of [BaseDao.forEach]
+ */
+const val forEachPageSize = 500
+
+/**
+ * A page of entities: skip [offset] entities, then return at most [limit], from those which match all [filters], sorted by each of
+ * [sortOrders] in turn.  [QuerySortOrder.sorted] is the property name.  The order of entities which are equal on all [sortOrders] is
+ * implementation specific, but must be consistent from one query to the next, so that pages do not overlap
+ */
+data class DaoQuery(val offset: Int = 0,
+                    val limit: Int = Int.MAX_VALUE,
+                    val sortOrders: List<QuerySortOrder> = listOf(),
+                    val filters: List<PropertyFilter> = listOf()) : Serializable
+
+
+enum class FilterMatch {
+    /** property value equals the filter value */
+    EQUALS,
+    /** property value, as a String, contains the filter value, ignoring case */
+    CONTAINS,
+    /** property value is not null, and is greater than or equal to the filter value */
+    AT_LEAST,
+    /** property value is not null, and is less than or equal to the filter value */
+    AT_MOST
+}
+
+/**
+ * A filter on a single entity property
+ */
+data class PropertyFilter(val property: String, val value: Any?, val match: FilterMatch = FilterMatch.EQUALS) : Serializable {
+
+    fun matches(propertyValue: Any?): Boolean {
+        return when (match) {
+            FilterMatch.EQUALS -> propertyValue == value
+            FilterMatch.CONTAINS -> propertyValue != null && value != null && propertyValue.toString().contains(value.toString(), ignoreCase = true)
+            FilterMatch.AT_LEAST -> propertyValue != null && value != null && compare(propertyValue, value) >= 0
+            FilterMatch.AT_MOST -> propertyValue != null && value != null && compare(propertyValue, value) <= 0
+        }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun compare(propertyValue: Any, value: Any): Int {
+        return (propertyValue as Comparable<Any>).compareTo(value)
+    }
+}
+
+
 interface FormDaoFactory : Serializable {
     fun <T : Entity> getDao(entityClass: KClass<T>): FormDao<T>
 }
 
 
+/**
+ * Adds some convenience queries to [BaseDao].  Where the implementation supports [Indexed] properties, these use the index
+ */
 class FormDao<T : Any>(baseDao: BaseDao<T>) : BaseDao<T> by baseDao, Serializable {
-    fun applyFilter() {
-        TODO()
+
+    /**
+     * Returns the entities whose [property] equals [value]
+     */
+    fun findBy(property: String, value: Any?): List<T> {
+        return get(DaoQuery(filters = listOf(PropertyFilter(property, value))))
+    }
+
+    /**
+     * Returns the entities whose [property] is between [from] and [to] inclusive, sorted by [property].  A null bound is open ended
+     */
+    fun findInRange(property: String, from: Any?, to: Any?): List<T> {
+        val filters = ArrayList<PropertyFilter>()
+        if (from != null) {
+            filters.add(PropertyFilter(property, from, FilterMatch.AT_LEAST))
+        }
+        if (to != null) {
+            filters.add(PropertyFilter(property, to, FilterMatch.AT_MOST))
+        }
+        return get(DaoQuery(sortOrders = listOf(QuerySortOrder(property, SortDirection.ASCENDING)), filters = filters))
     }
 }
 
@@ -177,6 +267,15 @@ interface Entity {
     val id: String
 }
 
+/**
+ * Declares a secondary index on an [Entity] property, for DAO implementations which support them.  An index is used for equality and range
+ * filters on the property, and, if the property is not nullable, for sorting by it.  Null values are not indexed.  Only properties with
+ * [Comparable] values can be indexed
+ */
+@Target(AnnotationTarget.PROPERTY)
+@Retention(AnnotationRetention.RUNTIME)
+annotation class Indexed
+
 open class FormModule : AbstractModule() {
 
     override fun configure() {
@@ -196,6 +295,16 @@ open class FormModule : AbstractModule() {
         bindPropertySpecCreator()
         bindEditSaveCancel()
         bindEditSaveCancelBuilder()
+        bindFormBlueprints()
+        bindFormTableDataCache()
+    }
+
+    protected open fun bindFormBlueprints() {
+        bind(FormBlueprints::class.java).to(DefaultFormBlueprints::class.java)
+    }
+
+    protected open fun bindFormTableDataCache() {
+        bind(FormTableDataCache::class.java).to(DefaultFormTableDataCache::class.java)
     }
 
 
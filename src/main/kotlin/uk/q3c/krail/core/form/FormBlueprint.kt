@@ -0,0 +1,155 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.form
+
+import com.google.inject.Inject
+import com.google.inject.Singleton
+import com.vaadin.data.HasValue
+import net.jodah.typetools.TypeResolver
+import org.slf4j.LoggerFactory
+import uk.q3c.krail.core.view.ViewConfiguration
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.reflect.KClass
+
+/**
+ * Holds a [FormBlueprint] for each [FormConfiguration] class, so that a configuration class is instantiated, configured and compiled only
+ * once, however many forms are built from it.
+ *
+ * Because a blueprint is shared, its [FormConfiguration] must be treated as read only once it has been compiled
+ */
+interface FormBlueprints {
+
+    /**
+     * Returns the blueprint for [configurationClass], compiling it on first use.
+     *
+     * @throws FormConfigurationException if [configurationClass] is not a [FormConfiguration], or cannot be used to construct a [Form]
+     */
+    fun blueprintFor(configurationClass: Class<out ViewConfiguration>): FormBlueprint
+
+    /**
+     * Returns the cached blueprint if it was compiled from this [configuration] instance, otherwise compiles a new blueprint, which is not cached
+     */
+    fun blueprintFor(configuration: FormConfiguration): FormBlueprint
+}
+
+
+@Singleton
+class DefaultFormBlueprints @Inject constructor(private val propertySpecCreator: PropertyConfigurationCreator) : FormBlueprints {
+    private val log = LoggerFactory.getLogger(this.javaClass.name)
+    private val blueprints: MutableMap<Class<out ViewConfiguration>, FormBlueprint> = ConcurrentHashMap()
+
+    override fun blueprintFor(configurationClass: Class<out ViewConfiguration>): FormBlueprint {
+        return blueprints[configurationClass] ?: blueprints.computeIfAbsent(configurationClass) { c -> FormBlueprint.compile(instantiate(c), propertySpecCreator) }
+    }
+
+    override fun blueprintFor(configuration: FormConfiguration): FormBlueprint {
+        val cached = blueprints[configuration.javaClass]
+        return if (cached != null && cached.configuration === configuration) {
+            cached
+        } else {
+            FormBlueprint.compile(configuration, propertySpecCreator)
+        }
+    }
+
+    private fun instantiate(configurationClass: Class<out ViewConfiguration>): FormConfiguration {
+        val formConfiguration =
+                if (FormConfiguration::class.java.isAssignableFrom(configurationClass)) {
+                    try {
+                        configurationClass.newInstance() as FormConfiguration
+                    } catch (e: Exception) {
+                        log.error("Failed to set form configuration", e)
+                        EmptyFormConfiguration()
+                    }
+
+                } else {
+                    throw FormConfigurationException("Configuration for a Form must be of type FormConfiguration")
+                }
+        if (formConfiguration is EmptyFormConfiguration) {
+            throw FormConfigurationException("An EmptyFormConfiguration is not valid to construct a Form")
+        }
+        formConfiguration.config()
+        return formConfiguration
+    }
+}
+
+/**
+ * A [FormConfiguration] compiled into a [SectionBlueprint] for each of its sections
+ */
+class FormBlueprint private constructor(val configuration: FormConfiguration, val sections: Map<String, SectionBlueprint>) {
+
+    /**
+     * Returns the blueprint for the section called [name]
+     *
+     * @throws FormConfigurationException if there is no such section
+     */
+    fun section(name: String = "standard"): SectionBlueprint {
+        return sections[name] ?: throw FormConfigurationException("There is no section '$name' in ${configuration.javaClass.name}")
+    }
+
+    companion object {
+
+        /**
+         * [configuration] must already have been configured (that is, [FormConfiguration.config] has been called)
+         */
+        fun compile(configuration: FormConfiguration, propertySpecCreator: PropertyConfigurationCreator): FormBlueprint {
+            val sections = LinkedHashMap<String, SectionBlueprint>()
+            configuration.sections.forEach { s -> sections[s.name] = SectionBlueprint.compile(s, propertySpecCreator) }
+            return FormBlueprint(configuration, sections)
+        }
+    }
+}
+
+/**
+ * A [FormSectionConfiguration] with its [PropertyConfiguration]s built and merged, and the order of its detail fields fixed.  Building a
+ * section from a blueprint only has to create and bind the components.
+ */
+class SectionBlueprint private constructor(val configuration: FormSectionConfiguration, val properties: List<PropertyBlueprint>, val fieldOrder: Set<String>) {
+
+    companion object {
+
+        fun compile(configuration: FormSectionConfiguration, propertySpecCreator: PropertyConfigurationCreator): SectionBlueprint {
+            PropertyConfigurationBuilder().build(configuration, propertySpecCreator)
+            val properties = configuration.properties.values.map { p ->
+                p.merge()
+                PropertyBlueprint(p)
+            }
+            // if fieldOrder is empty, fields are shown in the order Java returned them by reflection, and is therefore not predictable
+            val fieldOrder = if (configuration.fieldOrder.isEmpty()) {
+                LinkedHashSet(configuration.properties.keys)
+            } else {
+                configuration.fieldOrder
+            }
+            return SectionBlueprint(configuration, properties, fieldOrder)
+        }
+    }
+}
+
+/**
+ * A merged [PropertyConfiguration], with the model and presentation value classes used to select its converter.  The presentation value
+ * class of a [FieldType.STANDARD] field depends on the component class, and is resolved from the first component built for it
+ */
+class PropertyBlueprint(val configuration: PropertyConfiguration) {
+    val name: String = configuration.name
+    val modelClass: KClass<*> = configuration.propertyValueClass.kotlin
+
+    @Volatile
+    private var presentationValueClass: KClass<*>? = when (configuration.fieldType) {
+        FieldType.STANDARD -> null
+        FieldType.SINGLE_SELECT -> modelClass
+        FieldType.MULTI_SELECT -> Set::class
+    }
+
+    fun presentationValueClass(component: HasValue<*>): KClass<*> {
+        return presentationValueClass ?: TypeResolver.resolveRawArgument(HasValue::class.java, component.javaClass).kotlin.also { presentationValueClass = it }
+    }
+}
@@ -46,22 +46,25 @@ class StandardFormBuilder @Inject constructor(
         private val currentLocale: CurrentLocale,
         private val editSaveCancelBuilder: EditSaveCancelBuilder,
         val translate: Translate,
-        val userNotifier: UserNotifier) : FormBuilder {
+        val userNotifier: UserNotifier,
+        private val formBlueprints: FormBlueprints,
+        private val formTableDataCache: FormTableDataCache) : FormBuilder {
 
     override lateinit var configuration: FormConfiguration
 
     override fun build(form: Form, navigationStateExt: NavigationStateExt): FormSection {
 
-        val sectionConfiguration = configuration.section("standard")
+        val sectionBlueprint = formBlueprints.blueprintFor(configuration).section("standard")
+        val sectionConfiguration = sectionBlueprint.configuration
         if (sectionConfiguration.entityClass == Any::class) {
             throw FormConfigurationException("entityClass must be specified")
         }
-        val sectionBuilder = StandardFormSectionBuilder(entityClass = sectionConfiguration.entityClass.kotlin, binderFactory = binderFactory, propertySpecCreator = propertySpecCreator, formSupport = formSupport, configuration = sectionConfiguration, currentLocale = currentLocale, userNotifier = userNotifier)
+        val sectionBuilder = StandardFormSectionBuilder(entityClass = sectionConfiguration.entityClass.kotlin, binderFactory = binderFactory, propertySpecCreator = propertySpecCreator, formSupport = formSupport, configuration = sectionConfiguration, currentLocale = currentLocale, userNotifier = userNotifier, blueprint = sectionBlueprint)
         val pageParams = navigationStateExt.to.parameters
         if (pageParams.containsKey("id")) {
             return sectionBuilder.buildDetail(formDaoFactory, translate, editSaveCancelBuilder)
         } else {
-            return sectionBuilder.buildTable(form, formDaoFactory, translate)
+            return sectionBuilder.buildTable(form, formDaoFactory, translate, formTableDataCache.take(sectionConfiguration.entityClass))
         }
 
     }
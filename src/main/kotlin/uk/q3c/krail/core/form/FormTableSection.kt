@@ -1,20 +1,47 @@
 package uk.q3c.krail.core.form
 
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.google.inject.Inject
+import com.google.inject.Singleton
+import com.vaadin.data.provider.CallbackDataProvider
+import com.vaadin.data.provider.CallbackDataProvider.CountCallback
+import com.vaadin.data.provider.CallbackDataProvider.FetchCallback
+import com.vaadin.data.provider.ConfigurableFilterDataProvider
+import com.vaadin.data.provider.Query
 import com.vaadin.event.selection.SelectionEvent
 import com.vaadin.event.selection.SelectionListener
 import com.vaadin.ui.Grid
 import uk.q3c.krail.i18n.CurrentLocale
 import uk.q3c.krail.i18n.Translate
+import java.io.Serializable
+import java.util.concurrent.TimeUnit
 
-class FormTableSection<BEAN : Any>(val form: Form, override val rootComponent: Grid<BEAN>, val dao: FormDao<BEAN>) : FormSection, SelectionListener<BEAN> {
+/**
+ * If [warmedPage] is given, it is used for the grid's first count and fetch (see [FormTableDataCache])
+ */
+class FormTableSection<BEAN : Any>(val form: Form, override val rootComponent: Grid<BEAN>, val dao: FormDao<BEAN>, warmedPage: WarmedPage? = null) : FormSection, SelectionListener<BEAN> {
     override fun translate(translate: Translate, currentLocale: CurrentLocale) {
         rootComponent.locale = currentLocale.locale
     }
 
     override var mode: EditMode = EditMode.READ_ONLY
 
+    /**
+     * The grid's data provider, which fetches only the rows the grid asks for, with the grid's sort order and [filter] passed to the [dao]
+     */
+    val dataProvider: ConfigurableFilterDataProvider<BEAN, Void, List<PropertyFilter>> = FormDaoDataProvider(dao, warmedPage).withConfigurableFilter()
+
     init {
         rootComponent.editor.isEnabled = false
+        rootComponent.setDataProvider(dataProvider)
+    }
+
+    /**
+     * Shows only the entities which match all of [filters]
+     */
+    fun filter(filters: List<PropertyFilter>) {
+        dataProvider.setFilter(filters)
     }
 
     override fun selectionChange(event: SelectionEvent<BEAN>) {
@@ -27,4 +54,102 @@ class FormTableSection<BEAN : Any>(val form: Form, override val rootComponent: G
         }
     }
 
-}
\ No newline at end of file
+}
+
+/**
+ * A lazy data provider for a [FormTableSection] grid.  Each fetch and count is passed to [dao] as a [DaoQuery], so only the visible rows
+ * are materialised.
+ *
+ * If a [WarmedPage] is given, an unfiltered count is answered from it, and so is the first fetch, provided that it is an unsorted and
+ * unfiltered fetch from the start which the page covers.  The page is discarded after the first fetch, whether it was used or not
+ */
+class FormDaoDataProvider<BEAN : Any> private constructor(dao: FormDao<BEAN>, warmed: WarmedPageHolder) : CallbackDataProvider<BEAN, List<PropertyFilter>>(
+        FetchCallback { query -> (warmed.fetch(query) ?: dao.get(daoQuery(query))).stream() },
+        CountCallback { query -> warmed.count(query) ?: dao.count(query.filter.orElse(listOf())) }) {
+
+    constructor(dao: FormDao<BEAN>, warmedPage: WarmedPage? = null) : this(dao, WarmedPageHolder(warmedPage))
+}
+
+fun <BEAN> daoQuery(query: Query<BEAN, List<PropertyFilter>>): DaoQuery {
+    return DaoQuery(offset = query.offset, limit = query.limit, sortOrders = query.sortOrders, filters = query.filter.orElse(listOf()))
+}
+
+/**
+ * The number of entities of a class, and the first page of them, fetched before the table which displays them was built
+ */
+class WarmedPage(val count: Int, val page: List<Any>)
+
+private class WarmedPageHolder(warmedPage: WarmedPage?) : Serializable {
+    // entities are not necessarily Serializable, and the page is only wanted for the first fetch anyway
+    @Transient
+    @Volatile
+    private var warmedPage: WarmedPage? = warmedPage
+
+    fun count(query: Query<*, List<PropertyFilter>>): Int? {
+        if (query.filter.orElse(listOf()).isNotEmpty()) {
+            return null
+        }
+        return warmedPage?.count
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    fun <BEAN> fetch(query: Query<BEAN, List<PropertyFilter>>): List<BEAN>? {
+        val warmed = warmedPage ?: return null
+        warmedPage = null
+        if (query.offset != 0 || query.sortOrders.isNotEmpty() || query.filter.orElse(listOf()).isNotEmpty()) {
+            return null
+        }
+        if (query.limit > warmed.page.size && warmed.page.size < warmed.count) {
+            return null
+        }
+        return warmed.page.take(query.limit) as List<BEAN>
+    }
+}
+
+/**
+ * Holds [WarmedPage]s fetched ahead of a table being displayed, usually by the view prefetcher, until the next [FormTableSection] for the
+ * entity class is built
+ */
+interface FormTableDataCache : Serializable {
+
+    fun put(entityClass: Class<*>, page: WarmedPage)
+
+    /**
+     * Removes and returns the page for [entityClass], or returns null if there is none
+     */
+    fun take(entityClass: Class<*>): WarmedPage?
+}
+
+/**
+ * Each page is used by at most one table, and expires [expirySeconds] after it was fetched, so a table built from a warmed page never shows
+ * data older than that.  Bound as a Singleton, so that a page warmed for one user can be used by another
+ */
+@Singleton
+class DefaultFormTableDataCache @Inject constructor() : FormTableDataCache {
+    @Transient
+    @Volatile
+    private var pages: Cache<Class<*>, WarmedPage>? = null
+
+    override fun put(entityClass: Class<*>, page: WarmedPage) {
+        pages().put(entityClass, page)
+    }
+
+    override fun take(entityClass: Class<*>): WarmedPage? {
+        return pages().asMap().remove(entityClass)
+    }
+
+    private fun pages(): Cache<Class<*>, WarmedPage> {
+        return pages ?: synchronized(this) {
+            pages ?: CacheBuilder.newBuilder()
+                    .maximumSize(maxPages)
+                    .expireAfterWrite(expirySeconds, TimeUnit.SECONDS)
+                    .build<Class<*>, WarmedPage>()
+                    .also { pages = it }
+        }
+    }
+
+    companion object {
+        const val maxPages = 100L
+        const val expirySeconds = 10L
+    }
+}
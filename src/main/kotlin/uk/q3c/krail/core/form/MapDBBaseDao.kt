@@ -1,23 +1,54 @@
 package uk.q3c.krail.core.form
 
+import com.vaadin.data.provider.QuerySortOrder
+import com.vaadin.shared.data.sort.SortDirection
 import org.mapdb.DB
+import org.mapdb.Serializer
+import org.mapdb.serializer.SerializerArrayTuple
 import uk.q3c.krail.core.persist.MapDbFormDaoFactory
+import java.util.NavigableSet
+import java.util.PriorityQueue
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ConcurrentMap
 import kotlin.reflect.KClass
+import kotlin.reflect.KProperty1
+import kotlin.reflect.full.findAnnotation
+import kotlin.reflect.full.isSubclassOf
+import kotlin.reflect.full.memberProperties
 
 /**
  * A very limited implementation of the [BaseDao] interface - not for real use
  *
+ * Properties annotated with [Indexed] each have a secondary index, held in a MapDB tree set of (value, id) in the same store as the entities.
+ * Each write of an entity and its index entries is made while holding off commits of the store (see [MapDbFormDaoFactory.writing]), so that
+ * they are always committed together, and is reversed if any part of it fails.  Writes to an entity class with indexes are serialised, so that
+ * the entity and its index entries change together.  The index is used by [get] (with a [DaoQuery]) and [count] to select candidates for EQUALS,
+ * AT_LEAST and AT_MOST filters, and to page in sort order when sorting by a single non-nullable indexed property.
+ *
+ * The definition of each index (its value type, and the [indexFormat]) is recorded in the store.  An index is rebuilt from the stored entities
+ * the first time it is used with a different definition - which includes an index declared after entities have been stored
+ *
+ * The ids of all entities are also held in a key index, a MapDB tree set written with the entities, so that pages can be taken in key order
+ * without reading or sorting every key
+ *
  * Created by David Sowerby on 15 Jul 2018
  */
 class MapDBBaseDao<T : Entity>(val daoFactory: MapDbFormDaoFactory, entityClass: KClass<T>) : BaseDao<T> {
 
 
     private val mapName: String = entityClass.java.name
-    private val db: DB
-        get   () {
-            return daoFactory.db()
-        }
+    private val keyIndexName: String = "$mapName#@id"
+    private val definitionsName: String = "$mapName@indexes"
+    private val entityJavaClass: Class<T> = entityClass.java
+    @Transient
+    private var properties: Map<String, KProperty1<T, *>>? = null
+    @Transient
+    private var indexes: Map<String, PropertyIndex<T>>? = null
+    @Transient
+    private var builtIndexes: MutableSet<String>? = null
+    @Transient
+    @Volatile
+    private var builtRollbacks: Long = 0
 
     override fun get(): List<T> {
         try {
@@ -27,45 +58,292 @@ class MapDBBaseDao<T : Entity>(val daoFactory: MapDbFormDaoFactory, entityClass:
         }
     }
 
-    @Suppress("UNCHECKED_CAST")
+    /**
+     * Iterates the store directly - MapDB reads the entities lazily, so only one is held at a time
+     */
+    override fun forEach(action: (T) -> Unit) {
+        val entities = try {
+            map.values.iterator()
+        } catch (e: Exception) {
+            throw MapDbException("Failed to read from ${mapName}", e)
+        }
+        entities.forEach(action)
+    }
+
     private val map: ConcurrentMap<String, T>
         get() {
-            return daoFactory.db().hashMap(mapName).createOrOpen() as ConcurrentMap<String, T>
+            return daoFactory.map(mapName, entityJavaClass.kotlin)
         }
 
     override fun get(key: String): T {
         return map.getOrElse(key) { throw NoSuchElementException(key) }
     }
 
+    /**
+     * Without sorting, entities are paged in key order, taken from the key index.  Entities are read only until the page is filled, so those after
+     * the page are not read at all, and with no filters nor those before it.  With sorting, every (filtered) entity has to be read, but only the
+     * best offset + limit are retained while doing so - unless the sort can be taken from an index.
+     *
+     * Where a filter is on an indexed property, only the entities selected by the index are read
+     */
+    override fun get(query: DaoQuery): List<T> {
+        // resolve property names first, so that an invalid name is reported as such
+        query.filters.forEach { filter -> property(filter.property) }
+        val comparator = comparator(query.sortOrders)
+        try {
+            val store = map
+            val sortIndex = sortIndex(query.sortOrders)
+            if (sortIndex != null) {
+                val descending = query.sortOrders[0].direction == SortDirection.DESCENDING
+                val bounds = bounds(sortIndex, query.filters)
+                val entities = sortIndex.ids(entries(sortIndex), bounds[0]?.value, bounds[1]?.value, descending).mapNotNull { id -> store[id] }
+                val filtered = if (query.filters.isEmpty()) entities else entities.filter { entity -> matches(entity, query.filters) }
+                return filtered.drop(query.offset).take(query.limit).toList()
+            }
+
+            val selection = selection(query.filters)
+            if (query.sortOrders.isEmpty()) {
+                // ids selected from a property index are in value order, and limited by the filter, so are sorted
+                val keys = selection?.ids?.toList()?.sorted()?.asSequence() ?: keys().asSequence()
+                if (query.filters.isEmpty()) {
+                    return keys.drop(query.offset).take(query.limit).mapNotNull { key -> store[key] }.toList()
+                }
+                return keys.mapNotNull { key -> store[key] }.filter { entity -> matches(entity, query.filters) }.drop(query.offset).take(query.limit).toList()
+            }
+
+            val retain = Math.min(query.offset.toLong() + query.limit, Int.MAX_VALUE.toLong()).toInt()
+            // the head of the queue is the worst entity retained so far
+            val best = PriorityQueue<T>(comparator.reversed())
+            val candidates = selection?.ids?.mapNotNull { id -> store[id] } ?: store.values.asSequence()
+            for (entity in candidates) {
+                if (matches(entity, query.filters)) {
+                    best.add(entity)
+                    if (best.size > retain) {
+                        best.poll()
+                    }
+                }
+            }
+            return best.sortedWith(comparator).drop(query.offset).take(query.limit)
+        } catch (e: Exception) {
+            throw MapDbException("Failed to read from ${mapName}", e)
+        }
+    }
+
+    override fun count(filters: List<PropertyFilter>): Int {
+        val store = map
+        if (filters.isEmpty()) {
+            return store.size
+        }
+        val selection = selection(filters) ?: return store.values.count { entity -> matches(entity, filters) }
+        if (selection.complete) {
+            return selection.ids.count()
+        }
+        return selection.ids.mapNotNull { id -> store[id] }.count { entity -> matches(entity, filters) }
+    }
+
+    private fun matches(entity: T, filters: List<PropertyFilter>): Boolean {
+        return filters.all { filter -> filter.matches(property(filter.property).get(entity)) }
+    }
+
+    /**
+     * Sorts by each of [sortOrders] in turn, with nulls first, and finally by id so that the order is consistent
+     */
+    @Suppress("UNCHECKED_CAST")
+    private fun comparator(sortOrders: List<QuerySortOrder>): Comparator<T> {
+        var comparator: Comparator<T> = Comparator { _, _ -> 0 }
+        for (order in sortOrders) {
+            val property = property(order.sorted)
+            val byProperty = Comparator<T> { a, b -> compareValues(property.get(a) as Comparable<Any>?, property.get(b) as Comparable<Any>?) }
+            comparator = comparator.then(if (order.direction == SortDirection.DESCENDING) byProperty.reversed() else byProperty)
+        }
+        return comparator.thenBy { it.id }
+    }
+
+    private fun property(name: String): KProperty1<T, *> {
+        val cached = properties ?: entityJavaClass.kotlin.memberProperties.associateBy { it.name }.also { properties = it }
+        return cached[name] ?: throw IllegalArgumentException("${entityJavaClass.name} has no property '$name'")
+    }
+
+    private fun indexes(): Map<String, PropertyIndex<T>> {
+        return indexes ?: entityJavaClass.kotlin.memberProperties
+                .filter { property -> property.findAnnotation<Indexed>() != null }
+                .associate { property -> property.name to PropertyIndex(property, "$mapName#${property.name}") }
+                .also { indexes = it }
+    }
+
+    /**
+     * Returns the ids of all stored entities, in order, rebuilding them from the store if the key index definition has changed
+     */
+    private fun keys(): NavigableSet<String> {
+        val keys = daoFactory.handle(mapName, keyIndexName) { db -> db.treeSet(keyIndexName, Serializer.STRING).createOrOpen() }
+        return checked(keyIndexName, "id:$indexFormat", keys) { store -> keys.addAll(store.keys) }
+    }
+
+    /**
+     * Returns the entries of [index], rebuilding them from the stored entities if the index definition has changed
+     */
+    private fun entries(index: PropertyIndex<T>): NavigableSet<Array<Any?>> {
+        val entries = daoFactory.handle(mapName, index.name) { db -> index.open(db) }
+        return checked(index.name, "${index.definition}:$indexFormat", entries) { store -> store.values.forEach { entity -> index.add(entries, entity) } }
+    }
+
+    /**
+     * On first use by this DAO, compares [definition] with the one recorded in the store for the index called [name].  If they differ, [entries]
+     * is cleared, rebuilt by [build], and the new definition recorded, all in one commit.  Checked again after the store has been rolled back,
+     * as the rebuild may have been discarded
+     */
+    private fun <S : MutableSet<*>> checked(name: String, definition: String, entries: S, build: (ConcurrentMap<String, T>) -> Unit): S {
+        val built = builtIndexes ?: ConcurrentHashMap.newKeySet<String>().also { builtIndexes = it }
+        val rollbacks = daoFactory.rollbacks(mapName)
+        if (rollbacks != builtRollbacks) {
+            built.clear()
+            builtRollbacks = rollbacks
+        }
+        if (built.contains(name)) {
+            return entries
+        }
+        val definitions = daoFactory.handle(mapName, definitionsName) { db -> db.hashMap(definitionsName, Serializer.STRING, Serializer.STRING).createOrOpen() }
+        val store = map
+        val rebuilt = daoFactory.writing(mapName) {
+            synchronized(store) {
+                if (definitions[name] == definition) {
+                    false
+                } else {
+                    entries.clear()
+                    build(store)
+                    definitions[name] = definition
+                    true
+                }
+            }
+        }
+        if (rebuilt) {
+            daoFactory.written(mapName)
+        }
+        built.add(name)
+        return entries
+    }
+
+    /**
+     * An index can provide the sort only if it is the sole sort order, and the property cannot be null (null values are not indexed)
+     */
+    private fun sortIndex(sortOrders: List<QuerySortOrder>): PropertyIndex<T>? {
+        if (sortOrders.size != 1) {
+            return null
+        }
+        val index = indexes()[sortOrders[0].sorted] ?: return null
+        return if (index.nullable) null else index
+    }
+
+    /**
+     * Selects candidate ids using the index of the first filtered property which has one.  The selection is complete if there are no filters
+     * other than those used to select from the index
+     */
+    private fun selection(filters: List<PropertyFilter>): IndexSelection? {
+        val indexes = indexes()
+        if (indexes.isEmpty()) {
+            return null
+        }
+        val usable = filters.filter { filter ->
+            val index = indexes[filter.property]
+            index != null && filter.match != FilterMatch.CONTAINS && index.accepts(filter.value)
+        }
+        if (usable.isEmpty()) {
+            return null
+        }
+        val index = indexes.getValue(usable[0].property)
+        val bounds = bounds(index, filters)
+        val complete = filters.size == bounds.filterNotNull().distinct().size
+        return IndexSelection(index.ids(entries(index), bounds[0]?.value, bounds[1]?.value, false), complete)
+    }
+
+    /**
+     * Returns the filters which give the lower and upper bounds of [index] - both are the same EQUALS filter if there is one.  Either may be null
+     */
+    private fun bounds(index: PropertyIndex<T>, filters: List<PropertyFilter>): List<PropertyFilter?> {
+        val onProperty = filters.filter { filter -> filter.property == index.property.name && index.accepts(filter.value) }
+        val equals = onProperty.firstOrNull { filter -> filter.match == FilterMatch.EQUALS }
+        if (equals != null) {
+            return listOf(equals, equals)
+        }
+        return listOf(onProperty.firstOrNull { filter -> filter.match == FilterMatch.AT_LEAST }, onProperty.firstOrNull { filter -> filter.match == FilterMatch.AT_MOST })
+    }
+
     override fun put(element: T) {
-        val key = element.id
-        map[key] = element
+        write(element)
         commit(element)
     }
 
 
     override fun update(element: T) {
-        val key = element.id
-        map[key] = element
+        write(element)
         commit(element)
     }
 
+    /**
+     * Writes [element], adds it to the key index, and updates its index entries if there are any.  Commits of the store are held off until all
+     * of these are written, and if any fails, those already made are reversed
+     */
+    private fun write(element: T) {
+        val store = map
+        val keys = keys()
+        // opened (and if necessary rebuilt, which commits) before holding off commits
+        val entries = indexes().values.associate { index -> index to entries(index) }
+        daoFactory.writing(mapName) {
+            if (entries.isEmpty()) {
+                store[element.id] = element
+                keys.add(element.id)
+            } else {
+                synchronized(store) {
+                    val previous = store.put(element.id, element)
+                    try {
+                        keys.add(element.id)
+                        entries.forEach { (index, indexEntries) -> index.replace(indexEntries, previous, element) }
+                    } catch (e: Exception) {
+                        entries.forEach { (index, indexEntries) -> index.restore(indexEntries, previous, element) }
+                        if (previous == null) {
+                            store.remove(element.id)
+                            keys.remove(element.id)
+                        } else {
+                            store[element.id] = previous
+                        }
+                        throw e
+                    }
+                }
+            }
+        }
+    }
+
     override fun close() {
-        daoFactory.db().close()
+        daoFactory.close()
     }
 
     override fun isClosed(): Boolean {
-        return daoFactory.db().isClosed()
+        return daoFactory.isClosed(mapName)
     }
 
 
     override fun insert(vararg beans: T) {
-        beans.forEach { bean -> put(bean) }
+        insertAll(beans.asList())
+    }
+
+    override fun insertAll(beans: Collection<T>) {
+        try {
+            daoFactory.unitOfWork {
+                beans.forEach { bean -> write(bean) }
+                daoFactory.written(mapName)
+            }
+        } catch (e: Exception) {
+            throw MapDbException("Failed to commit. One possible cause is a non-null Kotlin property element being null? $mapName", e)
+        }
+    }
+
+    override fun <R> unitOfWork(work: () -> R): R {
+        return daoFactory.unitOfWork(work)
     }
 
     private fun commit(element: T) {
         try {
-            db.commit()
+            daoFactory.written(mapName)
         } catch (e: Exception) {
             throw MapDbException("Failed to commit. One possible cause is a non-null Kotlin property element being null? ${element.javaClass}", e)
         }
@@ -73,4 +351,100 @@ class MapDBBaseDao<T : Entity>(val daoFactory: MapDbFormDaoFactory, entityClass:
 
 }
 
+/**
+ * Ids selected from an index.  [complete] is true if every id is known to match the filters, without reading the entity
+ */
+internal class IndexSelection(val ids: Sequence<String>, val complete: Boolean)
+
+/**
+ * A secondary index of [property], held as a tree set of (value, id) named [name]
+ */
+internal class PropertyIndex<T : Entity>(val property: KProperty1<T, *>, val name: String) {
+    private val valueClass: KClass<*> = property.returnType.classifier as? KClass<*>
+            ?: throw IllegalArgumentException("Cannot index ${property.name}, its type is not a class")
+    val nullable: Boolean = property.returnType.isMarkedNullable
+    /**
+     * Identifies what is held in the index, so that it is rebuilt if the property changes type
+     */
+    val definition: String = "${valueClass.qualifiedName}:$nullable"
+
+    init {
+        if (!valueClass.isSubclassOf(Comparable::class)) {
+            throw IllegalArgumentException("Cannot index ${property.name}, ${valueClass.qualifiedName} is not Comparable")
+        }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    fun open(db: DB): NavigableSet<Array<Any?>> {
+        return db.treeSet(name).serializer(SerializerArrayTuple(valueSerializer(), Serializer.STRING)).createOrOpen() as NavigableSet<Array<Any?>>
+    }
+
+    private fun valueSerializer(): Serializer<*> {
+        return when (valueClass) {
+            String::class -> Serializer.STRING
+            Int::class -> Serializer.INTEGER
+            Long::class -> Serializer.LONG
+            Double::class -> Serializer.DOUBLE
+            Float::class -> Serializer.FLOAT
+            Short::class -> Serializer.SHORT
+            Boolean::class -> Serializer.BOOLEAN
+            else -> Serializer.JAVA
+        }
+    }
+
+    /**
+     * True if [value] can be looked up in this index
+     */
+    fun accepts(value: Any?): Boolean {
+        return value != null && valueClass.javaObjectType.isInstance(value)
+    }
+
+    fun add(entries: NavigableSet<Array<Any?>>, entity: T) {
+        property.get(entity)?.let { value -> entries.add(arrayOf<Any?>(value, entity.id)) }
+    }
+
+    fun replace(entries: NavigableSet<Array<Any?>>, previous: T?, entity: T) {
+        val previousValue = previous?.let { property.get(it) }
+        val value = property.get(entity)
+        if (previous != null && previousValue == value) {
+            return
+        }
+        previousValue?.let { entries.remove(arrayOf<Any?>(it, entity.id)) }
+        value?.let { entries.add(arrayOf<Any?>(it, entity.id)) }
+    }
+
+    /**
+     * Reverses [replace] - this is safe to call whether or not [replace] has been called
+     */
+    fun restore(entries: NavigableSet<Array<Any?>>, previous: T?, entity: T) {
+        val previousValue = previous?.let { property.get(it) }
+        val value = property.get(entity)
+        if (previous != null && previousValue == value) {
+            return
+        }
+        value?.let { entries.remove(arrayOf<Any?>(it, entity.id)) }
+        previousValue?.let { entries.add(arrayOf<Any?>(it, entity.id)) }
+    }
+
+    /**
+     * Ids of entities with values between [from] and [to] inclusive, in value order.  A null bound is open ended.  In a tuple, a missing
+     * element sorts first and a null element sorts last, so (from) and (to, null) bracket all the ids for those values
+     */
+    fun ids(entries: NavigableSet<Array<Any?>>, from: Any?, to: Any?, descending: Boolean): Sequence<String> {
+        val range: NavigableSet<Array<Any?>> = when {
+            from != null && to != null -> entries.subSet(arrayOf<Any?>(from), true, arrayOf<Any?>(to, null), true)
+            from != null -> entries.tailSet(arrayOf<Any?>(from), true)
+            to != null -> entries.headSet(arrayOf<Any?>(to, null), true)
+            else -> entries
+        }
+        val ordered = if (descending) range.descendingSet() else range
+        return ordered.asSequence().map { entry -> entry[1] as String }
+    }
+}
+
+/**
+ * The version of the index layout.  Change it to have every index rebuilt the next time it is used
+ */
+internal const val indexFormat = 1
+
 class MapDbException(msg: String, e: Exception) : RuntimeException(msg, e)
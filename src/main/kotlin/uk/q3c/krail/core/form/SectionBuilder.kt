@@ -9,7 +9,6 @@ import com.vaadin.ui.Component
 import com.vaadin.ui.Grid
 import com.vaadin.ui.Panel
 import com.vaadin.ui.VerticalLayout
-import net.jodah.typetools.TypeResolver
 import org.apache.commons.lang3.reflect.FieldUtils
 import uk.q3c.krail.core.i18n.DescriptionKey
 import uk.q3c.krail.core.i18n.LabelKey
@@ -30,6 +29,7 @@ import kotlin.reflect.KClass
  * The values returned from [buildDetail] and [buildTable] give access to the components created by this build process,
  * so that they can be modified if required.
  *
+ * Property configurations are taken from [blueprint], which is compiled from [configuration] unless a cached one is supplied
  */
 class StandardFormSectionBuilder<BEAN : Entity>(
         val entityClass: KClass<BEAN>,
@@ -38,19 +38,20 @@ class StandardFormSectionBuilder<BEAN : Entity>(
         private val currentLocale: CurrentLocale,
         private val propertySpecCreator: PropertyConfigurationCreator,
         val formSupport: FormSupport,
-        val userNotifier: UserNotifier) {
+        val userNotifier: UserNotifier,
+        val blueprint: SectionBlueprint = SectionBlueprint.compile(configuration, propertySpecCreator)) {
 
     var binder: KrailBeanValidationBinder<BEAN> = binderFactory.create(entityClass)
 
+    /**
+     * Builds a table of the entities.  If [warmedPage] is given, the table's first count and fetch are taken from it
+     */
     @Suppress("UNCHECKED_CAST")
-    fun buildTable(form: Form, formDaoFactory: FormDaoFactory, translate: Translate): FormSection {
-        PropertyConfigurationBuilder().build(configuration, propertySpecCreator)
+    fun buildTable(form: Form, formDaoFactory: FormDaoFactory, translate: Translate, warmedPage: WarmedPage? = null): FormSection {
 //        val propertySet: PropertySet<BEAN> = BeanPropertySet.get(configuration.entityClass.java, false, PropertyFilterDefinition(1,listOf() )) as PropertySet<BEAN>
 //        val grid = Grid<BEAN>(propertySet) this constructor is protected - could sub-class
         val grid = Grid(configuration.entityClass) as Grid<BEAN>
         val formDao: FormDao<BEAN> = formDaoFactory.getDao(configuration.entityClass.kotlin) as FormDao<BEAN>
-        val items = formDao.get()
-        grid.setItems(items)
         grid.locale = currentLocale.locale
         grid.setSelectionMode(Grid.SelectionMode.SINGLE)
         grid.setColumnOrder(*(configuration.columnOrder.toTypedArray()))
@@ -66,12 +67,12 @@ class StandardFormSectionBuilder<BEAN : Entity>(
 
 
         // set the captions from the config
-        configuration.properties.forEach { (k, v) ->
-            if (v.caption != LabelKey.Unnamed) {
-                grid.getColumn(k).caption = translate.from(v.caption)
+        blueprint.properties.forEach { p ->
+            if (p.configuration.caption != LabelKey.Unnamed) {
+                grid.getColumn(p.name).caption = translate.from(p.configuration.caption)
             }
         }
-        val fts = FormTableSection(form, grid, formDao)
+        val fts = FormTableSection(form, grid, formDao, warmedPage)
         grid.addSelectionListener(fts)
         return fts
     }
@@ -80,24 +81,16 @@ class StandardFormSectionBuilder<BEAN : Entity>(
     fun buildDetail(formDaoFactory: FormDaoFactory, translate: Translate, editSaveCancelBuilder: EditSaveCancelBuilder): FormDetailSection<BEAN> {
         val componentMap: MutableMap<String, DetailPropertyInfo> = mutableMapOf()
 
-        PropertyConfigurationBuilder().build(configuration, propertySpecCreator)
         val dao = formDaoFactory.getDao(entityClass = entityClass)
-        for (propertySpecEntry in configuration.properties) {
-            val propertySpec = propertySpecEntry.value
-            propertySpec.merge()
+        for (property in blueprint.properties) {
+            val propertySpec = property.configuration
             val component = formSupport.componentFor(propertySpec)
             if (component is AbstractComponent) {
                 component.styleName = propertySpec.styleAttributes.combinedStyle()
                 componentMap[propertySpec.name] = DetailPropertyInfo(component = component, captionKey = propertySpec.caption, descriptionKey = propertySpec.description)
             }
             // we have a component but we need to know the type of data it requires so we can select the right converter
-            val presentationValueClass = when (propertySpec.fieldType) {
-                FieldType.STANDARD -> TypeResolver.resolveRawArgument(HasValue::class.java, component.javaClass).kotlin
-                FieldType.SINGLE_SELECT -> propertySpec.propertyValueClass.kotlin
-                FieldType.MULTI_SELECT -> Set::class
-
-            }
-            doBind(propertySpec.propertyValueClass.kotlin, presentationValueClass, component, propertySpec, translate)
+            doBind(property.modelClass, property.presentationValueClass(component), component, propertySpec, translate)
 
         }
         val baseLayout = VerticalLayout()
@@ -116,17 +109,10 @@ class StandardFormSectionBuilder<BEAN : Entity>(
             escList.add(tc)
         }
 
-        // add fields for properties to the layout in the order specified by configuration.fieldOrder, unless it is empty,
-        // in which case we use component map - this will return fields in the order Java returned fields by reflection,
-        // and is therefore not predictable
-        if (configuration.fieldOrder.isEmpty()) {
-            configuration.fieldOrder = componentMap.keys
-        }
-
-
+        // add fields for properties to the layout in the order fixed by the blueprint
         val fieldLayout = configuration.layout.newInstance()
         baseLayout.addComponent(fieldLayout)
-        configuration.fieldOrder.forEach { p ->
+        blueprint.fieldOrder.forEach { p ->
             val entry = componentMap[p]
             if (entry != null) {
                 fieldLayout.addComponent(entry.component)
@@ -150,17 +136,17 @@ class StandardFormSectionBuilder<BEAN : Entity>(
 
 
     @Suppress("UNCHECKED_CAST")
-    private fun <MODEL : Any, PRESENTATIONVALUE : Any, PRESENTATION : HasValue<PRESENTATIONVALUE>> doBind(@Suppress("UNUSED_PARAMETER") modelClass: KClass<MODEL>, presentationValueClass: KClass<PRESENTATIONVALUE>, component: HasValue<*>, propertySpec: PropertyConfiguration, translate: Translate) {
+    private fun <MODEL : Any, PRESENTATIONVALUE : Any, PRESENTATION : HasValue<PRESENTATIONVALUE>> doBind(modelClass: KClass<MODEL>, presentationValueClass: KClass<PRESENTATIONVALUE>, component: HasValue<*>, propertySpec: PropertyConfiguration, translate: Translate) {
         val typedComponent: PRESENTATION = component as PRESENTATION
         val binderBuilder = binder.forField(typedComponent)
 
-        val converter: Converter<PRESENTATIONVALUE, MODEL> = formSupport.converterFor(presentationValueClass = presentationValueClass, modelClass = propertySpec.propertyValueClass.kotlin as KClass<MODEL>)
+        val converter: Converter<PRESENTATIONVALUE, MODEL> = formSupport.converterFor(presentationValueClass = presentationValueClass, modelClass = modelClass)
 
         val binderBuilderWithConverter = binderBuilder.withConverter(converter)
+        // the validators are shared through the blueprint, so are wrapped for this build rather than given this build's Translate
         propertySpec.validators.forEach { v ->
-            val validator = v as KrailValidator<in MODEL>
-            validator.translate = translate
-            binderBuilderWithConverter.withValidator(validator)
+            val validator = v as KrailValidator<MODEL>
+            binderBuilderWithConverter.withValidator(TranslatingValidator(validator, translate, currentLocale))
         }
 
         binderBuilderWithConverter.bind(propertySpec.name)
@@ -4,8 +4,10 @@ import com.vaadin.data.ValidationResult
 import com.vaadin.data.Validator
 import com.vaadin.data.ValueContext
 import uk.q3c.krail.core.validation.ValidationKey
+import uk.q3c.krail.i18n.CurrentLocale
 import uk.q3c.krail.i18n.I18NKey
 import uk.q3c.krail.i18n.Translate
+import java.io.Serializable
 import java.math.BigDecimal
 import java.math.BigInteger
 import java.time.LocalDate
@@ -18,206 +20,198 @@ import java.util.*
  */
 class MustBeTrue : BaseValidator<Boolean>(ValidationKey.AssertTrue) {
 
-    override fun getMessage(value: Boolean): String {
-        return translate.from(messageKey)
+    override fun getMessage(value: Boolean, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale)
     }
 
-    override fun doApply(value: Boolean, context: ValueContext): ValidationResult {
-        return toResult(value, value)
+    override fun isValid(value: Boolean, context: ValueContext): Boolean {
+        return value
     }
 }
 
 class MustBeFalse : BaseValidator<Boolean>(ValidationKey.AssertFalse) {
-    override fun getMessage(value: Boolean): String {
-        return translate.from(messageKey)
+    override fun getMessage(value: Boolean, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale)
     }
 
-    override fun doApply(value: Boolean, context: ValueContext): ValidationResult {
-        return toResult(value, !value)
+    override fun isValid(value: Boolean, context: ValueContext): Boolean {
+        return !value
     }
 }
 
 class MaxInt(val max: Int) : BaseValidator<Int>(ValidationKey.Max) {
-    override fun getMessage(value: Int): String {
-        return translate.from(messageKey, max)
+    override fun getMessage(value: Int, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, max)
     }
 
-    override fun doApply(value: Int, context: ValueContext): ValidationResult {
-        return toResult(value, value <= max)
+    override fun isValid(value: Int, context: ValueContext): Boolean {
+        return value <= max
     }
 }
 
 class MinLong(val min: Long) : BaseValidator<Long>(ValidationKey.Min) {
-    override fun doApply(value: Long, context: ValueContext): ValidationResult {
-        return toResult(value, value >= min)
+    override fun isValid(value: Long, context: ValueContext): Boolean {
+        return value >= min
     }
 
-    override fun getMessage(value: Long): String {
-        return translate.from(messageKey, min)
+    override fun getMessage(value: Long, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, min)
     }
 }
 
 class MaxLong(val max: Long) : BaseValidator<Long>(ValidationKey.Max) {
-    override fun doApply(value: Long, context: ValueContext): ValidationResult {
-        return toResult(value, value <= max)
+    override fun isValid(value: Long, context: ValueContext): Boolean {
+        return value <= max
     }
 
-    override fun getMessage(value: Long): String {
-        return translate.from(messageKey, max)
+    override fun getMessage(value: Long, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, max)
     }
 }
 
 class MinInt(val min: Int) : BaseValidator<Int>(ValidationKey.Min) {
-    override fun getMessage(value: Int): String {
-        return translate.from(messageKey, min)
+    override fun getMessage(value: Int, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, min)
     }
 
-    override fun doApply(value: Int, context: ValueContext): ValidationResult {
-        return toResult(value, value >= min)
+    override fun isValid(value: Int, context: ValueContext): Boolean {
+        return value >= min
     }
 }
 
 class MaxShort(val max: Short) : BaseValidator<Short>(ValidationKey.Max) {
-    override fun getMessage(value: Short): String {
-        return translate.from(messageKey, max)
+    override fun getMessage(value: Short, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, max)
     }
 
-    override fun doApply(value: Short, context: ValueContext): ValidationResult {
-        return toResult(value, value <= max)
+    override fun isValid(value: Short, context: ValueContext): Boolean {
+        return value <= max
     }
 }
 
 class MinShort(val min: Short) : BaseValidator<Short>(ValidationKey.Min) {
-    override fun getMessage(value: Short): String {
-        return translate.from(messageKey, min)
+    override fun getMessage(value: Short, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, min)
     }
 
-    override fun doApply(value: Short, context: ValueContext): ValidationResult {
-        return toResult(value, value >= min)
+    override fun isValid(value: Short, context: ValueContext): Boolean {
+        return value >= min
     }
 }
 
 class MaxByte(val max: Byte) : BaseValidator<Byte>(ValidationKey.Max) {
-    override fun getMessage(value: Byte): String {
-        return translate.from(messageKey, max)
+    override fun getMessage(value: Byte, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, max)
     }
 
-    override fun doApply(value: Byte, context: ValueContext): ValidationResult {
-        return toResult(value, value <= max)
+    override fun isValid(value: Byte, context: ValueContext): Boolean {
+        return value <= max
     }
 }
 
 class MinByte(val min: Byte) : BaseValidator<Byte>(ValidationKey.Min) {
-    override fun getMessage(value: Byte): String {
-        return translate.from(messageKey, min)
+    override fun getMessage(value: Byte, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, min)
     }
 
-    override fun doApply(value: Byte, context: ValueContext): ValidationResult {
-        return toResult(value, value >= min)
+    override fun isValid(value: Byte, context: ValueContext): Boolean {
+        return value >= min
     }
 }
 
 class MaxBigInteger(val max: BigInteger) : BaseValidator<BigInteger>(ValidationKey.Max) {
-    override fun getMessage(value: BigInteger): String {
-        return translate.from(messageKey, max)
+    override fun getMessage(value: BigInteger, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, max)
     }
 
-    override fun doApply(value: BigInteger, context: ValueContext): ValidationResult {
-        return toResult(value, value <= max)
+    override fun isValid(value: BigInteger, context: ValueContext): Boolean {
+        return value <= max
     }
 }
 
 class MinBigInteger(val min: BigInteger) : BaseValidator<BigInteger>(ValidationKey.Min) {
-    override fun getMessage(value: BigInteger): String {
-        return translate.from(messageKey, min)
+    override fun getMessage(value: BigInteger, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, min)
     }
 
-    override fun doApply(value: BigInteger, context: ValueContext): ValidationResult {
-        return toResult(value, value >= min)
+    override fun isValid(value: BigInteger, context: ValueContext): Boolean {
+        return value >= min
     }
 }
 
 class MaxBigDecimal(val max: BigDecimal) : BaseValidator<BigDecimal>(ValidationKey.DecimalMax) {
-    override fun getMessage(value: BigDecimal): String {
-        return translate.from(messageKey, max)
+    override fun getMessage(value: BigDecimal, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, max)
     }
 
-    override fun doApply(value: BigDecimal, context: ValueContext): ValidationResult {
-        return toResult(value, value <= max)
+    override fun isValid(value: BigDecimal, context: ValueContext): Boolean {
+        return value <= max
     }
 }
 
 class MinBigDecimal(val min: BigDecimal) : BaseValidator<BigDecimal>(ValidationKey.DecimalMin) {
-    override fun getMessage(value: BigDecimal): String {
-        return translate.from(messageKey, min)
+    override fun getMessage(value: BigDecimal, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, min)
     }
 
-    override fun doApply(value: BigDecimal, context: ValueContext): ValidationResult {
-        return toResult(value, value >= min)
+    override fun isValid(value: BigDecimal, context: ValueContext): Boolean {
+        return value >= min
     }
 }
 
 class StringSize(val min: Int = 0, val max: Int = Int.MAX_VALUE) : BaseValidator<String>(ValidationKey.Size) {
-    override fun getMessage(value: String): String {
-        return translate.from(messageKey, min, max)
+    override fun getMessage(value: String, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, min, max)
     }
 
-    override fun doApply(value: String, context: ValueContext): ValidationResult {
-        val r = toResult(value, value.length >= min)
-        if (r.errorLevel == null) {
-            return toResult(value, value.length <= max)
-        }
-        return r
+    override fun isValid(value: String, context: ValueContext): Boolean {
+        return value.length in min..max
     }
 }
 
 
 class CollectionSize(val min: Int = 0, val max: Int = Int.MAX_VALUE) : BaseValidator<Collection<*>>(ValidationKey.Size) {
-    override fun getMessage(value: Collection<*>): String {
-        return translate.from(messageKey, min, max)
+    override fun getMessage(value: Collection<*>, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, min, max)
     }
 
-    override fun doApply(value: Collection<*>, context: ValueContext): ValidationResult {
-        val r = toResult(value, value.size >= min)
-        if (r.errorLevel == null) {
-            return toResult(value, value.size <= max)
-        }
-        return r
+    override fun isValid(value: Collection<*>, context: ValueContext): Boolean {
+        return value.size in min..max
     }
 }
 
 class MustNotBeNull : BaseValidator<Any>(ValidationKey.NotNull) {
-    override fun getMessage(value: Any): String {
-        return translate.from(messageKey)
+    override fun getMessage(value: Any, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale)
     }
 
-    override fun doApply(value: Any, context: ValueContext): ValidationResult {
+    override fun isValid(value: Any, context: ValueContext): Boolean {
         throw InvalidValueForValidator("Should only be called with nullable value")
     }
 
-    override fun apply(value: Any?, context: ValueContext): ValidationResult {
-        return toResult(value, value != null)
+    override fun apply(value: Any?, context: ValueContext, translate: Translate, locale: Locale): ValidationResult {
+        return toResult(value != null, value, translate, locale)
     }
 }
 
 
 class MustBeNull : BaseValidator<Any>(ValidationKey.Null) {
-    override fun getMessage(value: Any): String {
-        return translate.from(messageKey)
+    override fun getMessage(value: Any, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale)
     }
 
-    override fun doApply(value: Any, context: ValueContext): ValidationResult {
+    override fun isValid(value: Any, context: ValueContext): Boolean {
         throw InvalidValueForValidator("Should only be called with nullable value")
     }
 
-    override fun apply(value: Any?, context: ValueContext): ValidationResult {
-        return toResult(value, value == null)
+    override fun apply(value: Any?, context: ValueContext, translate: Translate, locale: Locale): ValidationResult {
+        return toResult(value == null, value, translate, locale)
     }
 }
 
 class MustMatch(val pattern: String, vararg flags: javax.validation.constraints.Pattern.Flag) : BaseValidator<Any>(ValidationKey.Pattern) {
-    override fun getMessage(value: Any): String {
-        return translate.from(messageKey)
+    override fun getMessage(value: Any, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale)
     }
 
     val p: java.util.regex.Pattern
@@ -230,124 +224,140 @@ class MustMatch(val pattern: String, vararg flags: javax.validation.constraints.
         p = java.util.regex.Pattern.compile(pattern, intFlag)
     }
 
-    override fun doApply(value: Any, context: ValueContext): ValidationResult {
-        return toResult(value, value == null)
+    override fun isValid(value: Any, context: ValueContext): Boolean {
+        return value == null
     }
 }
 
 class PastLocalDateTime(val dateTime: LocalDateTime) : BaseValidator<LocalDateTime>(ValidationKey.Past) {
-    override fun getMessage(value: LocalDateTime): String {
-        return translate.from(messageKey, dateTime)
+    override fun getMessage(value: LocalDateTime, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, dateTime)
     }
 
-    override fun doApply(value: LocalDateTime, context: ValueContext): ValidationResult {
-        return toResult(value, value.isBefore(dateTime))
+    override fun isValid(value: LocalDateTime, context: ValueContext): Boolean {
+        return value.isBefore(dateTime)
     }
 }
 
 class PastLocalDate(val date: LocalDate) : BaseValidator<LocalDate>(ValidationKey.Past) {
-    override fun getMessage(value: LocalDate): String {
-        return translate.from(messageKey, date)
+    override fun getMessage(value: LocalDate, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, date)
     }
 
-    override fun doApply(value: LocalDate, context: ValueContext): ValidationResult {
-        return toResult(value, value.isBefore(date))
+    override fun isValid(value: LocalDate, context: ValueContext): Boolean {
+        return value.isBefore(date)
     }
 }
 
 class PastOffsetDateTime(val dateTime: OffsetDateTime) : BaseValidator<OffsetDateTime>(ValidationKey.Past) {
-    override fun getMessage(value: OffsetDateTime): String {
-        return translate.from(messageKey, dateTime)
+    override fun getMessage(value: OffsetDateTime, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, dateTime)
     }
 
-    override fun doApply(value: OffsetDateTime, context: ValueContext): ValidationResult {
-        return toResult(value, value.isBefore(dateTime))
+    override fun isValid(value: OffsetDateTime, context: ValueContext): Boolean {
+        return value.isBefore(dateTime)
     }
 }
 
 class PastDate(val dateTime: Date) : BaseValidator<Date>(ValidationKey.Past) {
-    override fun getMessage(value: Date): String {
-        return translate.from(messageKey, dateTime)
+    override fun getMessage(value: Date, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, dateTime)
     }
 
-    override fun doApply(value: Date, context: ValueContext): ValidationResult {
-        return toResult(value, value.time < dateTime.time)
+    override fun isValid(value: Date, context: ValueContext): Boolean {
+        return value.time < dateTime.time
     }
 }
 
 
 class FutureLocalDateTime(val dateTime: LocalDateTime) : BaseValidator<LocalDateTime>(ValidationKey.Future) {
-    override fun getMessage(value: LocalDateTime): String {
-        return translate.from(messageKey, dateTime)
+    override fun getMessage(value: LocalDateTime, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, dateTime)
     }
 
-    override fun doApply(value: LocalDateTime, context: ValueContext): ValidationResult {
-        return toResult(value, dateTime.isBefore(value))
+    override fun isValid(value: LocalDateTime, context: ValueContext): Boolean {
+        return dateTime.isBefore(value)
     }
 }
 
 class FutureOffsetDateTime(val dateTime: OffsetDateTime) : BaseValidator<OffsetDateTime>(ValidationKey.Future) {
-    override fun getMessage(value: OffsetDateTime): String {
-        return translate.from(messageKey, dateTime)
+    override fun getMessage(value: OffsetDateTime, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, dateTime)
     }
 
-    override fun doApply(value: OffsetDateTime, context: ValueContext): ValidationResult {
-        return toResult(value, dateTime.isBefore(value))
+    override fun isValid(value: OffsetDateTime, context: ValueContext): Boolean {
+        return dateTime.isBefore(value)
     }
 }
 
 class FutureLocalDate(val date: LocalDate) : BaseValidator<LocalDate>(ValidationKey.Future) {
-    override fun getMessage(value: LocalDate): String {
-        return translate.from(messageKey, date)
+    override fun getMessage(value: LocalDate, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, date)
     }
 
-    override fun doApply(value: LocalDate, context: ValueContext): ValidationResult {
-        return toResult(value, date.isBefore(value))
+    override fun isValid(value: LocalDate, context: ValueContext): Boolean {
+        return date.isBefore(value)
     }
 }
 
 class FutureDate(val dateTime: Date) : BaseValidator<Date>(ValidationKey.Future) {
-    override fun getMessage(value: Date): String {
-        return translate.from(messageKey, dateTime)
+    override fun getMessage(value: Date, translate: Translate, locale: Locale): String {
+        return translate.from(messageKey, locale, dateTime)
     }
 
-    override fun doApply(value: Date, context: ValueContext): ValidationResult {
-        return toResult(value, value.time > dateTime.time)
+    override fun isValid(value: Date, context: ValueContext): Boolean {
+        return value.time > dateTime.time
     }
 }
 
 
-interface KrailValidator<T> : Validator<T> {
-    var translate: Translate
-}
+/**
+ * A validator held by a [PropertyConfiguration], and therefore by the [FormBlueprint] compiled from it, so a single instance is shared by every
+ * form built from that configuration, in every session.  It must therefore hold no state of its own - the [Translate] and [Locale] used for
+ * its messages are supplied each time it is applied, usually through a [TranslatingValidator]
+ */
+interface KrailValidator<T> : Serializable {
 
-abstract class BaseValidator<T>(val messageKey: I18NKey) : KrailValidator<T> {
-    override lateinit var translate: Translate
+    fun apply(value: T?, context: ValueContext, translate: Translate, locale: Locale): ValidationResult
+}
 
+/**
+ * Binds a shared [KrailValidator] to the [Translate] of a single form build.  Messages are translated to the Locale of the component being
+ * validated, or to [currentLocale] if the component does not have one
+ */
+class TranslatingValidator<T>(private val validator: KrailValidator<T>, private val translate: Translate, private val currentLocale: CurrentLocale) : Validator<T> {
 
     override fun apply(value: T?, context: ValueContext): ValidationResult {
-        if (value == null) {
-            return toResult(null, true)
+        val locale = context.component.map { it.locale }.orElse(null) ?: currentLocale.locale
+        return validator.apply(value, context, translate, locale)
+    }
+}
+
+abstract class BaseValidator<T>(val messageKey: I18NKey) : KrailValidator<T> {
+
+    override fun apply(value: T?, context: ValueContext, translate: Translate, locale: Locale): ValidationResult {
+        return if (value == null) {
+            ValidationResult.ok()
         } else {
-            return doApply(value, context)
+            toResult(isValid(value, context), value, translate, locale)
         }
     }
 
-    abstract fun doApply(value: T, context: ValueContext): ValidationResult
+    abstract fun isValid(value: T, context: ValueContext): Boolean
 
 
-    abstract fun getMessage(value: T): String
+    abstract fun getMessage(value: T, translate: Translate, locale: Locale): String
 
 
-    protected fun toResult(value: T?, isValid: Boolean): ValidationResult {
+    protected fun toResult(isValid: Boolean, value: T?, translate: Translate, locale: Locale): ValidationResult {
         return if (isValid)
             ValidationResult.ok()
         else
             if (value == null) {
                 ValidationResult.error("null")
             } else {
-                ValidationResult.error(getMessage(value))
+                ValidationResult.error(getMessage(value, translate, locale))
             }
 
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,67 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.i18n
+
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.google.inject.Inject
+import java.text.CollationKey
+import java.text.Collator
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Provides one shared [Collator] per [Locale], and a shared cache of [CollationKey]s keyed by (label, Locale).  [Collator.getInstance]
+ * clones a prototype on every call, so using the pool avoids a clone for every label.  [CollationKey]s are immutable, so once created they
+ * can be re-used by all sessions - for example, to sort navigation components alphabetically.
+ *
+ * Bound as a Singleton by default.  Collators returned by [collator] are shared, and must not be modified.
+ */
+interface CollatorPool {
+
+    /**
+     * Returns the shared [Collator] for [locale].  The returned instance must not be modified
+     */
+    fun collator(locale: Locale): Collator
+
+    /**
+     * Returns the [CollationKey] for [label] in [locale], creating it only if it is not already held
+     */
+    fun collationKey(label: String, locale: Locale): CollationKey
+}
+
+
+class DefaultCollatorPool @Inject constructor() : CollatorPool {
+    private val collators: MutableMap<Locale, Collator> = ConcurrentHashMap()
+    private val collationKeys: Cache<LabelLocale, CollationKey> = CacheBuilder.newBuilder().maximumSize(maxCollationKeys).build()
+
+    override fun collator(locale: Locale): Collator {
+        return collators.computeIfAbsent(locale) { l -> Collator.getInstance(l) }
+    }
+
+    override fun collationKey(label: String, locale: Locale): CollationKey {
+        return collationKeys.get(LabelLocale(label, locale)) {
+            val collator = collator(locale)
+            // RuleBasedCollator is already synchronized, but other Collator implementations may not be
+            synchronized(collator) {
+                collator.getCollationKey(label)
+            }
+        }
+    }
+
+    companion object {
+        const val maxCollationKeys = 10000L
+    }
+}
+
+private data class LabelLocale(val label: String, val locale: Locale)
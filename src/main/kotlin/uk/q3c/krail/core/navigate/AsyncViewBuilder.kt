@@ -0,0 +1,149 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.navigate
+
+import com.google.inject.Inject
+import com.google.inject.Singleton
+import org.slf4j.LoggerFactory
+import uk.q3c.krail.config.ApplicationConfiguration
+import uk.q3c.krail.core.ui.ScopedUI
+import java.io.Serializable
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.Future
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+const val NAVIGATION_ASYNC_ENABLED = "navigation.async.enabled"
+const val NAVIGATION_ASYNC_THREADS = "navigation.async.threads"
+const val NAVIGATION_ASYNC_QUEUE_SIZE = "navigation.async.queue.size"
+const val NAVIGATION_PREFETCH_THREADS = "navigation.prefetch.threads"
+const val NAVIGATION_PREFETCH_QUEUE_SIZE = "navigation.prefetch.queue.size"
+
+/**
+ * Runs the build of a view outside the request thread (and therefore outside the Vaadin session lock), for the [DefaultNavigator].
+ *
+ * Async navigation is opt-in - it is used only when [NAVIGATION_ASYNC_ENABLED] is true in [ApplicationConfiguration], and push is enabled
+ * for the UI (see [KrailPushConfiguration]).  Without push, the client would not see the completed view until its next request.
+ */
+interface AsyncViewBuilder : Serializable {
+
+    /**
+     * Returns true if views for [ui] should be built asynchronously
+     */
+    fun isAsync(ui: ScopedUI): Boolean
+
+    /**
+     * Queues [task] to be run.  Returns the Future for the task, which the caller can cancel if the build is no longer wanted, or null if the
+     * task cannot be accepted (because the queue is full), in which case the caller should build the view synchronously
+     */
+    fun submit(task: Runnable): Future<*>?
+
+    /**
+     * Queues speculative work, such as that of the [ViewPrefetcher], on a separate queue from [submit], so that it can never delay a real
+     * navigation.  Returns false if the task cannot be accepted, in which case it should simply be dropped
+     */
+    fun prefetch(task: Runnable): Boolean
+
+    /**
+     * Releases any threads held.  Called when the application is stopped, after all services have been stopped (see
+     * [DefaultServletContextListener][uk.q3c.krail.core.guice.DefaultServletContextListener]).  Once stopped, [submit] returns null and
+     * [prefetch] returns false
+     */
+    fun stop()
+}
+
+/**
+ * Uses a bounded pool of [NAVIGATION_ASYNC_THREADS] daemon threads, with a queue of [NAVIGATION_ASYNC_QUEUE_SIZE].  Prefetch work has its own
+ * pool of [NAVIGATION_PREFETCH_THREADS] minimum priority threads, with a queue of [NAVIGATION_PREFETCH_QUEUE_SIZE].  Threads are released when
+ * idle.  Bound as a Singleton, so the pools are shared by all UIs.  [stop] shuts both pools down, waiting briefly for builds in progress
+ */
+@Singleton
+class DefaultAsyncViewBuilder @Inject constructor(applicationConfiguration: ApplicationConfiguration) : AsyncViewBuilder {
+    private val log = LoggerFactory.getLogger(this.javaClass.name)
+    private val enabled: Boolean = applicationConfiguration.getPropertyValue(NAVIGATION_ASYNC_ENABLED, false)
+    private val executor: ThreadPoolExecutor
+    private val prefetchExecutor: ThreadPoolExecutor
+
+    init {
+        val threads: Int = applicationConfiguration.getPropertyValue(NAVIGATION_ASYNC_THREADS, defaultThreads)
+        val queueSize: Int = applicationConfiguration.getPropertyValue(NAVIGATION_ASYNC_QUEUE_SIZE, defaultQueueSize)
+        executor = ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, ArrayBlockingQueue(queueSize), ViewBuildThreadFactory("krail-view-build",
+                Thread.NORM_PRIORITY))
+        executor.allowCoreThreadTimeOut(true)
+        val prefetchThreads: Int = applicationConfiguration.getPropertyValue(NAVIGATION_PREFETCH_THREADS, defaultPrefetchThreads)
+        val prefetchQueueSize: Int = applicationConfiguration.getPropertyValue(NAVIGATION_PREFETCH_QUEUE_SIZE, defaultPrefetchQueueSize)
+        prefetchExecutor = ThreadPoolExecutor(prefetchThreads, prefetchThreads, 60L, TimeUnit.SECONDS, ArrayBlockingQueue(prefetchQueueSize),
+                ViewBuildThreadFactory("krail-view-prefetch", Thread.MIN_PRIORITY))
+        prefetchExecutor.allowCoreThreadTimeOut(true)
+    }
+
+    override fun isAsync(ui: ScopedUI): Boolean {
+        return enabled && ui.pushConfiguration.pushMode.isEnabled
+    }
+
+    override fun submit(task: Runnable): Future<*>? {
+        return try {
+            executor.submit(task)
+        } catch (e: RejectedExecutionException) {
+            log.warn("View build queue is full, view will be built synchronously")
+            null
+        }
+    }
+
+    override fun prefetch(task: Runnable): Boolean {
+        return try {
+            prefetchExecutor.execute(task)
+            true
+        } catch (e: RejectedExecutionException) {
+            log.debug("Prefetch queue is full, prefetch skipped")
+            false
+        }
+    }
+
+    override fun stop() {
+        log.debug("Stopping view build executors")
+        executor.shutdown()
+        prefetchExecutor.shutdownNow()
+        try {
+            if (!executor.awaitTermination(stopTimeoutSeconds, TimeUnit.SECONDS)) {
+                log.warn("View builds still running after {} seconds, interrupting them", stopTimeoutSeconds)
+            }
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    companion object {
+        const val stopTimeoutSeconds = 5L
+        const val defaultThreads = 4
+        const val defaultQueueSize = 100
+        const val defaultPrefetchThreads = 1
+        const val defaultPrefetchQueueSize = 20
+    }
+}
+
+private class ViewBuildThreadFactory(private val namePrefix: String, private val priority: Int) : ThreadFactory {
+    private val count = AtomicInteger()
+
+    override fun newThread(r: Runnable): Thread {
+        val thread = Thread(r, "$namePrefix-${count.incrementAndGet()}")
+        thread.isDaemon = true
+        thread.priority = priority
+        return thread
+    }
+}
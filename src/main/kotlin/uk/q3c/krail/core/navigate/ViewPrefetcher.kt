@@ -0,0 +1,214 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.navigate
+
+import com.google.inject.Inject
+import com.google.inject.Key
+import com.google.inject.Singleton
+import org.slf4j.LoggerFactory
+import uk.q3c.krail.config.ApplicationConfiguration
+import uk.q3c.krail.core.form.DaoQuery
+import uk.q3c.krail.core.form.Entity
+import uk.q3c.krail.core.form.Form
+import uk.q3c.krail.core.form.FormBlueprints
+import uk.q3c.krail.core.form.FormConfiguration
+import uk.q3c.krail.core.form.FormDaoDataProvider
+import uk.q3c.krail.core.form.FormDaoFactory
+import uk.q3c.krail.core.form.FormTableDataCache
+import uk.q3c.krail.core.form.WarmedPage
+import uk.q3c.krail.core.navigate.sitemap.UserSitemap
+import uk.q3c.krail.core.navigate.sitemap.UserSitemapNode
+import uk.q3c.krail.core.view.component.AfterViewChangeBusMessage
+import uk.q3c.krail.core.view.component.ComponentIdGenerator
+import uk.q3c.util.guice.InjectorLocator
+import java.io.Serializable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+const val NAVIGATION_PREFETCH_ENABLED = "navigation.prefetch.enabled"
+const val NAVIGATION_PREFETCH_COUNT = "navigation.prefetch.count"
+
+/**
+ * Warms up the pages a user is most likely to move to next, after each view change.  Called by [DefaultNavigator] immediately after it
+ * publishes an [AfterViewChangeBusMessage]
+ */
+interface ViewPrefetcher : Serializable {
+
+    /**
+     * Records the transition represented by [busMessage], and prefetches the likely next pages from [userSitemap]
+     */
+    fun afterViewChange(busMessage: AfterViewChangeBusMessage, userSitemap: UserSitemap)
+}
+
+/**
+ * A simple model of page to page transitions, counting how often each page has been followed by another
+ */
+interface NavigationTransitions : Serializable {
+
+    fun record(fromPage: String, toPage: String)
+
+    fun count(fromPage: String, toPage: String): Int
+
+    /**
+     * Returns up to [max] pages, selected from [candidates] and from pages which have previously followed [fromPage]. Pages are ordered by the
+     * number of times they have followed [fromPage], most frequent first.  Pages with equal counts retain their [candidates] order
+     */
+    fun likelyNext(fromPage: String, candidates: List<String>, max: Int): List<String>
+}
+
+/**
+ * Called by [DefaultViewPrefetcher] for each page it prefetches, to load data into whatever cache the view for [node] will use.  This is
+ * called outside the Vaadin session lock, so must not use the UI or session
+ */
+interface ViewDataWarmer : Serializable {
+    fun warm(node: UserSitemapNode)
+}
+
+/**
+ * Warms the data for [Form] pages of the standard type, which display a table of entities when no id is given: it fetches the count and
+ * first page of the entities, and hands them to the [FormTableDataCache], from which the [FormDaoDataProvider] of the next table for that
+ * entity takes them instead of fetching them itself.  Other pages, and all pages if forms are not configured, are ignored
+ */
+class DefaultViewDataWarmer @Inject constructor(private val injectorLocator: InjectorLocator) : ViewDataWarmer {
+
+    override fun warm(node: UserSitemapNode) {
+        if (!Form::class.java.isAssignableFrom(node.viewClass) || !FormConfiguration::class.java.isAssignableFrom(node.viewConfiguration)) {
+            return
+        }
+        val injector = injectorLocator.get()
+        val blueprints = injector.getExistingBinding(Key.get(FormBlueprints::class.java)) ?: return
+        val daoFactory = injector.getExistingBinding(Key.get(FormDaoFactory::class.java)) ?: return
+        val dataCache = injector.getExistingBinding(Key.get(FormTableDataCache::class.java)) ?: return
+        val blueprint = blueprints.provider.get().blueprintFor(node.viewConfiguration)
+        if (blueprint.configuration.formType != "standard") {
+            return
+        }
+        val entityClass = blueprint.section().configuration.entityClass
+        if (entityClass == Entity::class.java) {
+            return
+        }
+        val dao = daoFactory.provider.get().getDao(entityClass.kotlin)
+        val count = dao.count()
+        dataCache.provider.get().put(entityClass, WarmedPage(count, dao.get(DaoQuery(limit = warmPageSize))))
+    }
+
+    companion object {
+        const val warmPageSize = 50
+    }
+}
+
+/**
+ * Held for the life of the application, so that the model learns from all users.  The number of pages tracked is limited by [maxPages], both
+ * for the 'from' pages and for the pages which follow each of them
+ */
+@Singleton
+class DefaultNavigationTransitions @Inject constructor() : NavigationTransitions {
+    private val transitions: MutableMap<String, MutableMap<String, AtomicInteger>> = ConcurrentHashMap()
+
+    override fun record(fromPage: String, toPage: String) {
+        if (fromPage == toPage) {
+            return
+        }
+        val targets = transitions[fromPage] ?: if (transitions.size < maxPages) {
+            transitions.computeIfAbsent(fromPage) { ConcurrentHashMap() }
+        } else {
+            return
+        }
+        val counter = targets[toPage] ?: if (targets.size < maxPages) {
+            targets.computeIfAbsent(toPage) { AtomicInteger() }
+        } else {
+            return
+        }
+        counter.incrementAndGet()
+    }
+
+    override fun count(fromPage: String, toPage: String): Int {
+        return transitions[fromPage]?.get(toPage)?.get() ?: 0
+    }
+
+    override fun likelyNext(fromPage: String, candidates: List<String>, max: Int): List<String> {
+        val pages = LinkedHashSet<String>(candidates)
+        transitions[fromPage]?.keys?.let { pages.addAll(it) }
+        pages.remove(fromPage)
+        // sortedByDescending is stable, so equal counts keep their candidate order
+        return pages.sortedByDescending { page -> count(fromPage, page) }.take(max)
+    }
+
+    companion object {
+        const val maxPages = 1000
+    }
+}
+
+/**
+ * After each view change, the candidates for the next page are the sub-pages of the current page and the pages in its breadcrumb (which
+ * between them are what [DefaultPageNavigationPanel], [NavigationButtonPanel] and the navigation tree usually offer), together with any pages
+ * which have previously followed the current page.  These are ranked by [NavigationTransitions], and the top [NAVIGATION_PREFETCH_COUNT]
+ * resolved to their [UserSitemapNode] on the calling thread.
+ *
+ * The warming itself is queued with [AsyncViewBuilder.prefetch], outside the Vaadin session lock and on a separate queue from navigation
+ * builds. For each node it creates the Guice binding for the view class, compiles the view class for the [ComponentIdGenerator] and calls the
+ * [ViewDataWarmer].  If the queue is full, the prefetch is simply skipped.
+ *
+ * Prefetch is off by default - set [NAVIGATION_PREFETCH_ENABLED] to true to enable it
+ */
+@Singleton
+class DefaultViewPrefetcher @Inject constructor(
+        applicationConfiguration: ApplicationConfiguration,
+        private val transitions: NavigationTransitions,
+        private val asyncViewBuilder: AsyncViewBuilder,
+        private val idGenerator: ComponentIdGenerator,
+        private val injectorLocator: InjectorLocator,
+        private val dataWarmer: ViewDataWarmer) : ViewPrefetcher {
+
+    private val log = LoggerFactory.getLogger(this.javaClass.name)
+    private val enabled: Boolean = applicationConfiguration.getPropertyValue(NAVIGATION_PREFETCH_ENABLED, false)
+    private val prefetchCount: Int = applicationConfiguration.getPropertyValue(NAVIGATION_PREFETCH_COUNT, defaultPrefetchCount)
+
+
+    override fun afterViewChange(busMessage: AfterViewChangeBusMessage, userSitemap: UserSitemap) {
+        if (!enabled) {
+            return
+        }
+        val toPage = busMessage.toState.virtualPage
+        val fromState = busMessage.fromState
+        if (fromState != null) {
+            transitions.record(fromState.virtualPage, toPage)
+        }
+
+        val currentNode = userSitemap.nodeFor(toPage) ?: return
+        val candidates = userSitemap.getChildren(currentNode) + userSitemap.nodeChainFor(currentNode)
+        val candidateUris = candidates.map { node -> userSitemap.uri(node) }
+        val nodes = transitions.likelyNext(toPage, candidateUris, prefetchCount).mapNotNull { uri -> userSitemap.nodeFor(uri) }
+        if (nodes.isEmpty()) {
+            return
+        }
+        log.debug("prefetching {} pages after {}", nodes.size, toPage)
+        asyncViewBuilder.prefetch(Runnable { nodes.forEach { node -> warm(node) } })
+    }
+
+    private fun warm(node: UserSitemapNode) {
+        try {
+            val viewClass = node.viewClass
+            injectorLocator.get().getBinding(viewClass)
+            idGenerator.prepare(viewClass)
+            dataWarmer.warm(node)
+        } catch (e: Exception) {
+            // this is only speculative, the real navigation will report any problem
+            log.debug("prefetch failed for {}", node.uriSegment, e)
+        }
+    }
+
+    companion object {
+        const val defaultPrefetchCount = 3
+    }
+}
@@ -14,8 +14,6 @@ package uk.q3c.krail.core.navigate.sitemap
 
 import com.google.inject.Inject
 import org.slf4j.LoggerFactory
-import uk.q3c.util.dag.CycleDetectedException
-import uk.q3c.util.dag.DynamicDAG
 import uk.q3c.util.text.MessageFormat2
 
 /**
@@ -76,19 +74,14 @@ protected constructor(private val messageFormat: MessageFormat2) : SitemapFinish
     }
 
 
+    /**
+     * Loops are found by the same pass which compiles the redirects into the sitemap's [RedirectTable]
+     */
     private fun redirectCheck(sitemap: MasterSitemap) {
-        val dag = DynamicDAG<String>()
-        val redirectMap = sitemap.redirects
-        for ((key, value) in redirectMap) {
-            try {
-                dag.addChild(key, value)
-            } catch (cde: CycleDetectedException) {
-                val msg = messageFormat.format("Redirecting {0} to {1} would cause a loop", key, value)
-                redirectLoops.add(msg)
-            }
-
+        for ((key, value) in sitemap.redirectTable.loops) {
+            val msg = messageFormat.format("Redirecting {0} to {1} would cause a loop", key, value)
+            redirectLoops.add(msg)
         }
-
     }
 
 
@@ -25,9 +25,14 @@ import uk.q3c.krail.eventbus.MessageBus
 import uk.q3c.krail.i18n.I18NKey
 import uk.q3c.krail.i18n.Translate
 import uk.q3c.krail.service.AbstractService
+import uk.q3c.krail.service.State
 import uk.q3c.util.clazz.ClassNameUtils
 import uk.q3c.util.guice.SerializationSupport
 import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 
 @Singleton
 class DefaultSitemapService
@@ -36,7 +41,10 @@ protected constructor(translate: Translate,
                       @field:Transient private val directSitemapLoaderProvider: Provider<DirectSitemapLoader>,
                       @field:Transient private val annotationSitemapLoaderProvider: Provider<AnnotationSitemapLoader>,
                       @field:Transient private val sitemapProvider: Provider<MasterSitemap>,
-                      @field:Transient private val sitemapFinisher: SitemapFinisher,
+                      @field:Transient private val sitemapFinisherProvider: Provider<SitemapFinisher>,
+                      @field:Transient private val snapshotStore: SitemapSnapshotStore,
+                      @field:Transient private val masterSitemapFactory: MasterSitemapFactory,
+                      @field:Transient private val sitemapHolder: MasterSitemapHolder,
                       private val configuration: ApplicationConfiguration,
                       messageBus: MessageBus,
                       private val classNameUtils: ClassNameUtils,
@@ -54,6 +62,8 @@ protected constructor(translate: Translate,
     private var loaded: Boolean = false
     @Transient
     private var report: StringBuilder = StringBuilder()
+    @Transient
+    private var reloadExecutor: ExecutorService? = null
 
     val isLoaded: Boolean
         get() = synchronized(lock) {
@@ -69,31 +79,94 @@ protected constructor(translate: Translate,
     override fun doStart() {
         //start with a new and empty model
         val sitemap = sitemapProvider.get()
-        loadSources(sitemap)
-        val lrb = LoaderReportBuilder(loaders, classNameUtils)
-        report = lrb.report
-        sitemap.report = report.toString()
-        if (!loaded) {
+        extractSourcesFromConfig()
+        if (restoreSnapshot(sitemap)) {
+            return
+        }
+        publish(build(sitemap, getSourceTypes()))
+    }
+
+    /**
+     * Builds [sitemap] with a new [SitemapFinisher] and new loaders, so that nothing is carried over from a previous build, and nothing held by
+     * this service is changed until [publish] is called with the result
+     */
+    private fun build(sitemap: MasterSitemap, sources: List<SitemapSourceType>): SitemapBuild {
+        val buildLoaders = loadSources(sitemap, sources)
+        if (buildLoaders.isEmpty()) {
             throw SitemapException("No valid sources found")
         }
+        val buildReport = LoaderReportBuilder(buildLoaders, classNameUtils).report
+        sitemap.report = buildReport.toString()
         sitemap.lock()
-        log.info("{}", report.toString())
+        snapshotStore.save(sitemap)
+        log.info("{}", buildReport.toString())
+        return SitemapBuild(buildLoaders, buildReport)
+    }
+
+    private fun publish(build: SitemapBuild) {
+        synchronized(lock) {
+            loaders = build.loaders
+            report = build.report
+            loaded = true
+        }
     }
 
     /**
-     * Loads the Sitemap from all the sources specified in [.sourceTypes]. The first call to
-     * [.loadSource] has `firstLoad` set to true. Subsequent calls have `firstLoad`
-     * set to false
+     * Builds into a new [MasterSitemap] from [masterSitemapFactory], on a single background thread so that only one reload runs at a time.  The
+     * current version remains in use, without blocking, until the new one is swapped in
      */
-    private fun loadSources(sitemap: MasterSitemap) {
-        extractSourcesFromConfig()
-        loaders = ArrayList()
-        for (source in sourceTypes) {
-            loadSource(source, sitemap)
+    override fun reload(): Future<Int> {
+        if (state != State.RUNNING) {
+            throw SitemapException("The sitemap service must be running to reload the sitemap")
+        }
+        val executor = synchronized(lock) {
+            reloadExecutor ?: Executors.newSingleThreadExecutor { runnable ->
+                val thread = Thread(runnable, "sitemap-reload")
+                thread.isDaemon = true
+                thread
+            }.also { reloadExecutor = it }
+        }
+        return executor.submit(Callable {
+            log.info("Reloading the sitemap")
+            val sitemap = masterSitemapFactory.create()
+            val build = build(sitemap, getSourceTypes())
+            val version = sitemapHolder.swap(sitemap)
+            publish(build)
+            log.info("Sitemap version {} is now current", version.number)
+            version.number
+        })
+    }
+
+    /**
+     * A snapshot is only written after a successful build and check, so when one is restored the loaders and [SitemapFinisher] are not needed
+     *
+     * @return true if the sitemap was restored from a snapshot
+     */
+    private fun restoreSnapshot(sitemap: MasterSitemap): Boolean {
+        if (!snapshotStore.restore(sitemap)) {
+            return false
+        }
+        sitemap.lock()
+        publish(SitemapBuild(ArrayList(), StringBuilder(sitemap.report ?: "")))
+        log.info("Sitemap restored from snapshot, {} nodes", sitemap.nodeCount)
+        return true
+    }
+
+    /**
+     * Loads the Sitemap from all of [sources], then checks it with a new [SitemapFinisher]
+     *
+     * @return the loaders used
+     */
+    private fun loadSources(sitemap: MasterSitemap, sources: List<SitemapSourceType>): MutableList<SitemapLoader> {
+        val buildLoaders: MutableList<SitemapLoader> = ArrayList()
+        val finisher = sitemapFinisherProvider.get()
+        for (source in sources) {
+            buildLoaders.add(loadSource(source, sitemap, finisher))
         }
         log.debug("Checking Sitemap, sitemap has {} nodes", sitemap.nodeCount)
-        sitemapFinisher.check(sitemap)
+        finisher.check(sitemap)
         log.debug("Sitemap checked, no errors found")
+        return buildLoaders
     }
 
     /**
@@ -101,28 +174,27 @@ protected constructor(translate: Translate,
      *
      * @param sourceType the source type to use
      * @param sitemap    the sitemap to load
+     * @param finisher   the finisher for this build
+     * @return the loader used
      */
-    private fun loadSource(sourceType: SitemapSourceType, sitemap: MasterSitemap) {
+    private fun loadSource(sourceType: SitemapSourceType, sitemap: MasterSitemap, finisher: SitemapFinisher): SitemapLoader {
         log.debug("Loading Sitemap from {}", sourceType)
-        when (sourceType) {
+        return when (sourceType) {
 
             SitemapSourceType.DIRECT -> {
                 val directSitemapLoader = directSitemapLoaderProvider.get()
-                loaders.add(directSitemapLoader)
                 directSitemapLoader.load(sitemap)
-                sitemapFinisher.setSourceModuleNames(directSitemapLoader.sourceModules())
-                loaded = true
-                return
+                finisher.setSourceModuleNames(directSitemapLoader.sourceModules())
+                directSitemapLoader
             }
             SitemapSourceType.ANNOTATION -> {
                 val annotationSitemapLoader = annotationSitemapLoaderProvider.get()
-                loaders.add(annotationSitemapLoader)
                 annotationSitemapLoader.load(sitemap)
                 val sources = annotationSitemapLoader.sources
                 if (sources != null) {
-                    sitemapFinisher.setAnnotationSources(sources.keys)
+                    finisher.setAnnotationSources(sources.keys)
                 }
-                loaded = true
+                annotationSitemapLoader
             }
         }
     }
@@ -164,8 +236,15 @@ protected constructor(translate: Translate,
     }
 
 
+    /**
+     * Stops the reload thread.  A reload already running is allowed to finish
+     */
     override fun doStop() {
-        loaded = false
+        synchronized(lock) {
+            loaded = false
+            reloadExecutor?.shutdown()
+            reloadExecutor = null
+        }
     }
 
     fun getReport(): StringBuilder {
@@ -199,4 +278,6 @@ protected constructor(translate: Translate,
 
 }
 
+private class SitemapBuild(val loaders: MutableList<SitemapLoader>, val report: StringBuilder)
+
 const val SITEMAP_SOURCES = "sitemap.sources"
\ No newline at end of file
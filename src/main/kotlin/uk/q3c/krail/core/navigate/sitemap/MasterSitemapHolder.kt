@@ -0,0 +1,141 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.navigate.sitemap
+
+import com.google.common.collect.ImmutableMap
+import com.google.common.collect.ImmutableSet
+import com.google.inject.Inject
+import com.google.inject.Provider
+import com.google.inject.Singleton
+import java.io.Serializable
+import javax.annotation.concurrent.Immutable
+import javax.annotation.concurrent.ThreadSafe
+
+/**
+ * Creates a new, empty [MasterSitemap] each time it is called, for the [SitemapService] to build a replacement sitemap into
+ */
+interface MasterSitemapFactory : Serializable {
+    fun create(): MasterSitemap
+}
+
+class DefaultMasterSitemapFactory @Inject constructor(private val sitemapProvider: Provider<DefaultMasterSitemap>) : MasterSitemapFactory {
+    override fun create(): MasterSitemap {
+        return sitemapProvider.get()
+    }
+}
+
+/**
+ * A numbered version of the [MasterSitemap].  [changes] holds the URIs of the changed subtrees for each of the most recent versions, so that a
+ * session several versions behind can still update its [UserSitemap] incrementally
+ */
+@Immutable
+class SitemapVersion(val number: Int, val sitemap: MasterSitemap, private val changes: ImmutableMap<Int, ImmutableSet<String>>) : Serializable {
+
+    /**
+     * Returns the URIs of the root of each subtree which has changed since [version], or null if that is no longer known, in which case the
+     * [UserSitemap] should be rebuilt completely
+     */
+    fun changedSince(version: Int): Set<String>? {
+        if (version > number) {
+            return null
+        }
+        val changed = LinkedHashSet<String>()
+        for (v in version + 1..number) {
+            changed.addAll(changes[v] ?: return null)
+        }
+        return changed
+    }
+
+    /**
+     * Returns the version which follows this one, with [changedUris] the difference between this [sitemap] and [next]
+     */
+    fun next(next: MasterSitemap, changedUris: ImmutableSet<String>): SitemapVersion {
+        val nextNumber = number + 1
+        val builder = ImmutableMap.builder<Int, ImmutableSet<String>>()
+        changes.filterKeys { it > nextNumber - maxHistory }.forEach { (v, uris) -> builder.put(v, uris) }
+        builder.put(nextNumber, changedUris)
+        return SitemapVersion(nextNumber, next, builder.build())
+    }
+
+    companion object {
+        const val maxHistory = 10
+    }
+}
+
+/**
+ * Holds the current version of the [MasterSitemap].  The [SitemapService] builds a replacement in the background, then calls [swap] to make it
+ * current.  Reads never block - they just see the version current at the time
+ */
+interface MasterSitemapHolder : Serializable {
+
+    val current: SitemapVersion
+
+    /**
+     * Makes [sitemap], which must be fully built and locked, the current version
+     *
+     * @return the new current version
+     */
+    fun swap(sitemap: MasterSitemap): SitemapVersion
+}
+
+/**
+ * The first version is the [MasterSitemap] built when the [SitemapService] starts.  [current] is held in a single volatile reference to an
+ * immutable [SitemapVersion], so the sitemap, its number and its change history are always consistent with each other
+ */
+@Singleton
+@ThreadSafe
+class DefaultMasterSitemapHolder @Inject constructor(masterSitemap: MasterSitemap) : MasterSitemapHolder {
+
+    @Volatile
+    override var current: SitemapVersion = SitemapVersion(1, masterSitemap, ImmutableMap.of())
+        private set
+
+    @Synchronized
+    override fun swap(sitemap: MasterSitemap): SitemapVersion {
+        val version = current
+        val next = version.next(sitemap, changedSubtrees(version.sitemap, sitemap))
+        current = next
+        return next
+    }
+}
+
+/**
+ * Returns the URIs of the roots of the subtrees which differ between [previous] and [next].  A node differs if it has been added or removed, or
+ * any of its definition, other than its id, has changed.  Only the root of each changed subtree is included
+ */
+fun changedSubtrees(previous: MasterSitemap, next: MasterSitemap): ImmutableSet<String> {
+    val previousNodes = previous.uriMap
+    val nextNodes = next.uriMap
+    val changed = (previousNodes.keys + nextNodes.keys).filter { uri ->
+        val a = previousNodes[uri]
+        val b = nextNodes[uri]
+        a == null || b == null || !sameDefinition(a, b)
+    }
+    val roots = mutableListOf<String>()
+    for (uri in changed.sortedBy { it.length }) {
+        if (roots.none { root -> uri.startsWith("$root/") }) {
+            roots.add(uri)
+        }
+    }
+    return ImmutableSet.copyOf(roots)
+}
+
+private fun sameDefinition(a: MasterSitemapNode, b: MasterSitemapNode): Boolean {
+    return a.uriSegment == b.uriSegment
+            && a.labelKey == b.labelKey
+            && a.pageAccessControl == b.pageAccessControl
+            && a.positionIndex == b.positionIndex
+            && a.viewClass == b.viewClass
+            && a.viewConfiguration == b.viewConfiguration
+            && a.roles == b.roles
+}
@@ -28,6 +28,9 @@ open class SitemapModule : AbstractModule() {
         bindLoaders()
         bindChecker()
         bindEmptyView()
+        bindSnapshotStore()
+        bindMasterSitemapFactory()
+        bindMasterSitemapHolder()
     }
 
     protected fun bindEmptyView() {
@@ -39,6 +42,17 @@ open class SitemapModule : AbstractModule() {
         bind(MasterSitemap::class.java).to(DefaultMasterSitemap::class.java).`in`(Singleton::class.java)
     }
 
+    /**
+     * Override this if you override [bindMasterSitemap], so that a reloaded sitemap is of the same type
+     */
+    protected open fun bindMasterSitemapFactory() {
+        bind(MasterSitemapFactory::class.java).to(DefaultMasterSitemapFactory::class.java)
+    }
+
+    protected open fun bindMasterSitemapHolder() {
+        bind(MasterSitemapHolder::class.java).to(DefaultMasterSitemapHolder::class.java)
+    }
+
     protected fun bindUserSitemapNodeSorter() {
         bind(UserSitemapNodeSorter::class.java).to(DefaultUserSitemapNodeSorter::class.java)
     }
@@ -62,4 +76,8 @@ open class SitemapModule : AbstractModule() {
 
     }
 
+    protected open fun bindSnapshotStore() {
+        bind(SitemapSnapshotStore::class.java).to(DefaultSitemapSnapshotStore::class.java)
+    }
+
 }
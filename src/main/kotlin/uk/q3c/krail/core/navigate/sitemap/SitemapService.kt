@@ -13,7 +13,16 @@
 package uk.q3c.krail.core.navigate.sitemap
 
 import uk.q3c.krail.service.Service
+import java.util.concurrent.Future
 
 interface SitemapService : Service {
     val sourceTypes: MutableList<SitemapSourceType>
+
+    /**
+     * Builds a new [MasterSitemap] from the sitemap sources in the background, and when complete makes it the current version in the
+     * [MasterSitemapHolder].  Sessions pick up the new version at their next navigation.  The service must be running
+     *
+     * @return the new version number, or the failure if the build fails
+     */
+    fun reload(): Future<Int>
 }
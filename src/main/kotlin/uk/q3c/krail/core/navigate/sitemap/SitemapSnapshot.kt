@@ -0,0 +1,462 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.navigate.sitemap
+
+import com.google.common.collect.ImmutableList
+import com.google.common.hash.Hashing
+import com.google.inject.Inject
+import com.google.inject.Singleton
+import org.slf4j.LoggerFactory
+import uk.q3c.krail.config.ApplicationConfiguration
+import uk.q3c.krail.core.shiro.PageAccessControl
+import uk.q3c.krail.core.view.KrailView
+import uk.q3c.krail.core.view.ViewConfiguration
+import uk.q3c.krail.i18n.I18NKey
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.Serializable
+import java.net.URLClassLoader
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.FileAlreadyExistsException
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.PosixFileAttributeView
+import java.nio.file.attribute.PosixFilePermission
+import java.nio.file.attribute.PosixFilePermissions
+import java.security.MessageDigest
+import java.security.SecureRandom
+import java.util.concurrent.ConcurrentHashMap
+import javax.crypto.Mac
+import javax.crypto.spec.SecretKeySpec
+
+const val SITEMAP_SNAPSHOT_ENABLED = "sitemap.snapshot.enabled"
+const val SITEMAP_SNAPSHOT_DIRECTORY = "sitemap.snapshot.directory"
+const val SITEMAP_SNAPSHOT_VERSION = "sitemap.snapshot.version"
+const val SITEMAP_SNAPSHOT_APPLICATION = "sitemap.snapshot.application"
+const val SITEMAP_SNAPSHOT_KEY = "sitemap.snapshot.key"
+
+/**
+ * Saves a binary image of the locked [MasterSitemap], and restores it on a later start, so that the [SitemapService] can skip the loaders and
+ * the [SitemapFinisher] when nothing which could change the sitemap has changed.
+ */
+interface SitemapSnapshotStore : Serializable {
+
+    /**
+     * Loads [sitemap] from a snapshot, if there is a valid one for the current classpath.  [sitemap] is left empty if false is returned
+     *
+     * @return true if [sitemap] has been loaded from a snapshot
+     */
+    fun restore(sitemap: MasterSitemap): Boolean
+
+    /**
+     * Saves [sitemap], which should be fully built and checked, as the snapshot for the current classpath
+     */
+    fun save(sitemap: MasterSitemap)
+}
+
+/**
+ * Snapshots are held in [SITEMAP_SNAPSHOT_DIRECTORY], which must be set, and must be private to the application - it is created with owner only
+ * permissions if it does not exist, and snapshots are not used if it, or a file in it, is owned by another user or (where the file system supports
+ * it) writable by the group or others.  A snapshot decides the access control of every page, so each is also signed with an HMAC-SHA256, and one
+ * which does not verify is ignored.  The HMAC key is taken from [SITEMAP_SNAPSHOT_KEY] if set, or is otherwise generated and held in a key file in
+ * the directory.
+ *
+ * Files are named from [SITEMAP_SNAPSHOT_APPLICATION] (default 'krail') and a fingerprint of the application version and the [SITEMAP_SOURCES]
+ * setting.  When a new snapshot is saved, the other snapshots for the same application identifier are deleted - applications which share a
+ * directory must therefore have different identifiers.
+ *
+ * The version is taken from [SITEMAP_SNAPSHOT_VERSION] - typically set to the build version or time by the build - so a release leads to a new
+ * snapshot without examining the classpath at all.  If no version is set, the fingerprint uses the path, size and last modified time of each
+ * classpath entry, and of every file in each classpath directory, so any change to the application's jars or classes leads to a new snapshot.  That
+ * walk reads the attributes of every file on the classpath at start up, which can take longer than building the sitemap for an application run
+ * from exploded class directories, so setting the version is recommended.  The result of the walk is held for the life of the class loader.
+ *
+ * Snapshots are off by default - set [SITEMAP_SNAPSHOT_ENABLED] to true to enable them.  Any problem reading a snapshot is logged, and the
+ * sitemap is then built in the usual way.  The snapshot file is memory mapped when it is read.
+ */
+@Singleton
+open class DefaultSitemapSnapshotStore @Inject constructor(private val configuration: ApplicationConfiguration) : SitemapSnapshotStore {
+    private val log = LoggerFactory.getLogger(this.javaClass.name)
+    private val fingerprint: String by lazy { fingerprint() }
+
+
+    override fun restore(sitemap: MasterSitemap): Boolean {
+        val directory = directory() ?: return false
+        val file = snapshotFile(directory)
+        if (!Files.isReadable(file)) {
+            log.debug("No sitemap snapshot at {}", file)
+            return false
+        }
+        try {
+            if (!isPrivate(directory) || !isPrivate(file)) {
+                log.warn("Sitemap snapshot {} is not private to this application, and will not be used", file)
+                return false
+            }
+            val key = key(directory, false) ?: return false
+            FileChannel.open(file, StandardOpenOption.READ).use { channel ->
+                val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                if (!verify(buffer, key)) {
+                    log.warn("Sitemap snapshot {} does not have a valid signature, and will not be used", file)
+                } else if (SitemapSnapshotCodec.decode(buffer, fingerprint, sitemap, classLoader())) {
+                    log.info("Sitemap restored from snapshot {}", file)
+                    return true
+                }
+            }
+        } catch (e: Exception) {
+            log.warn("Unable to restore sitemap snapshot {}, the sitemap will be rebuilt", file, e)
+        }
+        sitemap.clear()
+        return false
+    }
+
+    override fun save(sitemap: MasterSitemap) {
+        val directory = directory() ?: return
+        val file = snapshotFile(directory)
+        try {
+            val bytes = SitemapSnapshotCodec.encode(sitemap, fingerprint)
+            if (bytes == null) {
+                log.info("The sitemap uses label keys which are not enums, so cannot be saved as a snapshot")
+                return
+            }
+            createPrivateDirectory(directory)
+            if (!isPrivate(directory)) {
+                log.warn("Sitemap snapshot directory {} is not private to this application, no snapshot will be saved", directory)
+                return
+            }
+            val key = key(directory, true) ?: return
+            // write then move, so that a concurrent start never sees a partial snapshot
+            val temp = Files.createTempFile(directory, "sitemap", ".tmp")
+            Files.write(temp, sign(bytes, key))
+            Files.write(temp, bytes, StandardOpenOption.APPEND)
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            log.info("Sitemap snapshot saved to {}", file)
+            deleteOutOfDate(file)
+        } catch (e: Exception) {
+            log.warn("Unable to save sitemap snapshot {}", file, e)
+        }
+    }
+
+    /**
+     * Deletes the snapshots for this application in the directory of [current], except [current] itself.  They were written for an earlier
+     * classpath, so cannot be used
+     */
+    private fun deleteOutOfDate(current: Path) {
+        Files.newDirectoryStream(current.parent, "sitemap-${application()}-*.snapshot").use { snapshots ->
+            snapshots.filter { it.fileName != current.fileName }.forEach { snapshot ->
+                try {
+                    Files.deleteIfExists(snapshot)
+                    log.debug("Deleted out of date sitemap snapshot {}", snapshot)
+                } catch (e: Exception) {
+                    log.warn("Unable to delete out of date sitemap snapshot {}", snapshot, e)
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the snapshot directory, or null if snapshots are not enabled, or are not correctly configured
+     */
+    private fun directory(): Path? {
+        if (!configuration.getPropertyValue(SITEMAP_SNAPSHOT_ENABLED, false)) {
+            return null
+        }
+        val directory: String = configuration.getPropertyValue(SITEMAP_SNAPSHOT_DIRECTORY, "")
+        if (directory.isEmpty()) {
+            log.warn("Sitemap snapshots are enabled, but {} has not been set, so they will not be used", SITEMAP_SNAPSHOT_DIRECTORY)
+            return null
+        }
+        if (!application().matches(Regex("[A-Za-z0-9._]+"))) {
+            log.warn("{} may only contain letters, digits, '.' and '_', so sitemap snapshots will not be used", SITEMAP_SNAPSHOT_APPLICATION)
+            return null
+        }
+        return Paths.get(directory)
+    }
+
+    private fun application(): String {
+        return configuration.getPropertyValue(SITEMAP_SNAPSHOT_APPLICATION, "krail")
+    }
+
+    protected open fun snapshotFile(directory: Path): Path {
+        return directory.resolve("sitemap-${application()}-$fingerprint.snapshot")
+    }
+
+    /**
+     * Returns the HMAC key, from [SITEMAP_SNAPSHOT_KEY] if set, or otherwise from the key file in [directory].  The key file is created if
+     * [create] is true and there is none, otherwise null is returned
+     */
+    private fun key(directory: Path, create: Boolean): ByteArray? {
+        val configured: String = configuration.getPropertyValue(SITEMAP_SNAPSHOT_KEY, "")
+        if (configured.isNotEmpty()) {
+            return configured.toByteArray(StandardCharsets.UTF_8)
+        }
+        val keyFile = directory.resolve("sitemap-${application()}.key")
+        if (Files.exists(keyFile)) {
+            if (!isPrivate(keyFile)) {
+                log.warn("Sitemap snapshot key {} is not private to this application, and will not be used", keyFile)
+                return null
+            }
+            return Files.readAllBytes(keyFile)
+        }
+        if (!create) {
+            return null
+        }
+        val key = ByteArray(keyLength)
+        SecureRandom().nextBytes(key)
+        try {
+            // fails if another instance has just created the key, which is then used instead
+            if (posix()) {
+                Files.createFile(keyFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+            } else {
+                Files.createFile(keyFile)
+            }
+        } catch (e: FileAlreadyExistsException) {
+            return Files.readAllBytes(keyFile)
+        }
+        Files.write(keyFile, key)
+        return key
+    }
+
+    private fun sign(bytes: ByteArray, key: ByteArray): ByteArray {
+        return mac(key).doFinal(bytes)
+    }
+
+    /**
+     * Checks the signature at the start of [buffer] against the rest of its content, and leaves [buffer] positioned after the signature
+     */
+    private fun verify(buffer: ByteBuffer, key: ByteArray): Boolean {
+        if (buffer.remaining() < signatureLength) {
+            return false
+        }
+        val signature = ByteArray(signatureLength)
+        buffer.get(signature)
+        val mac = mac(key)
+        mac.update(buffer.duplicate())
+        return MessageDigest.isEqual(signature, mac.doFinal())
+    }
+
+    private fun mac(key: ByteArray): Mac {
+        val mac = Mac.getInstance(macAlgorithm)
+        mac.init(SecretKeySpec(key, macAlgorithm))
+        return mac
+    }
+
+    private fun createPrivateDirectory(directory: Path) {
+        if (Files.isDirectory(directory)) {
+            return
+        }
+        if (posix()) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")))
+        } else {
+            Files.createDirectories(directory)
+        }
+    }
+
+    private fun posix(): Boolean {
+        return FileSystems.getDefault().supportedFileAttributeViews().contains("posix")
+    }
+
+    /**
+     * Returns true if [path] is owned by the user running the application, and where supported, cannot be written by the group or others
+     */
+    private fun isPrivate(path: Path): Boolean {
+        val user = FileSystems.getDefault().userPrincipalLookupService.lookupPrincipalByName(System.getProperty("user.name"))
+        if (Files.getOwner(path) != user) {
+            return false
+        }
+        val posix = Files.getFileAttributeView(path, PosixFileAttributeView::class.java) ?: return true
+        val permissions = posix.readAttributes().permissions()
+        return !permissions.contains(PosixFilePermission.GROUP_WRITE) && !permissions.contains(PosixFilePermission.OTHERS_WRITE)
+    }
+
+    /**
+     * Returns a hash of the [SITEMAP_SNAPSHOT_VERSION] if set, or otherwise of every classpath entry visible to the application, together with the
+     * [SITEMAP_SOURCES] setting
+     */
+    protected open fun fingerprint(): String {
+        val hasher = Hashing.sha256().newHasher()
+        val version: String = configuration.getPropertyValue(SITEMAP_SNAPSHOT_VERSION, "")
+        if (version.isNotEmpty()) {
+            hasher.putString(version, StandardCharsets.UTF_8)
+        } else {
+            val entries = classpathEntries()
+            hasher.putString(classpathFingerprints.computeIfAbsent(entries) { classpathFingerprint(it) }, StandardCharsets.UTF_8)
+        }
+        val sources: List<String> = configuration.getPropertyValue(SITEMAP_SOURCES, listOf<String>())
+        sources.forEach { hasher.putString(it, StandardCharsets.UTF_8) }
+        return hasher.hash().toString()
+    }
+
+    private fun classpathFingerprint(entries: Set<File>): String {
+        log.info("{} is not set, so the sitemap snapshot fingerprint is taken from {} classpath entries", SITEMAP_SNAPSHOT_VERSION, entries.size)
+        val hasher = Hashing.sha256().newHasher()
+        for (entry in entries) {
+            hasher.putString(entry.path, StandardCharsets.UTF_8)
+            if (entry.isFile) {
+                hasher.putLong(entry.length())
+                hasher.putLong(entry.lastModified())
+            } else if (entry.isDirectory) {
+                entry.walkTopDown().filter { it.isFile }.forEach { file ->
+                    hasher.putString(file.path, StandardCharsets.UTF_8)
+                    hasher.putLong(file.length())
+                    hasher.putLong(file.lastModified())
+                }
+            }
+        }
+        return hasher.hash().toString()
+    }
+
+    private fun classpathEntries(): Set<File> {
+        val entries = LinkedHashSet<File>()
+        System.getProperty("java.class.path", "").split(File.pathSeparator).filter { it.isNotEmpty() }.forEach { entries.add(File(it)) }
+        var loader: ClassLoader? = classLoader()
+        while (loader != null) {
+            if (loader is URLClassLoader) {
+                loader.urLs.filter { it.protocol == "file" }.forEach { entries.add(File(it.toURI())) }
+            }
+            loader = loader.parent
+        }
+        return entries
+    }
+
+    private fun classLoader(): ClassLoader {
+        return Thread.currentThread().contextClassLoader ?: this.javaClass.classLoader
+    }
+
+    companion object {
+        private const val keyLength = 32
+        private const val signatureLength = 32
+        private const val macAlgorithm = "HmacSHA256"
+        private val classpathFingerprints: MutableMap<Set<File>, String> = ConcurrentHashMap()
+    }
+}
+
+/**
+ * Encodes a [MasterSitemap] to, and decodes it from, the snapshot format.  Nodes are written parent first, so that each can be attached to its
+ * parent as it is read.  Standard pages are identified by their [StandardPageKey] label keys as the nodes are added, just as they are when the
+ * sitemap is first built.  Strings are written as a length followed by UTF-8 bytes, so that they can be read directly from a mapped buffer.
+ *
+ * Label keys are written as enum class and constant names, so a sitemap which uses any other kind of [I18NKey] cannot be encoded
+ */
+object SitemapSnapshotCodec {
+    private const val magic = 0x4B534D53 // "KSMS"
+    private const val version = 1
+
+    /**
+     * Encodes [sitemap] for [fingerprint]
+     *
+     * @return the encoded sitemap, or null if any of its label keys is not an enum
+     */
+    fun encode(sitemap: MasterSitemap, fingerprint: String): ByteArray? {
+        val nodes = mutableListOf<MasterSitemapNode>()
+        sitemap.roots.forEach { root -> addDepthFirst(sitemap, root, nodes) }
+        if (nodes.any { node -> node.labelKey !is Enum<*> }) {
+            return null
+        }
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { out ->
+            out.writeInt(magic)
+            out.writeInt(version)
+            out.writeString(fingerprint)
+
+            out.writeInt(nodes.size)
+            for (node in nodes) {
+                val labelKey = node.labelKey as Enum<*>
+                out.writeInt(node.id)
+                out.writeInt(sitemap.getParent(node)?.id ?: 0)
+                out.writeString(node.uriSegment)
+                out.writeString(labelKey.declaringClass.name)
+                out.writeString(labelKey.name)
+                out.writeString(node.pageAccessControl.name)
+                out.writeInt(node.positionIndex)
+                out.writeString(node.viewClass.name)
+                out.writeString(node.viewConfiguration.name)
+                out.writeInt(node.roles.size)
+                node.roles.forEach { out.writeString(it) }
+            }
+
+            val redirects = sitemap.redirects
+            out.writeInt(redirects.size)
+            redirects.forEach { from, to ->
+                out.writeString(from)
+                out.writeString(to)
+            }
+            out.writeString(sitemap.report ?: "")
+        }
+        return bytes.toByteArray()
+    }
+
+    private fun addDepthFirst(sitemap: MasterSitemap, node: MasterSitemapNode, nodes: MutableList<MasterSitemapNode>) {
+        nodes.add(node)
+        sitemap.getChildren(node).forEach { child -> addDepthFirst(sitemap, child, nodes) }
+    }
+
+    /**
+     * Loads [sitemap] from [buffer], provided that the snapshot was written for [fingerprint]
+     *
+     * @return false if the snapshot is for a different fingerprint or format version
+     */
+    @Suppress("UNCHECKED_CAST")
+    fun decode(buffer: ByteBuffer, fingerprint: String, sitemap: MasterSitemap, classLoader: ClassLoader): Boolean {
+        if (buffer.int != magic || buffer.int != version || buffer.readString() != fingerprint) {
+            return false
+        }
+
+        val nodes = HashMap<Int, MasterSitemapNode>()
+        val nodeCount = buffer.int
+        for (i in 0 until nodeCount) {
+            val id = buffer.int
+            val parentId = buffer.int
+            val uriSegment = buffer.readString()
+            val keyClass = Class.forName(buffer.readString(), false, classLoader)
+            val keyName = buffer.readString()
+            val labelKey = keyClass.enumConstants.first { (it as Enum<*>).name == keyName } as I18NKey
+            val pageAccessControl = PageAccessControl.valueOf(buffer.readString())
+            val positionIndex = buffer.int
+            val viewClass = Class.forName(buffer.readString(), false, classLoader) as Class<out KrailView>
+            val viewConfiguration = Class.forName(buffer.readString(), false, classLoader) as Class<out ViewConfiguration>
+            val roles = ImmutableList.builder<String>()
+            for (r in 0 until buffer.int) {
+                roles.add(buffer.readString())
+            }
+            val node = MasterSitemapNode(id, uriSegment, labelKey, pageAccessControl, positionIndex, viewClass, viewConfiguration, roles.build())
+            sitemap.addChild(nodes[parentId], node)
+            nodes[id] = node
+        }
+
+        val redirectCount = buffer.int
+        for (i in 0 until redirectCount) {
+            sitemap.addRedirect(buffer.readString(), buffer.readString())
+        }
+        sitemap.report = buffer.readString()
+        return true
+    }
+
+    private fun DataOutputStream.writeString(value: String) {
+        val bytes = value.toByteArray(StandardCharsets.UTF_8)
+        writeInt(bytes.size)
+        write(bytes)
+    }
+
+    private fun ByteBuffer.readString(): String {
+        val bytes = ByteArray(int)
+        get(bytes)
+        return String(bytes, StandardCharsets.UTF_8)
+    }
+}
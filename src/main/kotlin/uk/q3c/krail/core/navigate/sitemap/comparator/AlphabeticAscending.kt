@@ -12,18 +12,26 @@
  */
 package uk.q3c.krail.core.navigate.sitemap.comparator
 
+import uk.q3c.krail.core.i18n.CollatorPool
 import uk.q3c.krail.core.i18n.LabelKey
 import uk.q3c.krail.core.navigate.sitemap.UserSitemapNode
 import uk.q3c.krail.i18n.I18NKey
 
 /**
  * Comparator which can be used to sort SitemapNode by collation key order, based on [UserSitemapNode.collationKey].
- * This enables sorting by Locale sensitive labels, as the collation key is set to reflect the current locale
+ * This enables sorting by Locale sensitive labels, as the collation key is set to reflect the current locale.
+ *
+ * Collation keys are shared through [CollatorPool], so nodes with the same label and Locale usually hold the same key instance
  */
 class AlphabeticAscending : UserSitemapNodeComparator {
 
     override fun compare(o1: UserSitemapNode, o2: UserSitemapNode): Int {
-        return o1.collationKey!!.compareTo(o2.collationKey)
+        val key1 = o1.collationKey!!
+        val key2 = o2.collationKey
+        if (key1 === key2) {
+            return 0
+        }
+        return key1.compareTo(key2)
     }
 
     override fun nameKey(): I18NKey {
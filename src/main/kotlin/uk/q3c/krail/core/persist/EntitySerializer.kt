@@ -0,0 +1,467 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.persist
+
+import org.mapdb.DB
+import org.mapdb.DataInput2
+import org.mapdb.DataOutput2
+import org.mapdb.Serializer
+import org.mapdb.serializer.GroupSerializerObjectArray
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import java.lang.reflect.Constructor
+import java.lang.reflect.Method
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.time.LocalTime
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import kotlin.reflect.KClass
+import kotlin.reflect.KFunction
+import kotlin.reflect.KParameter
+import kotlin.reflect.KType
+import kotlin.reflect.full.memberProperties
+import kotlin.reflect.full.primaryConstructor
+import kotlin.reflect.jvm.javaConstructor
+import kotlin.reflect.jvm.javaField
+import kotlin.reflect.jvm.javaGetter
+
+/**
+ * A compact MapDB serializer for an entity class, derived from the parameters of its primary constructor, each of which must also be a
+ * property.  Int and Long are zig-zag encoded and packed, other primitives are written as is, Strings are UTF-8 with a packed length prefix,
+ * LocalDate and LocalDateTime are packed epoch values, enums are written by name, Lists and Sets by size and elements, and nested data classes
+ * inline.  Anything else falls back to Java serialization, for that value only.
+ *
+ * Each record starts with a packed schema version.  The schema (the names and types of the fields) is held in a registry alongside the map,
+ * and a new version is registered whenever the class changes.  Records written with an earlier version are read by matching fields by
+ * name - a field which has been added takes its default value (or null if it has no default but is nullable), and a field which has been
+ * removed, or whose type has changed, is ignored.
+ */
+class EntitySerializer<T : Any> private constructor(private val codec: RecordCodec, private val schemas: ConcurrentMap<Int, String>) : GroupSerializerObjectArray<T>() {
+
+    private val version: Int = register()
+    private val previousVersions: ConcurrentMap<Int, RecordCodec> = ConcurrentHashMap()
+
+    override fun serialize(out: DataOutput2, value: T) {
+        out.packInt(version)
+        codec.write(out, value)
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    override fun deserialize(input: DataInput2, available: Int): T {
+        val recordVersion = input.unpackInt()
+        if (recordVersion == version) {
+            return codec.read(input) as T
+        }
+        val previous = previousVersions.computeIfAbsent(recordVersion) { v ->
+            val descriptor = schemas[v] ?: throw MapDbSerializationException("No schema version $v registered for ${codec.descriptor}")
+            SchemaParser(descriptor).parseRecord()
+        }
+        val entity = codec.adapt(previous.read(input), previous)
+        if (entity === Missing) {
+            throw MapDbSerializationException("Cannot read a version $recordVersion record of ${codec.entityClass?.qualifiedName}, a field has been added without a default value")
+        }
+        return entity as T
+    }
+
+    private fun register(): Int {
+        synchronized(schemas) {
+            val existing = schemas.entries.firstOrNull { entry -> entry.value == codec.descriptor }
+            if (existing != null) {
+                return existing.key
+            }
+            val next = (schemas.keys.max() ?: 0) + 1
+            schemas[next] = codec.descriptor
+            return next
+        }
+    }
+
+    companion object {
+
+        /**
+         * Returns a serializer for [entityClass], or null if its shape is not supported
+         */
+        fun <T : Any> create(entityClass: KClass<T>, schemas: ConcurrentMap<Int, String>): EntitySerializer<T>? {
+            val codec = RecordCodec.forClass(entityClass, setOf()) ?: return null
+            return EntitySerializer(codec, schemas)
+        }
+    }
+}
+
+class MapDbSerializationException(msg: String) : RuntimeException(msg)
+
+/**
+ * Opens the map for [entityClass], using an [EntitySerializer] if the class supports one.  Entities stored under [mapName] by the default
+ * (Java) serializer are moved to the compact map when it is first opened, and [migrated] is called.  The move is not committed here - the
+ * caller commits it through its [MapDbStore], so that it is not committed part way through another writer's unit of work
+ */
+@Suppress("UNCHECKED_CAST")
+internal fun <T : Any> openEntityMap(db: DB, mapName: String, entityClass: KClass<T>, migrated: () -> Unit): ConcurrentMap<String, T> {
+    val schemas = db.hashMap("$mapName@schema", Serializer.INTEGER, Serializer.STRING).createOrOpen()
+    val serializer = EntitySerializer.create(entityClass, schemas) ?: return db.hashMap(mapName).createOrOpen() as ConcurrentMap<String, T>
+    val compact = db.hashMap("$mapName@compact", Serializer.STRING, serializer).createOrOpen()
+    if (db.exists(mapName)) {
+        val legacy = db.hashMap(mapName).createOrOpen() as ConcurrentMap<String, T>
+        if (legacy.isNotEmpty()) {
+            compact.putAll(legacy)
+            legacy.clear()
+            migrated()
+        }
+    }
+    return compact
+}
+
+
+/**
+ * Marks a value which could not be read into the current shape of a class
+ */
+internal object Missing
+
+internal abstract class Codec {
+    abstract val descriptor: String
+    abstract fun write(out: DataOutput2, value: Any?)
+    abstract fun read(input: DataInput2): Any?
+
+    /**
+     * Converts [value], read by [source], to the type handled by this codec, or returns [Missing] if that is not possible
+     */
+    open fun adapt(value: Any?, source: Codec): Any? {
+        return if (source.descriptor == descriptor) value else Missing
+    }
+
+    companion object {
+
+        fun forType(type: KType, visiting: Set<KClass<*>>): Codec {
+            val codec = forNonNullType(type, visiting)
+            return if (type.isMarkedNullable) NullableCodec(codec) else codec
+        }
+
+        private fun forNonNullType(type: KType, visiting: Set<KClass<*>>): Codec {
+            val kClass = type.classifier as? KClass<*> ?: return JavaCodec
+            val objectClass = kClass.javaObjectType
+            primitives[objectClass]?.let { return it }
+            if (objectClass.isEnum) {
+                return EnumCodec(objectClass)
+            }
+            if (objectClass == List::class.java || objectClass == Set::class.java) {
+                val elementType = type.arguments.firstOrNull()?.type ?: return JavaCodec
+                return CollectionCodec(forType(elementType, visiting), objectClass == Set::class.java)
+            }
+            if (kClass.isData && !visiting.contains(kClass)) {
+                return RecordCodec.forClass(kClass, visiting) ?: JavaCodec
+            }
+            return JavaCodec
+        }
+
+        private val primitives: Map<Class<*>, Codec> = listOf(
+                PrimitiveCodec("Z", { out, v -> out.writeBoolean(v as Boolean) }, { input -> input.readBoolean() }, Boolean::class.javaObjectType),
+                PrimitiveCodec("B", { out, v -> out.writeByte((v as Byte).toInt()) }, { input -> input.readByte() }, Byte::class.javaObjectType),
+                PrimitiveCodec("H", { out, v -> out.writeShort((v as Short).toInt()) }, { input -> input.readShort() }, Short::class.javaObjectType),
+                PrimitiveCodec("C", { out, v -> out.writeChar((v as Char).toInt()) }, { input -> input.readChar() }, Char::class.javaObjectType),
+                PrimitiveCodec("I", { out, v -> out.packInt(zigZag(v as Int)) }, { input -> unZigZag(input.unpackInt()) }, Int::class.javaObjectType),
+                PrimitiveCodec("J", { out, v -> out.packLong(zigZag(v as Long)) }, { input -> unZigZag(input.unpackLong()) }, Long::class.javaObjectType),
+                PrimitiveCodec("F", { out, v -> out.writeFloat(v as Float) }, { input -> input.readFloat() }, Float::class.javaObjectType),
+                PrimitiveCodec("D", { out, v -> out.writeDouble(v as Double) }, { input -> input.readDouble() }, Double::class.javaObjectType),
+                PrimitiveCodec("T", { out, v -> writeString(out, v as String) }, { input -> readString(input) }, String::class.java),
+                PrimitiveCodec("LD", { out, v -> out.packLong(zigZag((v as LocalDate).toEpochDay())) }, { input -> LocalDate.ofEpochDay(unZigZag(input.unpackLong())) }, LocalDate::class.java),
+                PrimitiveCodec("LDT", { out, v ->
+                    val dateTime = v as LocalDateTime
+                    out.packLong(zigZag(dateTime.toLocalDate().toEpochDay()))
+                    out.packLong(dateTime.toLocalTime().toNanoOfDay())
+                }, { input -> LocalDateTime.of(LocalDate.ofEpochDay(unZigZag(input.unpackLong())), LocalTime.ofNanoOfDay(input.unpackLong())) }, LocalDateTime::class.java))
+                .associateBy { codec -> codec.valueClass }
+
+        fun primitive(descriptor: String): Codec? {
+            return primitives.values.firstOrNull { codec -> codec.descriptor == descriptor }
+        }
+
+        private fun zigZag(v: Int): Int = (v shl 1) xor (v shr 31)
+        private fun unZigZag(v: Int): Int = (v ushr 1) xor -(v and 1)
+        private fun zigZag(v: Long): Long = (v shl 1) xor (v shr 63)
+        private fun unZigZag(v: Long): Long = (v ushr 1) xor -(v and 1)
+
+        fun writeString(out: DataOutput2, value: String) {
+            val bytes = value.toByteArray(Charsets.UTF_8)
+            out.packInt(bytes.size)
+            out.write(bytes)
+        }
+
+        fun readString(input: DataInput2): String {
+            val bytes = ByteArray(input.unpackInt())
+            input.readFully(bytes)
+            return String(bytes, Charsets.UTF_8)
+        }
+    }
+}
+
+internal class PrimitiveCodec(override val descriptor: String, private val writer: (DataOutput2, Any) -> Unit, private val reader: (DataInput2) -> Any, val valueClass: Class<*>) : Codec() {
+    override fun write(out: DataOutput2, value: Any?) = writer(out, value!!)
+    override fun read(input: DataInput2): Any? = reader(input)
+}
+
+/**
+ * A presence flag, followed by the value if there is one
+ */
+internal class NullableCodec(val codec: Codec) : Codec() {
+    override val descriptor: String = "?" + codec.descriptor
+
+    override fun write(out: DataOutput2, value: Any?) {
+        out.writeBoolean(value != null)
+        if (value != null) {
+            codec.write(out, value)
+        }
+    }
+
+    override fun read(input: DataInput2): Any? {
+        return if (input.readBoolean()) codec.read(input) else null
+    }
+
+    override fun adapt(value: Any?, source: Codec): Any? {
+        if (value == null) {
+            return null
+        }
+        return codec.adapt(value, if (source is NullableCodec) source.codec else source)
+    }
+}
+
+/**
+ * When read from a schema, there is no enum class, and the value is read as its name
+ */
+internal class EnumCodec(private val enumClass: Class<*>?) : Codec() {
+    override val descriptor: String = "E"
+
+    override fun write(out: DataOutput2, value: Any?) {
+        Codec.writeString(out, (value as Enum<*>).name)
+    }
+
+    override fun read(input: DataInput2): Any? {
+        val name = Codec.readString(input)
+        if (enumClass == null) {
+            return name
+        }
+        val constant = valueOf(name)
+        if (constant === Missing) {
+            throw MapDbSerializationException("${enumClass.name} has no constant $name")
+        }
+        return constant
+    }
+
+    override fun adapt(value: Any?, source: Codec): Any? {
+        if (source !is EnumCodec || value == null) {
+            return Missing
+        }
+        return if (value is String) valueOf(value) else value
+    }
+
+    private fun valueOf(name: String): Any {
+        return enumClass!!.enumConstants.firstOrNull { constant -> (constant as Enum<*>).name == name } ?: Missing
+    }
+}
+
+internal class CollectionCodec(val element: Codec, val set: Boolean) : Codec() {
+    override val descriptor: String = (if (set) "<" else "[") + element.descriptor
+
+    override fun write(out: DataOutput2, value: Any?) {
+        val collection = value as Collection<*>
+        out.packInt(collection.size)
+        collection.forEach { item -> element.write(out, item) }
+    }
+
+    override fun read(input: DataInput2): Any? {
+        val size = input.unpackInt()
+        val collection: MutableCollection<Any?> = if (set) LinkedHashSet(size) else ArrayList(size)
+        repeat(size) { collection.add(element.read(input)) }
+        return collection
+    }
+
+    override fun adapt(value: Any?, source: Codec): Any? {
+        if (source !is CollectionCodec || value == null) {
+            return Missing
+        }
+        val collection: MutableCollection<Any?> = if (set) LinkedHashSet() else ArrayList()
+        for (item in value as Collection<*>) {
+            val adapted = element.adapt(item, source.element)
+            if (adapted === Missing) {
+                return Missing
+            }
+            collection.add(adapted)
+        }
+        return collection
+    }
+}
+
+/**
+ * Length prefixed Java serialization, for values of any other type
+ */
+internal object JavaCodec : Codec() {
+    override val descriptor: String = "X"
+
+    override fun write(out: DataOutput2, value: Any?) {
+        val bytes = ByteArrayOutputStream()
+        ObjectOutputStream(bytes).use { stream -> stream.writeObject(value) }
+        out.packInt(bytes.size())
+        out.write(bytes.toByteArray())
+    }
+
+    override fun read(input: DataInput2): Any? {
+        val bytes = ByteArray(input.unpackInt())
+        input.readFully(bytes)
+        return ObjectInputStream(ByteArrayInputStream(bytes)).use { stream -> stream.readObject() }
+    }
+}
+
+/**
+ * The fields of a class, in primary constructor order.  When read from a schema, there is no class, and a record is read as a map of field
+ * name to value
+ */
+internal class RecordCodec private constructor(val entityClass: KClass<*>?, private val fields: List<Field>) : Codec() {
+    override val descriptor: String = fields.joinToString(",", "{", "}") { field -> "${field.name}=${field.codec.descriptor}" }
+
+    class Field(val name: String, val codec: Codec, val getter: Method?, val parameter: KParameter?)
+
+    private val kConstructor: KFunction<*>? = entityClass?.primaryConstructor
+    private val javaConstructor: Constructor<*>? = kConstructor?.javaConstructor
+
+    override fun write(out: DataOutput2, value: Any?) {
+        for (field in fields) {
+            field.codec.write(out, field.getter!!.invoke(value))
+        }
+    }
+
+    override fun read(input: DataInput2): Any? {
+        if (javaConstructor == null) {
+            val values = LinkedHashMap<String, Any?>()
+            fields.forEach { field -> values[field.name] = field.codec.read(input) }
+            return values
+        }
+        val args = arrayOfNulls<Any?>(fields.size)
+        for (i in fields.indices) {
+            args[i] = fields[i].codec.read(input)
+        }
+        return javaConstructor.newInstance(*args)
+    }
+
+    override fun adapt(value: Any?, source: Codec): Any? {
+        if (source !is RecordCodec || value !is Map<*, *>) {
+            return if (source.descriptor == descriptor) value else Missing
+        }
+        val sourceFields = source.fields.associateBy { field -> field.name }
+        val args = HashMap<KParameter, Any?>()
+        for (field in fields) {
+            val parameter = field.parameter!!
+            val sourceField = sourceFields[field.name]
+            val adapted = if (sourceField == null) Missing else field.codec.adapt(value[field.name], sourceField.codec)
+            when {
+                adapted !== Missing -> args[parameter] = adapted
+                parameter.isOptional -> {
+                }
+                parameter.type.isMarkedNullable -> args[parameter] = null
+                else -> return Missing
+            }
+        }
+        return kConstructor!!.callBy(args)
+    }
+
+    companion object {
+
+        /**
+         * Returns null if the primary constructor of [kClass] has a parameter which is not also a readable property
+         */
+        fun forClass(kClass: KClass<*>, visiting: Set<KClass<*>>): RecordCodec? {
+            val constructor = kClass.primaryConstructor ?: return null
+            if (constructor.javaConstructor == null) {
+                return null
+            }
+            val properties = kClass.memberProperties.associateBy { property -> property.name }
+            val parameterNames = constructor.parameters.map { parameter -> parameter.name }.toSet()
+            if (properties.values.any { property -> property.javaField != null && !parameterNames.contains(property.name) }) {
+                // state held outside the constructor would be lost
+                return null
+            }
+            val nested = visiting + kClass
+            val fields = ArrayList<Field>()
+            for (parameter in constructor.parameters) {
+                val name = parameter.name ?: return null
+                val getter = properties[name]?.javaGetter ?: return null
+                getter.isAccessible = true
+                fields.add(Field(name, Codec.forType(parameter.type, nested), getter, parameter))
+            }
+            constructor.javaConstructor!!.isAccessible = true
+            return RecordCodec(kClass, fields)
+        }
+
+        fun fromSchema(fields: List<Pair<String, Codec>>): RecordCodec {
+            return RecordCodec(null, fields.map { (name, codec) -> Field(name, codec, null, null) })
+        }
+    }
+}
+
+/**
+ * Parses a descriptor back into codecs, for reading records written with an earlier schema version
+ */
+internal class SchemaParser(private val descriptor: String) {
+    private var position = 0
+
+    fun parseRecord(): RecordCodec {
+        expect('{')
+        val fields = ArrayList<Pair<String, Codec>>()
+        while (descriptor[position] != '}') {
+            val nameEnd = descriptor.indexOf('=', position)
+            val name = descriptor.substring(position, nameEnd)
+            position = nameEnd + 1
+            fields.add(name to parseType())
+            if (descriptor[position] == ',') {
+                position++
+            }
+        }
+        expect('}')
+        return RecordCodec.fromSchema(fields)
+    }
+
+    private fun parseType(): Codec {
+        return when (descriptor[position]) {
+            '?' -> {
+                position++
+                NullableCodec(parseType())
+            }
+            '[', '<' -> {
+                val set = descriptor[position++] == '<'
+                CollectionCodec(parseType(), set)
+            }
+            '{' -> parseRecord()
+            'E' -> {
+                position++
+                EnumCodec(null)
+            }
+            'X' -> {
+                position++
+                JavaCodec
+            }
+            else -> {
+                val end = (position until descriptor.length).firstOrNull { i -> descriptor[i] in ",}" } ?: descriptor.length
+                val code = descriptor.substring(position, end)
+                position = end
+                Codec.primitive(code) ?: throw MapDbSerializationException("Unknown type '$code' in schema $descriptor")
+            }
+        }
+    }
+
+    private fun expect(c: Char) {
+        if (descriptor[position] != c) {
+            throw MapDbSerializationException("Expected '$c' at $position in schema $descriptor")
+        }
+        position++
+    }
+}
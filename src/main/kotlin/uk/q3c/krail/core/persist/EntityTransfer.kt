@@ -0,0 +1,548 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.persist
+
+import com.google.gson.Gson
+import com.google.gson.GsonBuilder
+import com.google.gson.JsonElement
+import com.google.gson.JsonObject
+import com.google.gson.JsonPrimitive
+import com.google.gson.TypeAdapter
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.google.gson.stream.JsonWriter
+import com.google.inject.Inject
+import com.google.inject.Provider
+import uk.q3c.krail.config.ApplicationConfiguration
+import uk.q3c.krail.core.form.Entity
+import uk.q3c.krail.core.form.FormDaoFactory
+import uk.q3c.krail.core.form.KrailBeanValidatorFactory
+import uk.q3c.krail.core.monitor.TimedMessage
+import uk.q3c.krail.core.validation.FixedLocaleInterpolator
+import uk.q3c.krail.eventbus.MessageBus
+import uk.q3c.krail.i18n.CurrentLocale
+import java.io.Reader
+import java.io.Serializable
+import java.io.Writer
+import java.lang.reflect.Type
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.time.LocalTime
+import java.util.ArrayDeque
+import java.util.Locale
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import javax.validation.Validator
+import javax.validation.ValidatorFactory
+import kotlin.reflect.KClass
+import kotlin.reflect.KFunction
+import kotlin.reflect.KParameter
+import kotlin.reflect.KProperty1
+import kotlin.reflect.full.memberProperties
+import kotlin.reflect.full.primaryConstructor
+import kotlin.reflect.jvm.javaType
+
+const val FORM_TRANSFER_CHUNK_SIZE = "form.transfer.chunk.size"
+const val FORM_TRANSFER_PARALLELISM = "form.transfer.parallelism"
+
+/**
+ * Bulk export and import of the entities held by a [FormDaoFactory], as CSV or JSON.
+ *
+ * The properties transferred are the parameters of the entity's primary constructor, each of which must also be a property.  In CSV, the
+ * first record is a header of property names.  Strings are written as they are, other simple values as their JSON text without quotes, and
+ * anything else (a collection for example) as JSON.  An empty unquoted field is read as null, and a quoted empty field ("") as an empty String.
+ * JSON is an array of objects, one per entity.
+ *
+ * On import, a property which is absent, or null where that is not allowed, takes its default value if it has one.  Columns or members which
+ * do not match a property are ignored.
+ *
+ * Progress of both is published as [EntityTransferProgress] messages on the [MessageBus]
+ */
+interface EntityTransfer {
+
+    /**
+     * Writes every entity of [entityClass] to [output], reading them from the store one at a time.  [output] is flushed but not closed
+     *
+     * @return the number of entities exported
+     */
+    fun <T : Entity> export(entityClass: KClass<T>, format: TransferFormat, output: Writer): Int
+
+    /**
+     * Reads entities of [entityClass] from [input], validates them with the bean validation constraints of the entity class, and stores
+     * those which are valid, replacing any existing entity with the same id.  Records which cannot be read, or are not valid, are reported
+     * in the result.  [input] is not closed.  Validation messages are in the [CurrentLocale] of the calling thread
+     */
+    fun <T : Entity> import(entityClass: KClass<T>, format: TransferFormat, input: Reader): ImportResult
+
+    /**
+     * As [import], but with validation messages in [locale].  Use this where there is no [CurrentLocale], outside a Vaadin session for example
+     */
+    fun <T : Entity> import(entityClass: KClass<T>, format: TransferFormat, input: Reader, locale: Locale): ImportResult
+}
+
+enum class TransferFormat {
+    CSV, JSON
+}
+
+enum class TransferDirection {
+    EXPORT, IMPORT
+}
+
+/**
+ * [record] is the 1-based position of the record in the input, not counting a CSV header
+ */
+data class RejectedRecord(val record: Int, val messages: List<String>) : Serializable
+
+data class ImportResult(val imported: Int, val rejected: List<RejectedRecord>) : Serializable
+
+/**
+ * Published periodically during a transfer, and once when it has [finished].  [processed] counts the entities exported, or the records
+ * read on import, including those [rejected]
+ */
+class EntityTransferProgress(val entityClass: Class<out Entity>, val direction: TransferDirection, val processed: Int, val rejected: Int,
+                             val elapsedMillis: Long, val finished: Boolean) : TimedMessage() {
+
+    val perSecond: Double
+        get() = if (elapsedMillis == 0L) 0.0 else processed * 1000.0 / elapsedMillis
+}
+
+class EntityTransferException(msg: String) : RuntimeException(msg)
+
+
+/**
+ * Export iterates the store through [uk.q3c.krail.core.form.BaseDao.forEach], so memory use does not depend on the number of entities.
+ *
+ * Import reads the input on the calling thread, in chunks of [FORM_TRANSFER_CHUNK_SIZE] records.  Each chunk is converted to entities and
+ * validated on a pool of [FORM_TRANSFER_PARALLELISM] threads, and written with [uk.q3c.krail.core.form.BaseDao.insertAll], so that each chunk
+ * is a single commit.  Chunks are written in the order they were read, and no more than two per thread are held at any one time.
+ *
+ * Validation uses the constraint metadata from [KrailBeanValidatorFactory], so is applied only to properties which have constraints.  The pool
+ * threads are outside the Vaadin session, so the locale for validation messages is captured on the calling thread.  The validator is taken
+ * from the injected [ValidatorFactory], with only its message interpolator replaced, by a [FixedLocaleInterpolator] for that locale
+ */
+class DefaultEntityTransfer @Inject constructor(
+        private val formDaoFactory: FormDaoFactory,
+        private val validatorFactory: KrailBeanValidatorFactory,
+        private val messageBus: MessageBus,
+        applicationConfiguration: ApplicationConfiguration,
+        private val javaxValidatorFactory: ValidatorFactory,
+        private val currentLocaleProvider: Provider<CurrentLocale>) : EntityTransfer {
+
+    private val chunkSize: Int = Math.max(1, applicationConfiguration.getPropertyValue(FORM_TRANSFER_CHUNK_SIZE, defaultChunkSize))
+    private val parallelism: Int = Math.max(1, applicationConfiguration.getPropertyValue(FORM_TRANSFER_PARALLELISM, Runtime.getRuntime().availableProcessors()))
+    private val gson: Gson = GsonBuilder()
+            .serializeNulls()
+            .registerTypeAdapter(LocalDate::class.java, TextAdapter { LocalDate.parse(it) }.nullSafe())
+            .registerTypeAdapter(LocalDateTime::class.java, TextAdapter { LocalDateTime.parse(it) }.nullSafe())
+            .registerTypeAdapter(LocalTime::class.java, TextAdapter { LocalTime.parse(it) }.nullSafe())
+            .create()
+
+    override fun <T : Entity> export(entityClass: KClass<T>, format: TransferFormat, output: Writer): Int {
+        val shape = EntityShape(entityClass)
+        val progress = ProgressPublisher(entityClass.java, TransferDirection.EXPORT)
+        val sink = when (format) {
+            TransferFormat.CSV -> CsvSink(output, shape, gson)
+            TransferFormat.JSON -> JsonSink(output, shape, gson)
+        }
+        var count = 0
+        formDaoFactory.getDao(entityClass).forEach { entity ->
+            sink.write(entity)
+            count++
+            if (count % chunkSize == 0) {
+                progress.publish(count, 0, false)
+            }
+        }
+        sink.finish()
+        output.flush()
+        progress.publish(count, 0, true)
+        return count
+    }
+
+    override fun <T : Entity> import(entityClass: KClass<T>, format: TransferFormat, input: Reader): ImportResult {
+        return import(entityClass, format, input, currentLocaleProvider.get().locale)
+    }
+
+    override fun <T : Entity> import(entityClass: KClass<T>, format: TransferFormat, input: Reader, locale: Locale): ImportResult {
+        val validator = validator(locale)
+        val shape = EntityShape(entityClass)
+        val dao = formDaoFactory.getDao(entityClass)
+        val progress = ProgressPublisher(entityClass.java, TransferDirection.IMPORT)
+        val source = when (format) {
+            TransferFormat.CSV -> CsvSource(input, gson)
+            TransferFormat.JSON -> JsonSource(input, gson)
+        }
+        val rejected = mutableListOf<RejectedRecord>()
+        var imported = 0
+        var read = 0
+        val pending = ArrayDeque<Future<ConvertedChunk<T>>>()
+        val executor = Executors.newFixedThreadPool(parallelism) { r -> Thread(r, "entity-import").apply { isDaemon = true } }
+
+        fun writeNext() {
+            val chunk = try {
+                pending.removeFirst().get()
+            } catch (e: ExecutionException) {
+                throw e.cause ?: e
+            }
+            if (chunk.entities.isNotEmpty()) {
+                dao.insertAll(chunk.entities)
+            }
+            imported += chunk.entities.size
+            rejected.addAll(chunk.rejected)
+            progress.publish(imported + rejected.size, rejected.size, false)
+        }
+
+        try {
+            while (true) {
+                val records = source.next(chunkSize)
+                if (records.isEmpty()) {
+                    break
+                }
+                val first = read + 1
+                read += records.size
+                pending.addLast(executor.submit(Callable { convert(validator, shape, first, records) }))
+                if (pending.size >= parallelism * 2) {
+                    writeNext()
+                }
+            }
+            while (pending.isNotEmpty()) {
+                writeNext()
+            }
+        } finally {
+            executor.shutdownNow()
+        }
+        progress.publish(imported + rejected.size, rejected.size, true)
+        return ImportResult(imported, rejected)
+    }
+
+    /**
+     * Returns a validator which interpolates messages for [locale].  A [Validator] is thread safe, so one is shared by the pool threads
+     */
+    private fun validator(locale: Locale): Validator {
+        return javaxValidatorFactory.usingContext()
+                .messageInterpolator(FixedLocaleInterpolator(javaxValidatorFactory.messageInterpolator, locale))
+                .validator
+    }
+
+    private fun <T : Entity> convert(validator: Validator, shape: EntityShape<T>, first: Int, records: List<SourceRecord>): ConvertedChunk<T> {
+        val entities = ArrayList<T>(records.size)
+        val rejected = mutableListOf<RejectedRecord>()
+        records.forEachIndexed { i, record ->
+            try {
+                val entity = shape.create(record.values(shape))
+                val messages = validate(validator, shape, entity)
+                if (messages.isEmpty()) {
+                    entities.add(entity)
+                } else {
+                    rejected.add(RejectedRecord(first + i, messages))
+                }
+            } catch (e: Exception) {
+                rejected.add(RejectedRecord(first + i, listOf(e.message ?: e.javaClass.simpleName)))
+            }
+        }
+        return ConvertedChunk(entities, rejected)
+    }
+
+    /**
+     * Reports the first violation for each property, as the binder does for a form field
+     */
+    private fun <T : Entity> validate(validator: Validator, shape: EntityShape<T>, entity: T): List<String> {
+        val messages = mutableListOf<String>()
+        shape.properties.forEach { property ->
+            if (validatorFactory.constraintsFor(shape.entityClass.java, property.name).isNotEmpty()) {
+                val violation = validator.validateValue(shape.entityClass.java, property.name, property.get(entity)).firstOrNull()
+                if (violation != null) {
+                    messages.add("${property.name}: ${violation.message}")
+                }
+            }
+        }
+        return messages
+    }
+
+    private inner class ProgressPublisher(private val entityClass: Class<out Entity>, private val direction: TransferDirection) {
+        private val start = System.currentTimeMillis()
+
+        fun publish(processed: Int, rejected: Int, finished: Boolean) {
+            messageBus.publishASync(EntityTransferProgress(entityClass, direction, processed, rejected, System.currentTimeMillis() - start, finished))
+        }
+    }
+
+    companion object {
+        const val defaultChunkSize = 1000
+    }
+}
+
+internal class ConvertedChunk<T>(val entities: List<T>, val rejected: List<RejectedRecord>)
+
+/**
+ * The transferable properties of an entity class - the parameters of its primary constructor
+ */
+internal class EntityShape<T : Entity>(val entityClass: KClass<T>) {
+    val constructor: KFunction<T> = entityClass.primaryConstructor
+            ?: throw EntityTransferException("${entityClass.qualifiedName} has no primary constructor")
+    val parameters: List<KParameter> = constructor.parameters
+    val properties: List<KProperty1<T, *>>
+    val types: Map<String, Type>
+
+    init {
+        val byName = entityClass.memberProperties.associateBy { it.name }
+        properties = parameters.map { p ->
+            byName[p.name] ?: throw EntityTransferException("Constructor parameter '${p.name}' of ${entityClass.qualifiedName} is not a property")
+        }
+        types = parameters.associate { p -> p.name!! to p.type.javaType }
+    }
+
+    /**
+     * Constructs an entity from [values], which contains only the properties present in the source record
+     */
+    fun create(values: Map<String, Any?>): T {
+        val arguments = HashMap<KParameter, Any?>()
+        for (parameter in parameters) {
+            val name = parameter.name!!
+            val value = values[name]
+            when {
+                value != null -> arguments[parameter] = value
+                parameter.isOptional -> Unit
+                parameter.type.isMarkedNullable -> arguments[parameter] = null
+                values.containsKey(name) -> throw EntityTransferException("'$name' must not be empty")
+                else -> throw EntityTransferException("'$name' is missing")
+            }
+        }
+        return constructor.callBy(arguments)
+    }
+}
+
+/**
+ * A record read from the input, converted to property values only when [values] is called
+ */
+internal interface SourceRecord {
+    fun values(shape: EntityShape<*>): Map<String, Any?>
+}
+
+private interface RecordSource {
+    /**
+     * Returns up to [max] records, or an empty list at the end of the input
+     */
+    fun next(max: Int): List<SourceRecord>
+}
+
+private interface EntitySink<T : Entity> {
+    fun write(entity: T)
+    fun finish()
+}
+
+private class TextAdapter<T>(private val parse: (String) -> T) : TypeAdapter<T>() {
+    override fun write(out: JsonWriter, value: T) {
+        out.value(value.toString())
+    }
+
+    override fun read(input: JsonReader): T {
+        return parse(input.nextString())
+    }
+}
+
+private class JsonSink<T : Entity>(output: Writer, private val shape: EntityShape<T>, private val gson: Gson) : EntitySink<T> {
+    private val writer = JsonWriter(output)
+
+    init {
+        writer.beginArray()
+    }
+
+    override fun write(entity: T) {
+        writer.beginObject()
+        shape.properties.forEach { property ->
+            writer.name(property.name)
+            gson.toJson(property.get(entity), shape.types.getValue(property.name), writer)
+        }
+        writer.endObject()
+    }
+
+    override fun finish() {
+        writer.endArray()
+        writer.flush()
+    }
+}
+
+private class JsonSource(input: Reader, private val gson: Gson) : RecordSource {
+    private val reader = JsonReader(input)
+    private var started = false
+
+    override fun next(max: Int): List<SourceRecord> {
+        if (!started) {
+            reader.beginArray()
+            started = true
+        }
+        val records = ArrayList<SourceRecord>()
+        while (records.size < max && reader.hasNext()) {
+            records.add(JsonRecord(gson.fromJson<JsonObject>(reader, JsonObject::class.java), gson))
+        }
+        if (records.isEmpty() && reader.peek() == JsonToken.END_ARRAY) {
+            reader.endArray()
+        }
+        return records
+    }
+}
+
+private class JsonRecord(private val json: JsonObject, private val gson: Gson) : SourceRecord {
+    override fun values(shape: EntityShape<*>): Map<String, Any?> {
+        val values = HashMap<String, Any?>()
+        shape.types.forEach { (name, type) ->
+            val element: JsonElement? = json.get(name)
+            if (element != null) {
+                values[name] = if (element.isJsonNull) null else gson.fromJson<Any>(element, type)
+            }
+        }
+        return values
+    }
+}
+
+private class CsvSink<T : Entity>(private val output: Writer, private val shape: EntityShape<T>, private val gson: Gson) : EntitySink<T> {
+
+    init {
+        writeRecord(shape.properties.map { it.name })
+    }
+
+    override fun write(entity: T) {
+        writeRecord(shape.properties.map { property -> format(property.get(entity), shape.types.getValue(property.name)) })
+    }
+
+    override fun finish() {
+        output.flush()
+    }
+
+    private fun format(value: Any?, type: Type): String? {
+        return when (value) {
+            null -> null
+            is String -> value
+            else -> {
+                val json = gson.toJsonTree(value, type)
+                if (json.isJsonPrimitive) json.asString else json.toString()
+            }
+        }
+    }
+
+    /**
+     * null is written as an empty field, and an empty String as a quoted empty field
+     */
+    private fun writeRecord(fields: List<String?>) {
+        fields.forEachIndexed { i, field ->
+            if (i > 0) {
+                output.write(','.toInt())
+            }
+            if (field != null) {
+                if (field.isEmpty() || field.any { c -> c == ',' || c == '"' || c == '\n' || c == '\r' }) {
+                    output.write("\"${field.replace("\"", "\"\"")}\"")
+                } else {
+                    output.write(field)
+                }
+            }
+        }
+        output.write("\r\n")
+    }
+}
+
+private class CsvSource(input: Reader, private val gson: Gson) : RecordSource {
+    private val reader = input.buffered()
+    private val header: List<String?> by lazy { readRecord() ?: listOf() }
+
+    override fun next(max: Int): List<SourceRecord> {
+        val columns = header
+        val records = ArrayList<SourceRecord>()
+        while (records.size < max) {
+            val fields = readRecord() ?: break
+            records.add(CsvRecord(columns, fields, gson))
+        }
+        return records
+    }
+
+    /**
+     * Returns the fields of the next record, or null at the end of the input.  An unquoted empty field is returned as null
+     */
+    private fun readRecord(): List<String?>? {
+        var c = reader.read()
+        if (c == -1) {
+            return null
+        }
+        val fields = ArrayList<String?>()
+        val field = StringBuilder()
+        var quoted = false
+        while (true) {
+            when {
+                c == '"'.toInt() && field.isEmpty() && !quoted -> {
+                    quoted = true
+                    readQuoted(field)
+                }
+                c == ','.toInt() -> {
+                    fields.add(if (field.isEmpty() && !quoted) null else field.toString())
+                    field.setLength(0)
+                    quoted = false
+                }
+                c == '\r'.toInt() || c == '\n'.toInt() || c == -1 -> {
+                    if (c == '\r'.toInt()) {
+                        reader.mark(1)
+                        if (reader.read() != '\n'.toInt()) {
+                            reader.reset()
+                        }
+                    }
+                    fields.add(if (field.isEmpty() && !quoted) null else field.toString())
+                    return fields
+                }
+                else -> field.append(c.toChar())
+            }
+            c = reader.read()
+        }
+    }
+
+    private fun readQuoted(field: StringBuilder) {
+        while (true) {
+            val c = reader.read()
+            when (c) {
+                -1 -> throw EntityTransferException("Unterminated quoted field in CSV input")
+                '"'.toInt() -> {
+                    reader.mark(1)
+                    if (reader.read() == '"'.toInt()) {
+                        field.append('"')
+                    } else {
+                        reader.reset()
+                        return
+                    }
+                }
+                else -> field.append(c.toChar())
+            }
+        }
+    }
+}
+
+private class CsvRecord(private val header: List<String?>, private val fields: List<String?>, private val gson: Gson) : SourceRecord {
+
+    override fun values(shape: EntityShape<*>): Map<String, Any?> {
+        val values = HashMap<String, Any?>()
+        header.forEachIndexed { i, name ->
+            val type = name?.let { shape.types[it] }
+            if (name != null && type != null && i < fields.size) {
+                values[name] = parse(fields[i], type)
+            }
+        }
+        return values
+    }
+
+    private fun parse(field: String?, type: Type): Any? {
+        return when {
+            field == null -> null
+            type == String::class.java -> field
+            field.startsWith("[") || field.startsWith("{") -> gson.fromJson<Any>(field, type)
+            else -> gson.fromJson<Any>(JsonPrimitive(field), type)
+        }
+    }
+}
@@ -3,9 +3,8 @@ package uk.q3c.krail.core.persist
 import com.google.inject.AbstractModule
 import com.google.inject.Inject
 import com.google.inject.Singleton
-import org.apache.commons.io.FileUtils
 import org.mapdb.DB
-import org.mapdb.DBMaker
+import org.slf4j.LoggerFactory
 import uk.q3c.krail.core.form.BaseDao
 import uk.q3c.krail.core.form.Entity
 import uk.q3c.krail.core.form.FormDao
@@ -13,6 +12,13 @@ import uk.q3c.krail.core.form.FormDaoFactory
 import uk.q3c.krail.core.form.MapDBBaseDao
 import java.io.File
 import java.io.Serializable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
 import kotlin.reflect.KClass
 
 /**
@@ -21,40 +27,308 @@ import kotlin.reflect.KClass
 class FormDaoModule : AbstractModule() {
     override fun configure() {
         bindFormDaoFactory()
+        bindStoreSettings()
+        bindEntityTransfer()
     }
 
     private fun bindFormDaoFactory() {
         bind(FormDaoFactory::class.java).to(MapDbFormDaoFactory::class.java).`in`(Singleton::class.java)
     }
+
+    private fun bindStoreSettings() {
+        bind(MapDbStoreSettings::class.java).toProvider(DefaultMapDbStoreSettingsProvider::class.java)
+    }
+
+    private fun bindEntityTransfer() {
+        bind(EntityTransfer::class.java).to(DefaultEntityTransfer::class.java)
+    }
 }
 
 
 /**
  * MapDb implementation of the [BaseDao] interface is very limited - not intended for real use
+ *
+ * Stores are opened on first use, once only, as specified by [MapDbStoreSettings].  There is either a single store, or with
+ * [MapDbStoreSettings.storePerEntity] a store for each entity class.
+ *
+ * By default each write through a DAO is committed immediately.  Writes made within [unitOfWork] are committed once, when the outermost unit
+ * of work completes.  Alternatively, [writeBehind] defers commits for all writes, committing them as a group periodically, or sooner if
+ * the number of uncommitted writes to a store reaches a limit.
+ *
+ * If a unit of work fails, whatever it has written is rolled back if [MapDbStoreSettings.transactions] is enabled, or committed if not.  A MapDB
+ * rollback discards everything not yet committed to a store, so with transactions enabled units of work are serialised: the outermost unit of
+ * work waits for writes on other threads to finish, commits every open store (including writes deferred by [writeBehind]), and holds off all
+ * other writes until it has committed or rolled back.  This costs concurrency, so use units of work sparingly with transactions enabled
  */
 
-class MapDbFormDaoFactory @Inject constructor() : FormDaoFactory, Serializable {
+class MapDbFormDaoFactory @Inject constructor(val settings: MapDbStoreSettings) : FormDaoFactory, Serializable {
 
     @Transient
-    private var db: DB? = null
-    val dbFile: File
-
-    init {
-        val tempDir: File = FileUtils.getTempDirectory()
-        dbFile = File(tempDir, "mapdb.db")
-    }
+    @Volatile
+    private var stores: ConcurrentMap<String, MapDbStore>? = null
+    @Transient
+    private var groupCommit: GroupCommit? = null
+    @Transient
+    @Volatile
+    private var unitsOfWork: ThreadLocal<UnitOfWork>? = null
+    @Transient
+    @Volatile
+    private var unitLock: ReentrantReadWriteLock? = null
+    private var writeBehindMaxPending: Int = settings.writeBehindMaxPending
+    private var writeBehindIntervalMillis: Long = settings.writeBehindIntervalMillis
+    val dbFile: File = File(settings.directory, "$defaultStoreName.db")
 
 
     override fun <T : Entity> getDao(entityClass: KClass<T>): FormDao<T> {
         return FormDao(MapDBBaseDao(daoFactory = this, entityClass = entityClass))
     }
 
+    /**
+     * Returns the shared store, opening it if necessary
+     */
     fun db(): DB {
-        if (db == null) {
-            db = DBMaker.fileDB(dbFile).make()
+        return store(defaultStoreName).db
+    }
+
+    /**
+     * Returns the store which holds [mapName], opening it if necessary
+     */
+    fun db(mapName: String): DB {
+        return store(storeNameFor(mapName)).db
+    }
+
+    /**
+     * Returns the map named [mapName] for [entityClass], opening it only on first use.  Values are stored by an [EntitySerializer] if
+     * [entityClass] supports one.  Handles are discarded if the store is re-opened
+     */
+    fun <T : Any> map(mapName: String, entityClass: KClass<T>): ConcurrentMap<String, T> {
+        return store(storeNameFor(mapName)).map(mapName, entityClass)
+    }
+
+    /**
+     * Returns a collection named [name] held in the same store as [mapName], using [open] to open it on first use.  Handles are discarded if
+     * the store is re-opened
+     */
+    fun <H : Any> handle(mapName: String, name: String, open: (DB) -> H): H {
+        return store(storeNameFor(mapName)).handle(name, open)
+    }
+
+    /**
+     * Executes [work], holding off any commit of the store which holds [mapName] until it completes, so that everything written by [work]
+     * is committed together.  [work] must not itself commit - call [written] afterwards
+     */
+    fun <R> writing(mapName: String, work: () -> R): R {
+        val store = store(storeNameFor(mapName))
+        if (!settings.transactions) {
+            return store.writing(work)
+        }
+        return unitLock().read { store.writing(work) }
+    }
+
+    /**
+     * Returns the number of times the store which holds [mapName] has been rolled back.  Anything a caller has recorded as written to the store
+     * since the count was last read may have been discarded
+     */
+    fun rollbacks(mapName: String): Long {
+        return store(storeNameFor(mapName)).rollbacks.get()
+    }
+
+    /**
+     * Returns true if the store which holds [mapName] has been closed, and not since re-opened.  A store which has not yet been opened is not
+     * closed - it is opened on first use
+     */
+    fun isClosed(mapName: String): Boolean {
+        val store = openStores()[storeNameFor(mapName)] ?: return false
+        return !store.isOpen
+    }
+
+    /**
+     * Executes [work], committing everything written by it (on this thread) in a single commit per store when it completes.  Units of work
+     * may be nested, in which case only the outermost commits
+     */
+    fun <R> unitOfWork(work: () -> R): R {
+        val unitOfWork = currentUnitOfWork()
+        val exclusive = settings.transactions && unitOfWork.depth == 0
+        if (exclusive) {
+            unitLock().writeLock().lock()
+        }
+        try {
+            if (exclusive) {
+                // so that a rollback can discard only what this unit of work writes
+                openStores().values.forEach { store ->
+                    store.pending.set(0)
+                    store.commit()
+                }
+            }
+            unitOfWork.depth++
+            var failed = true
+            try {
+                val result = work()
+                failed = false
+                return result
+            } finally {
+                unitOfWork.depth--
+                if (unitOfWork.depth == 0) {
+                    val written = ArrayList(unitOfWork.written)
+                    unitOfWork.written.clear()
+                    written.forEach { store -> if (failed && settings.transactions) store.rollback() else commit(store) }
+                }
+            }
+        } finally {
+            if (exclusive) {
+                unitLock().writeLock().unlock()
+            }
+        }
+    }
+
+    /**
+     * Called by a DAO after each write to [mapName].  Commits unless within a [unitOfWork], or deferring commits with [writeBehind]
+     */
+    fun written(mapName: String) {
+        val store = store(storeNameFor(mapName))
+        val unitOfWork = currentUnitOfWork()
+        if (unitOfWork.depth > 0) {
+            unitOfWork.written.add(store)
+        } else {
+            commit(store)
+        }
+    }
+
+    /**
+     * Defers commits, so that writes are committed in groups - at least every [intervalMillis], and immediately once [maxPending]
+     * writes to a store are waiting to be committed.  Writes are visible to readers straight away, but may be lost if the application stops
+     * before they are committed.  Call with [maxPending] of 0 to revert to committing each write.
+     *
+     * The initial values are taken from [MapDbStoreSettings]
+     */
+    @Synchronized
+    fun writeBehind(maxPending: Int, intervalMillis: Long) {
+        groupCommit?.close()
+        groupCommit = null
+        writeBehindMaxPending = maxPending
+        writeBehindIntervalMillis = intervalMillis
+    }
+
+    /**
+     * Commits any pending writes, and closes all stores.  The closed stores are retained, so that [isClosed] reports them as closed, until they
+     * are re-opened by their next use
+     */
+    @Synchronized
+    fun close() {
+        groupCommit?.close()
+        groupCommit = null
+        openStores().values.forEach { store -> store.close() }
+    }
+
+    private fun commit(store: MapDbStore) {
+        if (writeBehindMaxPending > 0) {
+            groupCommit().written(store)
+        } else {
+            store.commit()
+        }
+    }
+
+    @Synchronized
+    private fun groupCommit(): GroupCommit {
+        return groupCommit ?: GroupCommit({ openStores().values }, writeBehindMaxPending, writeBehindIntervalMillis).also { groupCommit = it }
+    }
+
+    private fun storeNameFor(mapName: String): String {
+        return if (settings.storePerEntity) mapName else defaultStoreName
+    }
+
+    /**
+     * Double checked, so that a store is opened only once however many threads ask for it, without locking once it is open
+     */
+    private fun store(storeName: String): MapDbStore {
+        val stores = openStores()
+        val store = stores[storeName]
+        if (store != null && store.isOpen) {
+            return store
+        }
+        synchronized(this) {
+            val current = stores[storeName]
+            if (current != null && current.isOpen) {
+                return current
+            }
+            val file = if (storeName == defaultStoreName) dbFile else File(settings.directory, "$defaultStoreName-$storeName.db")
+            val opened = MapDbStore(settings.open(file))
+            stores[storeName] = opened
+            return opened
         }
-        return db as DB
     }
+
+    private fun openStores(): ConcurrentMap<String, MapDbStore> {
+        return stores ?: synchronized(this) {
+            stores ?: ConcurrentHashMap<String, MapDbStore>().also { stores = it }
+        }
+    }
+
+    private fun unitLock(): ReentrantReadWriteLock {
+        return unitLock ?: synchronized(this) {
+            unitLock ?: ReentrantReadWriteLock().also { unitLock = it }
+        }
+    }
+
+    private fun currentUnitOfWork(): UnitOfWork {
+        val threadLocal = unitsOfWork ?: synchronized(this) {
+            unitsOfWork ?: ThreadLocal.withInitial { UnitOfWork() }.also { unitsOfWork = it }
+        }
+        return threadLocal.get()
+    }
+
+    companion object {
+        const val defaultStoreName = "mapdb"
+    }
+}
+
+private class UnitOfWork {
+    var depth = 0
+    val written: MutableSet<MapDbStore> = LinkedHashSet()
 }
 
+/**
+ * Commits writes for [MapDbFormDaoFactory] in groups, rather than individually
+ */
+private class GroupCommit(private val stores: () -> Collection<MapDbStore>, private val maxPending: Int, intervalMillis: Long) {
+    private val executor: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor { runnable ->
+        val thread = Thread(runnable, "mapdb-group-commit")
+        thread.isDaemon = true
+        thread
+    }
+
+    init {
+        executor.scheduleWithFixedDelay({ commitQuietly() }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS)
+    }
 
+    fun written(store: MapDbStore) {
+        if (store.pending.incrementAndGet() >= maxPending) {
+            commit(store)
+        }
+    }
+
+    private fun commit(store: MapDbStore) {
+        if (store.pending.getAndSet(0) > 0) {
+            store.commit()
+        }
+    }
+
+    private fun commitQuietly() {
+        stores().forEach { store ->
+            try {
+                commit(store)
+            } catch (e: Exception) {
+                log.error("Group commit failed", e)
+            }
+        }
+    }
+
+    fun close() {
+        executor.shutdown()
+        stores().forEach { store -> commit(store) }
+    }
+
+    companion object {
+        private val log = LoggerFactory.getLogger(GroupCommit::class.java)
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.persist
+
+import com.google.inject.Inject
+import com.google.inject.Provider
+import org.apache.commons.io.FileUtils
+import org.mapdb.DB
+import org.mapdb.DBMaker
+import uk.q3c.krail.config.ApplicationConfiguration
+import java.io.File
+import java.io.Serializable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+import kotlin.reflect.KClass
+
+const val MAPDB_DIRECTORY = "mapdb.directory"
+const val MAPDB_MEMORY_MAPPED = "mapdb.memoryMapped"
+const val MAPDB_CONCURRENCY_SCALE = "mapdb.concurrencyScale"
+const val MAPDB_ALLOCATION_INCREMENT = "mapdb.allocationIncrement"
+const val MAPDB_TRANSACTIONS = "mapdb.transactions"
+const val MAPDB_STORE_PER_ENTITY = "mapdb.storePerEntity"
+const val MAPDB_WRITE_BEHIND_MAX_PENDING = "mapdb.writeBehind.maxPending"
+const val MAPDB_WRITE_BEHIND_INTERVAL = "mapdb.writeBehind.interval"
+
+/**
+ * Settings used by [MapDbFormDaoFactory] to open its store(s).  The defaults match the previous, unconfigured, behaviour
+ *
+ * @param directory the directory in which the store files are created
+ * @param memoryMapped if true, uses memory mapped files when supported by the JVM (that is, a 64 bit JVM)
+ * @param concurrencyScale the number of segment locks used by MapDB
+ * @param allocationIncrement the size in bytes by which the store file grows.  0 leaves it to MapDB
+ * @param transactions if true, enables the MapDB write ahead log, which makes commits crash safe and allows a failed unit of work to be
+ * rolled back, at some cost to write throughput
+ * @param storePerEntity if true, each entity class has a store file of its own, so that writes to one do not contend with writes to another
+ * @param writeBehindMaxPending if greater than 0, commits are grouped - see [MapDbFormDaoFactory.writeBehind]
+ * @param writeBehindIntervalMillis the maximum time between group commits
+ */
+data class MapDbStoreSettings(
+        val directory: File = FileUtils.getTempDirectory(),
+        val memoryMapped: Boolean = false,
+        val concurrencyScale: Int = defaultConcurrencyScale,
+        val allocationIncrement: Long = 0,
+        val transactions: Boolean = false,
+        val storePerEntity: Boolean = false,
+        val writeBehindMaxPending: Int = 0,
+        val writeBehindIntervalMillis: Long = defaultWriteBehindInterval) : Serializable {
+
+    fun open(file: File): DB {
+        var maker = DBMaker.fileDB(file).concurrencyScale(concurrencyScale)
+        if (memoryMapped) {
+            // the cleaner hack unmaps the file on close, so that it can be deleted or re-opened straight away
+            maker = maker.fileMmapEnableIfSupported().cleanerHackEnable()
+        }
+        if (allocationIncrement > 0) {
+            maker = maker.allocateIncrement(allocationIncrement)
+        }
+        if (transactions) {
+            maker = maker.transactionEnable()
+        }
+        return maker.make()
+    }
+
+    companion object {
+        const val defaultConcurrencyScale = 16
+        const val defaultWriteBehindInterval = 1000L
+    }
+}
+
+/**
+ * Reads [MapDbStoreSettings] from [ApplicationConfiguration]
+ */
+class DefaultMapDbStoreSettingsProvider @Inject constructor(private val applicationConfiguration: ApplicationConfiguration) : Provider<MapDbStoreSettings> {
+
+    override fun get(): MapDbStoreSettings {
+        val defaults = MapDbStoreSettings()
+        return MapDbStoreSettings(
+                directory = File(applicationConfiguration.getPropertyValue(MAPDB_DIRECTORY, defaults.directory.absolutePath)),
+                memoryMapped = applicationConfiguration.getPropertyValue(MAPDB_MEMORY_MAPPED, defaults.memoryMapped),
+                concurrencyScale = applicationConfiguration.getPropertyValue(MAPDB_CONCURRENCY_SCALE, defaults.concurrencyScale),
+                allocationIncrement = applicationConfiguration.getPropertyValue(MAPDB_ALLOCATION_INCREMENT, defaults.allocationIncrement),
+                transactions = applicationConfiguration.getPropertyValue(MAPDB_TRANSACTIONS, defaults.transactions),
+                storePerEntity = applicationConfiguration.getPropertyValue(MAPDB_STORE_PER_ENTITY, defaults.storePerEntity),
+                writeBehindMaxPending = applicationConfiguration.getPropertyValue(MAPDB_WRITE_BEHIND_MAX_PENDING, defaults.writeBehindMaxPending),
+                writeBehindIntervalMillis = applicationConfiguration.getPropertyValue(MAPDB_WRITE_BEHIND_INTERVAL, defaults.writeBehindIntervalMillis))
+    }
+}
+
+/**
+ * An open MapDB database, with the handles of the collections opened from it, and the number of writes to it which have not yet been committed
+ * by a group commit.  Writes made through [writing] may run concurrently with each other, but never with a commit, rollback or close
+ */
+internal class MapDbStore(val db: DB) {
+    private val handles: ConcurrentMap<String, Any> = ConcurrentHashMap()
+    private val commitLock = ReentrantReadWriteLock()
+    val pending = AtomicInteger()
+    val rollbacks = AtomicLong()
+
+    val isOpen: Boolean
+        get() = !db.isClosed()
+
+    /**
+     * Opens the map for [entityClass], committing any entities moved from a legacy map.  The commit is made once the handle is held, as a commit
+     * must not wait while the handle is being opened
+     */
+    fun <T : Any> map(mapName: String, entityClass: KClass<T>): ConcurrentMap<String, T> {
+        var migrated = false
+        val map = handle(mapName) { db -> openEntityMap(db, mapName, entityClass) { migrated = true } }
+        if (migrated) {
+            commit()
+        }
+        return map
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    fun <H : Any> handle(name: String, open: (DB) -> H): H {
+        return handles.computeIfAbsent(name) { open(db) } as H
+    }
+
+    /**
+     * Executes [work], holding off any commit, rollback or close until it completes.  [work] must not itself commit
+     */
+    fun <R> writing(work: () -> R): R {
+        return commitLock.read(work)
+    }
+
+    fun commit() {
+        commitLock.write {
+            if (isOpen) {
+                db.commit()
+            }
+        }
+    }
+
+    /**
+     * Discards everything not yet committed.  Handles are discarded too, as a collection created since the last commit no longer exists
+     */
+    fun rollback() {
+        commitLock.write {
+            if (isOpen) {
+                db.rollback()
+                handles.clear()
+                rollbacks.incrementAndGet()
+            }
+        }
+    }
+
+    fun close() {
+        commitLock.write {
+            if (isOpen) {
+                db.close()
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.view
+
+import com.google.inject.Inject
+import com.vaadin.ui.Component
+import com.vaadin.ui.HasComponents
+import org.slf4j.LoggerFactory
+import uk.q3c.krail.config.ApplicationConfiguration
+import uk.q3c.krail.core.navigate.NavigationState
+import java.io.IOException
+import java.io.ObjectInputStream
+import java.io.Serializable
+
+/**
+ * Holds view instances for a UI, so that a page which is revisited re-uses the view, together with the components it has already built.  Views are
+ * held against the [NavigationState] they were built for - the page and its parameters - so that a view class which serves several pages (for
+ * example [DefaultForm][uk.q3c.krail.core.form.DefaultForm]) is only re-used for the same page and parameters.  When a cached view is re-used the
+ * [DefaultNavigator] still calls [KrailView.beforeBuild], [KrailView.buildView] and [KrailView.afterBuild], but [ViewBase.buildView] does not
+ * construct its components again - in effect, only [KrailView.beforeBuild] and [ViewBase.loadData] do any work.
+ *
+ * Used by [DefaultViewFactory], and bound to [UIScoped] by default in [ViewModule].  A view can opt out by annotating its class with [NoViewCache]
+ */
+interface ViewCache : Serializable {
+
+    /**
+     * Returns the view of [viewClass] cached for [navigationState], or null if there isn't one
+     */
+    fun <T : KrailView> get(viewClass: Class<T>, navigationState: NavigationState): T?
+
+    /**
+     * Caches [view] against [viewClass] and [navigationState], unless caching is disabled or the view has opted out with [NoViewCache]. Called
+     * once the view has been built, so that its size can be measured.  If the cache limits are exceeded, the least recently used views are
+     * discarded
+     */
+    fun put(viewClass: Class<out KrailView>, navigationState: NavigationState, view: KrailView)
+
+    /**
+     * Removes all cached views of [viewClass]
+     */
+    fun remove(viewClass: Class<out KrailView>)
+
+    /**
+     * Removes all cached views
+     */
+    fun clear()
+
+    /**
+     * The number of views currently cached
+     */
+    fun size(): Int
+}
+
+/**
+ * Excludes a [KrailView] from the [ViewCache], so that a new instance is created every time it is navigated to (unless its scope dictates otherwise)
+ */
+@Target(AnnotationTarget.CLASS)
+@Retention(AnnotationRetention.RUNTIME)
+@MustBeDocumented
+@java.lang.annotation.Inherited
+annotation class NoViewCache
+
+
+const val VIEW_CACHE_ENABLED = "view.cache.enabled"
+const val VIEW_CACHE_MAX_VIEWS = "view.cache.max.views"
+const val VIEW_CACHE_MAX_COMPONENTS = "view.cache.max.components"
+
+
+/**
+ * Least recently used cache of views, limited by number of views ([VIEW_CACHE_MAX_VIEWS]) and by their estimated size ([VIEW_CACHE_MAX_COMPONENTS]).
+ * The size of a view is estimated as the number of components in its tree, measured when the view is added - that is, after it has been built.
+ * The view being added is never discarded.
+ *
+ * Limits are read from [ApplicationConfiguration] when the cache is constructed.  The cache is disabled by default - set [VIEW_CACHE_ENABLED] to
+ * true to enable it
+ */
+class DefaultViewCache @Inject constructor(applicationConfiguration: ApplicationConfiguration) : ViewCache {
+    @Transient
+    private var log = LoggerFactory.getLogger(DefaultViewCache::class.java)
+    private val enabled: Boolean = applicationConfiguration.getPropertyValue(VIEW_CACHE_ENABLED, false)
+    private val maxViews: Int = applicationConfiguration.getPropertyValue(VIEW_CACHE_MAX_VIEWS, defaultMaxViews)
+    private val maxComponents: Int = applicationConfiguration.getPropertyValue(VIEW_CACHE_MAX_COMPONENTS, defaultMaxComponents)
+
+    // access ordered, so iteration starts with the least recently used
+    private val views: LinkedHashMap<ViewKey, CachedView> = LinkedHashMap(16, 0.75f, true)
+    private var totalSize = 0
+
+    @Suppress("UNCHECKED_CAST")
+    @Synchronized
+    override fun <T : KrailView> get(viewClass: Class<T>, navigationState: NavigationState): T? {
+        return views[ViewKey.of(viewClass, navigationState)]?.view as T?
+    }
+
+    @Synchronized
+    override fun put(viewClass: Class<out KrailView>, navigationState: NavigationState, view: KrailView) {
+        if (!enabled) {
+            return
+        }
+        if (viewClass.isAnnotationPresent(NoViewCache::class.java) || view.javaClass.isAnnotationPresent(NoViewCache::class.java)) {
+            log.debug("{} is not cached", viewClass)
+            return
+        }
+        val key = ViewKey.of(viewClass, navigationState)
+        val cachedView = CachedView(view, estimatedSize(view))
+        views.put(key, cachedView)?.let { totalSize -= it.size }
+        totalSize += cachedView.size
+        evict(key)
+    }
+
+    private fun evict(retain: ViewKey) {
+        val iterator = views.entries.iterator()
+        while ((views.size > maxViews || totalSize > maxComponents) && iterator.hasNext()) {
+            val entry = iterator.next()
+            if (entry.key != retain) {
+                log.debug("discarding cached view {}", entry.key)
+                totalSize -= entry.value.size
+                iterator.remove()
+            }
+        }
+    }
+
+    /**
+     * The number of components in the view's tree, or 0 if it has not been built
+     */
+    private fun estimatedSize(view: KrailView): Int {
+        if (view is ViewBase && !view.isComponentsConstructed) {
+            return 0
+        }
+        return try {
+            countComponents(view.rootComponent)
+        } catch (e: ViewBuildException) {
+            0
+        }
+    }
+
+    private fun countComponents(component: Component): Int {
+        var count = 1
+        if (component is HasComponents) {
+            component.forEach { c -> count += countComponents(c) }
+        }
+        return count
+    }
+
+    @Synchronized
+    override fun remove(viewClass: Class<out KrailView>) {
+        val iterator = views.entries.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            if (entry.key.viewClass == viewClass) {
+                totalSize -= entry.value.size
+                iterator.remove()
+            }
+        }
+    }
+
+    @Synchronized
+    override fun clear() {
+        views.clear()
+        totalSize = 0
+    }
+
+    @Synchronized
+    override fun size(): Int {
+        return views.size
+    }
+
+    @Throws(ClassNotFoundException::class, IOException::class)
+    private fun readObject(inputStream: ObjectInputStream) {
+        inputStream.defaultReadObject()
+        log = LoggerFactory.getLogger(DefaultViewCache::class.java)
+    }
+
+    companion object {
+        const val defaultMaxViews = 10
+        const val defaultMaxComponents = 5000
+    }
+}
+
+/**
+ * A copy of the page and parameters of a [NavigationState], which is itself mutable
+ */
+private data class ViewKey(val viewClass: Class<out KrailView>, val virtualPage: String, val parameters: Map<String, String>) : Serializable {
+    companion object {
+        fun of(viewClass: Class<out KrailView>, navigationState: NavigationState): ViewKey {
+            // parameters is an immutable copy
+            return ViewKey(viewClass, navigationState.virtualPage, navigationState.parameters)
+        }
+    }
+}
+
+private class CachedView(val view: KrailView, val size: Int) : Serializable
@@ -55,6 +55,8 @@ import uk.q3c.krail.core.view.KrailView
 import uk.q3c.util.clazz.UnenhancedClassIdentifier
 import java.io.Serializable
 import java.lang.reflect.Field
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
 
 
 /**
@@ -71,6 +73,28 @@ interface ComponentIdGenerator : Serializable {
      */
     fun <T : Any> generateAndApply(obj: T): MutableGraph<ComponentIdEntry>
 
+    /**
+     * Applies ids to the components in [obj], in the same way as [generateAndApply], but without constructing the graph of entries.
+     * This is the method to use when only the ids are needed - for example, during navigation
+     */
+    fun <T : Any> apply(obj: T)
+
+    /**
+     * Applies ids to the components of [obj] which have been replaced (or constructed) since [previous] was taken, and returns the new state to
+     * pass to the next call.  If [previous] is null, ids are applied to the whole tree, as [apply] does.
+     *
+     * Otherwise only the component fields of [obj] itself are read.  A replaced component has ids applied to its whole subtree.  The subtree
+     * of an unchanged component is not read at all, unless the component is [ComponentIdVersioned] and its version has changed, in which case
+     * its own component fields are compared in the same way.  The cost is therefore proportional to the number of component fields of [obj],
+     * plus the size of whatever has been replaced
+     */
+    fun <T : Any> applyChanged(obj: T, previous: ComponentIdState?): ComponentIdState
+
+    /**
+     * Prepares [clazz] for id generation in advance, so that the first use of it is no slower than later ones
+     */
+    fun prepare(clazz: Class<*>)
+
 }
 
 /**
@@ -85,7 +109,11 @@ interface ComponentIdGenerator : Serializable {
  */
 data class IdAnnotationValues(val annotationPresent: Boolean, val assign: Boolean, val drilldown: Boolean)
 
-
+/**
+ * Selects a component field to receive an id.  No longer used by [DefaultComponentIdGenerator], which compiles each class into
+ * [ComponentFieldPlan]s instead
+ */
+@Deprecated("Use ComponentFieldPlan.assign")
 class ComponentIDAssignmentFilter(val realClassIdentifier: UnenhancedClassIdentifier) : Serializable {
 
     fun apply(field: Field, obj: Any): Boolean {
@@ -97,29 +125,19 @@ class ComponentIDAssignmentFilter(val realClassIdentifier: UnenhancedClassIdenti
             return false
         }
         val cc = c as Component
-        val cClazz = realClassIdentifier.getOriginalClassFor(cc)
-        var assign = !layoutClasses.contains(cClazz)
-        val annotationReader = AnnotationReader(realClassIdentifier)
-        val annotationValues: IdAnnotationValues = annotationReader.readAnnotation(field, c)
-        if (annotationValues.annotationPresent) {
-            assign = annotationValues.assign
-        }
-
+        val assign = ComponentFieldPlan(field).assign(ComponentClassInfo(realClassIdentifier.getOriginalClassFor(cc), cc.javaClass))
         log.debug("Component '${field.name}' selected for id assign is: '$assign'")
         return assign
     }
 }
 
 /**
- * Selects a component to drill down into:
- *
- * Annotation has already been read and set by [DefaultComponentIdGenerator.readAnnotation], and if no specific
- * annotation rule has been applied, drilldown is applied if the field type implements [HasComponents], but not if it implements [Layout]
- *
+ * Selects a component field to drill down into.  No longer used by [DefaultComponentIdGenerator], which compiles each class into
+ * [ComponentFieldPlan]s instead
  */
+@Deprecated("Use ComponentFieldPlan.drilldown")
 class ComponentIDDrilldownFilter(val realClassIdentifier: UnenhancedClassIdentifier) : Serializable {
 
-
     fun apply(field: Field, obj: Any): Boolean {
         val log = LoggerFactory.getLogger(this.javaClass.name)
         field.isAccessible = true
@@ -129,30 +147,112 @@ class ComponentIDDrilldownFilter(val realClassIdentifier: UnenhancedClassIdentif
             return false
         }
         val cc = c as Component
+        val drilldown = ComponentFieldPlan(field).drilldown(ComponentClassInfo(realClassIdentifier.getOriginalClassFor(cc), cc.javaClass))
+        log.debug("Component '${field.name}' selected for id drilldown is: '$drilldown'")
+        return drilldown
+    }
+}
+
+
+data class ComponentIdEntry(val name: String, val id: String, val type: String, val baseComponent: Boolean)
 
-        var drilldown = true
-        val annotationReader = AnnotationReader(realClassIdentifier)
-        val annotationValues: IdAnnotationValues = annotationReader.readAnnotation(field, c)
+/**
+ * Implemented by a component which replaces the components it holds after it has been constructed, so that
+ * [ComponentIdGenerator.applyChanged] knows to look inside it again.  [componentIdVersion] must change whenever one of its component fields is
+ * given a different component
+ */
+interface ComponentIdVersioned {
+    val componentIdVersion: Int
+}
 
-        if (annotationValues.annotationPresent) {
-            drilldown = annotationValues.drilldown
+/**
+ * The components held by one container when ids were last applied, in the order of its [ComponentFieldPlan]s.  For each of them which is
+ * [ComponentIdVersioned] and drilled down into, its version and its own state are also held.  [version] combines all of these, so it changes
+ * when any of them changes
+ */
+class ComponentIdState(internal val components: Array<Component?>, internal val versions: IntArray, internal val children: Array<ComponentIdState?>) : Serializable {
+    val version: Int
+
+    init {
+        var v = 1
+        for (i in components.indices) {
+            v = 31 * v + System.identityHashCode(components[i])
+            v = 31 * v + versions[i]
+            v = 31 * v + (children[i]?.version ?: 0)
         }
+        version = v
+    }
+}
+
+/**
+ * A compiled plan for one component field of a class: the (accessible) field, its name, the id suffix it generates and any field level
+ * [AssignComponentId] annotation
+ */
+class ComponentFieldPlan(val field: Field) {
+    val name: String = field.name
+    val idSuffix = "-$name"
+    val annotation: AssignComponentId? = field.getAnnotation(AssignComponentId::class.java)
+
+    init {
+        field.isAccessible = true
+    }
 
-        val cClazz = realClassIdentifier.getOriginalClassFor(cc)
-        if (layoutClasses.contains(cClazz) || baseVaadinComponents.contains(cClazz)) {
-            drilldown = false
+    /**
+     * Combines the field annotation (if any) with the class annotation of the component to give the values to use.  A field annotation
+     * takes precedence
+     */
+    fun annotationValues(componentInfo: ComponentClassInfo): IdAnnotationValues {
+        val a = annotation ?: componentInfo.annotation
+        if (a == null) {
+            return IdAnnotationValues(annotationPresent = false, assign = true, drilldown = true)
         }
+        return IdAnnotationValues(annotationPresent = true, assign = a.assign || a.drilldown, drilldown = a.drilldown)
+    }
 
-        log.debug("Component '${field.name}' selected for id drilldown is: '$drilldown'")
-        return drilldown
+    fun assign(componentInfo: ComponentClassInfo): Boolean {
+        val annotationValues = annotationValues(componentInfo)
+        return if (annotationValues.annotationPresent) annotationValues.assign else !componentInfo.layout
     }
 
+    fun drilldown(componentInfo: ComponentClassInfo): Boolean {
+        if (componentInfo.layout || componentInfo.baseVaadinComponent) {
+            return false
+        }
+        return annotationValues(componentInfo).drilldown
+    }
 }
 
-data class ComponentIdEntry(val name: String, val id: String, val type: String, val baseComponent: Boolean)
+/**
+ * What the generator needs to know about the class of a component instance.  [originalClass] is the class without any Guice enhancement,
+ * and is the class which is drilled down into.  [entryType] and [entryBaseComponent] are used only when constructing a [ComponentIdEntry]
+ */
+class ComponentClassInfo(val originalClass: Class<*>, componentClass: Class<*>) {
+    val annotation: AssignComponentId? = originalClass.getAnnotation(AssignComponentId::class.java)
+    val layout = layoutClasses.contains(originalClass)
+    val baseVaadinComponent = baseVaadinComponents.contains(originalClass)
+    val entryBaseComponent: Boolean
+    val entryType: String
+
+    init {
+        when {
+            baseVaadinComponents.contains(componentClass) -> {
+                entryBaseComponent = true
+                entryType = componentClass.simpleName
+            }
+            baseVaadinComponents.contains(componentClass.superclass) -> {
+                entryBaseComponent = true
+                entryType = componentClass.superclass.simpleName
+            }
+            else -> {
+                entryBaseComponent = false
+                entryType = componentClass.simpleName
+            }
+        }
+    }
+}
 
 /**
- * Creates an id of the form *SomeView-component-nestedcomponent* using the following logic, provided in part by [ComponentIDAssignmentFilter] and [ComponentIDDrilldownFilter]:
+ * Creates an id of the form *SomeView-component-nestedcomponent* using the following logic:
  *
  * - All instances of Component are allocated an id, except those which implement [Layout]
  * - All components which implement [HasComponents], except those which implement [Layout], are drilled down to find further components
@@ -165,155 +265,227 @@ data class ComponentIdEntry(val name: String, val id: String, val type: String,
  *
  * The generator is generally invoked on the instance of a [View] or [UI], but, and components should already be constructed.  If a field has not been constructed it will simply be ignored
  *
+ * The reflective work is done only once per class - each class is compiled into a list of [ComponentFieldPlan], and each component class
+ * into a [ComponentClassInfo].  These are held by the generator instance, which is bound as a singleton, so they are released with the
+ * injector (and do not hold on to the classes of an application which has been undeployed).  Assigning ids is then a walk over the compiled fields.  The graph
+ * of [ComponentIdEntry] is only built by [generateAndApply]
+ *
  */
 class DefaultComponentIdGenerator @Inject constructor(private val realClassIdentifier: UnenhancedClassIdentifier) : ComponentIdGenerator {
 
-
-    private val assignmentFilter = ComponentIDAssignmentFilter(realClassIdentifier)
-    private val drilldownFilter = ComponentIDDrilldownFilter(realClassIdentifier)
+    private val log = LoggerFactory.getLogger(this.javaClass.name)
     @Transient
-    lateinit var graph: MutableGraph<ComponentIdEntry>
-
-
-    private fun <T : Any> doDrillDown(parentEntry: ComponentIdEntry, clazz: Class<out T>, apply: Boolean, obj: T) {
-        // sort the fields into those which need an id assigned, and those which need to be drilled down into
-        // the same field may be in both lists
-        val componentFields = collectAllComponents(clazz, obj)
-        val assigns = componentFields.filter { assignmentFilter.apply(it, obj) }
-        val drilldowns = componentFields.filter { drilldownFilter.apply(it, obj) }
-
-        // We want to provide a mapping back to the caller, so the id assignments can be used elsewhere
-
-        // construct the id, and if apply is true, apply it
-        assigns.forEach({ f ->
-            f.isAccessible = true
-            val c = f.get(obj)
-            if (c != null) {
-                val entry = entryFor(parentEntry, f, c as Component)
-                log.debug("adding node ${parentEntry.id} to graph")
-                graph.addNode(entry)
-                log.debug("placing edge from ${parentEntry.id} to ${entry.id}")
-                graph.putEdge(parentEntry, entry)
-
-                if (apply) {
-                    log.debug("Assigning id '${entry.id}' to component ${f.name}")
-                    c.id = entry.id
-                }
+    @Volatile
+    private var fieldPlans: ConcurrentMap<Class<*>, List<ComponentFieldPlan>>? = null
+    @Transient
+    @Volatile
+    private var classInfo: ConcurrentMap<Class<*>, ComponentClassInfo>? = null
 
-            } else {
-                log.warn("Component for field '${f.name}' has not been constructed, id cannot be applied")
-            }
 
-        })
-
-        // drill down with prefix set to "this" component / View / UI
-        drilldowns.forEach({ f ->
-            log.debug("drilling down into {}", f.name)
-            f.isAccessible = true
-            val c = f.get(obj)
-            if (c != null) {
-                val thisEntry = entryFor(parentEntry, f, c as Component)
-                doDrillDown(thisEntry, realClassIdentifier.getOriginalClassFor(c), apply, c)
-            } else {
-                log.warn("Component for field '${f.name}' has not been constructed, cannot drill down")
-            }
-        })
+    override fun <T : Any> generateAndApply(obj: T): MutableGraph<ComponentIdEntry> {
+        val clazz = realClassIdentifier.getOriginalClassFor(obj)
+        val entry = ComponentIdEntry(clazz.simpleName, clazz.simpleName, clazz.simpleName, false)
+        val graph = GraphBuilder.directed().build<ComponentIdEntry>()
+        graph.addNode(entry)
+        walk(parentEntry = entry, parentId = entry.id, clazz = clazz, obj = obj, graph = graph)
+        return graph
+    }
+
+    override fun <T : Any> apply(obj: T) {
+        val clazz = realClassIdentifier.getOriginalClassFor(obj)
+        walk(parentEntry = null, parentId = clazz.simpleName, clazz = clazz, obj = obj, graph = null)
+    }
+
+    override fun prepare(clazz: Class<*>) {
+        plansFor(clazz)
+    }
+
+    override fun <T : Any> applyChanged(obj: T, previous: ComponentIdState?): ComponentIdState {
+        val clazz = realClassIdentifier.getOriginalClassFor(obj)
+        if (previous == null) {
+            walk(parentEntry = null, parentId = clazz.simpleName, clazz = clazz, obj = obj, graph = null)
+            return stateOf(clazz, obj)
+        }
+        return update(parentId = clazz.simpleName, clazz = clazz, obj = obj, previous = previous)
     }
 
     /**
-     * When we have a component which extends a base component (for example, the DefaultNavigationMenu extends MenuBar)
-     * we want to treat it as the base component - for example, we want the property in the ViewObject to be:
-     *
-     * val menu = MenuBar()
-     *
-     *
-     * Otherwise we end up with a mismatch between the id of the property in the ViewObject and the actual id, because
-     * the structures are not the same
+     * Records the components of [obj], and the state of those which are [ComponentIdVersioned] and drilled down into, without applying any ids
      */
-    private fun entryFor(parentEntry: ComponentIdEntry, f: Field, component: Component): ComponentIdEntry {
-        val id = "${parentEntry.id}-${f.name}"
-        if (isBaseComponent(component)) {
-            return ComponentIdEntry(name = f.name, id = id, type = component::class.java.simpleName, baseComponent = true)
-        }
-        if (isBaseComponentSubClass(component)) {
-            return ComponentIdEntry(name = f.name, id = id, type = component::class.java.superclass.simpleName, baseComponent = true)
+    private fun stateOf(clazz: Class<*>, obj: Any): ComponentIdState {
+        val plans = plansFor(clazz)
+        val components = arrayOfNulls<Component>(plans.size)
+        val versions = IntArray(plans.size)
+        val children = arrayOfNulls<ComponentIdState>(plans.size)
+        for (i in plans.indices) {
+            val c = plans[i].field.get(obj) as Component? ?: continue
+            components[i] = c
+            if (c is ComponentIdVersioned) {
+                val info = classInfoFor(c)
+                if (plans[i].drilldown(info)) {
+                    versions[i] = c.componentIdVersion
+                    children[i] = stateOf(info.originalClass, c)
+                }
+            }
         }
-        return ComponentIdEntry(name = f.name, id = id, type = component::class.java.simpleName, baseComponent = false)
+        return ComponentIdState(components, versions, children)
     }
 
-    private fun <T> collectAllComponents(clazz: Class<out T>, obj: Any): List<Field> {
-        var classToScan: Class<out Any?> = clazz
-        log.debug("scanning '{}' to generate component ids", classToScan.name)
-        val fields: MutableList<Field> = mutableListOf()
-        try {
-            var done = false
-            while (!done) {
-                fields.addAll(classToScan.declaredFields.filter({ f -> componentFilter(f, obj) }))
-                done = (classToScan == Any::class.java) || (classToScan.superclass == null)
-                if (!done) {
-                    classToScan = classToScan.superclass
+    /**
+     * Compares the component fields of [obj] with [previous].  A replaced component has its id assigned and its subtree walked, as [walk]
+     * does.  A [ComponentIdVersioned] component whose version has changed is compared in the same way, with its own previous state.  Anything
+     * else is left alone, and [previous] is returned if nothing has changed
+     */
+    private fun update(parentId: String, clazz: Class<*>, obj: Any, previous: ComponentIdState): ComponentIdState {
+        val plans = plansFor(clazz)
+        var components: Array<Component?>? = null
+        var versions: IntArray? = null
+        var children: Array<ComponentIdState?>? = null
+
+        for (i in plans.indices) {
+            val plan = plans[i]
+            val c = plan.field.get(obj) as Component?
+            val previousComponent = previous.components[i]
+            val previousChild = previous.children[i]
+            if (c === previousComponent && (c !is ComponentIdVersioned || previousChild == null || c.componentIdVersion == previous.versions[i])) {
+                continue
+            }
+            // copied only once something has changed
+            if (components == null) {
+                components = previous.components.copyOf()
+                versions = previous.versions.copyOf()
+                children = previous.children.copyOf()
+            }
+            components[i] = c
+            versions!![i] = 0
+            children!![i] = null
+            if (c == null) {
+                log.warn("Field '${plan.name}' must be constructed to be included in id assignment")
+                continue
+            }
+            val info = classInfoFor(c)
+            val id = parentId + plan.idSuffix
+            val drilldown = plan.drilldown(info)
+            if (c === previousComponent) {
+                // a versioned component which has changed inside
+                versions[i] = (c as ComponentIdVersioned).componentIdVersion
+                children[i] = update(parentId = id, clazz = info.originalClass, obj = c, previous = previousChild!!)
+                continue
+            }
+            if (plan.assign(info)) {
+                log.debug("Assigning id '{}' to component {}", id, plan.name)
+                c.id = id
+            }
+            if (drilldown) {
+                walk(parentEntry = null, parentId = id, clazz = info.originalClass, obj = c, graph = null)
+                if (c is ComponentIdVersioned) {
+                    versions[i] = c.componentIdVersion
+                    children[i] = stateOf(info.originalClass, c)
                 }
             }
-        } catch (iae: IllegalAccessException) {
-            log.error("reflective scan of components failed", iae)
         }
-        log.debug("${fields.size} fields selected")
-        return fields
+        return if (components == null) previous else ComponentIdState(components, versions!!, children!!)
     }
 
-    private fun isBaseComponent(component: Component): Boolean {
-        return baseVaadinComponents.contains(component::class.java)
+    /**
+     * Assigns ids to the components of [obj] and drills down where required.  [parentEntry] and [graph] are null unless the graph
+     * is being constructed
+     */
+    private fun walk(parentEntry: ComponentIdEntry?, parentId: String, clazz: Class<*>, obj: Any, graph: MutableGraph<ComponentIdEntry>?) {
+        val plans = plansFor(clazz)
+        val components = arrayOfNulls<Component>(plans.size)
+        val infos = arrayOfNulls<ComponentClassInfo>(plans.size)
+
+        // assign first, then drill down, so that ids are assigned in the same order as they always have been
+        for (i in plans.indices) {
+            val plan = plans[i]
+            val c = plan.field.get(obj) as Component?
+            if (c == null) {
+                log.warn("Field '${plan.name}' must be constructed to be included in id assignment")
+                continue
+            }
+            val info = classInfoFor(c)
+            components[i] = c
+            infos[i] = info
+            if (plan.assign(info)) {
+                val id = parentId + plan.idSuffix
+                if (graph != null) {
+                    val entry = ComponentIdEntry(name = plan.name, id = id, type = info.entryType, baseComponent = info.entryBaseComponent)
+                    graph.addNode(entry)
+                    graph.putEdge(parentEntry, entry)
+                }
+                log.debug("Assigning id '{}' to component {}", id, plan.name)
+                c.id = id
+            }
+        }
+
+        for (i in plans.indices) {
+            val c = components[i] ?: continue
+            val info = infos[i]!!
+            val plan = plans[i]
+            if (plan.drilldown(info)) {
+                log.debug("drilling down into {}", plan.name)
+                val id = parentId + plan.idSuffix
+                val entry = if (graph == null) null else ComponentIdEntry(name = plan.name, id = id, type = info.entryType, baseComponent = info.entryBaseComponent)
+                walk(parentEntry = entry, parentId = id, clazz = info.originalClass, obj = c, graph = graph)
+            }
+        }
     }
 
-    private fun isBaseComponentSubClass(component: Component): Boolean {
-        return baseVaadinComponents.contains(component::class.java.superclass)
+    private fun plansFor(clazz: Class<*>): List<ComponentFieldPlan> {
+        val plans = fieldPlans ?: synchronized(this) {
+            fieldPlans ?: ConcurrentHashMap<Class<*>, List<ComponentFieldPlan>>().also { fieldPlans = it }
+        }
+        return plans.computeIfAbsent(clazz) { c -> compile(c) }
     }
 
+    private fun classInfoFor(component: Component): ComponentClassInfo {
+        val componentClass = component.javaClass
+        val infos = classInfo ?: synchronized(this) {
+            classInfo ?: ConcurrentHashMap<Class<*>, ComponentClassInfo>().also { classInfo = it }
+        }
+        return infos.computeIfAbsent(componentClass) { _ -> ComponentClassInfo(realClassIdentifier.getOriginalClassFor(component), componentClass) }
+    }
 
-    private val log = LoggerFactory.getLogger(this.javaClass.name)
+    /**
+     * Scans [clazz] and its super classes for component fields, and compiles them into [ComponentFieldPlan]s
+     */
+    private fun compile(clazz: Class<*>): List<ComponentFieldPlan> {
+        log.debug("compiling '{}' to generate component ids", clazz.name)
+        val plans: MutableList<ComponentFieldPlan> = mutableListOf()
+        val isView = KrailView::class.java.isAssignableFrom(clazz)
+        val isUI = ScopedUI::class.java.isAssignableFrom(clazz)
+        var classToScan: Class<*> = clazz
+        var done = false
+        while (!done) {
+            classToScan.declaredFields
+                    .filter { f -> componentFilter(f, isView, isUI) }
+                    .forEach { f -> plans.add(ComponentFieldPlan(f)) }
+            done = (classToScan == Any::class.java) || (classToScan.superclass == null)
+            if (!done) {
+                classToScan = classToScan.superclass
+            }
+        }
+        log.debug("${plans.size} fields selected")
+        return plans
+    }
 
-    private fun componentFilter(field: Field, obj: Any): Boolean {
+    private fun componentFilter(field: Field, isView: Boolean, isUI: Boolean): Boolean {
         if (field.name == "parent") {
             return false
         }
-        if (obj is KrailView) {
-            if (field.name == "rootComponent") {
-                return false
-            }
+        if (isView && excludedViewFields.contains(field.name)) {
+            return false
         }
-        if (obj is ScopedUI) {
-            if (field.name == "screenLayout") {
-                return false
-            }
-            if (field.name == "viewDisplayPanel") {
-                return false
-            }
-            if (field.name == "scrollIntoView") {
-                return false
-            }
-            if (field.name == "content") {
-                return false
-            }
-            if (field.name == "pendingFocus") {
-                return false
-            }
+        if (isUI && excludedUIFields.contains(field.name)) {
+            return false
         }
-
         return (Component::class.java.isAssignableFrom(field.type))
     }
 
-    private fun <T : Any> generateAndApply(clazz: Class<out T>, apply: Boolean, obj: T) {
-        val entry = ComponentIdEntry(clazz.simpleName, clazz.simpleName, clazz.simpleName, false)
-        graph = GraphBuilder.directed().build<ComponentIdEntry>()
-        graph.addNode(entry)
-        doDrillDown(parentEntry = entry, clazz = clazz, apply = apply, obj = obj)
-    }
-
-
-    override fun <T : Any> generateAndApply(obj: T): MutableGraph<ComponentIdEntry> {
-        val clazz = realClassIdentifier.getOriginalClassFor(obj)
-        generateAndApply(clazz = clazz, apply = true, obj = obj)
-        return graph
+    companion object {
+        private val excludedViewFields = setOf("rootComponent")
+        private val excludedUIFields = setOf("screenLayout", "viewDisplayPanel", "scrollIntoView", "content", "pendingFocus")
     }
 
 
@@ -328,40 +500,20 @@ class DefaultComponentIdGenerator @Inject constructor(private val realClassIdent
 annotation class AssignComponentId(val assign: Boolean = true, val drilldown: Boolean = true)
 
 
+@Deprecated("Use ComponentFieldPlan.annotationValues")
 class AnnotationReader(val realClassIdentifier: UnenhancedClassIdentifier) {
-    private val log = LoggerFactory.getLogger(this.javaClass.name)
     /**
      * Reads the values of annotation(s) present on the field or class.  Field takes precedence.  Looks for class annotation
      * on the instance type, as it may be a subclass (or implementation) of the declared field type.
      *
      */
     fun readAnnotation(f: Field, c: Component): IdAnnotationValues {
-        f.isAccessible = true
-        // no component, so no point trying to assign
-
-        val cClazz = realClassIdentifier.getOriginalClassFor(c)
-        var annotation = cClazz.getAnnotation(AssignComponentId::class.java)
-
-        // override with field annotation if there is one
-        if (f.isAnnotationPresent(AssignComponentId::class.java)) {
-            annotation = f.getAnnotation(AssignComponentId::class.java)
-        }
-        var assign = true
-        var drilldown = true
-
-        if (annotation != null) {
-            assign = annotation.assign
-            drilldown = annotation.drilldown
-        }
-
-        if (drilldown) assign = true
-
-        return IdAnnotationValues(annotationPresent = annotation != null, assign = assign, drilldown = drilldown)
+        return ComponentFieldPlan(f).annotationValues(ComponentClassInfo(realClassIdentifier.getOriginalClassFor(c), c.javaClass))
     }
 }
 
 
-private val baseVaadinComponents: List<Class<out Component>> = listOf(Button::class.java, TabSheet::class.java,
+private val baseVaadinComponents: Set<Class<out Component>> = setOf(Button::class.java, TabSheet::class.java,
         Accordion::class.java,
         BrowserFrame::class.java,
         Flash::class.java,
@@ -398,7 +550,7 @@ private val baseVaadinComponents: List<Class<out Component>> = listOf(Button::cl
         ProgressBar::class.java,
         Upload::class.java)
 
-private val layoutClasses: List<Class<out Component>> = listOf(
+private val layoutClasses: Set<Class<out Component>> = setOf(
         Panel::class.java,
         VerticalLayout::class.java,
         HorizontalLayout::class.java,
@@ -14,6 +14,7 @@ package uk.q3c.krail.core.view.component
 
 import com.google.inject.AbstractModule
 import uk.q3c.krail.core.env.BindingsCollator
+import uk.q3c.krail.core.guice.vsscope.VaadinSessionScoped
 
 open class DefaultComponentModule : AbstractModule() {
 
@@ -31,6 +32,7 @@ open class DefaultComponentModule : AbstractModule() {
         bindPageNavigationPanel()
         bindIconFactory()
         bindTranslatableComponents()
+        bindTranslationBatch()
     }
 
 
@@ -42,6 +44,14 @@ open class DefaultComponentModule : AbstractModule() {
         bind(TranslatableComponents::class.java).to(DefaultTranslatableComponents::class.java)
     }
 
+    /**
+     * Override this method to provide your own implementation of [TranslationBatch], or to change its scope, in a sub-class of this module.
+     * Your module will then need to replace this module in [BindingsCollator]
+     */
+    protected open fun bindTranslationBatch() {
+        bind(TranslationBatch::class.java).to(DefaultTranslationBatch::class.java).`in`(VaadinSessionScoped::class.java)
+    }
+
 
     /**
      * Override this method to provide your own implementation of [PageNavigationPanel] in a sub-class of this module.
@@ -10,6 +10,7 @@ import uk.q3c.krail.i18n.I18NKey
 import uk.q3c.krail.i18n.LocaleChangeBusMessage
 import uk.q3c.krail.i18n.Translate
 import java.io.Serializable
+import java.util.*
 
 /**
  * Simplifies the management of components which take their caption and / or description from [I18NKey]
@@ -19,6 +20,9 @@ import java.io.Serializable
  *
  * Supports [I18NLabel] by changing the label's value in response to a Locale change
  *
+ * Translation is batched - each distinct key is translated only once per Locale change, using a session wide [TranslationBatch].  Components
+ * which are detached when the Locale changes are translated when they are next attached.
+ *
  * The [addEntry] method also sets the component icon (assuming icon is in use) - this is done here because the icon is looked up
  * from the [IconFactory] using an I18NKey
  */
@@ -30,30 +34,79 @@ interface TranslatableComponents : Serializable {
 }
 
 
-class DefaultTranslatableComponents @Inject constructor(val translate: Translate, val currentLocale: CurrentLocale, val iconFactory: IconFactory, sessionBusProvider: SessionBusProvider) : TranslatableComponents {
+class DefaultTranslatableComponents @Inject constructor(val translate: Translate, val currentLocale: CurrentLocale, val iconFactory: IconFactory, sessionBusProvider: SessionBusProvider, val translationBatch: TranslationBatch) : TranslatableComponents {
     override val components: MutableMap<AbstractComponent, ComponentI18NKeys> = mutableMapOf()
+    private val detached: MutableSet<AbstractComponent> = mutableSetOf()
+    private val pending: MutableSet<AbstractComponent> = mutableSetOf()
 
     init {
         sessionBusProvider.get().subscribe(this)
     }
 
+    /**
+     * Collects the distinct keys required by all components, resolves them once through [translationBatch], and applies the results.
+     * Components which have been detached (usually because their UI is no longer attached) are not updated until they are re-attached
+     */
     override fun translate() {
+        val locale = currentLocale.locale
+        val translations = translationBatch.translate(requiredKeys(components.entries), locale)
         components.forEach { (component, keys) ->
-            if (keys.captionKey != CommonLabelKey._NullKey_) {
-                component.caption = translate.from(keys.captionKey)
+            if (detached.contains(component)) {
+                pending.add(component)
+            } else {
+                apply(component, keys, translations, locale)
+            }
+        }
+    }
+
+    private fun requiredKeys(entries: Collection<Map.Entry<AbstractComponent, ComponentI18NKeys>>): Set<I18NKey> {
+        val keys = mutableSetOf<I18NKey>()
+        entries.forEach { (component, componentKeys) ->
+            if (componentKeys.captionKey != CommonLabelKey._NullKey_) {
+                keys.add(componentKeys.captionKey)
             }
-            if (keys.descriptionKey != CommonLabelKey._NullKey_) {
-                component.description = translate.from(keys.descriptionKey)
+            if (componentKeys.descriptionKey != CommonLabelKey._NullKey_) {
+                keys.add(componentKeys.descriptionKey)
             }
-            component.locale = currentLocale.locale
             if (component is I18NLabel) {
-                component.value = translate.from(component.valueKey)
+                keys.add(component.valueKey)
             } else if (component is MutableI18NLabel) {
-                component.value = translate.from(component.valueKey)
+                keys.add(component.valueKey)
             }
         }
+        return keys
     }
 
+    private fun apply(component: AbstractComponent, keys: ComponentI18NKeys, translations: Map<I18NKey, String>, locale: Locale) {
+        if (keys.captionKey != CommonLabelKey._NullKey_) {
+            component.caption = translations[keys.captionKey]
+        }
+        if (keys.descriptionKey != CommonLabelKey._NullKey_) {
+            component.description = translations[keys.descriptionKey]
+        }
+        component.locale = locale
+        if (component is I18NLabel) {
+            component.value = translations[component.valueKey]
+        } else if (component is MutableI18NLabel) {
+            component.value = translations[component.valueKey]
+        }
+    }
+
+    private fun componentDetached(component: AbstractComponent) {
+        detached.add(component)
+    }
+
+    private fun componentAttached(component: AbstractComponent) {
+        detached.remove(component)
+        if (pending.remove(component)) {
+            val keys = components[component]
+            if (keys != null) {
+                val locale = currentLocale.locale
+                val entry = mapOf(component to keys).entries
+                apply(component, keys, translationBatch.translate(requiredKeys(entry), locale), locale)
+            }
+        }
+    }
 
     @Handler
     fun localeChanged(@Suppress("UNUSED_PARAMETER") msg: LocaleChangeBusMessage) {
@@ -73,7 +126,11 @@ class DefaultTranslatableComponents @Inject constructor(val translate: Translate
                 iconFactory.iconFor(captionKey)
             }
         }
-        components[component] = ComponentI18NKeys(captionKey = captionKey, descriptionKey = descriptionKey)
+        val previous = components.put(component, ComponentI18NKeys(captionKey = captionKey, descriptionKey = descriptionKey))
+        if (previous == null) {
+            component.addDetachListener { _ -> componentDetached(component) }
+            component.addAttachListener { _ -> componentAttached(component) }
+        }
     }
 }
 
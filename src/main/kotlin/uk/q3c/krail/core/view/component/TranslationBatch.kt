@@ -0,0 +1,66 @@
+package uk.q3c.krail.core.view.component
+
+import com.google.inject.Inject
+import net.engio.mbassy.listener.Handler
+import uk.q3c.krail.core.eventbus.SessionBusProvider
+import uk.q3c.krail.i18n.I18NKey
+import uk.q3c.krail.i18n.LocaleChangeBusMessage
+import uk.q3c.krail.i18n.Translate
+import java.io.Serializable
+import java.util.*
+
+/**
+ * Resolves a batch of [I18NKey]s for a given [Locale], translating each distinct key only once.
+ *
+ * Bound in [VaadinSessionScoped] by default, so that all [TranslatableComponents] instances in a session (one or more per UI) share
+ * the results when responding to a [LocaleChangeBusMessage].  Results are held only for the most recently requested Locale - a request for
+ * a different Locale discards them.  All results are also discarded when a [LocaleChangeBusMessage] is received, before any other handler
+ * of that message translates, so that each Locale change picks up the current patterns rather than those held from an earlier change.
+ */
+interface TranslationBatch : Serializable {
+
+    /**
+     * Returns a map of each of [keys] to its translation in [locale].  Keys already resolved for [locale] are not translated again
+     */
+    fun translate(keys: Collection<I18NKey>, locale: Locale): Map<I18NKey, String>
+
+    /**
+     * Discards all held translations
+     */
+    fun clear()
+}
+
+
+class DefaultTranslationBatch @Inject constructor(private val translate: Translate, sessionBusProvider: SessionBusProvider) : TranslationBatch {
+    private var resolvedLocale: Locale? = null
+    private val resolved: MutableMap<I18NKey, String> = mutableMapOf()
+
+    init {
+        sessionBusProvider.get().subscribe(this)
+    }
+
+    @Synchronized
+    override fun translate(keys: Collection<I18NKey>, locale: Locale): Map<I18NKey, String> {
+        if (locale != resolvedLocale) {
+            resolved.clear()
+            resolvedLocale = locale
+        }
+        val result = LinkedHashMap<I18NKey, String>(keys.size)
+        keys.forEach { key -> result[key] = resolved.getOrPut(key) { translate.from(key, locale) } }
+        return result
+    }
+
+    @Synchronized
+    override fun clear() {
+        resolved.clear()
+        resolvedLocale = null
+    }
+
+    /**
+     * Given the highest priority so that held translations are discarded before any [TranslatableComponents] responds to the same message
+     */
+    @Handler(priority = Int.MAX_VALUE)
+    fun localeChanged(@Suppress("UNUSED_PARAMETER") msg: LocaleChangeBusMessage) {
+        clear()
+    }
+}
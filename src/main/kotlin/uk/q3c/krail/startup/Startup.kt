@@ -2,6 +2,7 @@ package uk.q3c.krail.startup
 
 import com.google.inject.AbstractModule
 import com.google.inject.Inject
+import com.google.inject.multibindings.Multibinder
 import io.vertx.core.AsyncResult
 import io.vertx.core.Vertx
 import io.vertx.core.shareddata.AsyncMap
@@ -100,21 +101,48 @@ class VertxTestApplicationStartup @Inject constructor() : VertxApplicationStartu
 }
 
 
+/**
+ * Binds the application startup code, and the [StartupStage]s run by the [StartupOrchestrator] once the Injector has been created.  Add
+ * your own stages by overriding [define], and calling *stages.addBinding()*
+ */
 @Suppress("ReplaceToWithInfixForm")
-class DefaultStartupModule : AbstractModule() {
+open class DefaultStartupModule : AbstractModule() {
+
+    protected lateinit var stages: Multibinder<StartupStage>
 
     override fun configure() {
+        stages = Multibinder.newSetBinder(binder(), StartupStage::class.java)
         bind(ServletApplicationStartup::class.java).to(DefaultServletApplicationStartup::class.java)
         bind(VertxApplicationStartup::class.java).to(DefaultVertxApplicationStartup::class.java)
+        define()
+        bindStartupOrchestrator()
+    }
+
+    protected open fun define() {
+        stages.addBinding().to(SecurityStartupStage::class.java)
+        stages.addBinding().to(I18NStartupStage::class.java)
+        stages.addBinding().to(SitemapStartupStage::class.java)
+        stages.addBinding().to(FormStoreStartupStage::class.java)
+    }
+
+    protected open fun bindStartupOrchestrator() {
+        bind(StartupOrchestrator::class.java).to(DefaultStartupOrchestrator::class.java)
+        bind(ApplicationReadiness::class.java).to(DefaultStartupOrchestrator::class.java)
     }
 
 }
 
+/**
+ * Runs only the [SecurityStartupStage]
+ */
 class TestStartupModule : AbstractModule() {
 
     override fun configure() {
         bind(ServletApplicationStartup::class.java).to(DefaultServletApplicationStartup::class.java)
         bind(VertxApplicationStartup::class.java).to(VertxTestApplicationStartup::class.java)
+        Multibinder.newSetBinder(binder(), StartupStage::class.java).addBinding().to(SecurityStartupStage::class.java)
+        bind(StartupOrchestrator::class.java).to(DefaultStartupOrchestrator::class.java)
+        bind(ApplicationReadiness::class.java).to(DefaultStartupOrchestrator::class.java)
     }
 
 }
@@ -0,0 +1,354 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.startup
+
+import com.google.inject.Inject
+import com.google.inject.Provider
+import com.google.inject.Singleton
+import org.apache.shiro.SecurityUtils
+import org.apache.shiro.mgt.SecurityManager
+import org.slf4j.LoggerFactory
+import uk.q3c.krail.config.ApplicationConfiguration
+import uk.q3c.krail.core.form.FormDaoFactory
+import uk.q3c.krail.core.i18n.CollatorPool
+import uk.q3c.krail.core.navigate.sitemap.SitemapService
+import uk.q3c.krail.core.persist.MapDbFormDaoFactory
+import uk.q3c.krail.i18n.SupportedLocales
+import uk.q3c.krail.service.State
+import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.BiFunction
+
+const val STARTUP_PARALLELISM = "startup.parallelism"
+const val STARTUP_TIMEOUT_SECONDS = "startup.timeout.seconds"
+const val STARTUP_SITEMAP_ENABLED = "startup.sitemap.enabled"
+const val STARTUP_FORM_STORE_ENABLED = "startup.form.store.enabled"
+
+/**
+ * A unit of work carried out once the application Injector has been created, by the [StartupOrchestrator].  Stages are contributed with a
+ * Guice Multibinder (see [DefaultStartupModule]), and a stage runs as soon as all the stages named in [dependsOn] have finished - stages which do
+ * not depend on each other run in parallel.
+ */
+interface StartupStage {
+    /**
+     * Unique name of the stage, used in [dependsOn] and in the timings
+     */
+    val name: String
+
+    val dependsOn: Set<String>
+        get() = setOf()
+
+    /**
+     * If true, [InjectorFactory][uk.q3c.krail.core.env.InjectorFactory] waits for this stage (and therefore the stages it depends on) to
+     * finish before returning the Injector, and a failure of this stage fails the start up.  Other stages finish in the background, and a failure
+     * is logged but does not stop the application
+     */
+    val required: Boolean
+        get() = false
+
+    /**
+     * If false, the stage is not run, and the work it would have done is left until it is first needed.  A disabled stage is reported with
+     * [StageTiming.disabled], and counts as finished for [ApplicationReadiness] - readiness therefore says nothing about the work of disabled stages
+     */
+    val enabled: Boolean
+        get() = true
+
+    fun run()
+}
+
+/**
+ * The time taken by a [StartupStage].  [startMillis] is measured from the start of the [StartupOrchestrator].  [failure] is set if the stage
+ * failed, or if it was skipped because a stage it depends on failed.  [disabled] is set if the stage was not run because it is not
+ * [StartupStage.enabled]
+ */
+data class StageTiming(val name: String, val startMillis: Long, val elapsedMillis: Long, val failure: Throwable? = null, val disabled: Boolean = false) {
+    val failed: Boolean
+        get() = failure != null
+}
+
+/**
+ * Reports whether the application has started up - that is, whether every [StartupStage] has finished successfully.  Exposed over HTTP by
+ * [ReadinessServlet][uk.q3c.krail.core.guice.ReadinessServlet] in a Servlet environment.
+ *
+ * Only the work of enabled stages is covered.  By default the sitemap is built before the application is ready, but the form store is not
+ * opened unless [STARTUP_FORM_STORE_ENABLED] is set, and I18N patterns are not loaded at all, as their source is session scoped - both of those
+ * are still done on first use
+ */
+interface ApplicationReadiness {
+
+    /**
+     * True only when every stage has finished, and none has failed or been skipped
+     */
+    val isReady: Boolean
+
+    /**
+     * True when every stage has finished, whether or not it succeeded.  If this is true and [isReady] is false, [timings] identify the failures
+     */
+    val isFinished: Boolean
+
+    /**
+     * The timings of the stages finished so far, in the order they finished
+     */
+    fun timings(): List<StageTiming>
+}
+
+interface StartupOrchestrator : ApplicationReadiness {
+
+    /**
+     * Starts all the stages, and returns when the [StartupStage.required] stages have finished.  Can only be called once
+     *
+     * @throws StartupCodeException if the stage dependencies are invalid, or a required stage fails or does not finish within
+     * [STARTUP_TIMEOUT_SECONDS]
+     */
+    fun start()
+}
+
+/**
+ * Orders [stages] so that each stage follows all of the stages it depends on, keeping the original order where there is no dependency.
+ *
+ * @throws StartupCodeException if a name is duplicated, a dependency is unknown, or the dependencies contain a cycle
+ */
+fun orderStartupStages(stages: Collection<StartupStage>): List<StartupStage> {
+    val byName = LinkedHashMap<String, StartupStage>()
+    for (stage in stages) {
+        if (byName.put(stage.name, stage) != null) {
+            throw StartupCodeException("Startup stage '${stage.name}' is defined more than once")
+        }
+    }
+    for (stage in stages) {
+        for (dependency in stage.dependsOn) {
+            if (!byName.containsKey(dependency)) {
+                throw StartupCodeException("Startup stage '${stage.name}' depends on '$dependency', which is not defined")
+            }
+        }
+    }
+    val ordered = ArrayList<StartupStage>(stages.size)
+    val placed = HashSet<String>()
+    val waiting = ArrayList(byName.values)
+    while (waiting.isNotEmpty()) {
+        val next = waiting.filter { placed.containsAll(it.dependsOn) }
+        if (next.isEmpty()) {
+            throw StartupCodeException("Startup stages contain a dependency cycle, involving: ${waiting.joinToString { it.name }}")
+        }
+        ordered.addAll(next)
+        next.forEach { placed.add(it.name) }
+        waiting.removeAll(next)
+    }
+    return ordered
+}
+
+/**
+ * Runs the stages on a fixed pool of [STARTUP_PARALLELISM] daemon threads, each stage starting when those it depends on have finished.  A
+ * stage which fails causes the stages which depend on it to be skipped.  The pool is shut down, and the timings logged, when every stage has
+ * finished, at which point [isFinished] becomes true, and [isReady] becomes true if no stage failed.
+ */
+@Singleton
+class DefaultStartupOrchestrator @Inject constructor(
+        private val stages: MutableSet<StartupStage>,
+        applicationConfiguration: ApplicationConfiguration) : StartupOrchestrator {
+
+    private val log = LoggerFactory.getLogger(this.javaClass.name)
+    private val parallelism: Int = applicationConfiguration.getPropertyValue(STARTUP_PARALLELISM, Runtime.getRuntime().availableProcessors())
+    private val timeoutSeconds: Long = applicationConfiguration.getPropertyValue(STARTUP_TIMEOUT_SECONDS, defaultTimeoutSeconds)
+    private val timings: MutableList<StageTiming> = Collections.synchronizedList(mutableListOf())
+    private val finished: MutableMap<String, StageTiming> = ConcurrentHashMap()
+    @Volatile
+    private var started = false
+    @Volatile
+    private var ready = false
+    @Volatile
+    private var complete = false
+
+    override val isReady: Boolean
+        get() = ready
+
+    override val isFinished: Boolean
+        get() = complete
+
+    override fun timings(): List<StageTiming> {
+        synchronized(timings) {
+            return ArrayList(timings)
+        }
+    }
+
+    override fun start() {
+        synchronized(this) {
+            if (started) {
+                throw StartupCodeException("Startup has already been started")
+            }
+            started = true
+        }
+        val ordered = orderStartupStages(stages)
+        if (ordered.isEmpty()) {
+            ready = true
+            complete = true
+            return
+        }
+        val threadCount = AtomicInteger()
+        val executor = Executors.newFixedThreadPool(parallelism.coerceIn(1, ordered.size)) { runnable ->
+            val thread = Thread(runnable, "krail-startup-${threadCount.incrementAndGet()}")
+            thread.isDaemon = true
+            thread
+        }
+        val origin = System.nanoTime()
+        val futures = LinkedHashMap<String, CompletableFuture<Void>>()
+        for (stage in ordered) {
+            val dependencies = stage.dependsOn.map { futures.getValue(it) }
+            futures[stage.name] = CompletableFuture.allOf(*dependencies.toTypedArray())
+                    .handleAsync(BiFunction<Void?, Throwable?, Void?> { _, dependencyFailure -> runStage(stage, origin, dependencyFailure) }, executor)
+        }
+        CompletableFuture.allOf(*futures.values.toTypedArray()).whenComplete { _, _ ->
+            executor.shutdown()
+            val failed = timings().filter { it.failed }
+            ready = failed.isEmpty()
+            complete = true
+            log.info("Startup complete in {} ms, {}", millisSince(origin), timings().joinToString { "${it.name}: ${it.elapsedMillis} ms" })
+            if (failed.isNotEmpty()) {
+                log.warn("Application is not ready, startup stages failed: {}", failed.map { it.name })
+            }
+        }
+
+        val required = ordered.filter { it.required }.map { futures.getValue(it.name) }
+        try {
+            CompletableFuture.allOf(*required.toTypedArray()).get(timeoutSeconds, TimeUnit.SECONDS)
+        } catch (e: ExecutionException) {
+            val failed = ordered.filter { it.required }.mapNotNull { finished[it.name] }.firstOrNull { it.failed }
+            throw StartupCodeException("Required startup stage '${failed?.name}' failed, cause: ${failed?.failure}")
+        } catch (e: TimeoutException) {
+            throw StartupCodeException("Required startup stages did not finish within $timeoutSeconds seconds")
+        }
+    }
+
+    private fun runStage(stage: StartupStage, origin: Long, dependencyFailure: Throwable?): Void? {
+        val start = millisSince(origin)
+        if (dependencyFailure == null && !stage.enabled) {
+            record(StageTiming(stage.name, start, 0, disabled = true))
+            log.info("Startup stage '{}' is disabled, its work will be done on first use", stage.name)
+            return null
+        }
+        if (dependencyFailure != null) {
+            val failed = stage.dependsOn.filter { finished[it]?.failed == true }
+            val skipped = StartupCodeException("Skipped, because $failed failed")
+            record(StageTiming(stage.name, start, 0, skipped))
+            log.warn("Startup stage '{}' skipped, because {} failed", stage.name, failed)
+            throw CompletionException(skipped)
+        }
+        try {
+            stage.run()
+            record(StageTiming(stage.name, start, millisSince(origin) - start))
+            log.debug("Startup stage '{}' finished", stage.name)
+            return null
+        } catch (e: Exception) {
+            record(StageTiming(stage.name, start, millisSince(origin) - start, e))
+            log.error("Startup stage '{}' failed", stage.name, e)
+            throw CompletionException(e)
+        }
+    }
+
+    private fun record(timing: StageTiming) {
+        finished[timing.name] = timing
+        timings.add(timing)
+    }
+
+    private fun millisSince(origin: Long): Long {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origin)
+    }
+
+    companion object {
+        const val defaultTimeoutSeconds = 120L
+    }
+}
+
+/**
+ * Sets the Shiro [SecurityManager], which creates and initialises the realms.  Required, as nothing can be secured without it
+ */
+class SecurityStartupStage @Inject constructor(private val securityManagerProvider: Provider<SecurityManager>) : StartupStage {
+    override val name = securityStage
+    override val required = true
+
+    override fun run() {
+        SecurityUtils.setSecurityManager(securityManagerProvider.get())
+    }
+}
+
+/**
+ * Creates the shared [Collator][java.text.Collator] for each supported Locale, so that the first sort of labels does not pay for it.  I18N
+ * patterns are not loaded here, as the [PatternSource][uk.q3c.krail.i18n.PatternSource] is session scoped
+ */
+class I18NStartupStage @Inject constructor(
+        private val collatorPool: Provider<CollatorPool>,
+        @param:SupportedLocales private val supportedLocales: Set<Locale>) : StartupStage {
+
+    override val name = i18nStage
+
+    override fun run() {
+        val pool = collatorPool.get()
+        supportedLocales.forEach { pool.collator(it) }
+    }
+}
+
+/**
+ * Builds the master sitemap by starting the [SitemapService], rather than leaving it to the first navigation.  Enabled unless
+ * [STARTUP_SITEMAP_ENABLED] is set to false
+ */
+class SitemapStartupStage @Inject constructor(
+        private val sitemapService: Provider<SitemapService>,
+        private val applicationConfiguration: ApplicationConfiguration) : StartupStage {
+
+    override val name = sitemapStage
+    override val dependsOn = setOf(i18nStage)
+
+    override val enabled: Boolean
+        get() = applicationConfiguration.getPropertyValue(STARTUP_SITEMAP_ENABLED, true)
+
+    override fun run() {
+        val service = sitemapService.get()
+        service.start()
+        if (service.state == State.FAILED) {
+            throw StartupCodeException("Sitemap service failed to start, cause: ${service.cause}")
+        }
+    }
+}
+
+/**
+ * Opens the shared MapDB store, if [FormDaoFactory] is a [MapDbFormDaoFactory].  Disabled unless [STARTUP_FORM_STORE_ENABLED] is true, as
+ * opening the store takes its file lock, even in an application which does not use it
+ */
+class FormStoreStartupStage @Inject constructor(
+        private val formDaoFactory: Provider<FormDaoFactory>,
+        private val applicationConfiguration: ApplicationConfiguration) : StartupStage {
+
+    override val name = formStoreStage
+
+    override val enabled: Boolean
+        get() = applicationConfiguration.getPropertyValue(STARTUP_FORM_STORE_ENABLED, false)
+
+    override fun run() {
+        val factory = formDaoFactory.get()
+        if (factory is MapDbFormDaoFactory) {
+            factory.db()
+        }
+    }
+}
+
+const val securityStage = "security"
+const val i18nStage = "i18n"
+const val sitemapStage = "sitemap"
+const val formStoreStage = "formStore"
@@ -13,7 +13,10 @@
 
 package uk.q3c.krail.core.sysadmin
 
+import com.google.common.collect.ImmutableMap
 import uk.q3c.krail.core.navigate.sitemap.MasterSitemap
+import uk.q3c.krail.core.navigate.sitemap.MasterSitemapHolder
+import uk.q3c.krail.core.navigate.sitemap.SitemapVersion
 import uk.q3c.krail.core.view.ViewTest
 
 /**
@@ -23,10 +26,12 @@ class SitemapReportViewTest extends ViewTest {
 
     SitemapReportView thisView
     MasterSitemap masterSitemap = Mock()
+    MasterSitemapHolder sitemapHolder = Mock()
 
     def setup() {
-        thisView = new SitemapReportView(masterSitemap, translate, serializationSupport)
+        thisView = new SitemapReportView(sitemapHolder, translate, serializationSupport)
         masterSitemap.getReport() >> "wiggly report"
+        sitemapHolder.getCurrent() >> new SitemapVersion(1, masterSitemap, ImmutableMap.of())
         view = thisView
     }
 
@@ -13,12 +13,20 @@
 
 package uk.q3c.krail.persist.jpa;
 
+import com.google.common.collect.ImmutableList;
 import com.mycila.testing.junit.MycilaJunitRunner;
 import com.mycila.testing.plugin.guice.GuiceContext;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import uk.q3c.krail.core.data.TestEntity;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.assertj.core.api.Assertions.*;
 import static uk.q3c.krail.persist.jpa.Select.Compare.*;
 
@@ -56,4 +64,152 @@ public class SelectTest {
         assertThat(select.getParam("ageParam")).isEqualTo(33);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void templateUsesNamedParameters() {
+        //given
+        Select select = new Select().from(TestEntity.class)
+                                    .where("name", "a")
+                                    .and("age", GREATER_THAN, 33)
+                                    .and("age", LESS_THAN, 40);
+        //when
+        PreparedSelect prepared = select.prepare(new SelectStatements());
+        //then
+        assertThat(prepared.getStatement()
+                           .getJpql()).isEqualTo("SELECT t FROM TestEntity t WHERE t.name=:nameParam AND t.age>:ageParam AND t.age<:ageParam2");
+        assertThat(prepared.getParameters()).containsEntry("nameParam", "a")
+                                            .containsEntry("ageParam", 33)
+                                            .containsEntry("ageParam2", 40);
+    }
+
+    @Test
+    public void inOrderByAndLimit() {
+        //given
+        Select select = new Select().from(TestEntity.class)
+                                    .whereIn("name", ImmutableList.of("a", "b"))
+                                    .orderBy("name")
+                                    .orderBy("age", false)
+                                    .offset(20)
+                                    .limit(10);
+        //when
+        PreparedSelect prepared = select.prepare(new SelectStatements());
+        //then
+        assertThat(prepared.getStatement()
+                           .getJpql()).isEqualTo("SELECT t FROM TestEntity t WHERE t.name IN :nameParam ORDER BY t.name ASC, t.age DESC");
+        assertThat(prepared.getParameters()).containsEntry("nameParam", ImmutableList.of("a", "b"));
+        assertThat(prepared.getFirstResult()).isEqualTo(20);
+        assertThat(prepared.getMaxResults()).isEqualTo(10);
+    }
+
+    @Test
+    public void sameShapeSharesStatement() {
+        //given
+        SelectStatements statements = new SelectStatements();
+        AtomicInteger registrations = new AtomicInteger();
+        //when
+        PreparedSelect first = new Select().from(TestEntity.class)
+                                           .where("name", "a")
+                                           .limit(5)
+                                           .prepare(statements);
+        PreparedSelect second = new Select().from(TestEntity.class)
+                                            .where("name", "b")
+                                            .prepare(statements);
+        PreparedSelect other = new Select().from(TestEntity.class)
+                                           .where("age", 3)
+                                           .prepare(statements);
+        first.getStatement()
+             .registerOnce(s -> registrations.incrementAndGet());
+        second.getStatement()
+              .registerOnce(s -> registrations.incrementAndGet());
+        //then
+        assertThat(second.getStatement()).isSameAs(first.getStatement());
+        assertThat(other.getStatement()).isNotSameAs(first.getStatement());
+        assertThat(other.getStatement()
+                        .getName()).isNotEqualTo(first.getStatement()
+                                                      .getName());
+        assertThat(second.getParameters()).containsEntry("nameParam", "b");
+        assertThat(statements.size()).isEqualTo(2);
+        assertThat(registrations.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void registerOnceWaitsForRegistrationInProgress() throws Exception {
+        //given
+        SelectStatement statement = new SelectStatements().statementFor("SELECT e FROM TestEntity e");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            //when
+            Future<Boolean> first = executor.submit(() -> statement.registerOnce(s -> {
+                started.countDown();
+                awaitQuietly(release);
+            }));
+            started.await();
+            Future<Boolean> second = executor.submit(() -> statement.registerOnce(s -> {
+                throw new IllegalStateException("should not be called");
+            }));
+            Thread.sleep(100);
+            //then
+            assertThat(second.isDone()).isFalse();
+            assertThat(statement.isRegistered()).isFalse();
+            release.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(second.get(5, TimeUnit.SECONDS)).isFalse();
+            assertThat(statement.isRegistered()).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void registerOnceRetriesAfterFailure() {
+        //given
+        SelectStatement statement = new SelectStatements().statementFor("SELECT e FROM TestEntity e");
+        //when
+        Throwable failure = catchThrowable(() -> statement.registerOnce(s -> {
+            throw new IllegalStateException("fail");
+        }));
+        boolean retried = statement.registerOnce(s -> {
+        });
+        //then
+        assertThat(failure).isInstanceOf(IllegalStateException.class);
+        assertThat(retried).isTrue();
+        assertThat(statement.isRegistered()).isTrue();
+    }
+
+    @Test
+    public void statementCacheIsBounded() {
+        //given
+        SelectStatements statements = new SelectStatements("test.", 2);
+        AtomicInteger registrations = new AtomicInteger();
+        //when
+        SelectStatement first = statements.statementFor("SELECT e FROM TestEntity e WHERE e.a = :a");
+        first.registerOnce(s -> registrations.incrementAndGet());
+        statements.statementFor("SELECT e FROM TestEntity e WHERE e.b = :b");
+        statements.statementFor("SELECT e FROM TestEntity e WHERE e.c = :c");
+        SelectStatement recreated = statements.statementFor("SELECT e FROM TestEntity e WHERE e.a = :a");
+        boolean registeredAgain = recreated.registerOnce(s -> registrations.incrementAndGet());
+        //then
+        assertThat(statements.size()).isLessThanOrEqualTo(2);
+        assertThat(recreated.getName()).isEqualTo(first.getName());
+        assertThat(recreated.isRegistered()).isTrue();
+        assertThat(registeredAgain).isFalse();
+        assertThat(registrations.get()).isEqualTo(1);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyInList() {
+        new Select().from(TestEntity.class)
+                    .whereIn("name", ImmutableList.of());
+    }
+
+}
@@ -33,6 +33,7 @@ import uk.q3c.krail.core.guice.vsscope.VaadinSessionScopeModule;
 import uk.q3c.krail.core.vaadin.JavaMockVaadinSession;
 import uk.q3c.krail.eventbus.mbassador.EventBusModule;
 import uk.q3c.krail.i18n.CurrentLocale;
+import uk.q3c.krail.i18n.I18NKey;
 import uk.q3c.krail.option.Option;
 import uk.q3c.krail.option.mock.TestOptionModule;
 import uk.q3c.krail.persist.inmemory.InMemoryModule;
@@ -43,6 +44,7 @@ import uk.q3c.util.UtilModule;
 import uk.q3c.util.guice.SerializationSupportModule;
 
 import java.util.Locale;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -193,6 +195,20 @@ public class DefaultI18NProcessorTest {
 
     }
 
+    @Test
+    public void columnKeyFor_notAKey() {
+        // when
+        Optional<I18NKey> key1 = processor.columnKeyFor("name");
+        Optional<I18NKey> key2 = processor.columnKeyFor("com.example.NotAKey.NAME");
+        Optional<I18NKey> key3 = processor.columnKeyFor("com.example.NotAKey.NAME");
+        Optional<I18NKey> key4 = processor.columnKeyFor(null);
+        // then
+        assertThat(key1).isEmpty();
+        assertThat(key2).isEmpty();
+        assertThat(key3).isEmpty();
+        assertThat(key4).isEmpty();
+    }
+
 
     @ModuleProvider
     protected AbstractModule moduleProvider() {
@@ -296,6 +296,40 @@ public class StrictURIFragmentHandlerTest {
         assertThat(navigationState.getFragment()).isEqualTo("home/only/age=15");
     }
 
+    @Test
+    public void parsedFragmentsAreInterned() {
+
+        // when
+        FragmentParts parts1 = uriHandler.parse(subView_p2);
+        FragmentParts parts2 = uriHandler.parse(subView_p2);
+        NavigationState navigationState = uriHandler.navigationState(subView_p2);
+
+        // then
+        assertThat(parts2).isSameAs(parts1);
+        assertThat(parts1.getVirtualPage()).isEqualTo(subView);
+        assertThat(parts1.getPathSegments()).containsExactly("view1", "subView");
+        assertThat(parts1.getParameterList()).containsExactly("a=b", "year=1970");
+        assertThat(navigationState.getPathSegments()).isSameAs(parts1.getPathSegments());
+        assertThat(navigationState.getParameters()).isSameAs(parts1.getParameters());
+    }
+
+    @Test
+    public void modifyParametersOfParsedState() {
+
+        // given
+        NavigationState navigationState1 = uriHandler.navigationState(view_p2);
+        NavigationState navigationState2 = uriHandler.navigationState(view_p2);
+
+        // when
+        navigationState1.parameter("id", "3");
+        navigationState1.removeParameter("a");
+        uriHandler.updateFragment(navigationState1);
+
+        // then
+        assertThat(navigationState1.getFragment()).isEqualTo("view1/year=1970/id=3");
+        assertThat(navigationState2.getParameterList()).containsExactly("a=b", "year=1970");
+    }
+
     @Test
     public void fromURI() {
 
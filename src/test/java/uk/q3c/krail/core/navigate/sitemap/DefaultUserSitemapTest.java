@@ -99,6 +99,22 @@ public class DefaultUserSitemapTest {
         assertThat(labelsChanged).isTrue();
     }
 
+    /**
+     * Nodes are labelled when they are loaded, so there is nothing to relabel until then
+     */
+    @Test
+    public void localeChange_notLoaded() throws InterruptedException {
+
+        // given
+        currentLocale.setLocale(Locale.UK);
+        // when
+        currentLocale.setLocale(Locale.GERMANY);
+        Thread.sleep(100);
+        // then
+        assertThat(userSitemap.isLoaded()).isFalse();
+        assertThat(labelsChanged).isFalse();
+    }
+
     /**
      * Loaded is set by the builder, after selected content copied across from master sitemap. Should trigger structure
      * change events
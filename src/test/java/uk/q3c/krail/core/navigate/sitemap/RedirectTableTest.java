@@ -0,0 +1,78 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.navigate.sitemap;
+
+import org.junit.Test;
+import uk.q3c.krail.core.navigate.StrictURIFragmentHandler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RedirectTableTest {
+
+    @Test
+    public void multipleLevels() {
+        // given
+        Map<String, String> redirects = new LinkedHashMap<>();
+        redirects.put("a", "b");
+        redirects.put("b", "c");
+        redirects.put("c", "d");
+        redirects.put("x", "y");
+
+        // when
+        RedirectTable table = RedirectTable.compile(redirects);
+
+        // then
+        assertThat(table.targetFor("a")).isEqualTo("d");
+        assertThat(table.targetFor("b")).isEqualTo("d");
+        assertThat(table.targetFor("c")).isEqualTo("d");
+        assertThat(table.targetFor("x")).isEqualTo("y");
+        assertThat(table.targetFor("d")).isEqualTo("d");
+        assertThat(table.targetFor("unknown")).isEqualTo("unknown");
+        assertThat(table.getLoops()).isEmpty();
+    }
+
+    @Test
+    public void loopsAreReportedAndExcluded() {
+        // given
+        Map<String, String> redirects = new LinkedHashMap<>();
+        redirects.put("p/1", "p/2");
+        redirects.put("p/2", "p/3");
+        redirects.put("p/3", "p/1");
+        redirects.put("q", "q");
+
+        // when
+        RedirectTable table = RedirectTable.compile(redirects);
+
+        // then
+        assertThat(table.getLoops()).containsOnlyKeys("p/3", "q");
+        assertThat(table.targetFor("p/1")).isEqualTo("p/3");
+        assertThat(table.targetFor("q")).isEqualTo("q");
+    }
+
+    @Test
+    public void sitemapRecompilesWhenRedirectAdded() {
+        // given
+        DefaultMasterSitemap sitemap = new DefaultMasterSitemap(new StrictURIFragmentHandler());
+        sitemap.addRedirect("a", "b");
+        assertThat(sitemap.getRedirectPageFor("a")).isEqualTo("b");
+
+        // when
+        sitemap.addRedirect("b", "c");
+
+        // then
+        assertThat(sitemap.getRedirectPageFor("a")).isEqualTo("c");
+    }
+}
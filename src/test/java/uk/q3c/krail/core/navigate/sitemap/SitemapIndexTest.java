@@ -0,0 +1,45 @@
+/*
+ *
+ *  * Copyright (c) 2016. David Sowerby
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ *  * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ *  * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ *  * specific language governing permissions and limitations under the License.
+ *
+ */
+package uk.q3c.krail.core.navigate.sitemap;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SitemapIndexTest {
+
+    private static final String TEST_INDEX = "uk/q3c/krail/core/navigate/sitemap/test-sitemap.index";
+
+    @Test
+    public void readIndex() {
+        // when
+        SitemapIndex index = SitemapIndex.load(getClass().getClassLoader(), TEST_INDEX);
+
+        // then
+        assertThat(index.isPresent()).isTrue();
+        assertThat(index.getClassNames()).containsExactly("fixture.testviews2.TestAnnotatedView",
+                "uk.q3c.krail.core.navigate.sitemap.DefaultAnnotationSitemapLoaderTest$View1");
+        assertThat(index.classNamesFor("fixture.")).containsExactly("fixture.testviews2.TestAnnotatedView");
+        assertThat(index.classNamesFor("fixture1")).isEmpty();
+    }
+
+    @Test
+    public void noIndex() {
+        // when
+        SitemapIndex index = SitemapIndex.load(getClass().getClassLoader(), "does/not/exist.index");
+
+        // then
+        assertThat(index.isPresent()).isFalse();
+        assertThat(index.getClassNames()).isEmpty();
+    }
+}
@@ -22,6 +22,8 @@ import org.junit.Before;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import uk.q3c.krail.core.eventbus.SessionBusProvider;
+import uk.q3c.krail.core.i18n.CollatorPool;
+import uk.q3c.krail.core.i18n.DefaultCollatorPool;
 import uk.q3c.krail.core.i18n.DefaultI18NProcessor;
 import uk.q3c.krail.core.i18n.I18NProcessor;
 import uk.q3c.krail.core.i18n.LabelKey;
@@ -234,10 +236,11 @@ public abstract class TestWithSitemap {
      * needed before calling this method
      */
     protected void createUserSitemap() {
-        userSitemap = new DefaultUserSitemap(translate, uriHandler, sessionBusProvider, serializationSupport);
+        CollatorPool collatorPool = new DefaultCollatorPool();
+        userSitemap = new DefaultUserSitemap(translate, uriHandler, sessionBusProvider, serializationSupport, currentLocale, collatorPool);
         UserSitemapNodeModifier nodeModifier = new UserSitemapNodeModifier(subjectProvider, currentLocale,
-                pageAccessController, translate);
-        UserSitemapCopyExtension copyExtension = new UserSitemapCopyExtension(userSitemap, translate, currentLocale);
+                pageAccessController, translate, collatorPool);
+        UserSitemapCopyExtension copyExtension = new UserSitemapCopyExtension(userSitemap, translate, currentLocale, collatorPool);
         userSitemapBuilder = new UserSitemapBuilder(userSitemap, nodeModifier, copyExtension, subjectProvider, sessionBusProvider);
         userSitemapBuilder.setMasterSitemap(masterSitemap);
         userSitemapBuilder.build();
@@ -28,6 +28,7 @@ import uk.q3c.krail.core.eventbus.SessionBusListener;
 import uk.q3c.krail.core.eventbus.VaadinEventBusModule;
 import uk.q3c.krail.core.guice.uiscope.UIScopeModule;
 import uk.q3c.krail.core.guice.vsscope.VaadinSessionScopeModule;
+import uk.q3c.krail.core.i18n.LabelKey;
 import uk.q3c.krail.core.navigate.StrictURIFragmentHandler;
 import uk.q3c.krail.core.navigate.URIFragmentHandler;
 import uk.q3c.krail.core.navigate.sitemap.UserSitemapBuilderTest.TestVaadinSessionScopeModule;
@@ -53,6 +54,8 @@ import java.util.Locale;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MycilaJunitRunner.class)
@@ -109,6 +112,48 @@ public class UserSitemapBuilderTest extends TestWithSitemap {
         return userSitemap.userNodeFor(masterNode) != null;
     }
 
+    @Test
+    public void updateReplacesOnlyChangedSubtrees() {
+        // given
+        buildMasterSitemap(8);
+        when(pageAccessController.isAuthorised(subject, masterSitemap, masterNode1)).thenReturn(true);
+        when(pageAccessController.isAuthorised(subject, masterSitemap, masterNode2)).thenReturn(false);
+        when(pageAccessController.isAuthorised(subject, masterSitemap, masterNode3)).thenReturn(true);
+        createUserSitemap();
+        String label1 = userNode1.getLabel();
+
+        DefaultMasterSitemap next = new DefaultMasterSitemap(uriHandler);
+        MasterSitemapNode nextNode1 = newNode("1", LabelKey.Yes);
+        MasterSitemapNode nextNode2 = newNode("2", LabelKey.Enable_Account);
+        MasterSitemapNode nextNode3 = newNode("3", LabelKey.Enable_Account);
+        MasterSitemapNode nextNode4 = newNode("4", LabelKey.No);
+        next.addChild(null, nextNode1);
+        next.addChild(null, nextNode2);
+        next.addChild(nextNode1, nextNode3);
+        next.addChild(nextNode1, nextNode4);
+        next.addRedirect("a", "1");
+        next.lock();
+        when(pageAccessController.isAuthorised(subject, next, nextNode2)).thenReturn(true);
+        when(pageAccessController.isAuthorised(subject, next, nextNode4)).thenReturn(true);
+
+        // when
+        userSitemapBuilder.update(next, MasterSitemapHolderKt.changedSubtrees(masterSitemap, next));
+
+        // then
+        assertThat(userSitemap.getUriMap()
+                .keySet()).containsOnly("1", "1/3", "1/4", "2");
+        assertThat(userSitemap.nodeFor("1")
+                .getMasterNode()).isSameAs(nextNode1);
+        assertThat(userSitemap.nodeFor("1")
+                .getLabel()).isEqualTo(label1);
+        assertThat(userSitemap.getParent(userSitemap.nodeFor("1/4"))
+                .getMasterNode()).isSameAs(nextNode1);
+        assertThat(userSitemap.getRedirects()
+                .keySet()).containsOnly("a");
+        verify(pageAccessController, never()).isAuthorised(subject, next, nextNode1);
+        verify(pageAccessController, never()).isAuthorised(subject, next, nextNode3);
+    }
+
     @Test
     public void redirects() {
         // given
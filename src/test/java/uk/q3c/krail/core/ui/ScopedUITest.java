@@ -232,8 +232,8 @@ public class ScopedUITest {
         ui.init(request);
         // then
         InOrder inOrder = inOrder(currentLocale, navigator, translator, navigator);
-        //        inOrder.verify(currentLocale)
-        //               .setLocale(Locale.FRANCE, false);
+        inOrder.verify(currentLocale)
+               .readFromEnvironment();
         inOrder.verify(navigator)
                .init();
         inOrder.verify(translator)
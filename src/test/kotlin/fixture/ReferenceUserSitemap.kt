@@ -30,6 +30,7 @@ import fixture.testviews2.ViewB12
 import fixture.testviews2.ViewB121
 import fixture.testviews2.ViewB122
 import uk.q3c.krail.core.eventbus.SessionBusProvider
+import uk.q3c.krail.core.i18n.CollatorPool
 import uk.q3c.krail.core.i18n.LabelKey
 import uk.q3c.krail.core.navigate.URIFragmentHandler
 import uk.q3c.krail.core.navigate.sitemap.DefaultUserSitemap
@@ -40,6 +41,7 @@ import uk.q3c.krail.core.navigate.sitemap.UserSitemapNode
 import uk.q3c.krail.core.shiro.PageAccessControl
 import uk.q3c.krail.core.view.EmptyViewConfiguration
 import uk.q3c.krail.core.view.KrailView
+import uk.q3c.krail.i18n.CurrentLocale
 import uk.q3c.krail.i18n.I18NKey
 import uk.q3c.krail.i18n.Translate
 import uk.q3c.krail.i18n.test.TestLabelKey
@@ -86,7 +88,7 @@ class ReferenceUserSitemap
  * Position index is set to be the reverse of alphabetic order
  */
 @Inject
-constructor(translate: Translate, uriHandler: URIFragmentHandler, sessionBusProvider: SessionBusProvider, serializationSupport: SerializationSupport) : DefaultUserSitemap(translate, uriHandler, sessionBusProvider, serializationSupport) {
+constructor(translate: Translate, uriHandler: URIFragmentHandler, sessionBusProvider: SessionBusProvider, serializationSupport: SerializationSupport, currentLocale: CurrentLocale, collatorPool: CollatorPool) : DefaultUserSitemap(translate, uriHandler, sessionBusProvider, serializationSupport, currentLocale, collatorPool) {
 
     var aFragment = "public/a"
     var aViewClass: Class<out KrailView> = ViewA::class.java
@@ -6,9 +6,12 @@ import com.google.inject.Injector
 import com.vaadin.data.converter.StringToIntegerConverter
 import com.vaadin.ui.TextField
 import io.mockk.mockk
+import org.amshove.kluent.shouldBe
 import org.amshove.kluent.shouldBeEmpty
 import org.amshove.kluent.shouldBeEqualTo
 import org.amshove.kluent.shouldBeInstanceOf
+import org.amshove.kluent.shouldEqual
+import org.amshove.kluent.shouldNotBe
 import org.amshove.kluent.shouldNotBeNull
 import org.apache.bval.guice.ValidationModule
 import org.apache.bval.jsr303.ApacheFactoryContext
@@ -109,6 +112,16 @@ object BindersTest : Spek({
                 javaxValidator.shouldNotBeNull()
                 contextFieldValue.messageInterpolator.shouldBeInstanceOf(KrailInterpolator::class.java)
             }
+
+            it("shares one validator for each bean type and property") {
+                beanValidatorFactory.create(Person::class.java, "age").shouldBe(beanValidator)
+                beanValidatorFactory.create(Person::class.java, "name").shouldNotBe(beanValidator)
+            }
+
+            it("reads the constraints for a property") {
+                beanValidatorFactory.constraintsFor(Person::class.java, "age").map { it.annotationClass }.shouldEqual(listOf(Max::class))
+                beanValidatorFactory.constraintsFor(Person::class.java, "name").shouldBeEmpty()
+            }
         }
 
     }
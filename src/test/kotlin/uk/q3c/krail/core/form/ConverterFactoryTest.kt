@@ -1,15 +1,23 @@
 package uk.q3c.krail.core.form
 
+import com.google.inject.Provider
 import com.vaadin.data.ValueContext
+import com.vaadin.data.converter.StringToIntegerConverter
 import com.vaadin.ui.TextField
+import io.mockk.mockk
+import org.amshove.kluent.shouldBe
 import org.amshove.kluent.shouldBeEqualTo
+import org.amshove.kluent.shouldBeInstanceOf
+import org.amshove.kluent.shouldBeTrue
 import org.amshove.kluent.shouldThrow
 import org.jetbrains.spek.api.Spek
 import org.jetbrains.spek.api.dsl.given
 import org.jetbrains.spek.api.dsl.it
 import org.jetbrains.spek.api.dsl.on
 import uk.q3c.krail.i18n.test.MockTranslate
+import uk.q3c.util.guice.SerializationSupport
 import uk.q3c.util.serial.tracer.SerializationTracer
+import java.time.LocalDate
 import java.util.*
 
 /**
@@ -65,4 +73,41 @@ object ConverterFactoryTest : Spek({
         }
     }
 
-})
\ No newline at end of file
+    given("a DefaultConverterFactory with the base converter set") {
+        val translate = MockTranslate()
+        val serializationSupport: SerializationSupport = mockk(relaxed = true)
+        lateinit var factory: DefaultConverterFactory
+
+        beforeEachTest {
+            factory = DefaultConverterFactory(mutableSetOf(BaseConverterSet(Provider { KrailConverterErrorMessageProvider(translate) }, serializationSupport)))
+        }
+
+        on("getting a converter for the same pair more than once") {
+            val converter1 = factory.get(String::class, Integer::class)
+            val converter2 = factory.get(String::class, Integer::class)
+
+            it("shares a single converter") {
+                converter1.shouldBeInstanceOf(StringToIntegerConverter::class)
+                converter2.shouldBe(converter1)
+                factory.supports(ConverterPair(String::class, Integer::class)).shouldBeTrue()
+            }
+        }
+
+        on("getting a converter for a pair with the same presentation and model classes") {
+            val converter = factory.get(String::class, String::class)
+
+            it("returns a NoConversionConverter") {
+                converter.shouldBeInstanceOf(NoConversionConverter::class)
+            }
+        }
+
+        on("getting a converter for an unsupported pair") {
+            val result = { factory.get(String::class, LocalDate::class) }
+
+            it("throws an UnsupportedOperationException") {
+                result.shouldThrow(UnsupportedOperationException::class)
+            }
+        }
+    }
+
+})
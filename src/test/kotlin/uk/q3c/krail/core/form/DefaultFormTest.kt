@@ -5,6 +5,7 @@ import com.google.inject.Guice
 import com.google.inject.Injector
 import com.google.inject.Provider
 import com.google.inject.multibindings.MapBinder
+import com.google.inject.util.Modules
 import io.mockk.every
 import io.mockk.mockk
 import io.mockk.verify
@@ -15,6 +16,7 @@ import org.jetbrains.spek.api.Spek
 import org.jetbrains.spek.api.dsl.given
 import org.jetbrains.spek.api.dsl.it
 import org.jetbrains.spek.api.dsl.on
+import uk.q3c.krail.config.ApplicationConfiguration
 import uk.q3c.krail.core.env.ServletEnvironmentModule
 import uk.q3c.krail.core.env.ServletInjectorLocator
 import uk.q3c.krail.core.navigate.NavigationState
@@ -29,6 +31,7 @@ import uk.q3c.krail.core.view.NavigationStateExt
 import uk.q3c.krail.core.view.ViewConfiguration
 import uk.q3c.krail.core.view.component.DefaultIconFactory
 import uk.q3c.krail.core.view.component.IconFactory
+import uk.q3c.krail.eventbus.MessageBus
 import uk.q3c.krail.i18n.CurrentLocale
 import uk.q3c.krail.i18n.Translate
 import uk.q3c.krail.i18n.test.MockCurrentLocale
@@ -117,7 +120,7 @@ object FormModuleTest : Spek({
 
         beforeEachTest {
             val module = FormModule()
-            injector = Guice.createInjector(module, KrailValidationModule(), ConverterModule(), DefaultFormTestModule(), FormDaoModule())
+            injector = Guice.createInjector(module, Modules.override(ValidationModule()).with(KrailValidationModule()), ConverterModule(), DefaultFormTestModule(), FormDaoModule())
         }
 
         on("using module in Guice") {
@@ -159,7 +162,7 @@ object FormConstructionTest : Spek({
             masterSitemapNode = mockk(relaxed = true)
             every { masterSitemapNode.viewConfiguration } returns FormConfiguration1::class.java
             every { userSitemapNode.masterNode } returns masterSitemapNode
-            injector = Guice.createInjector(formModule, KrailValidationModule(), ConverterModule(), DefaultFormTestModule(), FormDaoModule())
+            injector = Guice.createInjector(formModule, Modules.override(ValidationModule()).with(KrailValidationModule()), ConverterModule(), DefaultFormTestModule(), FormDaoModule())
             form = injector.getInstance(DefaultForm::class.java)
         }
 
@@ -192,7 +195,8 @@ object FormChangeRouteSpek : Spek({
         val navigator: Navigator = mockk(relaxed = true)
         val currentLocale: CurrentLocale = mockk(relaxed = true)
         val formBuilderSelectorProvider: Provider<FormBuilderSelector> = mockk(relaxed = true)
-        val form = DefaultForm(translate, serializationSupport, navigator, uriFragmentHandler, currentLocale, formBuilderSelectorProvider)
+        val formBlueprints: FormBlueprints = mockk(relaxed = true)
+        val form = DefaultForm(translate, serializationSupport, navigator, uriFragmentHandler, currentLocale, formBuilderSelectorProvider, formBlueprints)
         val userSitemapNode: UserSitemapNode = mockk(relaxed = true)
         val navStateTo = NavigationState().fragment("person")
         navStateTo.update(uriFragmentHandler)
@@ -217,7 +221,13 @@ class DefaultFormTestModule : AbstractModule() {
     val navigator: Navigator = mockk(relaxed = true)
     val userNotifier: UserNotifier = mockk(relaxed = true)
 
+    val applicationConfiguration: ApplicationConfiguration = mockk(relaxed = true)
+    val messageBus: MessageBus = mockk(relaxed = true)
+
     override fun configure() {
+        every { applicationConfiguration.getPropertyValue(any(), any<Any>()) } answers { secondArg() }
+        bind(ApplicationConfiguration::class.java).toInstance(applicationConfiguration)
+        bind(MessageBus::class.java).toInstance(messageBus)
         bind(Translate::class.java).toInstance(MockTranslate())
         bind(CurrentLocale::class.java).toInstance(MockCurrentLocale())
         bind(SerializationSupport::class.java).to(DefaultSerializationSupport::class.java)
@@ -0,0 +1,132 @@
+package uk.q3c.krail.core.form
+
+import com.vaadin.data.ValueContext
+import io.mockk.every
+import io.mockk.mockk
+import org.amshove.kluent.shouldBe
+import org.amshove.kluent.shouldBeEqualTo
+import org.amshove.kluent.shouldContain
+import org.amshove.kluent.shouldNotBe
+import org.amshove.kluent.shouldThrow
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.given
+import org.jetbrains.spek.api.dsl.it
+import org.jetbrains.spek.api.dsl.on
+import uk.q3c.krail.core.validation.ValidationKey
+import uk.q3c.krail.core.view.EmptyViewConfiguration
+import uk.q3c.krail.i18n.CurrentLocale
+import uk.q3c.krail.i18n.Translate
+import java.util.*
+
+object FormBlueprintTest : Spek({
+
+    given("a set of form blueprints") {
+        lateinit var blueprints: DefaultFormBlueprints
+
+        beforeEachTest {
+            blueprints = DefaultFormBlueprints(DefaultPropertyConfigurationCreator())
+            CountingFormConfiguration.configCalls = 0
+        }
+
+        on("requesting the blueprint for the same configuration class more than once") {
+            val blueprint1 = blueprints.blueprintFor(CountingFormConfiguration::class.java)
+            val blueprint2 = blueprints.blueprintFor(CountingFormConfiguration::class.java)
+
+            it("configures the class once, and returns the same blueprint") {
+                CountingFormConfiguration.configCalls.shouldBe(1)
+                blueprint2.shouldBe(blueprint1)
+            }
+
+            it("returns the cached blueprint for its own configuration instance") {
+                blueprints.blueprintFor(blueprint1.configuration).shouldBe(blueprint1)
+            }
+        }
+
+        on("requesting a blueprint for a configuration instance which is not cached") {
+            val cached = blueprints.blueprintFor(CountingFormConfiguration::class.java)
+            val configuration = CountingFormConfiguration()
+            configuration.config()
+            val blueprint = blueprints.blueprintFor(configuration)
+
+            it("compiles a separate blueprint") {
+                blueprint.shouldNotBe(cached)
+                blueprint.configuration.shouldBe(configuration)
+            }
+        }
+
+        on("compiling a section") {
+            val section = blueprints.blueprintFor(CountingFormConfiguration::class.java).section()
+
+            it("builds the properties, leaving out excluded ones") {
+                section.properties.map { p -> p.name }.shouldContain("name")
+                section.properties.none { p -> p.name == "id" }.shouldBe(true)
+            }
+
+            it("fixes the field order without changing the configuration") {
+                section.fieldOrder.shouldBeEqualTo(section.properties.map { p -> p.name }.toSet())
+                section.configuration.fieldOrder.isEmpty().shouldBe(true)
+            }
+
+            it("resolves the model class, and the presentation class of select fields") {
+                val pricePlan = section.properties.first { p -> p.name == "pricePlan" }
+                pricePlan.modelClass.shouldBe(Int::class)
+                pricePlan.presentationValueClass(mockk(relaxed = true)).shouldBe(Int::class)
+            }
+        }
+
+        on("requesting a blueprint for a configuration which is not a FormConfiguration") {
+            val result = { blueprints.blueprintFor(EmptyViewConfiguration::class.java) }
+
+            it("throws a FormConfigurationException") {
+                result.shouldThrow(FormConfigurationException::class)
+            }
+        }
+
+        on("requesting a section which does not exist") {
+            val result = { blueprints.blueprintFor(CountingFormConfiguration::class.java).section("missing") }
+
+            it("throws a FormConfigurationException") {
+                result.shouldThrow(FormConfigurationException::class)
+            }
+        }
+    }
+
+    given("a validator shared by forms built in different sessions") {
+        val shared = MaxInt(10)
+        val ukTranslate: Translate = mockk()
+        val germanTranslate: Translate = mockk()
+        val ukLocale: CurrentLocale = mockk()
+        val germanLocale: CurrentLocale = mockk()
+        every { ukLocale.locale } returns Locale.UK
+        every { germanLocale.locale } returns Locale.GERMANY
+        every { ukTranslate.from(ValidationKey.Max, Locale.UK, 10) } returns "must be less than or equal to 10"
+        every { germanTranslate.from(ValidationKey.Max, Locale.GERMANY, 10) } returns "muss kleiner oder gleich 10 sein"
+
+        on("validating through the wrapper for each build") {
+            val uk = TranslatingValidator(shared, ukTranslate, ukLocale).apply(11, ValueContext())
+            val german = TranslatingValidator(shared, germanTranslate, germanLocale).apply(11, ValueContext())
+            val valid = TranslatingValidator(shared, germanTranslate, germanLocale).apply(9, ValueContext())
+
+            it("translates each message with the Translate and Locale of its own build") {
+                uk.errorMessage.shouldBeEqualTo("must be less than or equal to 10")
+                german.errorMessage.shouldBeEqualTo("muss kleiner oder gleich 10 sein")
+                valid.isError.shouldBe(false)
+            }
+        }
+    }
+})
+
+class CountingFormConfiguration : FormConfiguration() {
+
+    override fun config() {
+        configCalls++
+        section()
+                .entityClass(Person::class.java)
+                .excludedProperties("id")
+                .property("pricePlan").fieldType(FieldType.SINGLE_SELECT).selectDataProvider(PricePlanDataProvider::class.java)
+    }
+
+    companion object {
+        var configCalls = 0
+    }
+}
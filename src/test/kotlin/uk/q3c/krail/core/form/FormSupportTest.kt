@@ -3,6 +3,7 @@ package uk.q3c.krail.core.form
 import com.google.inject.AbstractModule
 import com.google.inject.Guice
 import com.google.inject.Injector
+import com.google.inject.util.Modules
 import com.vaadin.data.converter.StringToIntegerConverter
 import com.vaadin.data.provider.ListDataProvider
 import com.vaadin.ui.CheckBox
@@ -14,14 +15,17 @@ import com.vaadin.ui.ListSelect
 import com.vaadin.ui.RadioButtonGroup
 import com.vaadin.ui.TextField
 import com.vaadin.ui.TwinColSelect
+import io.mockk.every
 import io.mockk.mockk
 import org.amshove.kluent.shouldBeInstanceOf
 import org.amshove.kluent.shouldContainAll
 import org.amshove.kluent.shouldThrow
+import org.apache.bval.guice.ValidationModule
 import org.jetbrains.spek.api.Spek
 import org.jetbrains.spek.api.dsl.given
 import org.jetbrains.spek.api.dsl.it
 import org.jetbrains.spek.api.dsl.on
+import uk.q3c.krail.config.ApplicationConfiguration
 import uk.q3c.krail.core.ConfigurationException
 import uk.q3c.krail.core.env.RunningOn
 import uk.q3c.krail.core.env.RuntimeEnvironment
@@ -34,6 +38,7 @@ import uk.q3c.krail.core.user.notify.UserNotifier
 import uk.q3c.krail.core.validation.KrailValidationModule
 import uk.q3c.krail.core.view.component.DefaultIconFactory
 import uk.q3c.krail.core.view.component.IconFactory
+import uk.q3c.krail.eventbus.MessageBus
 import uk.q3c.krail.i18n.CurrentLocale
 import uk.q3c.krail.i18n.Translate
 import uk.q3c.krail.i18n.test.MockCurrentLocale
@@ -57,7 +62,7 @@ object FormSupportTest : Spek({
         lateinit var formConfiguration: FormConfiguration
 
         beforeEachTest {
-            injector = Guice.createInjector(FormModule(), KrailValidationModule(), FormSupportTestModule(), ConverterModule(), FormDaoModule())
+            injector = Guice.createInjector(FormModule(), Modules.override(ValidationModule()).with(KrailValidationModule()), FormSupportTestModule(), ConverterModule(), FormDaoModule())
             InjectorHolder.setInjector(injector)
             formSupport = injector.getInstance(FormSupport::class.java)
             formConfiguration = mockk(relaxed = true)
@@ -187,7 +192,13 @@ object FormSupportTest : Spek({
 private class FormSupportTestModule : AbstractModule() {
     val navigator: Navigator = mockk(relaxed = true)
     val userNotifier: UserNotifier = mockk(relaxed = true)
+    val applicationConfiguration: ApplicationConfiguration = mockk(relaxed = true)
+    val messageBus: MessageBus = mockk(relaxed = true)
+
     override fun configure() {
+        every { applicationConfiguration.getPropertyValue(any(), any<Any>()) } answers { secondArg() }
+        bind(ApplicationConfiguration::class.java).toInstance(applicationConfiguration)
+        bind(MessageBus::class.java).toInstance(messageBus)
         bind(InjectorLocator::class.java).to(ServletInjectorLocator::class.java)
         bind(SerializationSupport::class.java).to(DefaultSerializationSupport::class.java)
         bind(RuntimeEnvironment::class.java).annotatedWith(RunningOn::class.java).toInstance(RuntimeEnvironment.SERVLET)
@@ -1,12 +1,25 @@
 package uk.q3c.krail.core.form
 
+import com.vaadin.data.provider.QuerySortOrder
+import com.vaadin.shared.data.sort.SortDirection
 import org.amshove.kluent.shouldBe
+import org.amshove.kluent.shouldBeEmpty
+import org.amshove.kluent.shouldBeFalse
+import org.amshove.kluent.shouldBeTrue
+import org.amshove.kluent.shouldEqual
 import org.amshove.kluent.shouldNotBeNull
+import org.amshove.kluent.shouldThrow
+import org.apache.commons.io.FileUtils
 import org.jetbrains.spek.api.Spek
 import org.jetbrains.spek.api.dsl.given
 import org.jetbrains.spek.api.dsl.it
 import org.jetbrains.spek.api.dsl.on
+import org.mapdb.Serializer
 import uk.q3c.krail.core.persist.MapDbFormDaoFactory
+import uk.q3c.krail.core.persist.MapDbStoreSettings
+import java.io.File
+import java.io.Serializable
+import java.util.NavigableSet
 
 
 /**
@@ -14,12 +27,12 @@ import uk.q3c.krail.core.persist.MapDbFormDaoFactory
  */
 object MapDBBaseDaoTest : Spek({
     beforeGroup {
-        val dbFactory = MapDbFormDaoFactory()
+        val dbFactory = MapDbFormDaoFactory(MapDbStoreSettings())
         dbFactory.dbFile.delete()
     }
 
     given("a MapDb") {
-        val dbFactory = MapDbFormDaoFactory()
+        val dbFactory = MapDbFormDaoFactory(MapDbStoreSettings())
         lateinit var dao: MapDBBaseDao<Person>
         lateinit var person1: Person
         lateinit var person2: Person
@@ -63,5 +76,214 @@ object MapDBBaseDaoTest : Spek({
                 dao.get().size.shouldBe(6)
             }
         }
+
+        on("querying a page") {
+            dao.insert(person1, person2, person3, person4, person5, person6)
+
+            it("pages in key order when not sorted") {
+                dao.get(DaoQuery(offset = 1, limit = 2)).shouldEqual(listOf(person2, person3))
+            }
+
+            it("sorts by each sort order in turn, then by id") {
+                val sortOrders = listOf(QuerySortOrder("age", SortDirection.DESCENDING), QuerySortOrder("name", SortDirection.ASCENDING))
+                dao.get(DaoQuery(sortOrders = sortOrders)).shouldEqual(listOf(person5, person4, person1, person2, person3, person6))
+                dao.get(DaoQuery(offset = 2, limit = 2, sortOrders = sortOrders)).shouldEqual(listOf(person1, person2))
+            }
+
+            it("filters, and counts the filtered entities") {
+                val filters = listOf(PropertyFilter("age", 23), PropertyFilter("name", "LY2", FilterMatch.CONTAINS))
+                dao.get(DaoQuery(filters = filters)).shouldEqual(listOf(person2))
+                dao.count(listOf(PropertyFilter("age", 23))).shouldBe(4)
+                dao.count().shouldBe(6)
+            }
+        }
+
+        on("inserting in bulk, and within a unit of work") {
+            dao.insertAll((1..1000).map { Person(id = "bulk$it", age = it, name = "Bulk $it") })
+            val result = dao.unitOfWork {
+                dao.put(person1)
+                dao.unitOfWork { dao.put(person2) }
+                "done"
+            }
+            dbFactory.close()
+
+            it("commits everything written, and returns the result of the work") {
+                result.shouldEqual("done")
+                dao.count().shouldBe(1002)
+                dao.get(person2.id).shouldEqual(person2)
+            }
+        }
+
+        on("writing behind") {
+            dbFactory.writeBehind(maxPending = 2, intervalMillis = 60000)
+            dao.put(person1)
+            dao.put(person2)
+            dao.put(person3)
+            val visibleBeforeCommit = dao.get(person3.id)
+            dbFactory.close()
+
+            it("makes writes visible immediately, and commits them on close") {
+                visibleBeforeCommit.shouldEqual(person3)
+                dao.count().shouldBe(3)
+                dao.get(person3.id).shouldEqual(person3)
+            }
+        }
+    }
+
+    given("a MapDb with transactions, and a store per entity class") {
+        val directory = File(FileUtils.getTempDirectory(), "mapdb-per-entity")
+        val dbFactory = MapDbFormDaoFactory(MapDbStoreSettings(directory = directory, transactions = true, storePerEntity = true))
+        lateinit var dao: MapDBBaseDao<Person>
+
+        beforeEachTest {
+            FileUtils.deleteQuietly(directory)
+            directory.mkdirs()
+            dao = MapDBBaseDao(dbFactory, Person::class)
+        }
+
+        afterEachTest {
+            dbFactory.close()
+            FileUtils.deleteQuietly(directory)
+        }
+
+        on("writing, then failing within a unit of work") {
+            dao.put(Person(id = "person1", age = 23, name = "Wiggly"))
+            val result = {
+                dao.unitOfWork {
+                    dao.put(Person(id = "person2", age = 33, name = "Wiggly2"))
+                    throw IllegalStateException("fail")
+                }
+            }
+
+            it("rolls back the failed unit of work only") {
+                result.shouldThrow(IllegalStateException::class)
+                dao.count().shouldBe(1)
+                dao.get("person1").name.shouldEqual("Wiggly")
+            }
+
+            it("holds the entity class in a store of its own") {
+                File(directory, "mapdb-${Person::class.java.name}.db").exists().shouldBeTrue()
+                dbFactory.dbFile.exists().shouldBeFalse()
+            }
+        }
+
+        on("failing within a unit of work, while another write is waiting to be committed") {
+            dbFactory.writeBehind(100, 60000)
+            dao.put(Person(id = "person1", age = 23, name = "Wiggly"))
+            val result = {
+                dao.unitOfWork {
+                    dao.put(Person(id = "person2", age = 33, name = "Wiggly2"))
+                    throw IllegalStateException("fail")
+                }
+            }
+
+            it("commits the waiting write before the unit of work starts, so that only the unit of work is rolled back") {
+                result.shouldThrow(IllegalStateException::class)
+                dbFactory.writeBehind(0, MapDbStoreSettings.defaultWriteBehindInterval)
+                dao.count().shouldBe(1)
+                dao.get("person1").name.shouldEqual("Wiggly")
+            }
+        }
+    }
+
+    given("a MapDb store which has not yet been opened") {
+        val directory = File(FileUtils.getTempDirectory(), "mapdb-closed")
+        FileUtils.deleteQuietly(directory)
+        directory.mkdirs()
+        val dbFactory = MapDbFormDaoFactory(MapDbStoreSettings(directory = directory))
+        val dao = MapDBBaseDao(dbFactory, Person::class)
+
+        on("opening and closing it") {
+            val beforeOpen = dao.isClosed()
+            dao.put(Person(id = "person1", age = 23, name = "Wiggly"))
+            val afterOpen = dao.isClosed()
+            dbFactory.close()
+            val afterClose = dao.isClosed()
+            dao.count()
+            val afterReopen = dao.isClosed()
+            dbFactory.close()
+            FileUtils.deleteQuietly(directory)
+
+            it("is reported as closed only after it has been closed, and until it is re-opened") {
+                beforeOpen.shouldBeFalse()
+                afterOpen.shouldBeFalse()
+                afterClose.shouldBeTrue()
+                afterReopen.shouldBeFalse()
+            }
+        }
+    }
+
+    given("a MapDb entity with indexed properties") {
+        val dbFactory = MapDbFormDaoFactory(MapDbStoreSettings())
+        lateinit var dao: FormDao<IndexedPerson>
+        val anne = IndexedPerson(id = "1", name = "Anne", age = 33)
+        val bill = IndexedPerson(id = "2", name = "Bill", age = 21, nickname = "Billy")
+        val carl = IndexedPerson(id = "3", name = "Carl", age = 45)
+        val dora = IndexedPerson(id = "4", name = "Dora", age = 33)
+
+        beforeEachTest {
+            dbFactory.dbFile.delete()
+            dao = FormDao(MapDBBaseDao(dbFactory, IndexedPerson::class))
+            dao.insert(anne, bill, carl, dora)
+        }
+
+        afterEachTest {
+            dbFactory.close()
+            dbFactory.dbFile.delete()
+        }
+
+        on("querying by indexed properties") {
+
+            it("finds by equality") {
+                dao.findBy("age", 33).shouldEqual(listOf(anne, dora))
+                dao.findBy("name", "Carl").shouldEqual(listOf(carl))
+                dao.findBy("age", 99).shouldBeEmpty()
+            }
+
+            it("finds by range, sorted by the property") {
+                dao.findInRange("age", 30, 45).shouldEqual(listOf(anne, dora, carl))
+                dao.findInRange("age", null, 33).shouldEqual(listOf(bill, anne, dora))
+                dao.findInRange("name", "Bill", null).shouldEqual(listOf(bill, carl, dora))
+            }
+
+            it("pages in index order") {
+                val sortOrders = listOf(QuerySortOrder("name", SortDirection.DESCENDING))
+                dao.get(DaoQuery(offset = 1, limit = 2, sortOrders = sortOrders)).shouldEqual(listOf(carl, bill))
+            }
+
+            it("combines an index with other filters, and counts") {
+                val filters = listOf(PropertyFilter("age", 33), PropertyFilter("name", "do", FilterMatch.CONTAINS))
+                dao.get(DaoQuery(filters = filters)).shouldEqual(listOf(dora))
+                dao.count(filters).shouldBe(1)
+                dao.count(listOf(PropertyFilter("age", 33))).shouldBe(2)
+            }
+        }
+
+        on("updating an indexed property") {
+            dao.update(anne.copy(age = 50))
+
+            it("moves the entity in the index") {
+                dao.findBy("age", 33).shouldEqual(listOf(dora))
+                dao.findBy("age", 50).shouldEqual(listOf(anne.copy(age = 50)))
+            }
+        }
+
+        on("opening a DAO after the definition of an index has changed") {
+            val mapName = IndexedPerson::class.java.name
+            val definitions: MutableMap<String, String> = dbFactory.handle(mapName, "$mapName@indexes") { db -> db.hashMap("$mapName@indexes", Serializer.STRING, Serializer.STRING).createOrOpen() }
+            definitions["$mapName#age"] = "kotlin.String:false:0"
+            // an entry left from the old definition
+            val ageEntries: NavigableSet<Array<Any?>> = dbFactory.handle(mapName, "$mapName#age") { throw IllegalStateException("the index should already be open") }
+            ageEntries.add(arrayOf<Any?>(99, "5"))
+            val newDao = FormDao(MapDBBaseDao(dbFactory, IndexedPerson::class))
+
+            it("rebuilds the index from the stored entities") {
+                newDao.count(listOf(PropertyFilter("age", 99))).shouldBe(0)
+                newDao.findBy("age", 33).shouldEqual(listOf(anne, dora))
+                definitions["$mapName#age"].shouldEqual("kotlin.Int:false:$indexFormat")
+            }
+        }
     }
 })
+
+data class IndexedPerson(override val id: String, @Indexed val name: String, @Indexed val age: Int, val nickname: String? = null) : Entity, Serializable
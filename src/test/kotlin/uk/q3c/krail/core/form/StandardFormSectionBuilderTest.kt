@@ -4,6 +4,7 @@ import com.google.inject.AbstractModule
 import com.google.inject.Guice
 import com.google.inject.Injector
 import com.vaadin.data.provider.ListDataProvider
+import com.vaadin.data.provider.Query
 import com.vaadin.ui.AbstractField
 import com.vaadin.ui.AbstractMultiSelect
 import com.vaadin.ui.AbstractSingleSelect
@@ -26,6 +27,7 @@ import org.amshove.kluent.shouldBeInstanceOf
 import org.amshove.kluent.shouldBeNull
 import org.amshove.kluent.shouldBeTrue
 import org.amshove.kluent.shouldContain
+import org.amshove.kluent.shouldEqual
 import org.amshove.kluent.shouldNotBeEmpty
 import org.amshove.kluent.shouldThrow
 import org.jetbrains.spek.api.Spek
@@ -277,6 +279,27 @@ object StandardFormSectionBuilderTest : Spek({
                 serializationTracer.trace(section).shouldNotHaveAnyDynamicFailures()
             }
 
+            it("counts and fetches rows through the dao, rather than loading all items") {
+                val tableSection = section as FormTableSection<Person>
+                tableSection.dataProvider.size(Query()).shouldBe(3)
+                tableSection.dataProvider.fetch(Query(0, 2, listOf(), null, null)).count().shouldBe(2L)
+                verify { testModule.dao.get(DaoQuery(offset = 0, limit = 2)) }
+            }
+
+        }
+
+        on("creating a table section with a warmed page") {
+            val section = builder.buildTable(form, formDaoFactory, translate, WarmedPage(5, listOf(testModule.person1, testModule.person2))) as FormTableSection<Person>
+            val count = section.dataProvider.size(Query())
+            val firstFetch = section.dataProvider.fetch(Query(0, 1, listOf(), null, null)).toList()
+            val secondFetch = section.dataProvider.fetch(Query(0, 1, listOf(), null, null)).toList()
+
+            it("takes the count and first fetch from the warmed page, and only the first fetch") {
+                count.shouldBe(5)
+                firstFetch.shouldEqual(listOf(testModule.person1))
+                secondFetch.shouldEqual(listOf(testModule.person1))
+                verify(exactly = 1) { testModule.dao.get(DaoQuery(offset = 0, limit = 1)) }
+            }
         }
 
         on("selecting a table item") {
@@ -456,6 +479,8 @@ private class StandardFormSectionBuilderTestModule : AbstractModule() {
         every { dao.get("2") } returns person2
         every { dao.get("3") } returns person3
         every { dao.get() } returns people
+        every { dao.get(ofType(DaoQuery::class)) } answers { firstArg<DaoQuery>().let { query -> people.drop(query.offset).take(query.limit) } }
+        every { dao.count(any()) } returns people.size
         every { dao.get("99") } throws (NoSuchElementException())
         bind(Translate::class.java).toInstance(MockTranslate())
         bind(CurrentLocale::class.java).toInstance(MockCurrentLocale())
@@ -91,6 +91,7 @@ import uk.q3c.util.guice.SerializationSupport
 import uk.q3c.util.guice.SerializationSupportModule
 import uk.q3c.util.serial.tracer.SerializationTracer
 import java.util.*
+import java.util.concurrent.Future
 
 class UIScopeTest {
     var connectCount: Int = 0
@@ -196,6 +197,10 @@ class UIScopeTest {
         override val sourceTypes: MutableList<SitemapSourceType>
             get() = TODO("not implemented") //To change initializer of created properties use File | Settings | File Templates.
 
+        override fun reload(): Future<Int> {
+            TODO("not implemented")
+        }
+
         public override fun doStart() {
 
         }
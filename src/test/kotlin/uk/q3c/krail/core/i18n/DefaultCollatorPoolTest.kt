@@ -0,0 +1,59 @@
+package uk.q3c.krail.core.i18n
+
+import org.amshove.kluent.shouldBe
+import org.amshove.kluent.shouldBeLessThan
+import org.amshove.kluent.shouldEqual
+import org.amshove.kluent.shouldNotBe
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.given
+import org.jetbrains.spek.api.dsl.it
+import org.jetbrains.spek.api.dsl.on
+import java.util.*
+
+object DefaultCollatorPoolTest : Spek({
+
+    given("a collator pool") {
+        lateinit var pool: DefaultCollatorPool
+
+        beforeEachTest {
+            pool = DefaultCollatorPool()
+        }
+
+        on("requesting a collator for the same Locale twice") {
+            val collator1 = pool.collator(Locale.GERMANY)
+            val collator2 = pool.collator(Locale.GERMANY)
+
+            it("returns the same instance") {
+                collator1.shouldBe(collator2)
+            }
+        }
+
+        on("requesting collators for different Locales") {
+            val collator1 = pool.collator(Locale.GERMANY)
+            val collator2 = pool.collator(Locale.UK)
+
+            it("returns different instances") {
+                collator1.shouldNotBe(collator2)
+            }
+        }
+
+        on("requesting a collation key for the same label and Locale twice") {
+            val key1 = pool.collationKey("Öffentlich", Locale.GERMANY)
+            val key2 = pool.collationKey("Öffentlich", Locale.GERMANY)
+
+            it("returns the same instance") {
+                key1.shouldBe(key2)
+                key1.sourceString.shouldEqual("Öffentlich")
+            }
+        }
+
+        on("comparing collation keys") {
+            val a = pool.collationKey("a", Locale.UK)
+            val b = pool.collationKey("b", Locale.UK)
+
+            it("orders them as the Locale collator would") {
+                a.compareTo(b).shouldBeLessThan(0)
+            }
+        }
+    }
+})
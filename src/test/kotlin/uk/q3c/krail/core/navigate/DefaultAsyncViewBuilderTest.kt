@@ -0,0 +1,34 @@
+package uk.q3c.krail.core.navigate
+
+import io.mockk.every
+import io.mockk.mockk
+import org.amshove.kluent.shouldBeFalse
+import org.amshove.kluent.shouldBeNull
+import org.amshove.kluent.shouldNotBeNull
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.given
+import org.jetbrains.spek.api.dsl.it
+import org.jetbrains.spek.api.dsl.on
+import uk.q3c.krail.config.ApplicationConfiguration
+import java.util.concurrent.TimeUnit
+
+object DefaultAsyncViewBuilderTest : Spek({
+
+    given("an async view builder") {
+        val configuration: ApplicationConfiguration = mockk()
+        every { configuration.getPropertyValue(any(), any<Any>()) } answers { secondArg() }
+        val builder = DefaultAsyncViewBuilder(configuration)
+
+        on("submitting a build, then stopping") {
+            val build = builder.submit(Runnable { })
+            build?.get(5, TimeUnit.SECONDS)
+            builder.stop()
+
+            it("accepts work before it is stopped, and none after") {
+                build.shouldNotBeNull()
+                builder.submit(Runnable { }).shouldBeNull()
+                builder.prefetch(Runnable { }).shouldBeFalse()
+            }
+        }
+    }
+})
@@ -0,0 +1,51 @@
+package uk.q3c.krail.core.navigate
+
+import org.amshove.kluent.shouldBe
+import org.amshove.kluent.shouldEqual
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.given
+import org.jetbrains.spek.api.dsl.it
+import org.jetbrains.spek.api.dsl.on
+
+object DefaultNavigationTransitionsTest : Spek({
+
+    given("a navigation transition model") {
+        lateinit var transitions: DefaultNavigationTransitions
+
+        beforeEachTest {
+            transitions = DefaultNavigationTransitions()
+        }
+
+        on("recording transitions") {
+            transitions.record("a", "b")
+            transitions.record("a", "b")
+            transitions.record("a", "c")
+            transitions.record("a", "a")
+
+            it("counts each transition, but ignores a page following itself") {
+                transitions.count("a", "b").shouldBe(2)
+                transitions.count("a", "c").shouldBe(1)
+                transitions.count("a", "a").shouldBe(0)
+                transitions.count("b", "a").shouldBe(0)
+            }
+        }
+
+        on("ranking candidates") {
+            transitions.record("a", "c")
+            transitions.record("a", "c")
+            transitions.record("a", "x")
+
+            it("orders by frequency, keeps candidate order for equal counts, and includes previously followed pages") {
+                transitions.likelyNext("a", listOf("b", "c", "d"), 10).shouldEqual(listOf("c", "x", "b", "d"))
+            }
+
+            it("limits the number returned") {
+                transitions.likelyNext("a", listOf("b", "c", "d"), 2).shouldEqual(listOf("c", "x"))
+            }
+
+            it("excludes the current page") {
+                transitions.likelyNext("a", listOf("a", "b"), 10).shouldEqual(listOf("c", "x", "b"))
+            }
+        }
+    }
+})
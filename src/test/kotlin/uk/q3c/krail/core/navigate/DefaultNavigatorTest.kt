@@ -14,6 +14,7 @@ import com.vaadin.ui.UI
 import com.vaadin.util.CurrentInstance
 import fixture.ReferenceUserSitemap
 import fixture.TestViewChangeListener
+import fixture.testviews2.ViewA1
 import fixture.testviews2.ViewA11
 import fixture.testviews2.ViewB1
 import io.mockk.every
@@ -25,7 +26,9 @@ import net.engio.mbassy.listener.Listener
 import org.amshove.kluent.shouldBe
 import org.amshove.kluent.shouldBeEmpty
 import org.amshove.kluent.shouldBeEqualTo
+import org.amshove.kluent.shouldBeFalse
 import org.amshove.kluent.shouldBeNull
+import org.amshove.kluent.shouldBeTrue
 import org.amshove.kluent.shouldEqual
 import org.amshove.kluent.shouldThrow
 import org.apache.shiro.authz.UnauthorizedException
@@ -47,8 +50,9 @@ import uk.q3c.krail.core.guice.vsscope.VaadinSessionScopeModule
 import uk.q3c.krail.core.i18n.MessageKey
 import uk.q3c.krail.core.monitor.PageLoadingMessage
 import uk.q3c.krail.core.monitor.PageReadyMessage
+import uk.q3c.krail.core.navigate.sitemap.DefaultMasterSitemap
 import uk.q3c.krail.core.navigate.sitemap.DefaultUserSitemap
-import uk.q3c.krail.core.navigate.sitemap.MasterSitemap
+import uk.q3c.krail.core.navigate.sitemap.MasterSitemapHolder
 import uk.q3c.krail.core.navigate.sitemap.SitemapModule
 import uk.q3c.krail.core.navigate.sitemap.SitemapService
 import uk.q3c.krail.core.navigate.sitemap.UserSitemap
@@ -89,6 +93,7 @@ import uk.q3c.util.guice.SerializationSupportModule
 import java.io.IOException
 import java.io.ObjectInputStream
 import java.util.*
+import java.util.concurrent.Future
 
 /**
  * Created by David Sowerby on 03 Jul 2018
@@ -120,13 +125,15 @@ object DefaultNavigatorTest : Spek({
         lateinit var eventBusProvider: UIBusProvider
         lateinit var defaultViewChangeRule: DefaultViewChangeRule
         lateinit var componentIdGenerator: ComponentIdGenerator
-        lateinit var masterSitemap: MasterSitemap
+        lateinit var sitemapHolder: MasterSitemapHolder
         lateinit var messageBus: MessageBus
         lateinit var serialisationSupport: SerializationSupport
         lateinit var navigatorDeps: NavigatorDeps
         lateinit var logoutSource: UserStatusChangeSource
         lateinit var loginSource: UserStatusChangeSource
         lateinit var listener4: MockListener
+        lateinit var asyncViewBuilder: AsyncViewBuilder
+        lateinit var viewPrefetcher: ViewPrefetcher
 
         beforeEachTest {
             injector = createInjector()
@@ -151,6 +158,8 @@ object DefaultNavigatorTest : Spek({
             loginSource = mockk(relaxed = true)
             loginNavigationRule = mockk(relaxed = true)
             logoutNavigationRule = mockk(relaxed = true)
+            asyncViewBuilder = mockk(relaxed = true)
+            viewPrefetcher = mockk(relaxed = true)
 
 
             invalidURIHandler = DefaultInvalidURIHandler(userNotifier)
@@ -175,11 +184,11 @@ object DefaultNavigatorTest : Spek({
             eventBusProvider = injector.getInstance(UIBusProvider::class.java)
             defaultViewChangeRule = injector.getInstance(DefaultViewChangeRule::class.java)
             componentIdGenerator = injector.getInstance(ComponentIdGenerator::class.java)
-            masterSitemap = injector.getInstance(MasterSitemap::class.java)
+            sitemapHolder = injector.getInstance(MasterSitemapHolder::class.java)
             changeListener = injector.getInstance(TestViewChangeListener::class.java)
 
             navigatorDeps = NavigatorDeps(uriHandler, sitemapService, subjectProvider, pageAccessController, uiProvider, viewFactory, builder,
-                    loginNavigationRule, logoutNavigationRule, eventBusProvider, defaultViewChangeRule, invalidURIHandler, componentIdGenerator, masterSitemap, messageBus, serialisationSupport)
+                    loginNavigationRule, logoutNavigationRule, eventBusProvider, defaultViewChangeRule, invalidURIHandler, componentIdGenerator, sitemapHolder, messageBus, asyncViewBuilder, viewPrefetcher, serialisationSupport)
 
         }
 
@@ -192,6 +201,18 @@ object DefaultNavigatorTest : Spek({
             }
         }
 
+        on("navigating after the master sitemap has been reloaded") {
+            navigator = createNavigator(navigatorDeps)
+            val newSitemap = DefaultMasterSitemap(uriHandler)
+            newSitemap.lock()
+            sitemapHolder.swap(newSitemap)
+            navigator.navigateTo(userSitemap.a11Fragment)
+
+            it("updates the user sitemap to the new version") {
+                verify { builder.update(newSitemap, any()) }
+            }
+        }
+
         on("navigating to login page") {
             navigator = createNavigator(navigatorDeps)
             navigator.navigateTo(userSitemap.loginFragment)
@@ -652,6 +673,88 @@ object DefaultNavigatorTest : Spek({
             }
         }
 
+        on("navigating with asynchronous view build") {
+            val tasks = mutableListOf<Runnable>()
+            every { asyncViewBuilder.isAsync(any()) } returns true
+            every { asyncViewBuilder.submit(capture(tasks)) } returns mockk(relaxed = true)
+            every { scopedUI.access(any()) } answers { firstArg<Runnable>().run(); mockk(relaxed = true) }
+            navigator = createNavigator(navigatorDeps)
+            navigator.navigateTo(userSitemap.a11Fragment)
+            val changedBeforeBuild = changeListener.calls.containsKey("afterViewChange")
+            tasks[0].run()
+
+            it("displays the view and publishes the after change message only when the build completes") {
+                changedBeforeBuild.shouldBeFalse()
+                verify { scopedUI.changeView(any<ViewA11>()) }
+                changeListener.calls.containsKey("afterViewChange").shouldBeTrue()
+            }
+        }
+
+        on("navigating again before an asynchronous view build completes") {
+            val tasks = mutableListOf<Runnable>()
+            every { asyncViewBuilder.isAsync(any()) } returns true
+            val builds = mutableListOf<Future<*>>()
+            every { asyncViewBuilder.submit(capture(tasks)) } answers { mockk<Future<*>>(relaxed = true).also { builds.add(it) } }
+            every { scopedUI.access(any()) } answers { firstArg<Runnable>().run(); mockk(relaxed = true) }
+            navigator = createNavigator(navigatorDeps)
+            navigator.navigateTo(userSitemap.a11Fragment)
+            navigator.navigateTo(userSitemap.a1Fragment)
+            tasks[1].run()
+            tasks[0].run()
+
+            it("discards the stale view") {
+                verify { scopedUI.changeView(ofType(ViewA1::class)) }
+                verify(exactly = 0) { scopedUI.changeView(ofType(ViewA11::class)) }
+            }
+
+            it("cancels the superseded build, but not the current one") {
+                verify { builds[0].cancel(false) }
+                verify(exactly = 0) { builds[1].cancel(any()) }
+            }
+        }
+
+        on("returning to a re-used view while its asynchronous build is still to be handed back") {
+            val tasks = mutableListOf<Runnable>()
+            val accesses = mutableListOf<Runnable>()
+            every { asyncViewBuilder.isAsync(any()) } returns true
+            every { asyncViewBuilder.submit(capture(tasks)) } returns mockk(relaxed = true)
+            every { scopedUI.access(capture(accesses)) } returns mockk(relaxed = true)
+            val reused = viewFactory.get(ViewA11::class.java)
+            val cachingViewFactory = object : ViewFactory {
+                override fun <T : KrailView> get(viewClass: Class<T>): T {
+                    return viewFactory.get(viewClass)
+                }
+
+                override fun <T : KrailView> get(viewClass: Class<T>, navigationState: NavigationState): T {
+                    return if (viewClass == ViewA11::class.java) viewClass.cast(reused) else viewFactory.get(viewClass)
+                }
+            }
+            navigator = createNavigator(NavigatorDeps(uriHandler, sitemapService, subjectProvider, pageAccessController, uiProvider, cachingViewFactory, builder,
+                    loginNavigationRule, logoutNavigationRule, eventBusProvider, defaultViewChangeRule, invalidURIHandler, componentIdGenerator, sitemapHolder, messageBus, asyncViewBuilder, viewPrefetcher, serialisationSupport))
+            navigator.navigateTo(userSitemap.a11Fragment)
+            tasks[0].run()
+            navigator.navigateTo(userSitemap.a1Fragment)
+            navigator.navigateTo(userSitemap.a11Fragment)
+            val replacement = viewFactory.lastView
+            tasks[2].run()
+            accesses.toList().forEach { it.run() }
+
+            it("builds and displays a new instance, rather than waiting for the earlier build") {
+                (replacement === reused).shouldBeFalse()
+                verify { scopedUI.changeView(replacement) }
+                verify(exactly = 0) { scopedUI.changeView(reused) }
+            }
+        }
+
+        on("completing a view change") {
+            navigator = createNavigator(navigatorDeps)
+            navigator.navigateTo(userSitemap.a11Fragment)
+
+            it("passes the after change message to the prefetcher") {
+                verify { viewPrefetcher.afterViewChange(any(), userSitemap) }
+            }
+        }
+
         on("requesting navigation to the current page") {
             navigator = createNavigator(navigatorDeps)
             val page = userSitemap.a1Fragment
@@ -674,13 +777,13 @@ object DefaultNavigatorTest : Spek({
 fun createNavigator(deps: NavigatorDeps): DefaultNavigator {
     with(deps) {
         val navigator = DefaultNavigator(uriHandler, sitemapService, subjectProvider, pageAccessController, uiProvider, viewFactory, builder,
-                loginNavigationRule, logoutNavigationRule, eventBusProvider, defaultViewChangeRule, invalidURIHandler, componentIdGenerator, masterSitemap, messageBus, serialisationSupport)
+                loginNavigationRule, logoutNavigationRule, eventBusProvider, defaultViewChangeRule, invalidURIHandler, componentIdGenerator, sitemapHolder, messageBus, asyncViewBuilder, viewPrefetcher, serialisationSupport)
         navigator.init()
         return navigator
     }
 }
 
-class NavigatorDeps(val uriHandler: StrictURIFragmentHandler, val sitemapService: SitemapService, val subjectProvider: SubjectProvider, val pageAccessController: PageAccessController, val uiProvider: ScopedUIProvider, val viewFactory: ViewFactory, val builder: UserSitemapBuilder, val loginNavigationRule: LoginNavigationRule, val logoutNavigationRule: LogoutNavigationRule, val eventBusProvider: UIBusProvider, val defaultViewChangeRule: DefaultViewChangeRule, val invalidURIHandler: InvalidURIHandler, val componentIdGenerator: ComponentIdGenerator, val masterSitemap: MasterSitemap, val messageBus: MessageBus, val serialisationSupport: SerializationSupport)
+class NavigatorDeps(val uriHandler: StrictURIFragmentHandler, val sitemapService: SitemapService, val subjectProvider: SubjectProvider, val pageAccessController: PageAccessController, val uiProvider: ScopedUIProvider, val viewFactory: ViewFactory, val builder: UserSitemapBuilder, val loginNavigationRule: LoginNavigationRule, val logoutNavigationRule: LogoutNavigationRule, val eventBusProvider: UIBusProvider, val defaultViewChangeRule: DefaultViewChangeRule, val invalidURIHandler: InvalidURIHandler, val componentIdGenerator: ComponentIdGenerator, val sitemapHolder: MasterSitemapHolder, val messageBus: MessageBus, val asyncViewBuilder: AsyncViewBuilder, val viewPrefetcher: ViewPrefetcher, val serialisationSupport: SerializationSupport)
 
 
 fun createInjector(): Injector {
@@ -0,0 +1,190 @@
+package uk.q3c.krail.core.navigate
+
+import com.google.inject.Binding
+import com.google.inject.Injector
+import com.google.inject.Key
+import fixture.ReferenceUserSitemap
+import fixture.testviews2.ViewA1
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import org.amshove.kluent.shouldBeFalse
+import org.amshove.kluent.shouldBeNull
+import org.amshove.kluent.shouldBeTrue
+import org.amshove.kluent.shouldEqual
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.given
+import org.jetbrains.spek.api.dsl.it
+import org.jetbrains.spek.api.dsl.on
+import uk.q3c.krail.config.ApplicationConfiguration
+import uk.q3c.krail.core.form.DaoQuery
+import uk.q3c.krail.core.form.DefaultForm
+import uk.q3c.krail.core.form.DefaultFormTableDataCache
+import uk.q3c.krail.core.form.FormBlueprint
+import uk.q3c.krail.core.form.FormBlueprints
+import uk.q3c.krail.core.form.FormConfiguration1
+import uk.q3c.krail.core.form.FormDao
+import uk.q3c.krail.core.form.FormDaoFactory
+import uk.q3c.krail.core.form.FormTableDataCache
+import uk.q3c.krail.core.form.Person
+import uk.q3c.krail.core.form.SectionBlueprint
+import uk.q3c.krail.core.navigate.sitemap.UserSitemapNode
+import uk.q3c.krail.core.view.component.AfterViewChangeBusMessage
+import uk.q3c.krail.core.view.component.ComponentIdGenerator
+import uk.q3c.util.guice.InjectorLocator
+import com.google.inject.Provider as GuiceProvider
+
+object DefaultViewPrefetcherTest : Spek({
+
+    given("a prefetcher, enabled, with a reference user sitemap") {
+        lateinit var userSitemap: ReferenceUserSitemap
+        lateinit var configuration: ApplicationConfiguration
+        lateinit var asyncViewBuilder: AsyncViewBuilder
+        lateinit var idGenerator: ComponentIdGenerator
+        lateinit var injector: Injector
+        lateinit var injectorLocator: InjectorLocator
+        lateinit var dataWarmer: ViewDataWarmer
+        lateinit var prefetcher: DefaultViewPrefetcher
+        lateinit var tasks: MutableList<Runnable>
+        lateinit var warmed: MutableList<UserSitemapNode>
+
+        beforeEachTest {
+            userSitemap = createInjector().getInstance(ReferenceUserSitemap::class.java)
+            userSitemap.populate()
+            configuration = mockk()
+            every { configuration.getPropertyValue(NAVIGATION_PREFETCH_ENABLED, any<Boolean>()) } returns true
+            every { configuration.getPropertyValue(NAVIGATION_PREFETCH_COUNT, any<Int>()) } answers { secondArg() }
+            tasks = mutableListOf()
+            asyncViewBuilder = mockk()
+            every { asyncViewBuilder.prefetch(capture(tasks)) } returns true
+            idGenerator = mockk(relaxed = true)
+            injector = mockk(relaxed = true)
+            injectorLocator = mockk()
+            every { injectorLocator.get() } returns injector
+            warmed = mutableListOf()
+            dataWarmer = mockk()
+            every { dataWarmer.warm(capture(warmed)) } returns Unit
+            prefetcher = DefaultViewPrefetcher(configuration, DefaultNavigationTransitions(), asyncViewBuilder, idGenerator, injectorLocator, dataWarmer)
+        }
+
+        fun change(from: String?, to: String) {
+            val fromState = if (from == null) null else state(from)
+            prefetcher.afterViewChange(AfterViewChangeBusMessage(fromState, state(to)), userSitemap)
+            tasks.forEach { it.run() }
+            tasks.clear()
+        }
+
+        on("changing to a page with a sub-page") {
+            change(null, userSitemap.a1Fragment)
+
+            it("warms the sub-page first, and no more than the prefetch count") {
+                warmed.first().shouldEqual(userSitemap.a11Node)
+                (warmed.size <= DefaultViewPrefetcher.defaultPrefetchCount).shouldBeTrue()
+            }
+
+            it("never warms, or builds, the current view") {
+                warmed.contains(userSitemap.a1Node).shouldBeFalse()
+                verify(exactly = 0) { injector.getInstance(any<Class<*>>()) }
+                verify(exactly = 0) { injector.getInstance(any<Key<*>>()) }
+            }
+
+            it("prepares the view class for each warmed page, without building it") {
+                verify { injector.getBinding(userSitemap.a11Node!!.viewClass) }
+                verify { idGenerator.prepare(userSitemap.a11Node!!.viewClass) }
+            }
+        }
+
+        on("changing to a page after users have often moved from it to another, unrelated, page") {
+            change(userSitemap.a1Fragment, userSitemap.b1Fragment)
+            change(userSitemap.a1Fragment, userSitemap.b1Fragment)
+            warmed.clear()
+            change(null, userSitemap.a1Fragment)
+
+            it("warms the most frequently followed page first") {
+                warmed.first().shouldEqual(userSitemap.b1Node)
+                warmed.contains(userSitemap.a1Node).shouldBeFalse()
+            }
+        }
+    }
+
+    given("a prefetcher which is not enabled") {
+        val configuration: ApplicationConfiguration = mockk()
+        every { configuration.getPropertyValue(any(), any<Any>()) } answers { secondArg() }
+        val asyncViewBuilder: AsyncViewBuilder = mockk(relaxed = true)
+        val prefetcher = DefaultViewPrefetcher(configuration, DefaultNavigationTransitions(), asyncViewBuilder, mockk(relaxed = true), mockk(relaxed = true), mockk(relaxed = true))
+
+        on("a view change") {
+            val userSitemap = createInjector().getInstance(ReferenceUserSitemap::class.java)
+            userSitemap.populate()
+            prefetcher.afterViewChange(AfterViewChangeBusMessage(null, state(userSitemap.a1Fragment)), userSitemap)
+
+            it("does not queue anything") {
+                verify(exactly = 0) { asyncViewBuilder.prefetch(any()) }
+            }
+        }
+    }
+
+    given("the default data warmer") {
+        val dao: FormDao<Person> = mockk(relaxed = true)
+        val person = Person(name = "warmed", age = 20)
+        every { dao.count() } returns 7
+        every { dao.get(DaoQuery(limit = DefaultViewDataWarmer.warmPageSize)) } returns listOf(person)
+        val daoFactory: FormDaoFactory = mockk()
+        every { daoFactory.getDao(Person::class) } returns dao
+        val formConfiguration = FormConfiguration1()
+        formConfiguration.config()
+        val sectionBlueprint: SectionBlueprint = mockk()
+        every { sectionBlueprint.configuration } returns formConfiguration.section()
+        val blueprint: FormBlueprint = mockk()
+        every { blueprint.configuration } returns formConfiguration
+        every { blueprint.section(any()) } returns sectionBlueprint
+        val blueprints: FormBlueprints = mockk()
+        every { blueprints.blueprintFor(FormConfiguration1::class.java) } returns blueprint
+        val injector: Injector = mockk()
+        every { injector.getExistingBinding(Key.get(FormBlueprints::class.java)) } returns binding(blueprints)
+        every { injector.getExistingBinding(Key.get(FormDaoFactory::class.java)) } returns binding(daoFactory)
+        val dataCache = DefaultFormTableDataCache()
+        every { injector.getExistingBinding(Key.get(FormTableDataCache::class.java)) } returns binding<FormTableDataCache>(dataCache)
+        val injectorLocator: InjectorLocator = mockk()
+        every { injectorLocator.get() } returns injector
+        val warmer = DefaultViewDataWarmer(injectorLocator)
+
+        on("warming a form table page") {
+            val node: UserSitemapNode = mockk()
+            every { node.viewClass } returns DefaultForm::class.java
+            every { node.viewConfiguration } returns FormConfiguration1::class.java
+            warmer.warm(node)
+
+            it("fetches the count and first page from the entity's DAO, and hands them to the table data cache, for one use only") {
+                verify { dao.count() }
+                verify { dao.get(DaoQuery(limit = DefaultViewDataWarmer.warmPageSize)) }
+                val warmedPage = dataCache.take(Person::class.java)!!
+                warmedPage.count.shouldEqual(7)
+                warmedPage.page.shouldEqual(listOf<Any>(person))
+                dataCache.take(Person::class.java).shouldBeNull()
+            }
+        }
+
+        on("warming a page which is not a form") {
+            val node: UserSitemapNode = mockk()
+            every { node.viewClass } returns ViewA1::class.java
+            warmer.warm(node)
+
+            it("does not look up any DAO") {
+                verify(exactly = 0) { daoFactory.getDao(Person::class) }
+            }
+        }
+    }
+})
+
+private fun state(fragment: String): NavigationState {
+    val state = NavigationState().fragment(fragment)
+    state.update(StrictURIFragmentHandler())
+    return state
+}
+
+private fun <T> binding(instance: T): Binding<T> {
+    val binding: Binding<T> = mockk()
+    every { binding.provider } returns GuiceProvider { instance }
+    return binding
+}
@@ -0,0 +1,70 @@
+package uk.q3c.krail.core.navigate.sitemap
+
+import org.amshove.kluent.shouldBe
+import org.amshove.kluent.shouldBeNull
+import org.amshove.kluent.shouldEqual
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.given
+import org.jetbrains.spek.api.dsl.it
+import org.jetbrains.spek.api.dsl.on
+import uk.q3c.krail.core.i18n.LabelKey
+import uk.q3c.krail.core.navigate.StrictURIFragmentHandler
+import uk.q3c.krail.core.shiro.PageAccessControl
+
+object DefaultMasterSitemapHolderTest : Spek({
+
+    given("a holder for the master sitemap") {
+        lateinit var original: MasterSitemap
+        lateinit var holder: DefaultMasterSitemapHolder
+
+        beforeEachTest {
+            original = sitemap("a", "a/b", "a/b/c", "x", "x/y")
+            holder = DefaultMasterSitemapHolder(original)
+        }
+
+        on("construction") {
+            it("holds the original as version 1") {
+                holder.current.number.shouldBe(1)
+                holder.current.sitemap.shouldBe(original)
+                holder.current.changedSince(1)!!.shouldEqual(setOf())
+            }
+        }
+
+        on("swapping in a sitemap with a changed subtree, an added page and a removed page") {
+            val modified = sitemap("a", "a/b", "a/b/c", "x", "z", publicPage = "a/b")
+            val version = holder.swap(modified)
+
+            it("becomes the current version, recording the roots of the changed subtrees") {
+                version.number.shouldBe(2)
+                holder.current.shouldBe(version)
+                holder.current.sitemap.shouldBe(modified)
+                version.changedSince(1)!!.shouldEqual(setOf("x/y", "z", "a/b"))
+            }
+        }
+
+        on("swapping more than the history holds") {
+            for (i in 1..SitemapVersion.maxHistory + 1) {
+                holder.swap(sitemap("a", "n$i"))
+            }
+
+            it("knows the recent changes, but not those beyond the history") {
+                holder.current.changedSince(holder.current.number - 1)!!.shouldEqual(setOf("n${SitemapVersion.maxHistory}", "n${SitemapVersion.maxHistory + 1}"))
+                holder.current.changedSince(1).shouldBeNull()
+            }
+        }
+    }
+})
+
+private fun sitemap(vararg uris: String, publicPage: String? = null): MasterSitemap {
+    val sitemap = DefaultMasterSitemap(StrictURIFragmentHandler())
+    for (uri in uris) {
+        val record = NodeRecord(uri)
+        record.labelKey = LabelKey.Home_Page
+        if (uri == publicPage) {
+            record.pageAccessControl = PageAccessControl.PUBLIC
+        }
+        sitemap.append(record)
+    }
+    sitemap.lock()
+    return sitemap
+}
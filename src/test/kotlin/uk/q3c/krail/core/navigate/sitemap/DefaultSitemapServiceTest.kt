@@ -59,6 +59,7 @@ object DefaultSitemapServiceTest : Spek({
             testModule = LocalTestModule()
             mockVaadinSession = createMockVaadinSession()
             config = testModule.applicationConfiguration
+            every<Boolean> { config.getPropertyValue(SITEMAP_SNAPSHOT_ENABLED, any()) } returns false
             val modules = guiceModules()
             modules.add(testModule)
             injector = Guice.createInjector(modules)
@@ -104,6 +105,19 @@ object DefaultSitemapServiceTest : Spek({
             }
         }
 
+        on("reloading more than once") {
+            every<List<String>> { config.getPropertyValue(SITEMAP_SOURCES, any()) } returns arrayListOf(SitemapSourceType.DIRECT.name)
+            service.start()
+            val first = service.reload().get()
+            val second = service.reload().get()
+
+            it("builds each version afresh, without state carried over from the previous build") {
+                service.state.shouldEqual(State.RUNNING)
+                second.shouldBe(first + 1)
+                injector.getInstance(MasterSitemapHolder::class.java).current.number.shouldBe(second)
+            }
+        }
+
         on("only invalid source defined") {
             every<List<String>> { config.getPropertyValue(SITEMAP_SOURCES, any()) } returns arrayListOf("rubbish")
             service.start()
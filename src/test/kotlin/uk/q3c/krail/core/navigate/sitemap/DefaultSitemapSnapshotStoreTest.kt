@@ -0,0 +1,100 @@
+package uk.q3c.krail.core.navigate.sitemap
+
+import io.mockk.every
+import io.mockk.mockk
+import org.amshove.kluent.shouldBeFalse
+import org.amshove.kluent.shouldBeTrue
+import org.amshove.kluent.shouldEqual
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.given
+import org.jetbrains.spek.api.dsl.it
+import org.jetbrains.spek.api.dsl.on
+import uk.q3c.krail.config.ApplicationConfiguration
+import uk.q3c.krail.core.navigate.StrictURIFragmentHandler
+import uk.q3c.krail.core.shiro.PageAccessControl
+import uk.q3c.krail.core.view.PublicHomeView
+import java.io.File
+import java.nio.file.Files
+
+object DefaultSitemapSnapshotStoreTest : Spek({
+
+    fun snapshotStore(directory: File, version: String, application: String = "krail"): DefaultSitemapSnapshotStore {
+        val configuration: ApplicationConfiguration = mockk()
+        every { configuration.getPropertyValue(any(), any<Any>()) } answers { secondArg() }
+        every { configuration.getPropertyValue(SITEMAP_SNAPSHOT_ENABLED, any<Boolean>()) } returns true
+        every { configuration.getPropertyValue(SITEMAP_SNAPSHOT_DIRECTORY, any<String>()) } returns directory.path
+        every { configuration.getPropertyValue(SITEMAP_SNAPSHOT_VERSION, any<String>()) } returns version
+        every { configuration.getPropertyValue(SITEMAP_SNAPSHOT_APPLICATION, any<String>()) } returns application
+        return DefaultSitemapSnapshotStore(configuration)
+    }
+
+    fun snapshotFiles(directory: File): List<File> {
+        return directory.listFiles().filter { it.name.endsWith(".snapshot") }
+    }
+
+    val sitemap = DefaultMasterSitemap(StrictURIFragmentHandler())
+    val home = NodeRecord("home")
+    home.labelKey = StandardPageKey.Public_Home
+    home.pageAccessControl = PageAccessControl.PUBLIC
+    home.viewClass = PublicHomeView::class.java
+    sitemap.append(home)
+    sitemap.lock()
+
+    given("snapshots enabled, with the application version set") {
+        val directory = Files.createTempDirectory("sitemap-snapshot").toFile()
+
+        on("saving a snapshot for a new version") {
+            snapshotStore(directory, "1.0.0").save(sitemap)
+            val afterFirst = snapshotFiles(directory)
+            snapshotStore(directory, "1.0.1").save(sitemap)
+            val afterSecond = snapshotFiles(directory)
+            val restored = DefaultMasterSitemap(StrictURIFragmentHandler())
+            val restoredOk = snapshotStore(directory, "1.0.1").restore(restored)
+
+            it("deletes the snapshot for the previous version") {
+                afterFirst.size.shouldEqual(1)
+                afterSecond.size.shouldEqual(1)
+                (afterSecond[0] != afterFirst[0]).shouldBeTrue()
+            }
+
+            it("can restore from the new snapshot") {
+                restoredOk.shouldBeTrue()
+                restored.uris().shouldEqual(sitemap.uris())
+            }
+        }
+    }
+
+    given("a snapshot which has been altered since it was saved") {
+        val directory = Files.createTempDirectory("sitemap-snapshot").toFile()
+
+        on("restoring it") {
+            snapshotStore(directory, "1.0.0").save(sitemap)
+            val snapshot = snapshotFiles(directory).single()
+            val bytes = snapshot.readBytes()
+            bytes[bytes.size - 1] = (bytes[bytes.size - 1] + 1).toByte()
+            snapshot.writeBytes(bytes)
+            val restored = DefaultMasterSitemap(StrictURIFragmentHandler())
+            val restoredOk = snapshotStore(directory, "1.0.0").restore(restored)
+
+            it("rejects it, and leaves the sitemap empty") {
+                restoredOk.shouldBeFalse()
+                restored.uris().isEmpty().shouldBeTrue()
+            }
+        }
+    }
+
+    given("two applications sharing a snapshot directory") {
+        val directory = Files.createTempDirectory("sitemap-snapshot").toFile()
+
+        on("each saving a snapshot") {
+            snapshotStore(directory, "1.0.0", "first").save(sitemap)
+            snapshotStore(directory, "2.0.0", "second").save(sitemap)
+
+            it("keeps the snapshot of each") {
+                snapshotFiles(directory).size.shouldEqual(2)
+                snapshotFiles(directory).any { it.name.startsWith("sitemap-first-") }.shouldBeTrue()
+                snapshotFiles(directory).any { it.name.startsWith("sitemap-second-") }.shouldBeTrue()
+            }
+        }
+    }
+})
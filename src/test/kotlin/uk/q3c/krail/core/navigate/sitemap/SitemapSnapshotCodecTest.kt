@@ -0,0 +1,96 @@
+package uk.q3c.krail.core.navigate.sitemap
+
+import io.mockk.mockk
+import org.amshove.kluent.shouldBeFalse
+import org.amshove.kluent.shouldBeNull
+import org.amshove.kluent.shouldBeTrue
+import org.amshove.kluent.shouldEqual
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.given
+import org.jetbrains.spek.api.dsl.it
+import org.jetbrains.spek.api.dsl.on
+import uk.q3c.krail.core.i18n.LabelKey
+import uk.q3c.krail.core.navigate.StrictURIFragmentHandler
+import uk.q3c.krail.core.shiro.PageAccessControl
+import uk.q3c.krail.core.view.PublicHomeView
+import uk.q3c.krail.i18n.I18NKey
+import java.nio.ByteBuffer
+
+object SitemapSnapshotCodecTest : Spek({
+
+    given("a built master sitemap") {
+        lateinit var original: DefaultMasterSitemap
+        lateinit var restored: DefaultMasterSitemap
+
+        beforeEachTest {
+            original = DefaultMasterSitemap(StrictURIFragmentHandler())
+            val home = NodeRecord("home")
+            home.labelKey = StandardPageKey.Public_Home
+            home.pageAccessControl = PageAccessControl.PUBLIC
+            home.viewClass = PublicHomeView::class.java
+            original.append(home)
+            val deep = NodeRecord("private/a/b")
+            deep.labelKey = LabelKey.Home_Page
+            deep.pageAccessControl = PageAccessControl.ROLES
+            deep.positionIndex = 7
+            deep.addRole("admin")
+            deep.addRole("user")
+            original.append(deep)
+            original.addRedirect("private", "private/a/b")
+            original.report = "a report"
+            original.lock()
+            restored = DefaultMasterSitemap(StrictURIFragmentHandler())
+        }
+
+        on("encoding and decoding with the same fingerprint") {
+            val bytes = SitemapSnapshotCodec.encode(original, "fp1")!!
+            val result = SitemapSnapshotCodec.decode(ByteBuffer.wrap(bytes), "fp1", restored, SitemapSnapshotCodecTest::class.java.classLoader)
+
+            it("restores nodes, structure, redirects, standard pages and report") {
+                result.shouldBeTrue()
+                restored.uris().shouldEqual(original.uris())
+                for (uri in original.uris()) {
+                    val node = restored.nodeFor(uri)
+                    val originalNode = original.nodeFor(uri)
+                    node.shouldEqual(originalNode)
+                    node.labelKey.shouldEqual(originalNode.labelKey)
+                    node.pageAccessControl.shouldEqual(originalNode.pageAccessControl)
+                    node.positionIndex.shouldEqual(originalNode.positionIndex)
+                    node.viewClass.shouldEqual(originalNode.viewClass)
+                    node.roles.shouldEqual(originalNode.roles)
+                }
+                restored.getRedirectPageFor("private").shouldEqual("private/a/b")
+                restored.standardPageURI(StandardPageKey.Public_Home).shouldEqual("home")
+                restored.report.shouldEqual("a report")
+            }
+        }
+
+        on("decoding with a different fingerprint") {
+            val bytes = SitemapSnapshotCodec.encode(original, "fp1")!!
+            val result = SitemapSnapshotCodec.decode(ByteBuffer.wrap(bytes), "fp2", restored, SitemapSnapshotCodecTest::class.java.classLoader)
+
+            it("rejects the snapshot") {
+                result.shouldBeFalse()
+                restored.nodeCount.shouldEqual(0)
+            }
+        }
+    }
+
+    given("a master sitemap with a label key which is not an enum") {
+        val sitemap = DefaultMasterSitemap(StrictURIFragmentHandler())
+        val node = NodeRecord("home")
+        node.labelKey = mockk<I18NKey>()
+        node.pageAccessControl = PageAccessControl.PUBLIC
+        node.viewClass = PublicHomeView::class.java
+        sitemap.append(node)
+        sitemap.lock()
+
+        on("encoding") {
+            val bytes = SitemapSnapshotCodec.encode(sitemap, "fp1")
+
+            it("declines to encode it") {
+                bytes.shouldBeNull()
+            }
+        }
+    }
+})
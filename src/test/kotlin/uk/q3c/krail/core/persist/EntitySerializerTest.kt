@@ -0,0 +1,114 @@
+package uk.q3c.krail.core.persist
+
+import org.amshove.kluent.shouldBe
+import org.amshove.kluent.shouldBeNull
+import org.amshove.kluent.shouldBeTrue
+import org.amshove.kluent.shouldEqual
+import org.amshove.kluent.shouldNotBeNull
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.given
+import org.jetbrains.spek.api.dsl.it
+import org.jetbrains.spek.api.dsl.on
+import org.mapdb.DataInput2
+import org.mapdb.DataOutput2
+import org.mapdb.Serializer
+import java.io.Serializable
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+
+object EntitySerializerTest : Spek({
+
+    given("an entity serializer") {
+        lateinit var schemas: ConcurrentMap<Int, String>
+
+        beforeEachTest {
+            schemas = ConcurrentHashMap()
+        }
+
+        on("writing and reading an entity") {
+            val serializer = EntitySerializer.create(SerializerTestEntity::class, schemas)
+            val entity = SerializerTestEntity(id = "a1", name = "Wiggly é", age = -23, balance = 1234567890123L, rating = 4.5,
+                    active = true, joined = LocalDate.of(2018, 7, 15), lastSeen = LocalDateTime.of(2026, 10, 19, 17, 29, 15, 123),
+                    status = SerializerTestStatus.ACTIVE, roles = setOf("admin", "user"), scores = listOf(1, -2, 300),
+                    address = SerializerTestAddress("1 High Street", "Anytown"), nickname = null)
+            val bytes = write(serializer!!, entity)
+
+            it("reads back an equal entity") {
+                read(serializer, bytes).shouldEqual(entity)
+            }
+
+            it("is smaller than Java serialization") {
+                (bytes.size < write(Serializer.JAVA, entity).size).shouldBeTrue()
+            }
+
+            it("registers its schema") {
+                schemas.size.shouldBe(1)
+            }
+        }
+
+        on("reading a record written before a field was added") {
+            val before = EntitySerializer.create(SerializerTestPersonV1::class, schemas)!!
+            val bytes = write(before, SerializerTestPersonV1(id = "p1", name = "Wiggly", age = 23))
+            val after = EntitySerializer.create(SerializerTestPersonV2::class, schemas)!!
+            val person = read(after, bytes)
+
+            it("registers a new schema version") {
+                schemas.size.shouldBe(2)
+            }
+
+            it("keeps the existing fields, and uses the default for the new one, ignoring the removed one") {
+                person.id.shouldEqual("p1")
+                person.name.shouldEqual("Wiggly")
+                person.title.shouldEqual("Mr")
+                person.nickname.shouldBeNull()
+            }
+
+            it("reads the current version as normal") {
+                val current = SerializerTestPersonV2(id = "p2", name = "Bill", title = "Dr", nickname = "Billy")
+                read(after, write(after, current)).shouldEqual(current)
+            }
+        }
+
+        on("creating a serializer for a class which holds state outside its constructor") {
+            val serializer = EntitySerializer.create(SerializerTestUnsupported::class, schemas)
+
+            it("declines, so that the default serializer is used") {
+                (serializer == null).shouldBeTrue()
+            }
+        }
+
+        on("creating a serializer for a class which is supported") {
+            it("returns a serializer") {
+                EntitySerializer.create(SerializerTestAddress::class, schemas).shouldNotBeNull()
+            }
+        }
+    }
+})
+
+private fun <T> write(serializer: Serializer<T>, value: T): ByteArray {
+    val out = DataOutput2()
+    serializer.serialize(out, value)
+    return out.copyBytes()
+}
+
+private fun <T> read(serializer: Serializer<T>, bytes: ByteArray): T {
+    return serializer.deserialize(DataInput2.ByteArray(bytes), bytes.size)
+}
+
+enum class SerializerTestStatus { ACTIVE, SUSPENDED }
+
+data class SerializerTestAddress(val street: String, val town: String) : Serializable
+
+data class SerializerTestEntity(val id: String, val name: String, val age: Int, val balance: Long, val rating: Double, val active: Boolean,
+                                val joined: LocalDate, val lastSeen: LocalDateTime, val status: SerializerTestStatus, val roles: Set<String>,
+                                val scores: List<Int>, val address: SerializerTestAddress, val nickname: String?) : Serializable
+
+data class SerializerTestPersonV1(val id: String, val name: String, val age: Int)
+
+data class SerializerTestPersonV2(val id: String, val name: String, val title: String = "Mr", val nickname: String?)
+
+class SerializerTestUnsupported(val id: String) {
+    var notes: String = ""
+}
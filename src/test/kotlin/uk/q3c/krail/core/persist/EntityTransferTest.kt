@@ -0,0 +1,135 @@
+package uk.q3c.krail.core.persist
+
+import com.google.inject.Provider
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import org.amshove.kluent.shouldBe
+import org.amshove.kluent.shouldBeTrue
+import org.amshove.kluent.shouldContain
+import org.amshove.kluent.shouldEqual
+import org.apache.commons.io.FileUtils
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.given
+import org.jetbrains.spek.api.dsl.it
+import org.jetbrains.spek.api.dsl.on
+import uk.q3c.krail.config.ApplicationConfiguration
+import uk.q3c.krail.core.form.DefaultKrailBeanValidatorFactory
+import uk.q3c.krail.core.form.Person
+import uk.q3c.krail.eventbus.MessageBus
+import uk.q3c.krail.i18n.CurrentLocale
+import java.io.StringReader
+import java.io.StringWriter
+import java.nio.file.Files
+import java.util.Collections
+import java.util.Locale
+import javax.validation.MessageInterpolator
+import javax.validation.Validation
+import javax.validation.ValidatorFactory
+
+object EntityTransferTest : Spek({
+
+    given("an entity transfer between two stores") {
+        lateinit var sourceFactory: MapDbFormDaoFactory
+        lateinit var targetFactory: MapDbFormDaoFactory
+        lateinit var source: DefaultEntityTransfer
+        lateinit var target: DefaultEntityTransfer
+        lateinit var messageBus: MessageBus
+        lateinit var interpolator: MessageInterpolator
+        lateinit var javaxValidatorFactory: ValidatorFactory
+        lateinit var currentLocale: CurrentLocale
+        lateinit var localeThreads: MutableList<Thread>
+        lateinit var interpolatedLocales: MutableList<Locale>
+        val people = listOf(
+                Person(id = "1", name = "Wiggly, \"the\" first", age = 11, roles = setOf("admin", "user")),
+                Person(id = "2", title = "", name = "Wiggly\nsecond", age = 5),
+                Person(id = "3", name = "Wiggly3", age = 12, pricePlan = 7))
+
+        beforeEachTest {
+            messageBus = mockk(relaxed = true)
+            val applicationConfiguration: ApplicationConfiguration = mockk(relaxed = true)
+            every { applicationConfiguration.getPropertyValue(FORM_TRANSFER_CHUNK_SIZE, any<Int>()) } returns 2
+            every { applicationConfiguration.getPropertyValue(FORM_TRANSFER_PARALLELISM, any<Int>()) } returns 2
+            val javaxValidator = Validation.buildDefaultValidatorFactory().validator
+            val validatorFactory = DefaultKrailBeanValidatorFactory(mockk(relaxed = true), Provider { javaxValidator })
+            localeThreads = Collections.synchronizedList(mutableListOf())
+            interpolatedLocales = Collections.synchronizedList(mutableListOf())
+            currentLocale = mockk()
+            every { currentLocale.locale } answers { localeThreads.add(Thread.currentThread()); Locale.GERMANY }
+            interpolator = mockk()
+            every { interpolator.interpolate(any(), any(), any()) } answers { interpolatedLocales.add(thirdArg()); "is not valid" }
+            javaxValidatorFactory = Validation.byDefaultProvider().configure().messageInterpolator(interpolator).buildValidatorFactory()
+            sourceFactory = MapDbFormDaoFactory(MapDbStoreSettings(directory = Files.createTempDirectory("transfer-source").toFile()))
+            targetFactory = MapDbFormDaoFactory(MapDbStoreSettings(directory = Files.createTempDirectory("transfer-target").toFile()))
+            source = DefaultEntityTransfer(sourceFactory, validatorFactory, messageBus, applicationConfiguration, javaxValidatorFactory, Provider { currentLocale })
+            target = DefaultEntityTransfer(targetFactory, validatorFactory, messageBus, applicationConfiguration, javaxValidatorFactory, Provider { currentLocale })
+            sourceFactory.getDao(Person::class).insertAll(people)
+        }
+
+        afterEachTest {
+            javaxValidatorFactory.close()
+            sourceFactory.close()
+            targetFactory.close()
+            FileUtils.deleteQuietly(sourceFactory.settings.directory)
+            FileUtils.deleteQuietly(targetFactory.settings.directory)
+        }
+
+        on("exporting to CSV and importing the result") {
+            val output = StringWriter()
+            val exported = source.export(Person::class, TransferFormat.CSV, output)
+            val result = target.import(Person::class, TransferFormat.CSV, StringReader(output.toString()))
+
+            it("transfers every entity unchanged") {
+                exported.shouldBe(3)
+                result.imported.shouldBe(3)
+                targetFactory.getDao(Person::class).get().sortedBy { it.id }.shouldEqual(people)
+            }
+
+            it("publishes progress, and a finished message for each direction") {
+                verify { messageBus.publishASync(match { m -> m is EntityTransferProgress && m.finished && m.direction == TransferDirection.EXPORT && m.processed == 3 }) }
+                verify { messageBus.publishASync(match { m -> m is EntityTransferProgress && m.finished && m.direction == TransferDirection.IMPORT && m.processed == 3 }) }
+            }
+        }
+
+        on("exporting to JSON and importing the result") {
+            val output = StringWriter()
+            source.export(Person::class, TransferFormat.JSON, output)
+            val result = target.import(Person::class, TransferFormat.JSON, StringReader(output.toString()))
+
+            it("transfers every entity unchanged") {
+                result.imported.shouldBe(3)
+                result.rejected.isEmpty().shouldBeTrue()
+                targetFactory.getDao(Person::class).get().sortedBy { it.id }.shouldEqual(people)
+            }
+        }
+
+        on("importing CSV with invalid and incomplete records") {
+            val csv = "id,name,age,unknown\r\n" +
+                    "a,Valid,3,x\r\n" +
+                    "b,Too old,34,x\r\n" +
+                    "c,,3,x\r\n" +
+                    "d,Not a number,old,x\r\n"
+            val result = target.import(Person::class, TransferFormat.CSV, StringReader(csv))
+
+            it("imports the valid records, using defaults for absent properties") {
+                result.imported.shouldBe(1)
+                val person = targetFactory.getDao(Person::class).get("a")
+                person.title.shouldEqual("Mr")
+                person.pricePlan.shouldBe(3)
+            }
+
+            it("reports each rejected record by its position") {
+                result.rejected.map { it.record }.shouldEqual(listOf(2, 3, 4))
+                result.rejected[0].messages[0].shouldContain("age")
+                result.rejected[1].messages[0].shouldContain("name")
+            }
+
+            it("reads the current locale only on the calling thread, and passes it explicitly to the interpolator") {
+                localeThreads.shouldEqual(listOf(Thread.currentThread()))
+                interpolatedLocales.isNotEmpty().shouldBeTrue()
+                interpolatedLocales.all { it == Locale.GERMANY }.shouldBeTrue()
+                verify(exactly = 0) { interpolator.interpolate(any(), any()) }
+            }
+        }
+    }
+})
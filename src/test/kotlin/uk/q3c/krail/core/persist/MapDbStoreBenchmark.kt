@@ -0,0 +1,54 @@
+package uk.q3c.krail.core.persist
+
+import org.apache.commons.io.FileUtils
+import uk.q3c.krail.core.form.Entity
+import uk.q3c.krail.core.form.MapDBBaseDao
+import java.io.File
+import java.io.Serializable
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares read and write throughput of [MapDBBaseDao] across [MapDbStoreSettings].  JMH is not part of this build, so this is a simple
+ * harness with a warm up run - run it from the IDE, and treat the results as indicative only
+ */
+fun main(args: Array<String>) {
+    val entities = if (args.isNotEmpty()) args[0].toInt() else 20000
+    val directory = File(FileUtils.getTempDirectory(), "mapdb-benchmark")
+    val modes = linkedMapOf(
+            "default" to MapDbStoreSettings(directory = directory),
+            "mmap" to MapDbStoreSettings(directory = directory, memoryMapped = true),
+            "mmap, concurrencyScale 64, 1MB increment" to MapDbStoreSettings(directory = directory, memoryMapped = true, concurrencyScale = 64, allocationIncrement = 1024 * 1024),
+            "mmap, WAL" to MapDbStoreSettings(directory = directory, memoryMapped = true, transactions = true),
+            "mmap, group commit" to MapDbStoreSettings(directory = directory, memoryMapped = true, writeBehindMaxPending = 1000))
+
+    modes.forEach { (name, settings) ->
+        run(settings, entities) // warm up
+        val result = run(settings, entities)
+        println("%-45s put %,10.0f/s   insertAll %,10.0f/s   get %,10.0f/s".format(name, result[0], result[1], result[2]))
+    }
+}
+
+private fun run(settings: MapDbStoreSettings, entities: Int): DoubleArray {
+    FileUtils.deleteQuietly(settings.directory)
+    settings.directory.mkdirs()
+    val factory = MapDbFormDaoFactory(settings)
+    val dao = MapDBBaseDao(factory, BenchmarkEntity::class)
+    val beans = (1..entities).map { BenchmarkEntity(id = "e$it", value = it) }
+    try {
+        val put = throughput(entities) { beans.forEach { dao.put(it) } }
+        val insertAll = throughput(entities) { dao.insertAll(beans.map { it.copy(id = "bulk${it.id}") }) }
+        val get = throughput(entities) { beans.forEach { dao.get(it.id) } }
+        return doubleArrayOf(put, insertAll, get)
+    } finally {
+        factory.close()
+        FileUtils.deleteQuietly(settings.directory)
+    }
+}
+
+private fun throughput(operations: Int, block: () -> Unit): Double {
+    val start = System.nanoTime()
+    block()
+    return operations / ((System.nanoTime() - start).toDouble() / TimeUnit.SECONDS.toNanos(1))
+}
+
+data class BenchmarkEntity(override val id: String, val value: Int) : Entity, Serializable
@@ -0,0 +1,210 @@
+package uk.q3c.krail.core.view
+
+import com.google.inject.Injector
+import com.google.inject.Key
+import com.vaadin.ui.Label
+import com.vaadin.ui.VerticalLayout
+import io.mockk.every
+import io.mockk.mockk
+import org.amshove.kluent.shouldBe
+import org.amshove.kluent.shouldBeFalse
+import org.amshove.kluent.shouldBeNull
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.given
+import org.jetbrains.spek.api.dsl.it
+import org.jetbrains.spek.api.dsl.on
+import uk.q3c.krail.config.ApplicationConfiguration
+import uk.q3c.krail.core.navigate.NavigationState
+import uk.q3c.krail.core.navigate.StrictURIFragmentHandler
+import uk.q3c.krail.i18n.Translate
+import uk.q3c.util.guice.InjectorLocator
+import uk.q3c.util.guice.SerializationSupport
+
+object DefaultViewCacheTest : Spek({
+
+    given("a view cache") {
+        lateinit var cache: DefaultViewCache
+        lateinit var configuration: ApplicationConfiguration
+        val translate: Translate = mockk(relaxed = true)
+        val serializationSupport: SerializationSupport = mockk(relaxed = true)
+        val page = pageState("page")
+
+        beforeEachTest {
+            configuration = mockk(relaxed = true)
+            every<Boolean> { configuration.getPropertyValue(VIEW_CACHE_ENABLED, any()) } returns true
+            every<Int> { configuration.getPropertyValue(VIEW_CACHE_MAX_VIEWS, any()) } returns 2
+            every<Int> { configuration.getPropertyValue(VIEW_CACHE_MAX_COMPONENTS, any()) } returns 10
+            cache = DefaultViewCache(configuration)
+        }
+
+        on("putting a view, then getting it") {
+            val view = CacheTestView1(translate, serializationSupport)
+            cache.put(CacheTestView1::class.java, page, view)
+
+            it("returns the same instance") {
+                cache.get(CacheTestView1::class.java, page).shouldBe(view)
+            }
+        }
+
+        on("putting a view which has opted out") {
+            cache.put(CacheTestOptOutView::class.java, page, CacheTestOptOutView(translate, serializationSupport))
+
+            it("does not cache it") {
+                cache.get(CacheTestOptOutView::class.java, page).shouldBeNull()
+                cache.size().shouldBe(0)
+            }
+        }
+
+        on("putting more views than the maximum") {
+            val view1 = CacheTestView1(translate, serializationSupport)
+            val view2 = CacheTestView2(translate, serializationSupport)
+            val view3 = CacheTestView3(translate, serializationSupport)
+            cache.put(CacheTestView1::class.java, page, view1)
+            cache.put(CacheTestView2::class.java, page, view2)
+            cache.get(CacheTestView1::class.java, page) // view2 is now least recently used
+            cache.put(CacheTestView3::class.java, page, view3)
+
+            it("discards the least recently used") {
+                cache.size().shouldBe(2)
+                cache.get(CacheTestView2::class.java, page).shouldBeNull()
+                cache.get(CacheTestView1::class.java, page).shouldBe(view1)
+                cache.get(CacheTestView3::class.java, page).shouldBe(view3)
+            }
+        }
+
+        on("putting views whose total size exceeds the maximum") {
+            val view1 = CacheTestView1(translate, serializationSupport)
+            view1.buildView()
+            val view2 = CacheTestView2(translate, serializationSupport)
+            view2.buildView()
+            cache.put(CacheTestView1::class.java, page, view1)
+            cache.put(CacheTestView2::class.java, page, view2)
+
+            it("discards the least recently used, but never the view just added") {
+                cache.size().shouldBe(1)
+                cache.get(CacheTestView2::class.java, page).shouldBe(view2)
+            }
+        }
+
+        on("the same view class serving different pages") {
+            val table = pageState("people")
+            val detail = pageState("people", "1")
+            val otherDetail = pageState("people", "2")
+            val tableView = CacheTestView1(translate, serializationSupport)
+            val detailView = CacheTestView1(translate, serializationSupport)
+            cache.put(CacheTestView1::class.java, table, tableView)
+            cache.put(CacheTestView1::class.java, detail, detailView)
+
+            it("holds a view for each page and parameters") {
+                cache.get(CacheTestView1::class.java, table).shouldBe(tableView)
+                cache.get(CacheTestView1::class.java, pageState("people", "1")).shouldBe(detailView)
+                cache.get(CacheTestView1::class.java, otherDetail).shouldBeNull()
+            }
+
+            it("removes all the views of a class") {
+                cache.remove(CacheTestView1::class.java)
+                cache.size().shouldBe(0)
+            }
+        }
+
+        on("caching is not configured") {
+            val defaultCache = DefaultViewCache(mockk<ApplicationConfiguration>().also { c ->
+                every { c.getPropertyValue(any(), any<Any>()) } answers { secondArg() }
+            })
+            defaultCache.put(CacheTestView1::class.java, page, CacheTestView1(translate, serializationSupport))
+
+            it("is disabled by default") {
+                defaultCache.size().shouldBe(0)
+            }
+        }
+
+        on("caching is disabled") {
+            every<Boolean> { configuration.getPropertyValue(VIEW_CACHE_ENABLED, any()) } returns false
+            val disabledCache = DefaultViewCache(configuration)
+            disabledCache.put(CacheTestView1::class.java, page, CacheTestView1(translate, serializationSupport))
+
+            it("does not cache anything") {
+                disabledCache.size().shouldBe(0)
+            }
+        }
+    }
+
+    given("a view factory with caching enabled") {
+        lateinit var factory: DefaultViewFactory
+        val translate: Translate = mockk(relaxed = true)
+        val serializationSupport: SerializationSupport = mockk(relaxed = true)
+
+        beforeEachTest {
+            val configuration: ApplicationConfiguration = mockk()
+            every { configuration.getPropertyValue(any(), any<Any>()) } answers { secondArg() }
+            every<Boolean> { configuration.getPropertyValue(VIEW_CACHE_ENABLED, any()) } returns true
+            val injector: Injector = mockk()
+            every { injector.getInstance(any<Key<CacheTestView1>>()) } answers { CacheTestView1(translate, serializationSupport) }
+            val injectorLocator: InjectorLocator = mockk()
+            every { injectorLocator.get() } returns injector
+            factory = DefaultViewFactory(serializationSupport, injectorLocator, DefaultViewCache(configuration))
+        }
+
+        on("navigating to two pages backed by the same view class, then back to the first") {
+            val table = pageState("people")
+            val detail = pageState("people", "1")
+            val tableView = factory.get(CacheTestView1::class.java, table)
+            tableView.buildView()
+            factory.built(CacheTestView1::class.java, table, tableView)
+            val detailView = factory.get(CacheTestView1::class.java, detail)
+            detailView.buildView()
+            factory.built(CacheTestView1::class.java, detail, detailView)
+
+            it("builds a separate view for each page, and re-uses the first on return") {
+                (detailView === tableView).shouldBeFalse()
+                factory.get(CacheTestView1::class.java, pageState("people")).shouldBe(tableView)
+                factory.get(CacheTestView1::class.java, pageState("people", "1")).shouldBe(detailView)
+            }
+        }
+    }
+})
+
+private fun pageState(page: String, id: String? = null): NavigationState {
+    val state = NavigationState().virtualPage(page)
+    if (id != null) {
+        state.parameter("id", id)
+    }
+    state.update(StrictURIFragmentHandler())
+    return state
+}
+
+/**
+ * Root layout with 6 labels, giving an estimated size of 7
+ */
+private fun sixLabels(): VerticalLayout {
+    val layout = VerticalLayout()
+    for (i in 1..6) {
+        layout.addComponent(Label("label $i"))
+    }
+    return layout
+}
+
+class CacheTestView1(translate: Translate, serialisationSupport: SerializationSupport) : ViewBase(translate, serialisationSupport) {
+    override fun doBuild() {
+        rootComponent = sixLabels()
+    }
+}
+
+class CacheTestView2(translate: Translate, serialisationSupport: SerializationSupport) : ViewBase(translate, serialisationSupport) {
+    override fun doBuild() {
+        rootComponent = sixLabels()
+    }
+}
+
+class CacheTestView3(translate: Translate, serialisationSupport: SerializationSupport) : ViewBase(translate, serialisationSupport) {
+    override fun doBuild() {
+        rootComponent = sixLabels()
+    }
+}
+
+@NoViewCache
+class CacheTestOptOutView(translate: Translate, serialisationSupport: SerializationSupport) : ViewBase(translate, serialisationSupport) {
+    override fun doBuild() {
+        rootComponent = sixLabels()
+    }
+}
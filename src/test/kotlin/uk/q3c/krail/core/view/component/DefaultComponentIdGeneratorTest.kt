@@ -1,11 +1,14 @@
 package uk.q3c.krail.core.view.component
 
+import com.vaadin.ui.Label
+import com.vaadin.ui.TextField
 import org.amshove.kluent.mock
 import org.amshove.kluent.shouldBe
 import org.amshove.kluent.shouldBeEqualTo
 import org.amshove.kluent.shouldBeNull
 import org.amshove.kluent.shouldContain
 import org.amshove.kluent.shouldNotContain
+import org.amshove.kluent.shouldNotEqual
 import org.amshove.kluent.shouldThrow
 import org.jetbrains.spek.api.Spek
 import org.jetbrains.spek.api.dsl.given
@@ -163,6 +166,77 @@ class DefaultComponentIdGeneratorTest : Spek({
             }
         }
 
+        given("a view to which ids have been applied with applyChanged, in which a top level component is replaced") {
+            val view = NestedView(translate, serializationSupport)
+            view.buildView()
+            val state1 = generator.applyChanged(view, null)
+
+            on("replacing the component, and clearing the id of a component inside an unchanged one") {
+                val replacement = TextField()
+                view.box = replacement
+                view.nested.label.id = null
+                val state2 = generator.applyChanged(view, state1)
+
+                it("assigns an id to the replacement, and does not read inside the unchanged component") {
+                    replacement.id.shouldBeEqualTo("NestedView-box")
+                    view.nested.label.id.shouldBeNull()
+                    state2.version.shouldNotEqual(state1.version)
+                }
+            }
+        }
+
+        given("a view to which ids have been applied with applyChanged") {
+            val view = NestedView(translate, serializationSupport)
+            view.buildView()
+            val state1 = generator.applyChanged(view, null)
+
+            on("replacing a nested component, and clearing the id of an unchanged one") {
+                val replacement = Label("replacement")
+                view.nested.label = replacement
+                view.box.id = null
+                val state2 = generator.applyChanged(view, state1)
+
+                it("assigns an id to the replacement, and leaves the unchanged subtree alone") {
+                    replacement.id.shouldBeEqualTo("NestedView-nested-label")
+                    view.box.id.shouldBeNull()
+                    state2.version.shouldNotEqual(state1.version)
+                }
+            }
+        }
+
+        given("a view to which ids have been applied with applyChanged, and which has not changed") {
+            val view = NestedView(translate, serializationSupport)
+            view.buildView()
+            val state1 = generator.applyChanged(view, null)
+
+            on("applying again") {
+                val state2 = generator.applyChanged(view, state1)
+
+                it("returns the same version") {
+                    state2.version.shouldBeEqualTo(state1.version)
+                }
+            }
+        }
+
+        given("a view with all combinations of components, using apply only") {
+            val view = FullMontyView(translate, serializationSupport)
+            view.buildView()
+            val expectedView = FullMontyView(translate, serializationSupport)
+            expectedView.buildView()
+            generator.generateAndApply(expectedView)
+
+            on("apply") {
+                generator.apply(view)
+
+                it("assigns the same ids as generateAndApply") {
+                    view.componentInView.id.shouldBeEqualTo(expectedView.componentInView.id)
+                    view.componentInViewExcluded.id.shouldBeNull()
+                    view.layoutWithAnnotationOnlyAssign.id.shouldBeEqualTo(expectedView.layoutWithAnnotationOnlyAssign.id)
+                    view.declaredByInterface.label.id.shouldBeEqualTo(expectedView.declaredByInterface.label.id)
+                }
+            }
+        }
+
 
     }
 })
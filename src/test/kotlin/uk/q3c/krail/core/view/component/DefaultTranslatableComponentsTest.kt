@@ -1,9 +1,12 @@
 package uk.q3c.krail.core.view.component
 
+import com.vaadin.server.ClientConnector
 import com.vaadin.server.FontAwesome
 import com.vaadin.ui.Button
 import io.mockk.every
 import io.mockk.mockk
+import io.mockk.slot
+import io.mockk.spyk
 import io.mockk.verify
 import org.amshove.kluent.shouldBe
 import org.amshove.kluent.shouldBeEqualTo
@@ -16,8 +19,10 @@ import org.jetbrains.spek.api.dsl.on
 import uk.q3c.krail.core.eventbus.SessionBusProvider
 import uk.q3c.krail.core.i18n.CommonLabelKey
 import uk.q3c.krail.i18n.LocaleChangeBusMessage
+import uk.q3c.krail.i18n.Translate
 import uk.q3c.krail.i18n.test.MockCurrentLocale
 import uk.q3c.krail.i18n.test.MockTranslate
+import java.util.*
 
 /**
  * Created by David Sowerby on 04 Sep 2018
@@ -32,7 +37,7 @@ object DefaultTranslatableComponentsTest : Spek({
         val sessionBusProvider: SessionBusProvider = mockk(relaxed = true)
 
         beforeEachTest {
-            dtc = DefaultTranslatableComponents(translate, currentLocale, iconFactory, sessionBusProvider)
+            dtc = DefaultTranslatableComponents(translate, currentLocale, iconFactory, sessionBusProvider, DefaultTranslationBatch(translate, sessionBusProvider))
         }
 
         on("adding an entry") {
@@ -89,5 +94,79 @@ object DefaultTranslatableComponentsTest : Spek({
                 label.value.shouldBe("Settings")
             }
         }
+
+        on("getting a Locale change message while a component is detached") {
+            val localeMessage: LocaleChangeBusMessage = mockk(relaxed = true)
+            val button: Button = spyk(Button())
+            val detachListener = slot<ClientConnector.DetachListener>()
+            val attachListener = slot<ClientConnector.AttachListener>()
+            every { button.addDetachListener(capture(detachListener)) } answers { callOriginal() }
+            every { button.addAttachListener(capture(attachListener)) } answers { callOriginal() }
+            dtc.addEntry(component = button, captionKey = CommonLabelKey.Settings, useIcon = false)
+            detachListener.captured.detach(ClientConnector.DetachEvent(button))
+            dtc.localeChanged(localeMessage)
+            val captionWhileDetached = button.caption
+            attachListener.captured.attach(ClientConnector.AttachEvent(button))
+
+            it("defers translation until the component is attached again") {
+                captionWhileDetached.shouldBeNull()
+                button.caption.shouldBeEqualTo("Settings")
+            }
+        }
+    }
+
+    given("a TranslationBatch") {
+        lateinit var batch: DefaultTranslationBatch
+        lateinit var translate: Translate
+
+        beforeEachTest {
+            translate = mockk()
+            batch = DefaultTranslationBatch(translate, mockk(relaxed = true))
+            every { translate.from(CommonLabelKey.Settings, Locale.UK) } returns "Settings"
+            every { translate.from(CommonLabelKey.Settings, Locale.GERMANY) } returns "Einstellungen"
+        }
+
+        on("translating the same key more than once for the same Locale") {
+            val first = batch.translate(listOf(CommonLabelKey.Settings), Locale.UK)
+            val second = batch.translate(listOf(CommonLabelKey.Settings), Locale.UK)
+
+            it("resolves the key only once") {
+                first[CommonLabelKey.Settings].shouldBeEqualTo("Settings")
+                second[CommonLabelKey.Settings].shouldBeEqualTo("Settings")
+                verify(exactly = 1) { translate.from(CommonLabelKey.Settings, Locale.UK) }
+            }
+        }
+
+        on("translating for a different Locale") {
+            batch.translate(listOf(CommonLabelKey.Settings), Locale.UK)
+            val result = batch.translate(listOf(CommonLabelKey.Settings), Locale.GERMANY)
+
+            it("resolves the key again for the new Locale") {
+                result[CommonLabelKey.Settings].shouldBeEqualTo("Einstellungen")
+            }
+        }
+    }
+
+    given("a TranslationBatch receiving a Locale change message") {
+        lateinit var batch: DefaultTranslationBatch
+        lateinit var translate: Translate
+
+        beforeEachTest {
+            translate = mockk()
+            batch = DefaultTranslationBatch(translate, mockk(relaxed = true))
+            every { translate.from(CommonLabelKey.Settings, Locale.UK) } returnsMany listOf("Settings", "Preferences")
+        }
+
+        on("translating the same key for the same Locale either side of the message") {
+            val first = batch.translate(listOf(CommonLabelKey.Settings), Locale.UK)
+            batch.localeChanged(mockk(relaxed = true))
+            val second = batch.translate(listOf(CommonLabelKey.Settings), Locale.UK)
+
+            it("discards the held translation and resolves the key again") {
+                first[CommonLabelKey.Settings].shouldBeEqualTo("Settings")
+                second[CommonLabelKey.Settings].shouldBeEqualTo("Preferences")
+                verify(exactly = 2) { translate.from(CommonLabelKey.Settings, Locale.UK) }
+            }
+        }
     }
-})
\ No newline at end of file
+})
@@ -99,3 +99,24 @@ class FullMontyView @Inject constructor(translate: Translate, serialisationSuppo
     }
 
 }
+
+class NestedPanel : Panel(), ComponentIdVersioned {
+    override var componentIdVersion = 0
+        private set
+
+    var label: Label = Label("nested label")
+        set(value) {
+            field = value
+            componentIdVersion++
+        }
+}
+
+class NestedView @Inject constructor(translate: Translate, serialisationSupport: SerializationSupport) : ViewBase(translate, serialisationSupport) {
+    lateinit var box: TextField
+    lateinit var nested: NestedPanel
+
+    override fun doBuild() {
+        box = TextField()
+        nested = NestedPanel()
+    }
+}
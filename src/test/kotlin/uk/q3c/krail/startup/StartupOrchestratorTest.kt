@@ -0,0 +1,172 @@
+package uk.q3c.krail.startup
+
+import io.mockk.every
+import io.mockk.mockk
+import org.amshove.kluent.shouldBeFalse
+import org.amshove.kluent.shouldBeTrue
+import org.amshove.kluent.shouldEqual
+import org.amshove.kluent.shouldThrow
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.given
+import org.jetbrains.spek.api.dsl.it
+import org.jetbrains.spek.api.dsl.on
+import uk.q3c.krail.config.ApplicationConfiguration
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+object StartupOrchestratorTest : Spek({
+
+    given("a set of startup stages") {
+
+        on("ordering by dependency") {
+            val stages = listOf(TestStage("c", setOf("b")), TestStage("b", setOf("a")), TestStage("a"), TestStage("d"))
+
+            it("places each stage after those it depends on, otherwise keeping the original order") {
+                orderStartupStages(stages).map { it.name }.shouldEqual(listOf("a", "d", "b", "c"))
+            }
+
+            it("rejects an unknown dependency, a duplicate name and a cycle") {
+                val unknown = { orderStartupStages(listOf(TestStage("a", setOf("x")))) }
+                val duplicate = { orderStartupStages(listOf(TestStage("a"), TestStage("a"))) }
+                val cycle = { orderStartupStages(listOf(TestStage("a", setOf("b")), TestStage("b", setOf("a")))) }
+                unknown.shouldThrow(StartupCodeException::class)
+                duplicate.shouldThrow(StartupCodeException::class)
+                cycle.shouldThrow(StartupCodeException::class)
+            }
+        }
+    }
+
+    given("a startup orchestrator") {
+        lateinit var configuration: ApplicationConfiguration
+
+        beforeEachTest {
+            configuration = mockk()
+            every { configuration.getPropertyValue(any(), any<Any>()) } answers { secondArg() }
+        }
+
+        on("running independent stages") {
+            val bothRunning = CountDownLatch(2)
+            val action = {
+                bothRunning.countDown()
+                if (!bothRunning.await(5, TimeUnit.SECONDS)) {
+                    throw IllegalStateException("not run in parallel")
+                }
+            }
+            val orchestrator = DefaultStartupOrchestrator(mutableSetOf(TestStage("a", required = true, action = action),
+                    TestStage("b", required = true, action = action)), configuration)
+            orchestrator.start()
+
+            it("runs them in parallel") {
+                awaitReady(orchestrator)
+                orchestrator.timings().none { it.failed }.shouldBeTrue()
+            }
+        }
+
+        on("running dependent stages") {
+            val order = Collections.synchronizedList(mutableListOf<String>())
+            val orchestrator = DefaultStartupOrchestrator(mutableSetOf(
+                    TestStage("c", setOf("a", "b"), required = true, action = { order.add("c") }),
+                    TestStage("a", action = { Thread.sleep(50); order.add("a") }),
+                    TestStage("b", action = { order.add("b") })), configuration)
+            orchestrator.start()
+
+            it("runs a stage only after its dependencies, and waits for the required stage") {
+                order.last().shouldEqual("c")
+                order.size.shouldEqual(3)
+            }
+        }
+
+        on("a required stage failing") {
+            val orchestrator = DefaultStartupOrchestrator(mutableSetOf(
+                    TestStage("a", action = { throw IllegalArgumentException("fail") }),
+                    TestStage("b", setOf("a"), required = true)), configuration)
+            val result = { orchestrator.start() }
+
+            it("fails the start up, and records the dependent stage as skipped") {
+                result.shouldThrow(StartupCodeException::class)
+                awaitFinished(orchestrator)
+                orchestrator.timings().map { it.name }.shouldEqual(listOf("a", "b"))
+                orchestrator.timings().all { it.failed }.shouldBeTrue()
+                orchestrator.isReady.shouldBeFalse()
+            }
+        }
+
+        on("an optional stage failing") {
+            val orchestrator = DefaultStartupOrchestrator(mutableSetOf(
+                    TestStage("required", required = true),
+                    TestStage("optional", action = { throw IllegalArgumentException("fail") })), configuration)
+            orchestrator.start()
+
+            it("finishes, but does not report ready") {
+                awaitFinished(orchestrator)
+                orchestrator.isReady.shouldBeFalse()
+                orchestrator.timings().single { it.failed }.name.shouldEqual("optional")
+            }
+        }
+
+        on("an optional stage still running") {
+            val release = CountDownLatch(1)
+            val orchestrator = DefaultStartupOrchestrator(mutableSetOf(
+                    TestStage("required", required = true),
+                    TestStage("slow", action = { release.await(5, TimeUnit.SECONDS) })), configuration)
+            orchestrator.start()
+
+            it("is not ready until every stage has finished") {
+                orchestrator.isReady.shouldBeFalse()
+                release.countDown()
+                awaitReady(orchestrator)
+                orchestrator.timings().map { it.name }.shouldEqual(listOf("required", "slow"))
+            }
+        }
+
+        on("a disabled stage") {
+            var run = false
+            val orchestrator = DefaultStartupOrchestrator(mutableSetOf(
+                    TestStage("disabled", enabled = false, action = { run = true }),
+                    TestStage("dependent", setOf("disabled"), required = true)), configuration)
+            orchestrator.start()
+
+            it("does not run it, reports it as disabled, and still runs the stages which depend on it") {
+                awaitReady(orchestrator)
+                run.shouldBeFalse()
+                orchestrator.timings().single { it.disabled }.name.shouldEqual("disabled")
+                orchestrator.timings().none { it.failed }.shouldBeTrue()
+            }
+        }
+
+        on("having no stages") {
+            val orchestrator = DefaultStartupOrchestrator(mutableSetOf(), configuration)
+            orchestrator.start()
+
+            it("is ready immediately, and cannot be started again") {
+                orchestrator.isReady.shouldBeTrue()
+                val again = { orchestrator.start() }
+                again.shouldThrow(StartupCodeException::class)
+            }
+        }
+    }
+})
+
+private fun awaitFinished(readiness: ApplicationReadiness) {
+    val limit = System.currentTimeMillis() + 5000
+    while (!readiness.isFinished && System.currentTimeMillis() < limit) {
+        Thread.sleep(10)
+    }
+    readiness.isFinished.shouldBeTrue()
+}
+
+private fun awaitReady(readiness: ApplicationReadiness) {
+    awaitFinished(readiness)
+    readiness.isReady.shouldBeTrue()
+}
+
+private class TestStage(override val name: String,
+                        override val dependsOn: Set<String> = setOf(),
+                        override val required: Boolean = false,
+                        override val enabled: Boolean = true,
+                        val action: () -> Unit = {}) : StartupStage {
+    override fun run() {
+        action()
+    }
+}